@@ -0,0 +1,63 @@
+package com.rakbank.userservice.controller;
+
+import com.rakbank.userservice.controller.dto.request.CreateUserRequestDto;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validation;
+import jakarta.validation.Validator;
+import jakarta.validation.ValidatorFactory;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bean validation of a signup request, for a valid request and for one that breaks every rule.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CreateUserRequestValidationBenchmark {
+
+    ValidatorFactory validatorFactory;
+
+    Validator validator;
+
+    CreateUserRequestDto validRequest;
+
+    CreateUserRequestDto invalidRequest;
+
+    @Setup
+    public void setUp() {
+        validatorFactory = Validation.buildDefaultValidatorFactory();
+        validator = validatorFactory.getValidator();
+
+        validRequest = new CreateUserRequestDto();
+        validRequest.setName("Test User");
+        validRequest.setEmail("test@rakbank.com");
+        validRequest.setPassword("Password123");
+
+        invalidRequest = new CreateUserRequestDto();
+        invalidRequest.setName("Test User 1");
+        invalidRequest.setEmail("not-an-email");
+        invalidRequest.setPassword("pass!");
+    }
+
+    @TearDown
+    public void tearDown() {
+        validatorFactory.close();
+    }
+
+    @Benchmark
+    public Set<ConstraintViolation<CreateUserRequestDto>> validateValidRequest() {
+        return validator.validate(validRequest);
+    }
+
+    @Benchmark
+    public Set<ConstraintViolation<CreateUserRequestDto>> validateInvalidRequest() {
+        return validator.validate(invalidRequest);
+    }
+
+}
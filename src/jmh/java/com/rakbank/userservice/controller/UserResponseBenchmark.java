@@ -0,0 +1,82 @@
+package com.rakbank.userservice.controller;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rakbank.userservice.controller.dto.response.UserDetailsResponseDto;
+import com.rakbank.userservice.dao.projection.UserField;
+import com.rakbank.userservice.service.model.PaginatedResponse;
+import com.rakbank.userservice.service.model.User;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building and serializing a GET /users page, at the default page size and a larger one.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UserResponseBenchmark {
+
+    @Param({"10", "100"})
+    int pageSize;
+
+    UserController userController;
+
+    // Same defaults Spring Boot applies to the ObjectMapper used by the message converters, and the
+    // filters of UserServiceApplication.
+    ObjectMapper objectMapper;
+
+    List<User> users;
+
+    PaginatedResponse<UserDetailsResponseDto> paginatedResponse;
+
+    @Setup
+    public void setUp() {
+        userController = new UserController();
+        objectMapper = Jackson2ObjectMapperBuilder.json().filters(UserFieldsFilter.of(UserField.ALL)).build();
+
+        users = new ArrayList<>(pageSize);
+        for(long id = 1; id <= pageSize; id++) {
+            User user = new User();
+            user.setId(id);
+            user.setName("Test User " + id);
+            user.setEmail("test" + id + "@rakbank.com");
+            user.setPassword("$2a$05$CCCCCCCCCCCCCCCCCCCCC.E5YPO9kmyuRGyh0XouQYb4YMJKvyOeW");
+            users.add(user);
+        }
+        paginatedResponse = mapPage();
+    }
+
+    @Benchmark
+    public UserDetailsResponseDto mapUserToUserDetailsResponseDto() {
+        return userController.mapUserToUserDetailsResponseDto(users.get(0));
+    }
+
+    @Benchmark
+    public PaginatedResponse<UserDetailsResponseDto> mapPage() {
+        List<UserDetailsResponseDto> records = new ArrayList<>(users.size());
+        for(User user : users) {
+            records.add(userController.mapUserToUserDetailsResponseDto(user));
+        }
+        PaginatedResponse<UserDetailsResponseDto> page = new PaginatedResponse<>();
+        page.setRecords(records);
+        page.setPageSize(pageSize);
+        page.setPageNumber(1);
+        page.setTotalRecords(10_000L);
+        page.setTotalPages(10_000 / pageSize);
+        return page;
+    }
+
+    @Benchmark
+    public byte[] serializePage() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(paginatedResponse);
+    }
+
+}
@@ -0,0 +1,239 @@
+package com.rakbank.userservice.loadtest;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Closed-loop HTTP load against a running service, to compare the thread-pool and virtual-thread modes
+ * at the same concurrency. Each connection sends a request, waits for the response and sends the next,
+ * so throughput is what the service sustains and latency includes any queueing in it.
+ * Prints throughput, latency percentiles and the count of each non-200 status.
+ *
+ * Options (all optional):
+ *   --url=http://localhost:8080     service under test
+ *   --connections=2000              concurrent connections
+ *   --warmup=PT15S                  load applied before measuring
+ *   --duration=PT60S                measured load
+ *   --seed=10000                    users created through POST /users/batch before the run, 0 to skip
+ *   --ids=1-10000                   ids to read when not seeding
+ *   --path=/users/{id}?fields=id,name,email
+ *                                   request path, {id} is replaced by a random id. Sparse reads are never
+ *                                   cached, so every request reaches the database.
+ *
+ * Each connection sends its own X-Client-Id, so per-client admission rates don't apply to the run.
+ */
+public class UserReadLoadTest {
+
+    private static final Pattern CREATED_ID = Pattern.compile("\"id\":(\\d+)");
+
+    private final HttpClient httpClient;
+    private final String url;
+    private final String path;
+    private final long[] ids;
+
+    private final LongAdder requests = new LongAdder();
+    private final Map<String, LongAdder> failures = new ConcurrentHashMap<>();
+
+    private volatile boolean measuring;
+    private volatile boolean running = true;
+
+    UserReadLoadTest(HttpClient httpClient, String url, String path, long[] ids) {
+        this.httpClient = httpClient;
+        this.url = url;
+        this.path = path;
+        this.ids = ids;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for(String arg : args) {
+            String[] option = arg.replaceFirst("^--", "").split("=", 2);
+            options.put(option[0], option.length > 1 ? option[1] : "");
+        }
+        String url = options.getOrDefault("url", "http://localhost:8080");
+        int connections = Integer.parseInt(options.getOrDefault("connections", "2000"));
+        Duration warmup = Duration.parse(options.getOrDefault("warmup", "PT15S"));
+        Duration duration = Duration.parse(options.getOrDefault("duration", "PT60S"));
+        int seed = Integer.parseInt(options.getOrDefault("seed", "10000"));
+        String path = options.getOrDefault("path", "/users/{id}?fields=id,name,email");
+
+        ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        try {
+            HttpClient httpClient = HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_1_1)
+                    .connectTimeout(Duration.ofSeconds(10))
+                    .executor(executor)
+                    .build();
+            run(httpClient, url, path, connections, warmup, duration,
+                    seed > 0 ? seed(httpClient, url, seed) : range(options.getOrDefault("ids", "1-10000")));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void run(HttpClient httpClient, String url, String path, int connections, Duration warmup,
+                            Duration duration, long[] ids) throws InterruptedException {
+        System.out.printf("%d connections, %d ids, %s warmup, %s measured, GET %s%n",
+                connections, ids.length, warmup, duration, path);
+
+        UserReadLoadTest loadTest = new UserReadLoadTest(httpClient, url, path, ids);
+        List<Connection> running = new ArrayList<>(connections);
+        for(int i = 0; i < connections; i++) {
+            Connection connection = loadTest.new Connection("load-" + i);
+            running.add(connection);
+            connection.next();
+        }
+
+        Thread.sleep(warmup.toMillis());
+        loadTest.measuring = true;
+        long startedAt = System.nanoTime();
+        Thread.sleep(duration.toMillis());
+        loadTest.measuring = false;
+        long elapsedNanos = System.nanoTime() - startedAt;
+        loadTest.running = false;
+
+        loadTest.report(running, elapsedNanos);
+    }
+
+    private void report(List<Connection> connections, long elapsedNanos) {
+        int count = 0;
+        for(Connection connection : connections) {
+            synchronized(connection) {
+                count += connection.count;
+            }
+        }
+        long[] latencies = new long[count];
+        int offset = 0;
+        for(Connection connection : connections) {
+            synchronized(connection) {
+                System.arraycopy(connection.latencies, 0, latencies, offset, connection.count);
+                offset += connection.count;
+            }
+        }
+        Arrays.sort(latencies);
+        double seconds = elapsedNanos / 1e9;
+        System.out.printf("requests: %d, throughput: %.0f req/s%n", requests.sum(), requests.sum() / seconds);
+        System.out.printf("latency ms  p50: %.1f  p90: %.1f  p99: %.1f  p99.9: %.1f  max: %.1f%n",
+                percentile(latencies, 0.50), percentile(latencies, 0.90), percentile(latencies, 0.99),
+                percentile(latencies, 0.999), latencies.length > 0 ? latencies[latencies.length - 1] / 1e6 : 0d);
+        new TreeMap<>(failures).forEach((status, failed) -> System.out.printf("%s: %d%n", status, failed.sum()));
+    }
+
+    private static double percentile(long[] sorted, double percentile) {
+        if(sorted.length == 0) {
+            return 0d;
+        }
+        return sorted[(int) Math.min(sorted.length - 1, Math.ceil(percentile * sorted.length) - 1)] / 1e6;
+    }
+
+    /**
+     * One connection's loop. Latencies are only appended by the callback of its single request in flight.
+     */
+    private class Connection {
+
+        private final String clientId;
+        private long[] latencies = new long[1024];
+        private int count;
+
+        Connection(String clientId) {
+            this.clientId = clientId;
+        }
+
+        void next() {
+            if(!running) {
+                return;
+            }
+            long id = ids[ThreadLocalRandom.current().nextInt(ids.length)];
+            HttpRequest request = HttpRequest.newBuilder(URI.create(url + path.replace("{id}", String.valueOf(id))))
+                    .header("X-Client-Id", clientId)
+                    .timeout(Duration.ofSeconds(30))
+                    .GET()
+                    .build();
+            long sentAt = System.nanoTime();
+            httpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                    .whenComplete((response, failure) -> {
+                        record(sentAt, null != failure ? failure.getClass().getSimpleName() : statusOf(response));
+                        next();
+                    });
+        }
+
+        private String statusOf(HttpResponse<Void> response) {
+            return response.statusCode() == 200 ? null : "HTTP " + response.statusCode();
+        }
+
+        private void record(long sentAt, String failure) {
+            if(!measuring) {
+                return;
+            }
+            requests.increment();
+            if(null != failure) {
+                failures.computeIfAbsent(failure, key -> new LongAdder()).increment();
+                return;
+            }
+            long latency = System.nanoTime() - sentAt;
+            synchronized(this) {
+                if(count == latencies.length) {
+                    latencies = Arrays.copyOf(latencies, count * 2);
+                }
+                latencies[count++] = latency;
+            }
+        }
+
+    }
+
+    private static long[] seed(HttpClient httpClient, String url, int users) throws Exception {
+        String run = Long.toString(System.currentTimeMillis(), 36);
+        List<Long> ids = new ArrayList<>(users);
+        for(int from = 0; from < users; from += 1000) {
+            StringBuilder body = new StringBuilder("[");
+            for(int i = from; i < Math.min(users, from + 1000); i++) {
+                body.append(i > from ? "," : "")
+                        .append("{\"name\":\"Load User\",\"email\":\"load").append(run).append('.').append(i)
+                        .append("@example.com\",\"password\":\"password").append(i).append("\"}");
+            }
+            HttpRequest request = HttpRequest.newBuilder(URI.create(url + "/users/batch"))
+                    .header("Content-Type", "application/json")
+                    .header("X-Client-Id", "load-seed")
+                    .timeout(Duration.ofMinutes(5))
+                    .POST(HttpRequest.BodyPublishers.ofString(body.append(']').toString()))
+                    .build();
+            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+            if(response.statusCode() != 200) {
+                throw new IllegalStateException("Seeding failed with HTTP " + response.statusCode() + ": " + response.body());
+            }
+            Matcher matcher = CREATED_ID.matcher(response.body());
+            while(matcher.find()) {
+                ids.add(Long.parseLong(matcher.group(1)));
+            }
+        }
+        return ids.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    private static long[] range(String range) {
+        String[] bounds = range.split("-");
+        long from = Long.parseLong(bounds[0]);
+        long to = Long.parseLong(bounds[1]);
+        long[] ids = new long[(int) (to - from + 1)];
+        for(int i = 0; i < ids.length; i++) {
+            ids[i] = from + i;
+        }
+        return ids;
+    }
+
+}
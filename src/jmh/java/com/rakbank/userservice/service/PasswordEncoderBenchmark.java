@@ -0,0 +1,45 @@
+package com.rakbank.userservice.service;
+
+import at.favre.lib.crypto.bcrypt.BCrypt;
+import com.rakbank.userservice.service.hashing.BcryptPasswordHashAlgorithm;
+import com.rakbank.userservice.service.hashing.Pbkdf2PasswordHashAlgorithm;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of one hash at the work factors we would consider running with: the bcrypt cost, or the
+ * PBKDF2 iterations in thousands. Each step of the bcrypt cost should roughly double the time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PasswordEncoderBenchmark {
+
+    @Param({"bcrypt", "pbkdf2"})
+    String algorithm;
+
+    @Param({"4", "5", "8", "10"})
+    int cost;
+
+    PasswordEncoder passwordEncoder;
+
+    @Setup
+    public void setUp() {
+        passwordEncoder = new PasswordEncoder("pbkdf2".equals(algorithm)
+                ? new Pbkdf2PasswordHashAlgorithm(cost * 1000)
+                : new BcryptPasswordHashAlgorithm(BCrypt.Version.VERSION_2A, cost), List.of(), Runnable::run, Runnable::run,
+                1, Runnable::run, new SimpleMeterRegistry());
+    }
+
+    @Benchmark
+    public String encode() {
+        return passwordEncoder.encode("Password123");
+    }
+
+}
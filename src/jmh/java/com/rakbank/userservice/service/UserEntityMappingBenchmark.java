@@ -0,0 +1,41 @@
+package com.rakbank.userservice.service;
+
+import com.rakbank.userservice.dao.entity.UserEntity;
+import com.rakbank.userservice.service.model.User;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Entity to service model mapping, done once per user on every read path.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UserEntityMappingBenchmark {
+
+    UserServiceImpl userService;
+
+    UserEntity userEntity;
+
+    @Setup
+    public void setUp() {
+        userService = new UserServiceImpl();
+
+        userEntity = new UserEntity();
+        userEntity.setId(1L);
+        userEntity.setName("Test User");
+        userEntity.setEmail("test@rakbank.com");
+        userEntity.setPassword("$2a$05$CCCCCCCCCCCCCCCCCCCCC.E5YPO9kmyuRGyh0XouQYb4YMJKvyOeW");
+        userEntity.setVersion(3);
+    }
+
+    @Benchmark
+    public User mapUserEntityToUser() {
+        return userService.mapUserEntityToUser(userEntity);
+    }
+
+}
@@ -0,0 +1,107 @@
+package com.rakbank.userservice.service;
+
+import com.rakbank.userservice.UserServiceApplication;
+import com.rakbank.userservice.dao.entity.UserEntity;
+import com.rakbank.userservice.dao.repository.UserRepository;
+import com.rakbank.userservice.service.model.User;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Reading a 10k row page of users as managed entities (the old read path) and as read-only
+ * UserView projections (the current one), against an in-memory H2 database in MySQL mode.
+ * Run with -prof gc and compare gc.alloc.rate.norm, the bytes allocated per page:
+ * ./mvnw -Pbenchmark verify -DskipTests -Djmh.args="UserPageReadBenchmark -prof gc"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UserPageReadBenchmark {
+
+    private static final int PAGE_SIZE = 10_000;
+
+    ConfigurableApplicationContext context;
+
+    UserRepository userRepository;
+
+    EntityManagerFactory entityManagerFactory;
+
+    UserServiceImpl userService;
+
+    @Setup
+    public void setUp() {
+        context = new SpringApplicationBuilder(UserServiceApplication.class)
+                .web(WebApplicationType.NONE)
+                .run("--spring.datasource.url=jdbc:h2:mem:benchmark;MODE=MySQL;DB_CLOSE_DELAY=-1",
+                        "--spring.datasource.driver-class-name=org.h2.Driver",
+                        "--spring.datasource.username=sa",
+                        "--spring.datasource.password=",
+                        "--spring.jpa.show-sql=false",
+                        "--logging.level.root=WARN",
+                        "--logging.level.org.springframework.web=WARN",
+                        "--logging.level.org.hibernate.SQL=WARN",
+                        "--logging.level.org.hibernate.type.descriptor.sql.BasicBinder=WARN");
+        userRepository = context.getBean(UserRepository.class);
+        entityManagerFactory = context.getBean(EntityManagerFactory.class);
+        userService = new UserServiceImpl();
+
+        List<Object[]> rows = new ArrayList<>(PAGE_SIZE);
+        for(long id = 1; id <= PAGE_SIZE; id++) {
+            rows.add(new Object[] {id, "Test User", "test" + id + "@rakbank.com", "test" + id + "@rakbank.com",
+                    "$2a$05$CCCCCCCCCCCCCCCCCCCCC.E5YPO9kmyuRGyh0XouQYb4YMJKvyOeW", 0});
+        }
+        context.getBean(JdbcTemplate.class)
+                .batchUpdate("insert into users (ID, NAME, EMAIL, EMAIL_NORMALIZED, PASSWORD, VERSION) values (?, ?, ?, ?, ?, ?)", rows);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    /**
+     * The read path before projections: managed entities in a read-write transaction, so Hibernate keeps
+     * a snapshot of every row and dirty-checks all of them on commit.
+     */
+    @Benchmark
+    public List<User> entityPage() {
+        EntityManager entityManager = entityManagerFactory.createEntityManager();
+        try {
+            entityManager.getTransaction().begin();
+            List<User> users = entityManager.createQuery("select u from UserEntity u order by u.id", UserEntity.class)
+                    .setMaxResults(PAGE_SIZE + 1)
+                    .getResultList()
+                    .stream()
+                    .limit(PAGE_SIZE)
+                    .map(userService::mapUserEntityToUser)
+                    .collect(Collectors.toList());
+            entityManager.getTransaction().commit();
+            return users;
+        } finally {
+            entityManager.close();
+        }
+    }
+
+    @Benchmark
+    public List<User> projectionPage() {
+        return userRepository.findViewsBy(PageRequest.of(0, PAGE_SIZE))
+                .stream()
+                .map(userService::mapUserViewToUser)
+                .collect(Collectors.toList());
+    }
+
+}
@@ -1,25 +1,23 @@
 package com.rakbank.userservice;
 
-import at.favre.lib.crypto.bcrypt.BCrypt;
-import com.rakbank.userservice.service.PasswordEncoder;
+import com.rakbank.userservice.controller.UserFieldsFilter;
+import com.rakbank.userservice.dao.projection.UserField;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.jackson.Jackson2ObjectMapperBuilderCustomizer;
 import org.springframework.context.annotation.Bean;
+import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
 @SpringBootApplication
+@EnableScheduling
 public class UserServiceApplication {
 
 	public static void main(String[] args) {
 		SpringApplication.run(UserServiceApplication.class, args);
 	}
 
-	@Bean
-	public PasswordEncoder getPasswordEncoder() {
-		return new PasswordEncoder(BCrypt.Version.VERSION_2A);
-	}
-
 	@Bean
 	public WebMvcConfigurer corsConfigurer() {
 		return new WebMvcConfigurer() {
@@ -31,4 +29,10 @@ public class UserServiceApplication {
 		};
 	}
 
+	// Users are written whole unless a controller picks their fields, see UserFieldsFilter.
+	@Bean
+	public Jackson2ObjectMapperBuilderCustomizer userFieldsFilter() {
+		return builder -> builder.filters(UserFieldsFilter.of(UserField.ALL));
+	}
+
 }
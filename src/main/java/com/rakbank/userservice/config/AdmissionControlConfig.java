@@ -0,0 +1,70 @@
+package com.rakbank.userservice.config;
+
+import com.rakbank.userservice.controller.admission.AdmissionBudget;
+import com.rakbank.userservice.controller.admission.AdmissionClass;
+import com.rakbank.userservice.controller.admission.AdmissionControlInterceptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Admission control in front of the controllers. See AdmissionClass for the budgets.
+ * Turned off with userservice.admission.enabled=false.
+ */
+@Configuration
+@Profile("!reactive")
+@ConditionalOnProperty(name = "userservice.admission.enabled", havingValue = "true", matchIfMissing = true)
+public class AdmissionControlConfig implements WebMvcConfigurer {
+
+    @Autowired
+    AdmissionControlInterceptor admissionControlInterceptor;
+
+    // Static so the interceptor does not depend on this configurer, which it is injected into.
+    @Bean
+    public static AdmissionControlInterceptor admissionControlInterceptor(
+            @Value("${userservice.admission.client-header:X-Client-Id}") String clientHeader,
+            @Value("${userservice.admission.trusted-proxies:}") List<String> trustedProxies,
+            @Value("${userservice.admission.overloaded-retry-after:1}") long overloadedRetryAfterSeconds,
+            @Value("${userservice.admission.hashing.rate-per-second:20}") double hashingRate,
+            @Value("${userservice.admission.hashing.burst:50}") double hashingBurst,
+            @Value("${userservice.admission.hashing.max-concurrent:16}") int hashingMaxConcurrent,
+            @Value("${userservice.admission.verify.rate-per-second:100}") double verifyRate,
+            @Value("${userservice.admission.verify.burst:200}") double verifyBurst,
+            @Value("${userservice.admission.verify.max-concurrent:32}") int verifyMaxConcurrent,
+            @Value("${userservice.admission.read.rate-per-second:500}") double readRate,
+            @Value("${userservice.admission.read.burst:1000}") double readBurst,
+            @Value("${userservice.admission.read.max-concurrent:150}") int readMaxConcurrent,
+            @Value("${userservice.admission.write.rate-per-second:50}") double writeRate,
+            @Value("${userservice.admission.write.burst:100}") double writeBurst,
+            @Value("${userservice.admission.write.max-concurrent:16}") int writeMaxConcurrent) {
+        Map<AdmissionClass, AdmissionBudget> budgets = new EnumMap<>(AdmissionClass.class);
+        budgets.put(AdmissionClass.HASHING,
+                new AdmissionBudget(hashingRate, hashingBurst, hashingMaxConcurrent, overloadedRetryAfterSeconds));
+        budgets.put(AdmissionClass.VERIFY,
+                new AdmissionBudget(verifyRate, verifyBurst, verifyMaxConcurrent, overloadedRetryAfterSeconds));
+        budgets.put(AdmissionClass.READ,
+                new AdmissionBudget(readRate, readBurst, readMaxConcurrent, overloadedRetryAfterSeconds));
+        budgets.put(AdmissionClass.WRITE,
+                new AdmissionBudget(writeRate, writeBurst, writeMaxConcurrent, overloadedRetryAfterSeconds));
+        return new AdmissionControlInterceptor(budgets, clientHeader, trustedProxies.stream()
+                .map(String::trim)
+                .filter(address -> !address.isEmpty())
+                .collect(Collectors.toSet()));
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(admissionControlInterceptor);
+    }
+
+}
@@ -0,0 +1,103 @@
+package com.rakbank.userservice.config;
+
+import com.rakbank.userservice.service.PasswordEncoder;
+import com.rakbank.userservice.service.hashing.BcryptPasswordHashAlgorithm;
+import com.rakbank.userservice.service.hashing.PasswordHashAlgorithm;
+import com.rakbank.userservice.service.hashing.PasswordHashCalibrator;
+import com.rakbank.userservice.service.hashing.Pbkdf2PasswordHashAlgorithm;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+
+@Configuration
+public class PasswordHashingConfig {
+
+    /**
+     * New passwords are hashed with userservice.hashing.algorithm. Hashes of every supported algorithm
+     * are still verified, so the algorithm can change without invalidating stored passwords.
+     * With calibration on, the configured work factor is raised at startup as far as the target hash time allows.
+     */
+    @Bean
+    public PasswordEncoder getPasswordEncoder(@Value("${userservice.hashing.algorithm:bcrypt}") String algorithmName,
+                                              @Value("${userservice.hashing.cost:5}") int cost,
+                                              @Value("${userservice.hashing.bcrypt.version:2a}") String bcryptVersion,
+                                              @Value("${userservice.hashing.pbkdf2.iterations:310000}") int iterations,
+                                              @Value("${userservice.hashing.calibration.enabled:false}") boolean calibrate,
+                                              @Value("${userservice.hashing.calibration.target:PT0.1S}") Duration target,
+                                              @Qualifier("passwordHashingExecutor") Executor passwordHashingExecutor,
+                                              @Qualifier("bulkPasswordHashingExecutor") Executor bulkPasswordHashingExecutor,
+                                              @Value("${userservice.hashing.bulk-pool-size:4}") int bulkParallelism,
+                                              @Qualifier("passwordVerifyExecutor") Executor passwordVerifyExecutor,
+                                              MeterRegistry meterRegistry) {
+        List<PasswordHashAlgorithm> algorithms = List.of(
+                new BcryptPasswordHashAlgorithm(BcryptPasswordHashAlgorithm.version(bcryptVersion), cost),
+                new Pbkdf2PasswordHashAlgorithm(iterations));
+        PasswordHashAlgorithm algorithm = algorithms.stream()
+                .filter(candidate -> candidate.getName().equalsIgnoreCase(algorithmName))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Unsupported password hashing algorithm: " + algorithmName));
+        if(calibrate) {
+            algorithm = new PasswordHashCalibrator(target).calibrate(algorithm).algorithm();
+        }
+        return new PasswordEncoder(algorithm, algorithms, passwordHashingExecutor, bulkPasswordHashingExecutor,
+                bulkParallelism, passwordVerifyExecutor, meterRegistry);
+    }
+
+    /**
+     * Dedicated pool for bcrypt, so a burst of signups can't take over the Tomcat worker threads.
+     * Work beyond the queue capacity is rejected instead of queued without bound.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor passwordHashingExecutor(@Value("${userservice.hashing.pool-size:4}") int poolSize,
+                                                          @Value("${userservice.hashing.queue-capacity:200}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix("password-hashing-");
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        return executor;
+    }
+
+    /**
+     * Pool for batch creation. Each batch only queues as many hashes as the pool has threads (see
+     * PasswordEncoder.encodeAll), so concurrent batches share it. A batch that can't queue any is
+     * rejected with HTTP 503; nothing is hashed on the request thread.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor bulkPasswordHashingExecutor(@Value("${userservice.hashing.bulk-pool-size:4}") int poolSize,
+                                                              @Value("${userservice.hashing.bulk-queue-capacity:100}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix("bulk-password-hashing-");
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        return executor;
+    }
+
+    /**
+     * Pool for password checks (POST /users/{id}/verify), apart from the signup pool so logins and
+     * signups can't starve each other. Checks beyond the queue capacity are rejected with HTTP 503.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor passwordVerifyExecutor(@Value("${userservice.hashing.verify-pool-size:4}") int poolSize,
+                                                         @Value("${userservice.hashing.verify-queue-capacity:100}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix("password-verify-");
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        return executor;
+    }
+
+}
@@ -0,0 +1,29 @@
+package com.rakbank.userservice.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+@Configuration
+public class PasswordRehashConfig {
+
+    /**
+     * Runs the password rehash scan: one thread reads chunks, the others flag them.
+     * The scan never has more chunks in flight than it has workers. The queue only covers a worker that
+     * has handed back its chunk but not yet its thread.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor passwordRehashExecutor(@Value("${userservice.rehash.max-workers:2}") int maxWorkers) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix("password-rehash-");
+        executor.setCorePoolSize(maxWorkers + 1);
+        executor.setMaxPoolSize(maxWorkers + 1);
+        executor.setQueueCapacity(maxWorkers);
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        return executor;
+    }
+
+}
@@ -0,0 +1,99 @@
+package com.rakbank.userservice.config;
+
+import com.rakbank.userservice.dao.routing.ReadReplicaDataSource;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Sends read-only transactions to read replicas and everything else to the primary.
+ * Only active when 'userservice.datasource.replica-urls' is set; otherwise Spring Boot sets up the
+ * single spring.datasource pool as before. Replicas share the driver, username and password of the primary.
+ */
+@Configuration
+@ConditionalOnProperty(name = "userservice.datasource.replica-urls")
+public class ReadReplicaConfig {
+
+    /**
+     * Pool for the primary, configured from spring.datasource.* like the one Spring Boot would create.
+     */
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties dataSourceProperties) {
+        HikariDataSource dataSource = dataSourceProperties.initializeDataSourceBuilder()
+                .type(HikariDataSource.class)
+                .build();
+        dataSource.setPoolName("primary");
+        return dataSource;
+    }
+
+    @Bean
+    public ReadReplicaDataSource readReplicaDataSource(HikariDataSource primaryDataSource,
+                                                       DataSourceProperties dataSourceProperties,
+                                                       MeterRegistry meterRegistry,
+                                                       @Value("${userservice.datasource.replica-urls}") List<String> replicaUrls,
+                                                       @Value("${userservice.datasource.replica-pool-size:10}") int poolSize,
+                                                       @Value("${userservice.datasource.replica-validation-timeout:2}") int validationTimeoutSeconds) {
+        List<DataSource> replicas = new ArrayList<>();
+        for(int i = 0; i < replicaUrls.size(); i++) {
+            HikariDataSource replica = DataSourceBuilder.create()
+                    .type(HikariDataSource.class)
+                    .driverClassName(dataSourceProperties.determineDriverClassName())
+                    .url(replicaUrls.get(i).trim())
+                    .username(dataSourceProperties.determineUsername())
+                    .password(dataSourceProperties.determinePassword())
+                    .build();
+            replica.setPoolName("replica-" + i);
+            replica.setMaximumPoolSize(poolSize);
+            replica.setReadOnly(true);
+            // Replica pools aren't beans, so they are not picked up by the Hikari metrics Spring Boot binds.
+            replica.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(meterRegistry));
+            replicas.add(replica);
+        }
+        return new ReadReplicaDataSource(primaryDataSource, replicas, validationTimeoutSeconds);
+    }
+
+    /**
+     * The DataSource used by JPA, Liquibase and the transaction manager. The physical connection is
+     * only fetched at the first statement, once the transaction is known to be read-only or not.
+     */
+    @Bean
+    @Primary
+    public DataSource dataSource(HikariDataSource primaryDataSource, ReadReplicaDataSource readReplicaDataSource) {
+        LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy(primaryDataSource);
+        dataSource.setReadOnlyDataSource(readReplicaDataSource);
+        return dataSource;
+    }
+
+    /**
+     * Shows each replica in /actuator/health. Reads fall back to the primary when no replica is
+     * healthy, so a replica outage does not take the service down.
+     */
+    @Bean
+    public HealthIndicator replicasHealthIndicator(ReadReplicaDataSource readReplicaDataSource) {
+        return () -> {
+            List<Boolean> replicaHealth = readReplicaDataSource.getReplicaHealth();
+            Health.Builder health = Health.up();
+            for(int i = 0; i < replicaHealth.size(); i++) {
+                health.withDetail("replica-" + i, replicaHealth.get(i) ? "UP" : "DOWN");
+            }
+            return health.build();
+        };
+    }
+
+}
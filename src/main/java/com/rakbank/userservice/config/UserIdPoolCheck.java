@@ -0,0 +1,59 @@
+package com.rakbank.userservice.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Checks at startup that the primary pool can serve the user id generator.
+ * Hibernate reserves each new block of ids (see UserEntity) in a separate transaction, on a second
+ * connection taken while the inserting transaction still holds its own. If every connection is held by an
+ * insert, the one that needs the next block waits for connection-timeout and fails, and the inserts queued
+ * behind it stall. Inserts run in create and batch requests, bounded by the hashing admission class, and in
+ * import jobs, so the pool needs one connection more than both together.
+ * With open-in-view on, a create or batch request also keeps the connection of its first query until the
+ * response is written, while its insert runs on a hashing thread with another one, so each counts twice.
+ */
+@Component
+public class UserIdPoolCheck {
+
+    // The primary pool. Absent when the DataSource isn't Hikari, and then there is nothing to check.
+    @Autowired
+    ObjectProvider<HikariDataSource> primaryDataSource;
+
+    // Without admission control, concurrent creates are not bounded and no pool size is enough.
+    @Value("${userservice.admission.enabled:true}")
+    boolean admissionEnabled;
+
+    @Value("${userservice.admission.hashing.max-concurrent:16}")
+    int maxConcurrentCreates;
+
+    @Value("${userservice.import.max-concurrent-jobs:2}")
+    int maxConcurrentImports;
+
+    @Value("${spring.jpa.open-in-view:true}")
+    boolean openInView;
+
+    /**
+     * Method to refuse to start with a primary pool that the id generator could find exhausted.
+     */
+    @PostConstruct
+    public void checkPoolSize() {
+        HikariDataSource dataSource = primaryDataSource.getIfUnique();
+        if(dataSource == null || !admissionEnabled) {
+            return;
+        }
+        int connectionsPerCreate = openInView ? 2 : 1;
+        int required = maxConcurrentCreates * connectionsPerCreate + maxConcurrentImports + 1;
+        if(dataSource.getMaximumPoolSize() < required) {
+            throw new IllegalArgumentException(String.format(
+                    "spring.datasource.hikari.maximum-pool-size must be at least %d x userservice.admission.hashing.max-concurrent"
+                            + " + userservice.import.max-concurrent-jobs + 1 (%d), was %d",
+                    connectionsPerCreate, required, dataSource.getMaximumPoolSize()));
+        }
+    }
+
+}
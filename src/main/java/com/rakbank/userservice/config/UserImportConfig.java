@@ -0,0 +1,28 @@
+package com.rakbank.userservice.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+@Configuration
+public class UserImportConfig {
+
+    /**
+     * Runs import jobs. Each job hashes on the bulk hashing pool, so a few job threads are enough.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor userImportExecutor(@Value("${userservice.import.max-concurrent-jobs:2}") int maxConcurrentJobs,
+                                                     @Value("${userservice.import.queue-capacity:10}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix("user-import-");
+        executor.setCorePoolSize(maxConcurrentJobs);
+        executor.setMaxPoolSize(maxConcurrentJobs);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        return executor;
+    }
+
+}
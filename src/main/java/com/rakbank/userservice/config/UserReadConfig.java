@@ -0,0 +1,27 @@
+package com.rakbank.userservice.config;
+
+import com.rakbank.userservice.service.SingleFlight;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class UserReadConfig {
+
+    /**
+     * Shares one query between concurrent reads of the same user id.
+     */
+    @Bean
+    public SingleFlight userByIdLoads(MeterRegistry meterRegistry) {
+        return new SingleFlight("id", meterRegistry);
+    }
+
+    /**
+     * Shares one query between concurrent searches for the same email.
+     */
+    @Bean
+    public SingleFlight userByEmailLoads(MeterRegistry meterRegistry) {
+        return new SingleFlight("email", meterRegistry);
+    }
+
+}
@@ -0,0 +1,28 @@
+package com.rakbank.userservice.config;
+
+import com.rakbank.userservice.service.PinnedThreadMonitor;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * Active when requests run on virtual threads: spring.threads.virtual.enabled=true on Java 21 or later.
+ */
+@Configuration
+@ConditionalOnThreading(Threading.VIRTUAL)
+public class VirtualThreadConfig {
+
+    @Bean(destroyMethod = "close")
+    public PinnedThreadMonitor pinnedThreadMonitor(MeterRegistry meterRegistry,
+                                                   @Value("${userservice.virtual.pinned-threshold:PT0.02S}") Duration threshold) {
+        PinnedThreadMonitor pinnedThreadMonitor = new PinnedThreadMonitor(meterRegistry, threshold);
+        pinnedThreadMonitor.start();
+        return pinnedThreadMonitor;
+    }
+
+}
@@ -1,14 +1,19 @@
 package com.rakbank.userservice.controller;
 
 import com.rakbank.userservice.controller.dto.response.ErrorResponse;
+import com.rakbank.userservice.error.AdmissionRejectedException;
 import com.rakbank.userservice.error.DomainException;
+import com.rakbank.userservice.error.ErrorMessageResolver;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.context.MessageSource;
-import org.springframework.context.i18n.LocaleContextHolder;
+import org.springframework.context.annotation.Profile;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.HttpStatusCode;
 import org.springframework.http.ResponseEntity;
+import org.springframework.validation.FieldError;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
@@ -16,15 +21,40 @@ import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.servlet.mvc.method.annotation.ResponseEntityExceptionHandler;
 
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
 
 @ControllerAdvice
+@Profile("!reactive")
 public class ControllerAdvisor extends ResponseEntityExceptionHandler {
 
     @Autowired
-    MessageSource messageSource;
+    ErrorMessageResolver errorMessageResolver;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    // One immutable payload per message resolved at startup, shared by every response that carries it.
+    private Map<String, ErrorResponse> errorResponses = Map.of();
+
+    // Registered once per key and status instead of looked up through the registry on every error.
+    private final Map<HttpStatus, Map<String, Counter>> errorCounters = new ConcurrentHashMap<>();
+
+    /**
+     * Method to build the error payloads of the messages the resolver has already resolved.
+     */
+    @PostConstruct
+    public void buildErrorResponses() {
+        Map<String, ErrorResponse> responses = new HashMap<>();
+        errorMessageResolver.getResolvedMessages().values().forEach(messages -> messages.values()
+                .forEach(message -> responses.computeIfAbsent(message,
+                        errorMessage -> ErrorResponse.builder().errorMessage(errorMessage).build())));
+        errorResponses = Map.copyOf(responses);
+    }
 
     @ResponseBody
     @ExceptionHandler(Exception.class)
@@ -47,48 +77,83 @@ public class ControllerAdvisor extends ResponseEntityExceptionHandler {
     @ResponseBody
     @ExceptionHandler(DomainException.class)
     public final ResponseEntity<ErrorResponse> handleDomainError(DomainException ex, WebRequest request) {
+        countError(ex.getMessage(), ex.getHttpStatus());
         return new ResponseEntity<ErrorResponse>(getErrorResponse(ex), ex.getHttpStatus());
     }
 
+    /**
+     * Admission control rejections also tell the client when to retry.
+     */
+    @ResponseBody
+    @ExceptionHandler(AdmissionRejectedException.class)
+    public final ResponseEntity<ErrorResponse> handleAdmissionRejected(AdmissionRejectedException ex, WebRequest request) {
+        countError(ex.getMessage(), ex.getHttpStatus());
+        return ResponseEntity.status(ex.getHttpStatus())
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()))
+                .body(getErrorResponse(ex));
+    }
+
     @ResponseBody
     @Override
     protected ResponseEntity<Object> handleMethodArgumentNotValid(MethodArgumentNotValidException ex,
                                                                   HttpHeaders headers, HttpStatusCode status, WebRequest request) {
-        Set<String> errors = ex.getBindingResult()
-            .getFieldErrors()
-            .stream()
-            .map(x -> buildExceptionMessage(x.getDefaultMessage(),null))
-            .collect(Collectors.toSet());
-
-        ErrorResponse errorResponse = ErrorResponse.builder()
-            .errorMessage(String.join(",", errors)).build();
-        return new ResponseEntity<Object>(errorResponse, HttpStatus.BAD_REQUEST);
+        List<FieldError> fieldErrors = ex.getBindingResult().getFieldErrors();
+        // Usually a single field is invalid, and its payload is already built.
+        if(fieldErrors.size() == 1) {
+            String key = fieldErrors.get(0).getDefaultMessage();
+            countError(key, HttpStatus.BAD_REQUEST);
+            return new ResponseEntity<Object>(errorResponse(buildExceptionMessage(key, null)), HttpStatus.BAD_REQUEST);
+        }
+        Set<String> errors = new LinkedHashSet<>();
+        for(FieldError fieldError : fieldErrors) {
+            countError(fieldError.getDefaultMessage(), HttpStatus.BAD_REQUEST);
+            errors.add(buildExceptionMessage(fieldError.getDefaultMessage(), null));
+        }
+        return new ResponseEntity<Object>(errorResponse(String.join(",", errors)), HttpStatus.BAD_REQUEST);
     }
 
     private ErrorResponse getErrorResponse(DomainException ex) {
         String errorMessage = null;
-        if(ex.getMessage() == null || ex.getMessage().trim().length() == 0) {
+        if(ex.getMessage() == null || ex.getMessage().isBlank()) {
             errorMessage =  "";
         } else {
             errorMessage = buildExceptionMessage(ex.getMessage(), ex.getParams());
         }
-        return ErrorResponse.builder()
-                .errorMessage(errorMessage)
-                .build();
+        return errorResponse(errorMessage);
     }
 
-    private String buildExceptionMessage(String key, List<String> params) {
-        String message = null;
-        try{
-            message = messageSource.getMessage(key,
-                null != params ? params.toArray():null, LocaleContextHolder.getLocale());
-        }catch(Exception exc){
-            // in worst case if there is no key found in resource file, the message will be same as key
-            message = key;
+    private ErrorResponse errorResponse(String errorMessage) {
+        ErrorResponse errorResponse = errorResponses.get(errorMessage);
+        if(null == errorResponse) {
+            errorResponse = ErrorResponse.builder()
+                    .errorMessage(errorMessage)
+                    .build();
         }
-        return message;
+        return errorResponse;
     }
 
+    private String buildExceptionMessage(String key, List<String> params) {
+        return errorMessageResolver.resolve(key, params);
+    }
 
+    /**
+     * Method to count an error response by its message key. Keys come from a fixed set in
+     * messages.properties, so the tag stays low cardinality.
+     * @param key
+     * @param httpStatus
+     */
+    private void countError(String key, HttpStatus httpStatus) {
+        String counterKey = null != key ? key : "";
+        Map<String, Counter> counters = errorCounters.computeIfAbsent(httpStatus, status -> new ConcurrentHashMap<>());
+        Counter counter = counters.get(counterKey);
+        if(null == counter) {
+            counter = counters.computeIfAbsent(counterKey, errorKey -> Counter.builder("userservice.errors")
+                    .description("Error responses by message key")
+                    .tag("key", errorKey)
+                    .tag("status", String.valueOf(httpStatus.value()))
+                    .register(meterRegistry));
+        }
+        counter.increment();
+    }
 
 }
@@ -0,0 +1,55 @@
+package com.rakbank.userservice.controller;
+
+import com.rakbank.userservice.controller.dto.response.PasswordRehashJobResponseDto;
+import com.rakbank.userservice.error.ErrorMessageResolver;
+import com.rakbank.userservice.service.PasswordRehashService;
+import com.rakbank.userservice.service.model.PasswordRehashJob;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.*;
+
+@RestController
+@Profile("!reactive")
+@RequestMapping(path = "/users/password-rehash")
+public class PasswordRehashController {
+
+    @Autowired
+    PasswordRehashService passwordRehashService;
+
+    @Autowired
+    ErrorMessageResolver errorMessageResolver;
+
+    /**
+     * Progress of the scan for outdated password hashes.
+     */
+    @GetMapping
+    public PasswordRehashJobResponseDto getPasswordRehashJob() {
+        return mapPasswordRehashJobToResponseDto(passwordRehashService.getJob());
+    }
+
+    /**
+     * Resumes a stopped or failed scan from its checkpoint, or scans again when the last one completed.
+     */
+    @PostMapping
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    public PasswordRehashJobResponseDto startPasswordRehashJob() {
+        return mapPasswordRehashJobToResponseDto(passwordRehashService.start());
+    }
+
+    private PasswordRehashJobResponseDto mapPasswordRehashJobToResponseDto(PasswordRehashJob job) {
+        return PasswordRehashJobResponseDto.builder()
+                .policy(job.getPolicy())
+                .status(job.getStatus().name())
+                .startedAt(job.getStartedAt())
+                .finishedAt(job.getFinishedAt())
+                .workers(job.getWorkers())
+                .scannedCount(job.getScannedCount())
+                .flaggedCount(job.getFlaggedCount())
+                .checkpoint(job.getCheckpoint())
+                .failureReason(job.getFailureReason() == null ? null
+                        : errorMessageResolver.resolve(job.getFailureReason(), null))
+                .build();
+    }
+
+}
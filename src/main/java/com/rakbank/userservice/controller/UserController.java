@@ -1,58 +1,282 @@
 package com.rakbank.userservice.controller;
 
+import com.rakbank.userservice.controller.admission.AdmissionClass;
+import com.rakbank.userservice.controller.admission.Admitted;
 import com.rakbank.userservice.controller.dto.request.ChangePasswordRequestDto;
 import com.rakbank.userservice.controller.dto.request.CreateUserRequestDto;
+import com.rakbank.userservice.controller.dto.request.LookupUsersRequestDto;
 import com.rakbank.userservice.controller.dto.request.ModifyUserRequestDto;
+import com.rakbank.userservice.controller.dto.request.VerifyPasswordRequestDto;
+import com.rakbank.userservice.controller.dto.response.CreateUserBatchResultDto;
 import com.rakbank.userservice.controller.dto.response.CreateUserResponseDto;
+import com.rakbank.userservice.controller.dto.response.CreateUsersBatchResponseDto;
 import com.rakbank.userservice.controller.dto.response.UserDetailsResponseDto;
+import com.rakbank.userservice.controller.dto.response.UsersLookupResponseDto;
+import com.rakbank.userservice.controller.dto.response.VerifyPasswordResponseDto;
+import com.rakbank.userservice.controller.export.UserExportWriter;
+import com.rakbank.userservice.dao.projection.UserField;
+import com.rakbank.userservice.error.ErrorMessageResolver;
 import com.rakbank.userservice.service.api.UserService;
 import com.rakbank.userservice.service.model.PaginatedResponse;
 import com.rakbank.userservice.service.model.User;
+import com.rakbank.userservice.service.model.UserCreationResult;
+import com.rakbank.userservice.service.model.UserFileFormat;
+import com.rakbank.userservice.service.model.UserLookupResult;
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.i18n.LocaleContextHolder;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
 
 @RestController
+@Profile("!reactive")
 @RequestMapping(path = "/users")
 public class UserController {
 
     @Autowired
     UserService userService;
 
+    @Autowired
+    ErrorMessageResolver errorMessageResolver;
+
+    /**
+     * Completes asynchronously, so the request thread is released while the password is hashed.
+     */
+    @Admitted(AdmissionClass.HASHING)
     @PostMapping
-    public CreateUserResponseDto createUser(@Validated @RequestBody CreateUserRequestDto createUserRequestDto) {
+    public CompletableFuture<CreateUserResponseDto> createUser(@Validated @RequestBody CreateUserRequestDto createUserRequestDto) {
 
-        User user = userService.create(createUserRequestDto);
-        return CreateUserResponseDto.builder()
-                .id(user.getId())
-                .build();
+        return userService.create(createUserRequestDto)
+                .thenApply(user -> CreateUserResponseDto.builder()
+                        .id(user.getId())
+                        .build());
     }
 
+    /**
+     * Creates up to userservice.batch.max-size users in one call and reports the outcome of each record.
+     * Records are validated one by one, so an invalid record is reported instead of failing the request.
+     */
+    @Admitted(AdmissionClass.HASHING)
+    @PostMapping(path = "/batch")
+    public CompletableFuture<CreateUsersBatchResponseDto> createUsers(@RequestBody List<CreateUserRequestDto> createUserRequestDtos) {
+
+        // Results are mapped on a hashing thread, so keep the request locale for the error messages.
+        Locale locale = LocaleContextHolder.getLocale();
+        return userService.createAll(createUserRequestDtos)
+                .thenApply(results -> mapUserCreationResults(results, locale));
+    }
+
+    /**
+     * Answers If-None-Match with 304. The version comes from the user cache when the user is cached,
+     * so an unchanged user is revalidated without reading the row.
+     */
+    @Admitted(AdmissionClass.READ)
     @GetMapping(path = "/{id}")
-    public UserDetailsResponseDto getUserDetailsById(@PathVariable Long id) {
+    public UserDetailsResponseDto getUserDetailsById(@PathVariable Long id,
+                                                     @RequestParam(required = false) String fields,
+                                                     WebRequest webRequest) {
 
-        User user = userService.findById(id);
-        return mapUserToUserDetailsResponseDto(user);
+        Set<UserField> userFields = UserField.parse(fields);
+        User user = userService.findById(id, userFields);
+        if(null != user.getVersion() && webRequest.checkNotModified(UserETags.of(user.getVersion(), userFields))) {
+            return null;
+        }
+        UserFieldsResponseBodyAdvice.fields(webRequest, userFields);
+        return mapUserToUserDetailsResponseDto(user, userFields);
 
     }
 
+    /**
+     * Gets many users in one call, e.g. /users?ids=1,2,3. Users come back in the order of the ids,
+     * and ids with no user are listed in missingIds.
+     */
+    @Admitted(AdmissionClass.READ)
+    @GetMapping(params = "ids")
+    public UsersLookupResponseDto getUsersByIds(@RequestParam List<Long> ids) {
+
+        return mapUserLookupResult(userService.findByIds(ids));
+    }
+
+    /**
+     * Same as GET /users?ids=, for more ids than fit in a URL.
+     */
+    @Admitted(AdmissionClass.READ)
+    @PostMapping(path = "/lookup")
+    public UsersLookupResponseDto lookupUsers(@RequestBody LookupUsersRequestDto lookupUsersRequestDto) {
+
+        return mapUserLookupResult(userService.findByIds(lookupUsersRequestDto.getIds()));
+    }
+
+    @Admitted(AdmissionClass.READ)
     @GetMapping
-    public PaginatedResponse<UserDetailsResponseDto> getUsers(@RequestParam(required = false) Integer page) {
+    public PaginatedResponse<UserDetailsResponseDto> getUsers(@RequestParam(required = false) Integer page,
+                                                              @RequestParam(required = false) String after,
+                                                              @RequestParam(defaultValue = "true") boolean withCount,
+                                                              @RequestParam(required = false) String fields,
+                                                              WebRequest webRequest) {
+
+        Set<UserField> userFields = UserField.parse(fields);
+        PaginatedResponse<User> userPage;
+        if(after != null) {
+            // Cursor mode. An empty "after" starts from the first record.
+            userPage = userService.findAllAfter(after, userFields);
+        } else {
+            // If the "page" param is missing, API will default it as 1.
+            Integer pageNumber = Optional.ofNullable(page)
+                    .orElse(1);
+            userPage = userService.findAll(pageNumber, withCount, userFields);
+        }
 
-        // If the "page" param is missing, API will default it as 1.
-        Integer pageNumber = Optional.ofNullable(page)
-                .orElse(1);
+        if(webRequest.checkNotModified(UserETags.of(userPage, userFields))) {
+            return null;
+        }
 
-        PaginatedResponse<User> userPage = userService.findAll(pageNumber);
+        UserFieldsResponseBodyAdvice.fields(webRequest, userFields);
+        return mapUserPage(userPage, userFields);
+    }
+
+    /**
+     * Searches users by exactly one of: email (exact), emailPrefix (both case-insensitive) or namePrefix.
+     * Send the 'nextCursor' of a response as 'after' to get the next page.
+     */
+    @Admitted(AdmissionClass.READ)
+    @GetMapping(path = "/search")
+    public PaginatedResponse<UserDetailsResponseDto> searchUsers(@RequestParam(required = false) String email,
+                                                                 @RequestParam(required = false) String emailPrefix,
+                                                                 @RequestParam(required = false) String namePrefix,
+                                                                 @RequestParam(required = false) String after) {
+
+        return mapUserPage(userService.search(email, emailPrefix, namePrefix, after), UserField.ALL);
+    }
+
+    /**
+     * Streams every user as NDJSON (default) or CSV. Rows are written as they are read from the
+     * database cursor, so memory stays flat whatever the size of the table.
+     */
+    @Admitted(AdmissionClass.READ)
+    @GetMapping(path = "/export")
+    public void exportUsers(@RequestParam(defaultValue = "ndjson") String format,
+                            HttpServletResponse response) throws IOException {
+
+        UserFileFormat fileFormat = UserFileFormat.from(format);
+        response.setContentType(fileFormat.getContentType());
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION,
+                "attachment; filename=users." + fileFormat.getFileExtension());
+
+        try(UserExportWriter writer = UserExportWriter.of(fileFormat, response.getOutputStream())) {
+            userService.exportAll(user -> {
+                try {
+                    writer.write(user);
+                } catch(IOException ioException) {
+                    throw new UncheckedIOException(ioException);
+                }
+            });
+        }
+    }
+
+    /**
+     * With If-Match the password is only changed if the user is still at that version, else HTTP 412.
+     */
+    @Admitted(AdmissionClass.HASHING)
+    @PatchMapping(path="/{id}")
+    public CompletableFuture<Void> changePassword(@PathVariable Long id,
+                                                  @RequestHeader(name = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+                                                  @Validated @RequestBody ChangePasswordRequestDto changePasswordRequestDto) {
+
+        return userService.changePassword(id, changePasswordRequestDto.getPassword(), UserETags.parseVersion(ifMatch));
+    }
 
+    /**
+     * Checks a password against the stored hash, on the password verification pool. A wrong password
+     * is answered with verified false, not an error. Concurrent checks of one user run one at a time,
+     * and HTTP 503 is only returned when the verification pool is full.
+     */
+    @Admitted(AdmissionClass.VERIFY)
+    @PostMapping(path = "/{id}/verify")
+    public CompletableFuture<VerifyPasswordResponseDto> verifyPassword(@PathVariable Long id,
+                                                                       @Validated @RequestBody VerifyPasswordRequestDto verifyPasswordRequestDto) {
+
+        return userService.verifyPassword(id, verifyPasswordRequestDto.getPassword())
+                .thenApply(verified -> VerifyPasswordResponseDto.builder()
+                        .verified(verified)
+                        .build());
+    }
+
+    /**
+     * With If-Match the user is only updated if it is still at that version, else HTTP 412.
+     * The response then carries the ETag of the new version.
+     */
+    @Admitted(AdmissionClass.WRITE)
+    @PutMapping(path="/{id}")
+    public ResponseEntity<UserDetailsResponseDto> modifyUser(@PathVariable Long id,
+                                                             @RequestHeader(name = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+                                                             @Validated @RequestBody ModifyUserRequestDto modifyUserRequestDto) {
+
+        User user = userService.updateUser(id, modifyUserRequestDto, UserETags.parseVersion(ifMatch));
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if(null != user.getVersion()) {
+            response.eTag(UserETags.of(user.getVersion()));
+        }
+        return response.body(mapUserToUserDetailsResponseDto(user));
+    }
+
+    /**
+     * With If-Match the user is only deleted if it is still at that version, else HTTP 412.
+     */
+    @Admitted(AdmissionClass.WRITE)
+    @DeleteMapping(path="/{id}")
+    public void deleteUser(@PathVariable Long id,
+                           @RequestHeader(name = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        userService.deleteUser(id, UserETags.parseVersion(ifMatch));
+    }
+
+
+    private CreateUsersBatchResponseDto mapUserCreationResults(List<UserCreationResult> results, Locale locale) {
+        List<CreateUserBatchResultDto> resultDtos = new ArrayList<>(results.size());
+        int createdCount = 0;
+        for(UserCreationResult result : results) {
+            CreateUserBatchResultDto.CreateUserBatchResultDtoBuilder resultDto = CreateUserBatchResultDto.builder()
+                    .index(result.getIndex())
+                    .created(result.isCreated());
+            if(result.isCreated()) {
+                createdCount++;
+                resultDto.id(result.getUser().getId());
+            } else {
+                resultDto.errorMessage(result.getErrors().stream()
+                        .map(key -> errorMessageResolver.resolve(key, null, locale))
+                        .collect(Collectors.joining(",")));
+            }
+            resultDtos.add(resultDto.build());
+        }
+        return CreateUsersBatchResponseDto.builder()
+                .createdCount(createdCount)
+                .failedCount(results.size() - createdCount)
+                .results(resultDtos)
+                .build();
+    }
+
+    private PaginatedResponse<UserDetailsResponseDto> mapUserPage(PaginatedResponse<User> userPage,
+                                                                  Set<UserField> fields) {
         List<UserDetailsResponseDto> userDetailsResponseDtoList = new ArrayList<>();
         userPage.getRecords()
                 .stream()
-                .forEach(user -> userDetailsResponseDtoList.add(mapUserToUserDetailsResponseDto(user)));
+                .forEach(user -> userDetailsResponseDtoList.add(mapUserToUserDetailsResponseDto(user, fields)));
 
         PaginatedResponse<UserDetailsResponseDto> paginatedResponse = new PaginatedResponse<>();
         paginatedResponse.setRecords(userDetailsResponseDtoList);
@@ -60,37 +284,31 @@ public class UserController {
         paginatedResponse.setPageNumber(userPage.getPageNumber());
         paginatedResponse.setTotalRecords(userPage.getTotalRecords());
         paginatedResponse.setTotalPages(userPage.getTotalPages());
-
+        paginatedResponse.setNextCursor(userPage.getNextCursor());
         return paginatedResponse;
     }
 
-    @PatchMapping(path="/{id}")
-    public void changePassword(@PathVariable Long id,
-                               @Validated @RequestBody ChangePasswordRequestDto changePasswordRequestDto) {
-
-        userService.changePassword(id, changePasswordRequestDto.getPassword());
-    }
-
-    @PutMapping(path="/{id}")
-    public UserDetailsResponseDto modifyUser(@PathVariable Long id,
-                               @Validated @RequestBody ModifyUserRequestDto modifyUserRequestDto) {
-
-        User user = userService.updateUser(id, modifyUserRequestDto);
-        return mapUserToUserDetailsResponseDto(user);
+    private UsersLookupResponseDto mapUserLookupResult(UserLookupResult userLookupResult) {
+        return UsersLookupResponseDto.builder()
+                .records(userLookupResult.getUsers().stream()
+                        .map(this::mapUserToUserDetailsResponseDto)
+                        .collect(Collectors.toList()))
+                .missingIds(userLookupResult.getMissingIds())
+                .build();
     }
 
-    @DeleteMapping(path="/{id}")
-    public void deleteUser(@PathVariable Long id) {
-        userService.deleteUser(id);
+    // Package-private so the benchmarks under src/jmh can measure it.
+    UserDetailsResponseDto mapUserToUserDetailsResponseDto(User user) {
+        return mapUserToUserDetailsResponseDto(user, UserField.ALL);
     }
 
-
-    private UserDetailsResponseDto  mapUserToUserDetailsResponseDto(User user) {
+    // Fields that were not asked for stay null, and UserFieldsResponseBodyAdvice leaves them out of the JSON.
+    UserDetailsResponseDto mapUserToUserDetailsResponseDto(User user, Set<UserField> fields) {
         return UserDetailsResponseDto.builder()
-                .id(user.getId())
-                .name(user.getName())
-                .password(user.getPassword()) // password only included for assessment purpose.
-                .email(user.getEmail())
+                .id(fields.contains(UserField.ID) ? user.getId() : null)
+                .name(fields.contains(UserField.NAME) ? user.getName() : null)
+                .password(fields.contains(UserField.PASSWORD) ? user.getPassword() : null) // password only included for assessment purpose.
+                .email(fields.contains(UserField.EMAIL) ? user.getEmail() : null)
                 .build();
     }
 
@@ -0,0 +1,95 @@
+package com.rakbank.userservice.controller;
+
+import com.rakbank.userservice.dao.projection.UserField;
+import com.rakbank.userservice.error.DomainException;
+import com.rakbank.userservice.service.model.PaginatedResponse;
+import com.rakbank.userservice.service.model.User;
+import org.springframework.http.HttpStatus;
+
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * ETags for user resources. A user's ETag is its @Version, so it can be checked without
+ * reading the row. A page's ETag is derived from the ids and versions it lists.
+ * A sparse representation (see the 'fields' parameter) gets its own ETag, suffixed with its fields.
+ */
+public final class UserETags {
+
+    private UserETags() {
+    }
+
+    /**
+     * Method to build the strong ETag of a user at the given version.
+     * @param version
+     * @return
+     */
+    public static String of(int version) {
+        return "\"" + version + "\"";
+    }
+
+    /**
+     * Method to build the strong ETag of the given fields of a user. All fields give the same ETag
+     * as {@link #of(int)}, so it still works with If-Match.
+     * @param version
+     * @param fields
+     * @return
+     */
+    public static String of(int version, Set<UserField> fields) {
+        if(fields.equals(UserField.ALL)) {
+            return of(version);
+        }
+        return "\"" + version + "-" + fieldsTag(fields) + "\"";
+    }
+
+    /**
+     * Method to build the weak ETag of a page of users. It changes when any listed user,
+     * the totals or the next cursor change.
+     * @param userPage
+     * @param fields the fields listed for each user
+     * @return
+     */
+    public static String of(PaginatedResponse<User> userPage, Set<UserField> fields) {
+        long hash = 17;
+        hash = 31 * hash + fieldsTag(fields).hashCode();
+        for(User user : userPage.getRecords()) {
+            hash = 31 * hash + user.getId();
+            hash = 31 * hash + Objects.hashCode(user.getVersion());
+        }
+        hash = 31 * hash + Objects.hashCode(userPage.getTotalRecords());
+        hash = 31 * hash + Objects.hashCode(userPage.getNextCursor());
+        return "W/\"" + Long.toHexString(hash) + "\"";
+    }
+
+    // Fields in declaration order, so "email,id" and "id,email" give the same ETag.
+    private static String fieldsTag(Set<UserField> fields) {
+        return fields.stream()
+                .sorted()
+                .map(UserField::getAttribute)
+                .collect(Collectors.joining("."));
+    }
+
+    /**
+     * Method to read the expected version from an If-Match header.
+     * A missing header or "*" means no version check.
+     * @param ifMatch
+     * @return the version, or null when there is nothing to check
+     */
+    public static Integer parseVersion(String ifMatch) {
+        if(ifMatch == null || ifMatch.isBlank() || ifMatch.trim().equals("*")) {
+            return null;
+        }
+        String etag = ifMatch.trim();
+        // If-Match uses strong comparison, so a weak or malformed ETag can never match.
+        if(etag.length() < 3 || !etag.startsWith("\"") || !etag.endsWith("\"")) {
+            throw new DomainException("concurrentModificationError", HttpStatus.PRECONDITION_FAILED);
+        }
+        try {
+            return Integer.valueOf(etag.substring(1, etag.length() - 1));
+        } catch(NumberFormatException exc) {
+            throw new DomainException("concurrentModificationError", HttpStatus.PRECONDITION_FAILED);
+        }
+    }
+
+}
@@ -0,0 +1,37 @@
+package com.rakbank.userservice.controller;
+
+import com.fasterxml.jackson.databind.ser.FilterProvider;
+import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
+import com.rakbank.userservice.dao.projection.UserField;
+
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Jackson filter of the user fields written in a response. A sparse response (see the 'fields' request
+ * parameter) leaves out the fields that were not asked for. A full response writes every field, null
+ * or not, and is what the ObjectMapper writes when no filter is given.
+ */
+public final class UserFieldsFilter {
+
+    public static final String ID = "userFields";
+
+    private UserFieldsFilter() {
+    }
+
+    /**
+     * Method to get the filters writing only the given fields.
+     * @param fields
+     * @return
+     */
+    public static FilterProvider of(Set<UserField> fields) {
+        SimpleBeanPropertyFilter filter = fields.containsAll(UserField.ALL)
+                ? SimpleBeanPropertyFilter.serializeAll()
+                : SimpleBeanPropertyFilter.filterOutAllExcept(fields.stream()
+                        .map(UserField::getAttribute)
+                        .collect(Collectors.toSet()));
+        return new SimpleFilterProvider().addFilter(ID, filter);
+    }
+
+}
@@ -0,0 +1,48 @@
+package com.rakbank.userservice.controller;
+
+import com.rakbank.userservice.dao.projection.UserField;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.MappingJacksonValue;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.AbstractMappingJacksonResponseBodyAdvice;
+
+import java.util.Set;
+
+/**
+ * Writes the response of a UserController method with the fields the method asked for with
+ * fields(), so its return type stays the DTO. Other responses are written whole.
+ */
+@RestControllerAdvice(assignableTypes = UserController.class)
+@Profile("!reactive")
+public class UserFieldsResponseBodyAdvice extends AbstractMappingJacksonResponseBodyAdvice {
+
+    private static final String FIELDS_ATTRIBUTE = UserFieldsResponseBodyAdvice.class.getName() + ".fields";
+
+    /**
+     * Method to write the response of the current request with the given fields only.
+     * @param webRequest
+     * @param fields
+     */
+    static void fields(WebRequest webRequest, Set<UserField> fields) {
+        webRequest.setAttribute(FIELDS_ATTRIBUTE, fields, RequestAttributes.SCOPE_REQUEST);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected void beforeBodyWriteInternal(MappingJacksonValue bodyContainer, MediaType contentType,
+                                           MethodParameter returnType, ServerHttpRequest request,
+                                           ServerHttpResponse response) {
+        if(request instanceof ServletServerHttpRequest servletRequest
+                && servletRequest.getServletRequest().getAttribute(FIELDS_ATTRIBUTE) instanceof Set<?> fields) {
+            bodyContainer.setFilters(UserFieldsFilter.of((Set<UserField>) fields));
+        }
+    }
+
+}
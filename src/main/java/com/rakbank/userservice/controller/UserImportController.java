@@ -0,0 +1,112 @@
+package com.rakbank.userservice.controller;
+
+import com.rakbank.userservice.controller.admission.AdmissionClass;
+import com.rakbank.userservice.controller.admission.Admitted;
+import com.rakbank.userservice.controller.dto.response.ImportErrorDto;
+import com.rakbank.userservice.controller.dto.response.ImportErrorsResponseDto;
+import com.rakbank.userservice.controller.dto.response.ImportJobResponseDto;
+import com.rakbank.userservice.error.DomainException;
+import com.rakbank.userservice.error.ErrorMessageResolver;
+import com.rakbank.userservice.service.UserImportService;
+import com.rakbank.userservice.service.model.ImportJob;
+import com.rakbank.userservice.service.model.UserFileFormat;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Collectors;
+
+@RestController
+@Profile("!reactive")
+@RequestMapping(path = "/users/import")
+public class UserImportController {
+
+    @Autowired
+    UserImportService userImportService;
+
+    @Autowired
+    ErrorMessageResolver errorMessageResolver;
+
+    /**
+     * Starts a background import of an NDJSON (default) or CSV file.
+     * Poll the returned job for progress and fetch rejected records from its errors endpoint.
+     */
+    @Admitted(AdmissionClass.HASHING)
+    @PostMapping(consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<ImportJobResponseDto> importUsers(@RequestParam("file") MultipartFile file,
+                                                            @RequestParam(defaultValue = "ndjson") String format) throws IOException {
+
+        UserFileFormat fileFormat = UserFileFormat.from(format);
+        if(file.isEmpty()) {
+            throw new DomainException("user.import.emptyFile");
+        }
+
+        // The multipart upload is already spooled to disk; move it somewhere that outlives the request.
+        Path upload = Files.createTempFile("user-import-", "." + fileFormat.getFileExtension());
+        file.transferTo(upload);
+
+        ImportJob job = userImportService.submit(upload, fileFormat);
+        return ResponseEntity.accepted()
+                .location(ServletUriComponentsBuilder.fromCurrentRequest()
+                        .path("/{jobId}").buildAndExpand(job.getId()).toUri())
+                .body(mapImportJobToResponseDto(job));
+    }
+
+    @GetMapping(path = "/{jobId}")
+    public ImportJobResponseDto getImportJob(@PathVariable String jobId) {
+        return mapImportJobToResponseDto(userImportService.getJob(jobId));
+    }
+
+    @GetMapping(path = "/{jobId}/errors")
+    public ImportErrorsResponseDto getImportErrors(@PathVariable String jobId) {
+
+        ImportJob job = userImportService.getJob(jobId);
+        return ImportErrorsResponseDto.builder()
+                .jobId(job.getId())
+                .failedCount(job.getFailedCount())
+                .truncated(job.isErrorsTruncated())
+                .errors(job.getErrors().stream()
+                        .map(importError -> ImportErrorDto.builder()
+                                .line(importError.getLine())
+                                .errorMessage(importError.getErrors().stream()
+                                        .map(key -> errorMessageResolver.resolve(key, null))
+                                        .collect(Collectors.joining(",")))
+                                .build())
+                        .collect(Collectors.toList()))
+                .build();
+    }
+
+    /**
+     * Restarts a failed import after its last committed chunk.
+     */
+    @Admitted(AdmissionClass.HASHING)
+    @PostMapping(path = "/{jobId}/resume")
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    public ImportJobResponseDto resumeImportJob(@PathVariable String jobId) {
+        return mapImportJobToResponseDto(userImportService.resume(jobId));
+    }
+
+    private ImportJobResponseDto mapImportJobToResponseDto(ImportJob job) {
+        return ImportJobResponseDto.builder()
+                .jobId(job.getId())
+                .status(job.getStatus().name())
+                .submittedAt(job.getSubmittedAt())
+                .finishedAt(job.getFinishedAt())
+                .recordsProcessed(job.getRecordsProcessed())
+                .createdCount(job.getCreatedCount())
+                .failedCount(job.getFailedCount())
+                .checkpoint(job.getCheckpoint())
+                .failureReason(job.getFailureReason() == null ? null
+                        : errorMessageResolver.resolve(job.getFailureReason(), null))
+                .build();
+    }
+
+}
@@ -0,0 +1,73 @@
+package com.rakbank.userservice.controller.admission;
+
+import com.rakbank.userservice.error.AdmissionRejectedException;
+import org.springframework.http.HttpStatus;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Capacity of one admission class: a token bucket per client key, and a limit on the requests of the
+ * class in progress at once across all clients. A request over either limit is rejected at once,
+ * never queued.
+ */
+public class AdmissionBudget {
+
+    private final double ratePerSecond;
+    private final double burst;
+    private final Semaphore concurrency;
+    private final long overloadedRetryAfterSeconds;
+    private final LongSupplier ticker;
+
+    private final Map<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+
+    public AdmissionBudget(double ratePerSecond, double burst, int maxConcurrent, long overloadedRetryAfterSeconds) {
+        this(ratePerSecond, burst, maxConcurrent, overloadedRetryAfterSeconds, System::nanoTime);
+    }
+
+    AdmissionBudget(double ratePerSecond, double burst, int maxConcurrent, long overloadedRetryAfterSeconds,
+                    LongSupplier ticker) {
+        this.ratePerSecond = ratePerSecond;
+        this.burst = burst;
+        this.concurrency = new Semaphore(maxConcurrent);
+        this.overloadedRetryAfterSeconds = overloadedRetryAfterSeconds;
+        this.ticker = ticker;
+    }
+
+    /**
+     * Method to admit a request of the client. The returned permit must be released once the
+     * request is complete. A request rejected with 503 takes no token of the client.
+     * @param clientKey
+     * @return
+     * @throws AdmissionRejectedException HTTP 429 when the client is over its rate, 503 when the class
+     * is at its concurrency limit
+     */
+    public Runnable admit(String clientKey) {
+        long now = ticker.getAsLong();
+        TokenBucket bucket = buckets.computeIfAbsent(clientKey, key -> new TokenBucket(ratePerSecond, burst, now));
+        long waitNanos = bucket.tryConsume(now);
+        if(waitNanos > 0) {
+            long retryAfterSeconds = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos + 999_999_999));
+            throw new AdmissionRejectedException("admission.rateLimited", HttpStatus.TOO_MANY_REQUESTS, retryAfterSeconds);
+        }
+        // A request shed for load was never served, so it doesn't count against the rate of its client.
+        if(!concurrency.tryAcquire()) {
+            bucket.refund();
+            throw new AdmissionRejectedException("admission.overloaded", HttpStatus.SERVICE_UNAVAILABLE,
+                    overloadedRetryAfterSeconds);
+        }
+        return concurrency::release;
+    }
+
+    /**
+     * Method to drop the buckets of idle clients. A full bucket is the same as no bucket.
+     */
+    public void purgeIdleClients() {
+        long now = ticker.getAsLong();
+        buckets.values().removeIf(bucket -> bucket.isFull(now));
+    }
+
+}
@@ -0,0 +1,21 @@
+package com.rakbank.userservice.controller.admission;
+
+/**
+ * Budgets endpoints are admitted against. Each class has its own rate and concurrency limits, so a
+ * surge on one can't use up the capacity of the other.
+ */
+public enum AdmissionClass {
+
+    // Endpoints that hash passwords with bcrypt.
+    HASHING,
+
+    // Password checks. Also bcrypt, but budgeted apart so signups and logins can't crowd each other out.
+    VERIFY,
+
+    // Lookups and listings.
+    READ,
+
+    // Updates and deletes. No bcrypt, but each holds a primary connection, which reads on the replicas don't.
+    WRITE
+
+}
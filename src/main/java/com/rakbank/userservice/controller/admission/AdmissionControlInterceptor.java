@@ -0,0 +1,86 @@
+package com.rakbank.userservice.controller.admission;
+
+import jakarta.servlet.DispatcherType;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import java.security.Principal;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Admits requests to @Admitted controller methods against the budget of their class, before the
+ * method runs. Rejected requests never reach the controller.
+ * The permit is held until the request completes, including the asynchronous part of the
+ * CompletableFuture endpoints, so bcrypt work still running counts against the limit.
+ */
+public class AdmissionControlInterceptor implements HandlerInterceptor {
+
+    private static final String PERMIT_ATTRIBUTE = AdmissionControlInterceptor.class.getName() + ".permit";
+
+    private final Map<AdmissionClass, AdmissionBudget> budgets;
+    private final String clientHeader;
+    private final Set<String> trustedProxies;
+
+    /**
+     * @param clientHeader names the client, e.g. X-Client-Id. Only read on requests from a trusted proxy.
+     * @param trustedProxies addresses allowed to name the client in the header
+     */
+    public AdmissionControlInterceptor(Map<AdmissionClass, AdmissionBudget> budgets, String clientHeader,
+                                       Set<String> trustedProxies) {
+        this.budgets = budgets;
+        this.clientHeader = clientHeader;
+        this.trustedProxies = Set.copyOf(trustedProxies);
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        // The asynchronous dispatch of an admitted request carries the permit taken by the first one.
+        if(request.getDispatcherType() == DispatcherType.ASYNC || !(handler instanceof HandlerMethod handlerMethod)) {
+            return true;
+        }
+        Admitted admitted = handlerMethod.getMethodAnnotation(Admitted.class);
+        if(admitted == null) {
+            return true;
+        }
+        Runnable permit = budgets.get(admitted.value()).admit(clientKey(request));
+        request.setAttribute(PERMIT_ATTRIBUTE, permit);
+        return true;
+    }
+
+    /**
+     * Runs when the request is complete: after the handler for a synchronous request, after the
+     * asynchronous dispatch for a CompletableFuture one.
+     */
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        Object permit = request.getAttribute(PERMIT_ATTRIBUTE);
+        if(permit != null) {
+            request.removeAttribute(PERMIT_ATTRIBUTE);
+            ((Runnable) permit).run();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "PT1M")
+    public void purgeIdleClients() {
+        budgets.values().forEach(AdmissionBudget::purgeIdleClients);
+    }
+
+    // The client sets the header itself, so it only counts when a trusted proxy passes it on. Otherwise a
+    // new value on every request would get a new bucket every time. Everyone else is told apart by address.
+    private String clientKey(HttpServletRequest request) {
+        Principal principal = request.getUserPrincipal();
+        if(principal != null) {
+            return "user:" + principal.getName();
+        }
+        String clientId = request.getHeader(clientHeader);
+        if(clientId != null && !clientId.isBlank() && trustedProxies.contains(request.getRemoteAddr())) {
+            return "id:" + clientId;
+        }
+        return "ip:" + request.getRemoteAddr();
+    }
+
+}
@@ -0,0 +1,18 @@
+package com.rakbank.userservice.controller.admission;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Puts a controller method behind the admission budget of the given class.
+ * Methods without it are not admission controlled.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Admitted {
+
+    AdmissionClass value();
+
+}
@@ -0,0 +1,58 @@
+package com.rakbank.userservice.controller.admission;
+
+/**
+ * Token bucket refilled continuously at a fixed rate, up to its capacity.
+ */
+class TokenBucket {
+
+    private final double capacity;
+    private final double tokensPerNano;
+
+    private double tokens;
+    private long refilledAt;
+
+    TokenBucket(double ratePerSecond, double capacity, long now) {
+        this.capacity = capacity;
+        this.tokensPerNano = ratePerSecond / 1_000_000_000d;
+        this.tokens = capacity;
+        this.refilledAt = now;
+    }
+
+    /**
+     * Method to take one token.
+     * @param now
+     * @return 0 when a token was taken, else the nanos until one is available
+     */
+    synchronized long tryConsume(long now) {
+        refill(now);
+        if(tokens >= 1) {
+            tokens -= 1;
+            return 0;
+        }
+        return (long) Math.ceil((1 - tokens) / tokensPerNano);
+    }
+
+    /**
+     * Method to give back a token taken by tryConsume, for a request that was not served after all.
+     */
+    synchronized void refund() {
+        tokens = Math.min(capacity, tokens + 1);
+    }
+
+    /**
+     * Method to tell whether the bucket has refilled completely, i.e. the client has been idle long
+     * enough that dropping the bucket changes nothing.
+     * @param now
+     * @return
+     */
+    synchronized boolean isFull(long now) {
+        refill(now);
+        return tokens >= capacity;
+    }
+
+    private void refill(long now) {
+        tokens = Math.min(capacity, tokens + (now - refilledAt) * tokensPerNano);
+        refilledAt = now;
+    }
+
+}
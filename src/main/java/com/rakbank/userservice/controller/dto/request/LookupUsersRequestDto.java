@@ -0,0 +1,16 @@
+package com.rakbank.userservice.controller.dto.request;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.List;
+
+@Setter
+@Getter
+public class LookupUsersRequestDto {
+
+    @JsonProperty("ids")
+    private List<Long> ids;
+
+}
@@ -0,0 +1,20 @@
+package com.rakbank.userservice.controller.dto.request;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Size;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.validation.annotation.Validated;
+
+@Setter
+@Getter
+@Validated
+public class VerifyPasswordRequestDto {
+
+    // No format rules: a password set under older rules must still verify. Bcrypt reads at most 72 bytes.
+    @JsonProperty("password")
+    @NotBlank(message = "user.password.mandatory")
+    @Size(max=72, message = "user.password.maxLength")
+    private String password;
+}
@@ -0,0 +1,15 @@
+package com.rakbank.userservice.controller.dto.response;
+
+import lombok.Builder;
+import lombok.Getter;
+
+@Builder
+@Getter
+public class CreateUserBatchResultDto {
+
+    private int index;
+    private boolean created;
+    private Long id;
+    private String errorMessage;
+
+}
@@ -0,0 +1,16 @@
+package com.rakbank.userservice.controller.dto.response;
+
+import lombok.Builder;
+import lombok.Getter;
+
+import java.util.List;
+
+@Builder
+@Getter
+public class CreateUsersBatchResponseDto {
+
+    private int createdCount;
+    private int failedCount;
+    private List<CreateUserBatchResultDto> results;
+
+}
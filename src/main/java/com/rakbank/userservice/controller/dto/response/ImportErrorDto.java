@@ -0,0 +1,13 @@
+package com.rakbank.userservice.controller.dto.response;
+
+import lombok.Builder;
+import lombok.Getter;
+
+@Builder
+@Getter
+public class ImportErrorDto {
+
+    private long line;
+    private String errorMessage;
+
+}
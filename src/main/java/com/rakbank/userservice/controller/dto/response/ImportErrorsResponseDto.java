@@ -0,0 +1,18 @@
+package com.rakbank.userservice.controller.dto.response;
+
+import lombok.Builder;
+import lombok.Getter;
+
+import java.util.List;
+
+@Builder
+@Getter
+public class ImportErrorsResponseDto {
+
+    private String jobId;
+    private long failedCount;
+    // True when more records failed than the error report keeps.
+    private boolean truncated;
+    private List<ImportErrorDto> errors;
+
+}
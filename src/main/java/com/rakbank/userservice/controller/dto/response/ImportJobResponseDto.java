@@ -0,0 +1,22 @@
+package com.rakbank.userservice.controller.dto.response;
+
+import lombok.Builder;
+import lombok.Getter;
+
+import java.time.Instant;
+
+@Builder
+@Getter
+public class ImportJobResponseDto {
+
+    private String jobId;
+    private String status;
+    private Instant submittedAt;
+    private Instant finishedAt;
+    private long recordsProcessed;
+    private long createdCount;
+    private long failedCount;
+    private long checkpoint;
+    private String failureReason;
+
+}
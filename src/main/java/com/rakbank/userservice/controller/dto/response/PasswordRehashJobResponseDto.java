@@ -0,0 +1,22 @@
+package com.rakbank.userservice.controller.dto.response;
+
+import lombok.Builder;
+import lombok.Getter;
+
+import java.time.Instant;
+
+@Builder
+@Getter
+public class PasswordRehashJobResponseDto {
+
+    private String policy;
+    private String status;
+    private Instant startedAt;
+    private Instant finishedAt;
+    private int workers;
+    private long scannedCount;
+    private long flaggedCount;
+    private long checkpoint;
+    private String failureReason;
+
+}
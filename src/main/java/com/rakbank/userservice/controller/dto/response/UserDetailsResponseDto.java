@@ -1,8 +1,12 @@
 package com.rakbank.userservice.controller.dto.response;
 
+import com.fasterxml.jackson.annotation.JsonFilter;
+import com.rakbank.userservice.controller.UserFieldsFilter;
 import lombok.Builder;
 import lombok.Getter;
 
+// The controllers pick the fields written through the filter, see the 'fields' request parameter.
+@JsonFilter(UserFieldsFilter.ID)
 @Builder
 @Getter
 public class UserDetailsResponseDto {
@@ -14,5 +18,4 @@ public class UserDetailsResponseDto {
     // This field is only added for assessment purpose. Will never be in a live project.
     private String password;
 
-
 }
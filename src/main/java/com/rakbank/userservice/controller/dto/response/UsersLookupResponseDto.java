@@ -0,0 +1,18 @@
+package com.rakbank.userservice.controller.dto.response;
+
+import lombok.Builder;
+import lombok.Getter;
+
+import java.util.List;
+
+@Builder
+@Getter
+public class UsersLookupResponseDto {
+
+    // Users found, in the order their ids were requested.
+    private List<UserDetailsResponseDto> records;
+
+    // Requested ids with no user.
+    private List<Long> missingIds;
+
+}
@@ -0,0 +1,12 @@
+package com.rakbank.userservice.controller.dto.response;
+
+import lombok.Builder;
+import lombok.Getter;
+
+@Builder
+@Getter
+public class VerifyPasswordResponseDto {
+
+    private boolean verified;
+
+}
@@ -0,0 +1,121 @@
+package com.rakbank.userservice.controller.export;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.MinimalPrettyPrinter;
+import com.rakbank.userservice.service.model.User;
+import com.rakbank.userservice.service.model.UserFileFormat;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes users one record at a time, so an export never holds more than one user in memory.
+ * The password hash is never exported.
+ */
+public abstract class UserExportWriter implements Closeable {
+
+    // Flush every so often so the client starts receiving data before the export finishes.
+    private static final int FLUSH_EVERY = 1000;
+
+    private int written;
+
+    public static UserExportWriter of(UserFileFormat format, OutputStream outputStream) throws IOException {
+        if(format == UserFileFormat.CSV) {
+            return new CsvUserExportWriter(outputStream);
+        }
+        return new NdjsonUserExportWriter(outputStream);
+    }
+
+    public void write(User user) throws IOException {
+        writeRecord(user);
+        if(++written % FLUSH_EVERY == 0) {
+            flush();
+        }
+    }
+
+    protected abstract void writeRecord(User user) throws IOException;
+
+    protected abstract void flush() throws IOException;
+
+    private static class NdjsonUserExportWriter extends UserExportWriter {
+
+        private final JsonGenerator generator;
+
+        NdjsonUserExportWriter(OutputStream outputStream) throws IOException {
+            generator = new JsonFactory().createGenerator(outputStream, JsonEncoding.UTF8);
+            // One JSON document per line.
+            generator.setPrettyPrinter(new MinimalPrettyPrinter("\n"));
+        }
+
+        @Override
+        protected void writeRecord(User user) throws IOException {
+            generator.writeStartObject();
+            generator.writeNumberField("id", user.getId());
+            generator.writeStringField("name", user.getName());
+            generator.writeStringField("email", user.getEmail());
+            generator.writeEndObject();
+        }
+
+        @Override
+        protected void flush() throws IOException {
+            generator.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            generator.writeRaw('\n');
+            generator.close();
+        }
+    }
+
+    private static class CsvUserExportWriter extends UserExportWriter {
+
+        private final Writer writer;
+
+        CsvUserExportWriter(OutputStream outputStream) throws IOException {
+            writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8), 64 * 1024);
+            writer.write("id,name,email\n");
+        }
+
+        @Override
+        protected void writeRecord(User user) throws IOException {
+            writer.write(String.valueOf(user.getId()));
+            writer.write(',');
+            writeField(user.getName());
+            writer.write(',');
+            writeField(user.getEmail());
+            writer.write('\n');
+        }
+
+        private void writeField(String value) throws IOException {
+            if(value == null) {
+                return;
+            }
+            if(value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+                writer.write(value);
+                return;
+            }
+            writer.write('"');
+            writer.write(value.replace("\"", "\"\""));
+            writer.write('"');
+        }
+
+        @Override
+        protected void flush() throws IOException {
+            writer.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            writer.close();
+        }
+    }
+
+}
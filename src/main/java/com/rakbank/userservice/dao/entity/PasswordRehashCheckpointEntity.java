@@ -0,0 +1,42 @@
+package com.rakbank.userservice.dao.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.Instant;
+
+/**
+ * How far the password rehash scan has gone for one hashing policy. A new policy starts a new scan.
+ */
+@Entity
+@Table(name = "PASSWORD_REHASH_CHECKPOINT")
+@Setter
+@Getter
+public class PasswordRehashCheckpointEntity {
+
+    // Algorithm and work factor of new hashes, e.g. bcrypt:10.
+    @Id
+    @Column(name = "POLICY")
+    private String policy;
+
+    // Highest user id of the last committed chunk. A resumed scan starts after it.
+    @Column(name = "LAST_ID")
+    private long lastId;
+
+    @Column(name = "SCANNED")
+    private long scanned;
+
+    @Column(name = "FLAGGED")
+    private long flagged;
+
+    @Column(name = "COMPLETED")
+    private boolean completed;
+
+    @Column(name = "UPDATED_AT")
+    private Instant updatedAt;
+
+}
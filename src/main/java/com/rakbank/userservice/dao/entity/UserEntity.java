@@ -5,14 +5,22 @@ import jakarta.persistence.*;
 import lombok.Getter;
 import lombok.Setter;
 
+import java.util.Locale;
+
 @Entity
 @Table(name = "USERS")
 @Setter
 @Getter
 public class UserEntity {
 
+    // IDENTITY would stop Hibernate from batching inserts, so ids come from a pooled table generator.
+    // With the pooled-lo optimizer (see application.properties) one round trip reserves allocationSize ids.
+    // Hibernate runs that round trip in its own transaction on a second pooled connection, so the pool is sized
+    // for one connection more than the inserts that can run at once (see UserIdPoolCheck).
     @Id
-    @GeneratedValue(strategy= GenerationType.IDENTITY)
+    @GeneratedValue(strategy= GenerationType.TABLE, generator = "user_id_generator")
+    @TableGenerator(name = "user_id_generator", table = "user_id_sequence", pkColumnName = "sequence_name",
+            valueColumnName = "next_val", pkColumnValue = "users", allocationSize = 50)
     @Column(name = "ID", unique = true, nullable = false, precision = 22, scale = 0)
     private Long id;
 
@@ -25,7 +33,22 @@ public class UserEntity {
     @Column(name = "EMAIl")
     private String email;
 
+    // Lower-case copy of the email for case-insensitive search. Kept in step with email on insert here,
+    // and by the update queries in UserRepository.
+    @Column(name = "EMAIL_NORMALIZED")
+    private String emailNormalized;
+
+    // Set by the password rehash job when the hash is below the current hashing policy, cleared when
+    // the password is hashed again.
+    @Column(name = "NEEDS_REHASH")
+    private boolean needsRehash;
+
     @Version
     @JsonProperty("version")
     private int version;
+
+    @PrePersist
+    void normalizeEmail() {
+        emailNormalized = email == null ? null : email.toLowerCase(Locale.ROOT);
+    }
 }
@@ -0,0 +1,7 @@
+package com.rakbank.userservice.dao.projection;
+
+/**
+ * Id and password hash of a user, as read by the password rehash scan.
+ */
+public record PasswordHashView(Long id, String password) {
+}
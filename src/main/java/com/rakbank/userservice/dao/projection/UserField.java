@@ -0,0 +1,60 @@
+package com.rakbank.userservice.dao.projection;
+
+import com.rakbank.userservice.error.DomainException;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * User fields a client can ask for with the 'fields' request parameter. Each one maps to the
+ * UserEntity attribute, and the column, it is read from.
+ */
+public enum UserField {
+
+    ID("id"),
+    NAME("name"),
+    EMAIL("email"),
+    PASSWORD("password");
+
+    public static final Set<UserField> ALL = Collections.unmodifiableSet(EnumSet.allOf(UserField.class));
+
+    private final String attribute;
+
+    UserField(String attribute) {
+        this.attribute = attribute;
+    }
+
+    public String getAttribute() {
+        return attribute;
+    }
+
+    /**
+     * Method to read a comma separated list of field names, e.g. "id,email". A missing or blank
+     * list means every field.
+     * @param fields
+     * @return
+     */
+    public static Set<UserField> parse(String fields) {
+        if(fields == null || fields.isBlank()) {
+            return ALL;
+        }
+        Set<UserField> userFields = EnumSet.noneOf(UserField.class);
+        for(String field : fields.split(",")) {
+            String name = field.trim();
+            UserField userField = null;
+            for(UserField candidate : values()) {
+                if(candidate.attribute.equals(name)) {
+                    userField = candidate;
+                }
+            }
+            if(userField == null) {
+                throw new DomainException("user.fields.invalid", List.of(name));
+            }
+            userFields.add(userField);
+        }
+        return userFields;
+    }
+
+}
@@ -0,0 +1,8 @@
+package com.rakbank.userservice.dao.projection;
+
+/**
+ * Read-only row of the users table, built by a constructor expression in UserRepository.
+ * Unlike UserEntity it is never managed, so Hibernate keeps no snapshot of it for dirty checking.
+ */
+public record UserView(Long id, String name, String email, String password, int version) {
+}
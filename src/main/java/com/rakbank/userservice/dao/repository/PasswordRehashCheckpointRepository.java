@@ -0,0 +1,9 @@
+package com.rakbank.userservice.dao.repository;
+
+import com.rakbank.userservice.dao.entity.PasswordRehashCheckpointEntity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface PasswordRehashCheckpointRepository extends JpaRepository<PasswordRehashCheckpointEntity, String> {
+}
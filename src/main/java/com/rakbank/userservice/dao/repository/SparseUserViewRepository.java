@@ -0,0 +1,34 @@
+package com.rakbank.userservice.dao.repository;
+
+import com.rakbank.userservice.dao.projection.UserField;
+import com.rakbank.userservice.dao.projection.UserView;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Reads that only select the columns of the requested fields. ID and VERSION are always selected,
+ * for cursors and ETags; the attributes of fields that were not requested are null in the views.
+ */
+public interface SparseUserViewRepository {
+
+    /**
+     * One user by id, with only the given fields.
+     */
+    public Optional<UserView> findViewById(Long id, Set<UserField> fields);
+
+    /**
+     * Offset page of users in id order, with only the given fields.
+     */
+    public Slice<UserView> findViewsBy(Set<UserField> fields, Pageable pageable);
+
+    /**
+     * Keyset page of users after the given id, with only the given fields.
+     */
+    public List<UserView> findViewsAfter(Long id, Set<UserField> fields, Limit limit);
+
+}
@@ -0,0 +1,91 @@
+package com.rakbank.userservice.dao.repository;
+
+import com.rakbank.userservice.dao.projection.UserField;
+import com.rakbank.userservice.dao.projection.UserView;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Tuple;
+import jakarta.persistence.TypedQuery;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Builds the select list from the requested fields, so a client asking for id and email doesn't
+ * make the database read and ship the other columns. Same read-only settings as the views in UserRepository.
+ */
+class SparseUserViewRepositoryImpl implements SparseUserViewRepository {
+
+    @PersistenceContext
+    EntityManager entityManager;
+
+    @Override
+    @Transactional(readOnly = true)
+    public Optional<UserView> findViewById(Long id, Set<UserField> fields) {
+        return createQuery(fields, "where u.id = :id")
+                .setParameter("id", id)
+                .getResultStream()
+                .findFirst()
+                .map(tuple -> toUserView(tuple, fields));
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Slice<UserView> findViewsBy(Set<UserField> fields, Pageable pageable) {
+        // One extra row tells whether there is a next page, as for a derived Slice query.
+        List<UserView> userViews = toUserViews(createQuery(fields, "order by u.id")
+                .setFirstResult((int) pageable.getOffset())
+                .setMaxResults(pageable.getPageSize() + 1)
+                .getResultList(), fields);
+        boolean hasNext = userViews.size() > pageable.getPageSize();
+        if(hasNext) {
+            userViews.remove(userViews.size() - 1);
+        }
+        return new SliceImpl<>(userViews, pageable, hasNext);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<UserView> findViewsAfter(Long id, Set<UserField> fields, Limit limit) {
+        return toUserViews(createQuery(fields, "where u.id > :id order by u.id")
+                .setParameter("id", id)
+                .setMaxResults(limit.max())
+                .getResultList(), fields);
+    }
+
+    private TypedQuery<Tuple> createQuery(Set<UserField> fields, String condition) {
+        // ID and VERSION first, then the requested attributes in UserField order, as toUserView reads them.
+        List<String> columns = new ArrayList<>(List.of("u.id", "u.version"));
+        Arrays.stream(UserField.values())
+                .filter(field -> field != UserField.ID && fields.contains(field))
+                .forEach(field -> columns.add("u." + field.getAttribute()));
+        String query = "select " + String.join(", ", columns) + " from UserEntity u " + condition;
+        return entityManager.createQuery(query, Tuple.class)
+                .setHint(HibernateHints.HINT_READ_ONLY, true)
+                .setHint(HibernateHints.HINT_FLUSH_MODE, "MANUAL");
+    }
+
+    private List<UserView> toUserViews(List<Tuple> tuples, Set<UserField> fields) {
+        List<UserView> userViews = new ArrayList<>(tuples.size());
+        tuples.forEach(tuple -> userViews.add(toUserView(tuple, fields)));
+        return userViews;
+    }
+
+    private UserView toUserView(Tuple tuple, Set<UserField> fields) {
+        int index = 2;
+        String name = fields.contains(UserField.NAME) ? tuple.get(index++, String.class) : null;
+        String email = fields.contains(UserField.EMAIL) ? tuple.get(index++, String.class) : null;
+        String password = fields.contains(UserField.PASSWORD) ? tuple.get(index++, String.class) : null;
+        return new UserView(tuple.get(0, Long.class), name, email, password, tuple.get(1, Integer.class));
+    }
+
+}
@@ -1,14 +1,276 @@
 package com.rakbank.userservice.dao.repository;
 
 import com.rakbank.userservice.dao.entity.UserEntity;
+import com.rakbank.userservice.dao.projection.PasswordHashView;
+import com.rakbank.userservice.dao.projection.UserView;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
-public interface UserRepository extends JpaRepository<UserEntity, Long> {
+public interface UserRepository extends JpaRepository<UserEntity, Long>, SparseUserViewRepository {
 
     public Optional<UserEntity> findByEmail(String email);
 
+    /**
+     * Method to find which of the given emails are already registered, in one query.
+     */
+    @Query("select u.email from UserEntity u where u.email in :emails")
+    public List<String> findExistingEmails(@Param("emails") Collection<String> emails);
+
+    /*
+     * Reads for the API. They return UserView projections instead of entities, in read-only
+     * transactions, so nothing is added to the persistence context and there is nothing to flush.
+     */
+
+    /**
+     * One user by id, as a read-only view.
+     */
+    @Transactional(readOnly = true)
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_FLUSH_MODE, value = "MANUAL")
+    })
+    @Query("select new com.rakbank.userservice.dao.projection.UserView(u.id, u.name, u.email, u.password, u.version) " +
+            "from UserEntity u where u.id = :id")
+    public Optional<UserView> findViewById(@Param("id") Long id);
+
+    /**
+     * Users with the given ids, as read-only views, in no particular order.
+     * Callers keep the list of ids short enough for one IN clause.
+     */
+    @Transactional(readOnly = true)
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_FLUSH_MODE, value = "MANUAL")
+    })
+    @Query("select new com.rakbank.userservice.dao.projection.UserView(u.id, u.name, u.email, u.password, u.version) " +
+            "from UserEntity u where u.id in :ids")
+    public List<UserView> findViewsByIdIn(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Offset page of read-only views, without the COUNT(*) that findAll(Pageable) runs.
+     */
+    @Transactional(readOnly = true)
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_FLUSH_MODE, value = "MANUAL")
+    })
+    @Query("select new com.rakbank.userservice.dao.projection.UserView(u.id, u.name, u.email, u.password, u.version) " +
+            "from UserEntity u order by u.id")
+    public Slice<UserView> findViewsBy(Pageable pageable);
+
+    /**
+     * All users in id order through a forward-only cursor, for exports. Must be consumed inside a
+     * read-only transaction and closed. On MySQL the fetch size only streams with useCursorFetch=true.
+     */
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("select u from UserEntity u order by u.id")
+    public Stream<UserEntity> streamAll();
+
+    /**
+     * Keyset page of read-only views: seeks straight to the primary key instead of skipping rows with an OFFSET.
+     */
+    @Transactional(readOnly = true)
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_FLUSH_MODE, value = "MANUAL")
+    })
+    @Query("select new com.rakbank.userservice.dao.projection.UserView(u.id, u.name, u.email, u.password, u.version) " +
+            "from UserEntity u where u.id > :id order by u.id")
+    public List<UserView> findViewsAfter(@Param("id") Long id, Limit limit);
+
+    /*
+     * Search. Each query seeks on one of the indexes added by users_search.sql and walks it in index
+     * order, so a page after a cursor costs the same as the first one. Prefixes must already have
+     * LIKE wildcards escaped with '!' and end with '%'.
+     */
+
+    /**
+     * Users with the given lower-case email, after the given id.
+     */
+    @Transactional(readOnly = true)
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_FLUSH_MODE, value = "MANUAL")
+    })
+    @Query("select new com.rakbank.userservice.dao.projection.UserView(u.id, u.name, u.email, u.password, u.version) " +
+            "from UserEntity u where u.emailNormalized = :email and u.id > :id order by u.id")
+    public List<UserView> searchByEmail(@Param("email") String email, @Param("id") Long id, Limit limit);
+
+    /**
+     * Users whose lower-case email starts with the prefix, after the given (email, id) position.
+     */
+    @Transactional(readOnly = true)
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_FLUSH_MODE, value = "MANUAL")
+    })
+    @Query("select new com.rakbank.userservice.dao.projection.UserView(u.id, u.name, u.email, u.password, u.version) " +
+            "from UserEntity u where u.emailNormalized like :prefix escape '!' " +
+            "and (u.emailNormalized > :key or (u.emailNormalized = :key and u.id > :id)) " +
+            "order by u.emailNormalized, u.id")
+    public List<UserView> searchByEmailPrefix(@Param("prefix") String prefix, @Param("key") String key,
+                                              @Param("id") Long id, Limit limit);
+
+    /**
+     * Users whose name starts with the prefix, after the given (name, id) position.
+     * Case sensitivity follows the column collation, which is case-insensitive by default on MySQL.
+     */
+    @Transactional(readOnly = true)
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_FLUSH_MODE, value = "MANUAL")
+    })
+    @Query("select new com.rakbank.userservice.dao.projection.UserView(u.id, u.name, u.email, u.password, u.version) " +
+            "from UserEntity u where u.name like :prefix escape '!' " +
+            "and (u.name > :key or (u.name = :key and u.id > :id)) " +
+            "order by u.name, u.id")
+    public List<UserView> searchByNamePrefix(@Param("prefix") String prefix, @Param("key") String key,
+                                             @Param("id") Long id, Limit limit);
+
+    /**
+     * Version of one user. Callers route it to the primary after a write whose new version they don't know.
+     */
+    @Transactional(readOnly = true)
+    @Query("select u.version from UserEntity u where u.id = :id")
+    public Optional<Integer> findVersionById(@Param("id") Long id);
+
+    /*
+     * Password rehash scan. Chunks are read in primary key order and flagged row by row.
+     */
+
+    /**
+     * Keyset chunk of password hashes after the given id. Read-only, so it goes to a replica when there is one.
+     */
+    @Transactional(readOnly = true)
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_FLUSH_MODE, value = "MANUAL")
+    })
+    @Query("select new com.rakbank.userservice.dao.projection.PasswordHashView(u.id, u.password) " +
+            "from UserEntity u where u.id > :id order by u.id")
+    public List<PasswordHashView> findPasswordHashesAfter(@Param("id") Long id, Limit limit);
+
+    /**
+     * Flags a user whose hash is below the current policy. Only flags the hash that was scanned, so a
+     * password changed since the scan is left alone. The version doesn't move: nothing a client sees changed.
+     * @return rows updated. 0 when the password changed, the user is gone or is already flagged.
+     */
+    @Modifying
+    @Query("update UserEntity u set u.needsRehash = true " +
+            "where u.id = :id and u.password = :password and u.needsRehash = false")
+    public int flagForRehash(@Param("id") Long id, @Param("password") String password);
+
+    /*
+     * Password verification. The hash is read and replaced by id, without loading the entity.
+     */
+
+    /**
+     * Password hash of one user. Read-only: callers route it to the primary, so a password that was
+     * just changed is never checked against a replica that is behind.
+     */
+    @Transactional(readOnly = true)
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_FLUSH_MODE, value = "MANUAL")
+    })
+    @Query("select new com.rakbank.userservice.dao.projection.PasswordHashView(u.id, u.password) " +
+            "from UserEntity u where u.id = :id")
+    public Optional<PasswordHashView> findPasswordHashById(@Param("id") Long id);
+
+    /**
+     * Replaces a hash that was just verified with one of the current policy. Only replaces the verified
+     * hash, so a password changed meanwhile is kept. The version doesn't move: the password is the same,
+     * and a client holding the version mustn't get a 412 because the user logged in.
+     * @return rows updated. 0 when the password changed or the user is gone.
+     */
+    @Transactional
+    @Modifying
+    @Query("update UserEntity u set u.password = :newPassword, u.needsRehash = false " +
+            "where u.id = :id and u.password = :password")
+    public int rehashPassword(@Param("id") Long id, @Param("password") String password,
+                              @Param("newPassword") String newPassword);
+
+    /*
+     * Writes by id in one statement each. The returned row count tells a missing user (0) apart from
+     * a written one, so callers never read the row first. Every update moves the version on, like a
+     * Hibernate versioned update would.
+     */
+
+    /**
+     * Updates name and email, whatever the current version.
+     * @return rows updated. 0 when the user doesn't exist.
+     */
+    @Transactional
+    @Modifying
+    @Query("update UserEntity u set u.name = :name, u.email = :email, u.emailNormalized = lower(:email), u.version = u.version + 1 where u.id = :id")
+    public int updateDetails(@Param("id") Long id, @Param("name") String name, @Param("email") String email);
+
+    /**
+     * Updates name and email only if the row is still at the given version, in one statement.
+     * @return rows updated. 0 when the user doesn't exist or is at another version.
+     */
+    @Transactional
+    @Modifying
+    @Query("update UserEntity u set u.name = :name, u.email = :email, u.emailNormalized = lower(:email), u.version = u.version + 1 " +
+            "where u.id = :id and u.version = :version")
+    public int updateDetailsIfVersion(@Param("id") Long id, @Param("version") int version,
+                                      @Param("name") String name, @Param("email") String email);
+
+    /**
+     * Updates the password hash, whatever the current version.
+     * @return rows updated. 0 when the user doesn't exist.
+     */
+    @Transactional
+    @Modifying
+    @Query("update UserEntity u set u.password = :password, u.needsRehash = false, u.version = u.version + 1 where u.id = :id")
+    public int updatePassword(@Param("id") Long id, @Param("password") String password);
+
+    /**
+     * Updates the password hash only if the row is still at the given version, in one statement.
+     * @return rows updated. 0 when the user doesn't exist or is at another version.
+     */
+    @Transactional
+    @Modifying
+    @Query("update UserEntity u set u.password = :password, u.needsRehash = false, u.version = u.version + 1 " +
+            "where u.id = :id and u.version = :version")
+    public int updatePasswordIfVersion(@Param("id") Long id, @Param("version") int version,
+                                       @Param("password") String password);
+
+    /**
+     * Deletes a user without loading it first.
+     * @return rows deleted. 0 when the user doesn't exist.
+     */
+    @Transactional
+    @Modifying
+    @Query("delete from UserEntity u where u.id = :id")
+    public int deleteUserById(@Param("id") Long id);
+
+    /**
+     * Deletes a user only if the row is still at the given version.
+     * @return rows deleted. 0 when the user doesn't exist or is at another version.
+     */
+    @Transactional
+    @Modifying
+    @Query("delete from UserEntity u where u.id = :id and u.version = :version")
+    public int deleteUserByIdIfVersion(@Param("id") Long id, @Param("version") int version);
+
 }
@@ -0,0 +1,120 @@
+package com.rakbank.userservice.dao.routing;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Connections for read-only transactions. Spreads them round robin over the healthy replicas and
+ * falls back to the primary when none is healthy, or when the read asked for it with ReadRoute.
+ * Replicas are checked in the background, so a dead replica costs one failed check instead of a
+ * failed request per connection.
+ */
+public class ReadReplicaDataSource extends AbstractDataSource {
+
+    private final Log LOGGER = LogFactory.getLog(this.getClass());
+
+    private final DataSource primary;
+    private final List<Replica> replicas;
+    private final int validationTimeoutSeconds;
+    private final AtomicInteger next = new AtomicInteger();
+
+    public ReadReplicaDataSource(DataSource primary, List<DataSource> replicas,
+                                 int validationTimeoutSeconds) {
+        this.primary = primary;
+        this.replicas = replicas.stream()
+                .map(Replica::new)
+                .collect(Collectors.toList());
+        this.validationTimeoutSeconds = validationTimeoutSeconds;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return select().getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return select().getConnection(username, password);
+    }
+
+    /**
+     * Method to check every replica and take it in or out of rotation.
+     */
+    @Scheduled(fixedDelayString = "${userservice.datasource.replica-check-interval:PT10S}")
+    public void checkReplicas() {
+        for(int i = 0; i < replicas.size(); i++) {
+            Replica replica = replicas.get(i);
+            boolean healthy = isValid(replica.dataSource);
+            if(replica.healthy.getAndSet(healthy) != healthy) {
+                LOGGER.warn(String.format("Replica [%d] is now %s", i, healthy ? "up" : "down"));
+            }
+        }
+    }
+
+    /**
+     * Method to get the health of each replica, in configuration order.
+     * @return
+     */
+    public List<Boolean> getReplicaHealth() {
+        return replicas.stream()
+                .map(replica -> replica.healthy.get())
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Method to close the replica pools. The primary is closed by its own bean.
+     */
+    public void close() throws Exception {
+        for(Replica replica : replicas) {
+            if(replica.dataSource instanceof AutoCloseable closeable) {
+                closeable.close();
+            }
+        }
+    }
+
+    private DataSource select() {
+        if(ReadRoute.isPrimaryRequired()) {
+            return primary;
+        }
+        int size = replicas.size();
+        int start = Math.floorMod(next.getAndIncrement(), size);
+        for(int i = 0; i < size; i++) {
+            Replica replica = replicas.get((start + i) % size);
+            if(replica.healthy.get()) {
+                return replica.dataSource;
+            }
+        }
+        return primary;
+    }
+
+    private boolean isValid(DataSource dataSource) {
+        try(Connection connection = dataSource.getConnection()) {
+            return connection.isValid(validationTimeoutSeconds);
+        } catch(SQLException exc) {
+            return false;
+        }
+    }
+
+    private static final class Replica {
+
+        private final DataSource dataSource;
+
+        // Replicas start out of rotation until their first check passes.
+        private final AtomicBoolean healthy = new AtomicBoolean(false);
+
+        private Replica(DataSource dataSource) {
+            this.dataSource = dataSource;
+        }
+    }
+
+}
@@ -0,0 +1,36 @@
+package com.rakbank.userservice.dao.routing;
+
+import java.util.function.Supplier;
+
+/**
+ * Lets a read-only transaction ask for the primary instead of a replica, for reads that must see
+ * a write made moments ago.
+ */
+public final class ReadRoute {
+
+    private static final ThreadLocal<Boolean> PRIMARY_REQUIRED = ThreadLocal.withInitial(() -> false);
+
+    private ReadRoute() {
+    }
+
+    /**
+     * Method to run a read on the primary. Only applies to connections opened inside the read,
+     * so the read must start its own transaction.
+     * @param read
+     * @return
+     */
+    public static <T> T onPrimary(Supplier<T> read) {
+        boolean previous = PRIMARY_REQUIRED.get();
+        PRIMARY_REQUIRED.set(true);
+        try {
+            return read.get();
+        } finally {
+            PRIMARY_REQUIRED.set(previous);
+        }
+    }
+
+    static boolean isPrimaryRequired() {
+        return PRIMARY_REQUIRED.get();
+    }
+
+}
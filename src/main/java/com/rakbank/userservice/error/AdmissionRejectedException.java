@@ -0,0 +1,21 @@
+package com.rakbank.userservice.error;
+
+import lombok.Getter;
+import org.springframework.http.HttpStatus;
+
+import java.util.List;
+
+/**
+ * A request turned away by admission control. The client may try again after retryAfterSeconds.
+ */
+@Getter
+public class AdmissionRejectedException extends DomainException {
+
+    private long retryAfterSeconds;
+
+    public AdmissionRejectedException(String message, HttpStatus httpStatus, long retryAfterSeconds) {
+        super(message, List.of(String.valueOf(retryAfterSeconds)), httpStatus);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+}
@@ -5,6 +5,10 @@ import org.springframework.http.HttpStatus;
 
 import java.util.List;
 
+/**
+ * An expected failure, answered to the client with the message of its key and an HTTP status.
+ * Carries no stack trace: it is raised for every rejected request, and the key says where it came from.
+ */
 @Getter
 public class DomainException extends RuntimeException {
     private HttpStatus httpStatus;
@@ -12,6 +16,7 @@ public class DomainException extends RuntimeException {
     private List<String> params;
 
     public DomainException(String message, List params, HttpStatus httpStatus) {
+        super(message, null, false, false);
         this.httpStatus = httpStatus;
         this.params = params;
         this.message = message;
@@ -29,7 +34,4 @@ public class DomainException extends RuntimeException {
         this(message, null, httpStatus);
     }
 
-
-
-
 }
@@ -0,0 +1,114 @@
+package com.rakbank.userservice.error;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.MessageSource;
+import org.springframework.context.i18n.LocaleContextHolder;
+import org.springframework.context.support.ResourceBundleMessageSource;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.MissingResourceException;
+import java.util.ResourceBundle;
+import java.util.Set;
+
+/**
+ * Resolves error message keys against messages.properties for the current locale.
+ * Messages without parameters are resolved once at startup for each of userservice.errors.locales,
+ * so answering an error is a map lookup.
+ */
+@Component
+public class ErrorMessageResolver {
+
+    @Autowired
+    MessageSource messageSource;
+
+    @Value("${userservice.errors.locales:en}")
+    List<Locale> locales = List.of(Locale.ENGLISH);
+
+    private Map<Locale, Map<String, String>> resolvedMessages = Map.of();
+    private Map<String, Map<String, String>> resolvedMessagesByLanguage = Map.of();
+
+    /**
+     * Method to resolve every key of the message bundles, for each configured locale and the default one.
+     */
+    @PostConstruct
+    public void preResolve() {
+        Set<Locale> allLocales = new LinkedHashSet<>(locales);
+        allLocales.add(Locale.getDefault());
+        Set<String> keys = keys();
+        Map<Locale, Map<String, String>> resolved = new HashMap<>();
+        Map<String, Map<String, String>> resolvedByLanguage = new HashMap<>();
+        for(Locale locale : allLocales) {
+            Map<String, String> messages = new HashMap<>();
+            for(String key : keys) {
+                messages.put(key, messageSource.getMessage(key, null, key, locale));
+            }
+            resolved.put(locale, Map.copyOf(messages));
+            if(locale.getCountry().isEmpty()) {
+                resolvedByLanguage.put(locale.getLanguage(), resolved.get(locale));
+            }
+        }
+        resolvedMessages = Map.copyOf(resolved);
+        resolvedMessagesByLanguage = Map.copyOf(resolvedByLanguage);
+    }
+
+    public String resolve(String key, List<String> params) {
+        return resolve(key, params, LocaleContextHolder.getLocale());
+    }
+
+    /**
+     * Method to resolve a key for an explicit locale, for code running off the request thread.
+     * @param key
+     * @param params
+     * @param locale
+     * @return
+     */
+    public String resolve(String key, List<String> params, Locale locale) {
+        if(null == params || params.isEmpty()) {
+            Map<String, String> messages = resolvedMessages(locale);
+            if(null != messages && messages.containsKey(key)) {
+                return messages.get(key);
+            }
+        }
+        // in worst case if there is no key found in resource file, the message will be same as key
+        return messageSource.getMessage(key, null != params ? params.toArray() : null, key, locale);
+    }
+
+    /**
+     * Method to list the messages resolved at startup, by locale then key.
+     * @return
+     */
+    public Map<Locale, Map<String, String>> getResolvedMessages() {
+        return resolvedMessages;
+    }
+
+    // Accept-Language usually names a country too (en-US), the table is built per language.
+    private Map<String, String> resolvedMessages(Locale locale) {
+        Map<String, String> messages = resolvedMessages.get(locale);
+        if(null == messages && !locale.getCountry().isEmpty()) {
+            messages = resolvedMessagesByLanguage.get(locale.getLanguage());
+        }
+        return messages;
+    }
+
+    private Set<String> keys() {
+        Set<String> keys = new LinkedHashSet<>();
+        if(messageSource instanceof ResourceBundleMessageSource resourceBundleMessageSource) {
+            for(String basename : resourceBundleMessageSource.getBasenameSet()) {
+                try {
+                    keys.addAll(ResourceBundle.getBundle(basename, Locale.ROOT).keySet());
+                } catch(MissingResourceException missingResourceException) {
+                    // a basename without a bundle has nothing to pre-resolve
+                }
+            }
+        }
+        return keys;
+    }
+
+}
@@ -0,0 +1,103 @@
+package com.rakbank.userservice.service;
+
+import com.rakbank.userservice.error.DomainException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Opaque cursor used by keyset pagination. The cursor wraps the ID of the last record
+ * returned, or the sort key and ID for pages ordered by another column, so clients can't
+ * depend on its format.
+ */
+public final class PageCursor {
+
+    private static final String PREFIX = "id:";
+
+    private static final String KEYED_PREFIX = "key:";
+
+    /**
+     * Position of the last record of a page ordered by (key, id).
+     */
+    public record Position(String key, Long id) {
+    }
+
+    private PageCursor() {
+    }
+
+    /**
+     * Method to build the cursor pointing after the given record id.
+     * @param lastId
+     * @return
+     */
+    public static String encode(Long lastId) {
+        String raw = PREFIX + lastId;
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Method to build the cursor pointing after the given sort key and record id.
+     * @param lastKey
+     * @param lastId
+     * @return
+     */
+    public static String encode(String lastKey, Long lastId) {
+        String raw = KEYED_PREFIX + lastId + ":" + lastKey;
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Method to read the record id back from a cursor. A blank cursor means start from the first record.
+     * @param cursor
+     * @return
+     */
+    public static Long decode(String cursor) {
+        if(cursor == null || cursor.isBlank()) {
+            return 0L;
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            if(!raw.startsWith(PREFIX)) {
+                throw new DomainException("pagination.cursor.invalid");
+            }
+            long lastId = Long.parseLong(raw.substring(PREFIX.length()));
+            if(lastId < 0) {
+                throw new DomainException("pagination.cursor.invalid");
+            }
+            return lastId;
+        } catch(IllegalArgumentException exc) {
+            // covers both bad base64 and a non numeric id
+            throw new DomainException("pagination.cursor.invalid");
+        }
+    }
+
+    /**
+     * Method to read the sort key and record id back from a keyed cursor. A blank cursor means start
+     * before the first record: an empty key and id 0.
+     * @param cursor
+     * @return
+     */
+    public static Position decodePosition(String cursor) {
+        if(cursor == null || cursor.isBlank()) {
+            return new Position("", 0L);
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = raw.indexOf(':', KEYED_PREFIX.length());
+            if(!raw.startsWith(KEYED_PREFIX) || separator < 0) {
+                throw new DomainException("pagination.cursor.invalid");
+            }
+            long lastId = Long.parseLong(raw.substring(KEYED_PREFIX.length(), separator));
+            if(lastId < 0) {
+                throw new DomainException("pagination.cursor.invalid");
+            }
+            return new Position(raw.substring(separator + 1), lastId);
+        } catch(IllegalArgumentException exc) {
+            // covers both bad base64 and a non numeric id
+            throw new DomainException("pagination.cursor.invalid");
+        }
+    }
+
+}
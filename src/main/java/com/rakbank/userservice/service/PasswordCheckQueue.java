@@ -0,0 +1,138 @@
+package com.rakbank.userservice.service;
+
+import com.rakbank.userservice.error.DomainException;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Password checks running or queued, by user, in order. Checks of one user run one at a time, in
+ * arrival order: a check of a password already running or queued joins it, any other check queues
+ * behind the last one. Only a digest of each password is kept, and only until its check completes.
+ * A user has at most maxPendingPerUser checks of different passwords at once, so a flood of guesses
+ * on one account can't queue the owner's login behind it for long; the excess gets HTTP 503.
+ */
+@Component
+public class PasswordCheckQueue {
+
+    private final int maxPendingPerUser;
+
+    // Lists are only read and changed inside compute() of their user.
+    private final Map<Long, List<PasswordCheck>> passwordChecks = new ConcurrentHashMap<>();
+
+    private final AtomicInteger pending = new AtomicInteger();
+
+    private final Timer waitTimer;
+
+    @Autowired
+    public PasswordCheckQueue(@Value("${userservice.hashing.verify-max-pending-per-user:8}") int maxPendingPerUser,
+                              MeterRegistry meterRegistry) {
+        this.maxPendingPerUser = Math.max(1, maxPendingPerUser);
+        Gauge.builder("userservice.password.verify.pending", pending, AtomicInteger::get)
+                .description("Password checks running or queued behind an earlier check of the same user")
+                .register(meterRegistry);
+        this.waitTimer = Timer.builder("userservice.password.verify.user-queued")
+                .description("Time a password check waited for the earlier checks of the same user")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Method to run the check of a password once the earlier checks of the user are done, or to join
+     * the check of the same password already running or queued.
+     * @param userId
+     * @param password
+     * @param check starts the check; only called when the check is not joined
+     * @return
+     * @throws DomainException with HTTP 503 when the user already has maxPendingPerUser checks
+     */
+    public CompletableFuture<Boolean> submit(Long userId, String password, Supplier<CompletableFuture<Boolean>> check) {
+
+        PasswordCheck passwordCheck = new PasswordCheck(digest(password), new CompletableFuture<>());
+        PasswordCheck[] joined = new PasswordCheck[1];
+        PasswordCheck[] previous = new PasswordCheck[1];
+        boolean[] queued = new boolean[1];
+        passwordChecks.compute(userId, (id, checks) -> {
+            List<PasswordCheck> queue = null != checks ? checks : new ArrayList<>();
+            for(PasswordCheck pendingCheck : queue) {
+                if(MessageDigest.isEqual(pendingCheck.digest(), passwordCheck.digest())) {
+                    joined[0] = pendingCheck;
+                    return queue;
+                }
+            }
+            if(queue.size() >= maxPendingPerUser) {
+                return queue;
+            }
+            previous[0] = queue.isEmpty() ? null : queue.get(queue.size() - 1);
+            queue.add(passwordCheck);
+            queued[0] = true;
+            return queue;
+        });
+
+        if(null != joined[0]) {
+            // A copy, so a caller cancelling its future doesn't cancel the others.
+            return joined[0].result().thenApply(verified -> verified);
+        }
+        if(!queued[0]) {
+            throw new DomainException("password.verify.busy", HttpStatus.SERVICE_UNAVAILABLE);
+        }
+        pending.incrementAndGet();
+        long submittedAt = System.nanoTime();
+        if(null == previous[0]) {
+            run(userId, passwordCheck, check, submittedAt);
+        } else {
+            previous[0].result().whenComplete((verified, exc) -> run(userId, passwordCheck, check, submittedAt));
+        }
+        return passwordCheck.result().thenApply(verified -> verified);
+    }
+
+    private void run(Long userId, PasswordCheck passwordCheck, Supplier<CompletableFuture<Boolean>> check, long submittedAt) {
+        waitTimer.record(System.nanoTime() - submittedAt, TimeUnit.NANOSECONDS);
+        CompletableFuture<Boolean> result;
+        try {
+            result = check.get();
+        } catch(RuntimeException exc) {
+            result = CompletableFuture.failedFuture(exc);
+        }
+        result.whenComplete((verified, exc) -> {
+            // Removed first, so a check of the same password arriving after this one completes runs again.
+            passwordChecks.computeIfPresent(userId, (id, checks) -> {
+                checks.remove(passwordCheck);
+                return checks.isEmpty() ? null : checks;
+            });
+            pending.decrementAndGet();
+            if(null != exc) {
+                passwordCheck.result().completeExceptionally(exc);
+            } else {
+                passwordCheck.result().complete(verified);
+            }
+        });
+    }
+
+    private byte[] digest(String password) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(password.getBytes(StandardCharsets.UTF_8));
+        } catch(NoSuchAlgorithmException noSuchAlgorithmException) {
+            throw new IllegalStateException(noSuchAlgorithmException);
+        }
+    }
+
+    private record PasswordCheck(byte[] digest, CompletableFuture<Boolean> result) {
+    }
+
+}
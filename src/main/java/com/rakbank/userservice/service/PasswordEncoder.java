@@ -1,17 +1,268 @@
 package com.rakbank.userservice.service;
 
-import at.favre.lib.crypto.bcrypt.BCrypt;
+import com.rakbank.userservice.error.DomainException;
+import com.rakbank.userservice.service.hashing.PasswordHashAlgorithm;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.http.HttpStatus;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Hashes new passwords with one algorithm, and verifies hashes of any configured algorithm.
+ * Hashing and verifying are timed per algorithm, under the 'algorithm' tag.
+ */
 public class PasswordEncoder {
 
-    private BCrypt.Hasher hasher;
+    private final Log LOGGER = LogFactory.getLog(this.getClass());
+
+    private PasswordHashAlgorithm algorithm;
+
+    private List<PasswordHashAlgorithm> algorithms;
+
+    private Executor hashingExecutor;
+
+    private Executor bulkHashingExecutor;
+
+    private int bulkParallelism;
+
+    private Executor verifyExecutor;
+
+    private Map<String, Timer> hashTimers = new LinkedHashMap<>();
+
+    private Map<String, Timer> verifyTimers = new LinkedHashMap<>();
 
-    public PasswordEncoder(BCrypt.Version version) {
-        hasher =  BCrypt.with(version);
+    private Timer queueWaitTimer;
+
+    private Timer verifyQueueWaitTimer;
+
+    /**
+     * @param algorithm hashes new passwords
+     * @param algorithms verify existing hashes. The algorithm above is added when it isn't listed.
+     * @param bulkParallelism hashes of one encodeAll call queued on the bulk hashing executor at once
+     */
+    public PasswordEncoder(PasswordHashAlgorithm algorithm, List<PasswordHashAlgorithm> algorithms,
+                           Executor hashingExecutor, Executor bulkHashingExecutor, int bulkParallelism,
+                           Executor verifyExecutor, MeterRegistry meterRegistry) {
+        this.algorithm = algorithm;
+        this.algorithms = new ArrayList<>();
+        this.algorithms.add(algorithm);
+        algorithms.stream()
+                .filter(verifier -> !verifier.getName().equals(algorithm.getName()))
+                .forEach(this.algorithms::add);
+        this.hashingExecutor = hashingExecutor;
+        this.bulkHashingExecutor = bulkHashingExecutor;
+        this.bulkParallelism = Math.max(1, bulkParallelism);
+        this.verifyExecutor = verifyExecutor;
+        for(PasswordHashAlgorithm verifier : this.algorithms) {
+            hashTimers.put(verifier.getName(), Timer.builder("userservice.password.hash")
+                    .description("Time spent hashing a password")
+                    .tag("algorithm", verifier.getName())
+                    .register(meterRegistry));
+            verifyTimers.put(verifier.getName(), Timer.builder("userservice.password.verify")
+                    .description("Time spent verifying a password")
+                    .tag("algorithm", verifier.getName())
+                    .register(meterRegistry));
+        }
+        Gauge.builder("userservice.password.hash.work-factor", algorithm, PasswordHashAlgorithm::getWorkFactor)
+                .description("Work factor of new password hashes")
+                .tag("algorithm", algorithm.getName())
+                .register(meterRegistry);
+        this.queueWaitTimer = Timer.builder("userservice.password.hash.queued")
+                .description("Time a password waited for a hashing thread")
+                .register(meterRegistry);
+        this.verifyQueueWaitTimer = Timer.builder("userservice.password.verify.queued")
+                .description("Time a password waited for a verification thread")
+                .register(meterRegistry);
     }
 
     public String encode(String password) {
-        return hasher.hashToString(5, password.toCharArray());
+        return hashTimers.get(algorithm.getName()).record(() -> algorithm.hash(password));
+    }
+
+    /**
+     * Method to check a password against its stored hash, with the algorithm that produced the hash.
+     * @param password
+     * @param encodedPassword
+     * @return false as well when no configured algorithm recognises the hash
+     */
+    public boolean verify(String password, String encodedPassword) {
+        PasswordHashAlgorithm verifier = algorithmOf(encodedPassword);
+        if(null == verifier) {
+            LOGGER.warn("Password hash of an unknown algorithm, not verified");
+            return false;
+        }
+        return verifyTimers.get(verifier.getName()).record(() -> verifier.verify(password, encodedPassword));
+    }
+
+    /**
+     * Method to check a password on the dedicated verification executor, off the request thread.
+     * When the password matches a hash below the current policy, the replacement hash is computed
+     * in the same task, so all the hashing work of a check stays on that executor.
+     * Fails fast with HTTP 503 when the executor queue is full.
+     * @param password
+     * @param encodedPassword
+     * @return
+     */
+    public CompletableFuture<Verification> verifyAsync(String password, String encodedPassword) {
+        long submittedAt = System.nanoTime();
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                verifyQueueWaitTimer.record(System.nanoTime() - submittedAt, TimeUnit.NANOSECONDS);
+                if(!verify(password, encodedPassword)) {
+                    return new Verification(false, null);
+                }
+                return new Verification(true, needsRehash(encodedPassword) ? encode(password) : null);
+            }, verifyExecutor);
+        } catch(RejectedExecutionException rejectedExecutionException) {
+            throw new DomainException("password.verify.busy", HttpStatus.SERVICE_UNAVAILABLE);
+        }
+    }
+
+    /**
+     * Method to tell whether a stored hash should be replaced, because it was produced by another
+     * algorithm or with a lower work factor than new hashes are.
+     * @param encodedPassword
+     * @return
+     */
+    public boolean needsRehash(String encodedPassword) {
+        return !algorithm.meetsPolicy(encodedPassword);
+    }
+
+    public PasswordHashAlgorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * Method to get the algorithm and work factor of new hashes, e.g. bcrypt:10.
+     * @return
+     */
+    public String getPolicy() {
+        return algorithm.getName() + ":" + algorithm.getWorkFactor();
+    }
+
+    private PasswordHashAlgorithm algorithmOf(String encodedPassword) {
+        if(null == encodedPassword) {
+            return null;
+        }
+        for(PasswordHashAlgorithm verifier : algorithms) {
+            if(verifier.supports(encodedPassword)) {
+                return verifier;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Method to hash a password on the dedicated hashing executor, off the request thread.
+     * Fails fast with HTTP 503 when the executor queue is full.
+     * @param password
+     * @return
+     */
+    public CompletableFuture<String> encodeAsync(String password) {
+        long submittedAt = System.nanoTime();
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                queueWaitTimer.record(System.nanoTime() - submittedAt, TimeUnit.NANOSECONDS);
+                return encode(password);
+            }, hashingExecutor);
+        } catch(RejectedExecutionException rejectedExecutionException) {
+            throw new DomainException("password.hashing.busy", HttpStatus.SERVICE_UNAVAILABLE);
+        }
+    }
+
+    /**
+     * Method to hash many passwords in parallel on the bulk hashing executor.
+     * Kept apart from the interactive executor so a large batch can't turn signups away.
+     * At most bulkParallelism hashes of the batch are queued at once; each one queues the next when
+     * it is done, so nothing is hashed on the calling thread and batches take turns on the pool.
+     * Fails fast with HTTP 503 when the executor queue is full.
+     * @param passwords
+     * @return hashes in the same order as the passwords
+     */
+    public CompletableFuture<List<String>> encodeAll(List<String> passwords) {
+        BulkEncoding bulkEncoding = new BulkEncoding(passwords);
+        if(passwords.isEmpty()) {
+            return CompletableFuture.completedFuture(List.of());
+        }
+        int workers = Math.min(bulkParallelism, passwords.size());
+        for(int worker = 0; worker < workers; worker++) {
+            try {
+                bulkHashingExecutor.execute(bulkEncoding::encodeNext);
+            } catch(RejectedExecutionException rejectedExecutionException) {
+                if(worker == 0) {
+                    throw new DomainException("password.hashing.busy", HttpStatus.SERVICE_UNAVAILABLE);
+                }
+                // The workers already queued hash the whole batch, only with less parallelism.
+                break;
+            }
+        }
+        return bulkEncoding.result;
+    }
+
+    /**
+     * Passwords of one encodeAll call. Each task hashes the next password, then queues itself again
+     * behind the work of other batches.
+     */
+    private class BulkEncoding {
+
+        private final List<String> passwords;
+        private final String[] hashes;
+        private final AtomicInteger next = new AtomicInteger();
+        private final AtomicInteger remaining;
+        private final CompletableFuture<List<String>> result = new CompletableFuture<>();
+
+        BulkEncoding(List<String> passwords) {
+            this.passwords = passwords;
+            this.hashes = new String[passwords.size()];
+            this.remaining = new AtomicInteger(passwords.size());
+        }
+
+        void encodeNext() {
+            int index;
+            while(!result.isDone() && (index = next.getAndIncrement()) < passwords.size()) {
+                try {
+                    hashes[index] = encode(passwords.get(index));
+                } catch(RuntimeException exc) {
+                    result.completeExceptionally(exc);
+                    return;
+                }
+                if(remaining.decrementAndGet() == 0) {
+                    result.complete(Arrays.asList(hashes));
+                    return;
+                }
+                if(next.get() >= passwords.size()) {
+                    return;
+                }
+                try {
+                    bulkHashingExecutor.execute(this::encodeNext);
+                    return;
+                } catch(RejectedExecutionException rejectedExecutionException) {
+                    // The queue is full. This is a bulk hashing thread already, so carry on here.
+                }
+            }
+        }
+    }
+
+    /**
+     * Outcome of a password check.
+     * @param verified
+     * @param newHash hash of the password with the current policy, when it matched an outdated hash. Else null.
+     */
+    public record Verification(boolean verified, String newHash) {
     }
 
 }
@@ -0,0 +1,293 @@
+package com.rakbank.userservice.service;
+
+import com.rakbank.userservice.dao.entity.PasswordRehashCheckpointEntity;
+import com.rakbank.userservice.dao.projection.PasswordHashView;
+import com.rakbank.userservice.dao.repository.PasswordRehashCheckpointRepository;
+import com.rakbank.userservice.dao.repository.UserRepository;
+import com.rakbank.userservice.error.DomainException;
+import com.rakbank.userservice.service.model.PasswordRehashJob;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import jakarta.annotation.PreDestroy;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.Limit;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Finds password hashes below the current hashing policy, after its algorithm or work factor changed,
+ * and sets NEEDS_REHASH on them. The flag is cleared when the password is hashed again.
+ *
+ * The users table is read in primary key order, one chunk at a time, and chunks are flagged by a few
+ * workers. The scan is kept in the background:
+ * - it uses at most userservice.rehash.max-connection-share of the primary pool, and waits while
+ *   requests are queuing for a connection;
+ * - each worker sleeps after a chunk so that it is busy at most userservice.rehash.max-cpu-share of the time.
+ * Progress is checkpointed per policy after every chunk, so a restarted service resumes the scan.
+ */
+@Service
+public class PasswordRehashService {
+
+    @Autowired
+    UserRepository userRepository;
+
+    @Autowired
+    PasswordRehashCheckpointRepository passwordRehashCheckpointRepository;
+
+    @Autowired
+    PasswordEncoder passwordEncoder;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @Autowired
+    @Qualifier("passwordRehashExecutor")
+    Executor passwordRehashExecutor;
+
+    // The primary pool. Absent when the DataSource isn't Hikari, and then the scan doesn't check the pool.
+    @Autowired
+    ObjectProvider<HikariDataSource> primaryDataSource;
+
+    @Value("${userservice.rehash.enabled:true}")
+    boolean enabled;
+
+    @Value("${userservice.rehash.chunk-size:500}")
+    int chunkSize;
+
+    @Value("${userservice.rehash.max-workers:2}")
+    int maxWorkers;
+
+    @Value("${userservice.rehash.max-connection-share:0.2}")
+    double maxConnectionShare;
+
+    @Value("${userservice.rehash.max-cpu-share:0.1}")
+    double maxCpuShare;
+
+    @Value("${userservice.rehash.backoff:PT1S}")
+    Duration backoff;
+
+    private final Log LOGGER = LogFactory.getLog(this.getClass());
+
+    private volatile PasswordRehashJob job;
+
+    private volatile boolean stopRequested;
+
+    /**
+     * Method to resume or start the scan for the current policy once the service is up, unless it
+     * has already completed.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void startOnReady() {
+        if(!enabled) {
+            return;
+        }
+        try {
+            boolean completed = passwordRehashCheckpointRepository.findById(passwordEncoder.getPolicy())
+                    .map(PasswordRehashCheckpointEntity::isCompleted)
+                    .orElse(false);
+            if(!completed) {
+                start();
+            }
+        } catch(DataAccessException exc) {
+            LOGGER.warn("Password rehash not started. Start it with POST /users/password-rehash.", exc);
+        }
+    }
+
+    /**
+     * Method to start the scan for the current policy. Resumes after the checkpoint of an unfinished scan,
+     * and scans again from the first user when the last one completed.
+     * @return
+     */
+    public synchronized PasswordRehashJob start() {
+        if(job != null && !job.isFinished()) {
+            throw new DomainException("password.rehash.alreadyRunning", HttpStatus.CONFLICT);
+        }
+
+        String policy = passwordEncoder.getPolicy();
+        PasswordRehashCheckpointEntity checkpoint = passwordRehashCheckpointRepository.findById(policy)
+                .orElseGet(() -> {
+                    PasswordRehashCheckpointEntity newCheckpoint = new PasswordRehashCheckpointEntity();
+                    newCheckpoint.setPolicy(policy);
+                    return newCheckpoint;
+                });
+        if(checkpoint.isCompleted()) {
+            checkpoint.setLastId(0L);
+            checkpoint.setScanned(0L);
+            checkpoint.setFlagged(0L);
+            checkpoint.setCompleted(false);
+        }
+
+        PasswordRehashJob newJob = new PasswordRehashJob(policy, checkpoint.getLastId(), checkpoint.getScanned(),
+                checkpoint.getFlagged());
+        stopRequested = false;
+        try {
+            passwordRehashExecutor.execute(() -> run(newJob, checkpoint));
+        } catch(RejectedExecutionException rejectedExecutionException) {
+            throw new DomainException("password.rehash.busy", HttpStatus.SERVICE_UNAVAILABLE);
+        }
+        job = newJob;
+        LOGGER.debug(String.format("Password rehash started. Policy [%s] Checkpoint [%d]", policy, checkpoint.getLastId()));
+        return newJob;
+    }
+
+    public PasswordRehashJob getJob() {
+        if(job == null) {
+            throw new DomainException("password.rehash.notStarted", HttpStatus.NOT_FOUND);
+        }
+        return job;
+    }
+
+    /**
+     * Method to stop the scan after the chunks in flight, so the checkpoint is up to date on shutdown.
+     */
+    @PreDestroy
+    public void stop() {
+        stopRequested = true;
+    }
+
+    void run(PasswordRehashJob job, PasswordRehashCheckpointEntity checkpoint) {
+        int workers = workers();
+        job.markRunning(workers);
+
+        // Chunks being flagged, oldest first. They are committed in this order, so the checkpoint never
+        // moves past a chunk that isn't flagged yet.
+        Deque<CompletableFuture<ChunkResult>> inFlight = new ArrayDeque<>(workers);
+        try {
+            long lastId = job.getCheckpoint();
+            boolean more = true;
+            while(more && !stopRequested) {
+                waitForIdleConnections();
+                List<PasswordHashView> chunk = userRepository.findPasswordHashesAfter(lastId, Limit.of(chunkSize));
+                if(chunk.isEmpty()) {
+                    break;
+                }
+                lastId = chunk.get(chunk.size() - 1).id();
+                more = chunk.size() == chunkSize;
+
+                inFlight.add(CompletableFuture.supplyAsync(() -> flagChunk(chunk), passwordRehashExecutor));
+                if(inFlight.size() >= workers) {
+                    checkpoint = commit(job, checkpoint, inFlight.poll().join());
+                }
+            }
+            while(!inFlight.isEmpty()) {
+                checkpoint = commit(job, checkpoint, inFlight.poll().join());
+            }
+
+            if(stopRequested) {
+                job.markFailed("password.rehash.stopped");
+                return;
+            }
+            checkpoint.setCompleted(true);
+            checkpoint.setUpdatedAt(Instant.now());
+            passwordRehashCheckpointRepository.save(checkpoint);
+            job.markCompleted();
+            LOGGER.info(String.format("Password rehash completed. Policy [%s] Scanned [%d] Flagged [%d]",
+                    job.getPolicy(), job.getScannedCount(), job.getFlaggedCount()));
+        } catch(RuntimeException exception) {
+            Throwable cause = exception instanceof CompletionException && exception.getCause() != null
+                    ? exception.getCause() : exception;
+            LOGGER.warn(String.format("Password rehash failed. Policy [%s] Checkpoint [%d]",
+                    job.getPolicy(), job.getCheckpoint()), cause);
+            job.markFailed("password.rehash.failed");
+        }
+    }
+
+    /**
+     * Method to flag the outdated hashes of a chunk, in one transaction.
+     * @param chunk
+     * @return
+     */
+    private ChunkResult flagChunk(List<PasswordHashView> chunk) {
+        long startedAt = System.nanoTime();
+        List<PasswordHashView> outdated = chunk.stream()
+                .filter(passwordHash -> passwordEncoder.needsRehash(passwordHash.password()))
+                .toList();
+
+        int flagged = 0;
+        if(!outdated.isEmpty()) {
+            flagged = transactionTemplate.execute(status -> {
+                int rows = 0;
+                for(PasswordHashView passwordHash : outdated) {
+                    rows += userRepository.flagForRehash(passwordHash.id(), passwordHash.password());
+                }
+                return rows;
+            });
+        }
+
+        pause(System.nanoTime() - startedAt);
+        return new ChunkResult(chunk.get(chunk.size() - 1).id(), chunk.size(), flagged);
+    }
+
+    private PasswordRehashCheckpointEntity commit(PasswordRehashJob job, PasswordRehashCheckpointEntity checkpoint,
+                                                  ChunkResult result) {
+        job.commitChunk(result.scanned(), result.flagged(), result.lastId());
+        checkpoint.setLastId(job.getCheckpoint());
+        checkpoint.setScanned(job.getScannedCount());
+        checkpoint.setFlagged(job.getFlaggedCount());
+        checkpoint.setUpdatedAt(Instant.now());
+        return passwordRehashCheckpointRepository.save(checkpoint);
+    }
+
+    /**
+     * Method to size the scan to its share of the primary pool. The scan itself holds one connection
+     * while it reads a chunk, each worker one while it flags.
+     * @return
+     */
+    private int workers() {
+        HikariDataSource dataSource = primaryDataSource.getIfUnique();
+        if(dataSource == null) {
+            return maxWorkers;
+        }
+        int share = (int) Math.floor(dataSource.getMaximumPoolSize() * maxConnectionShare) - 1;
+        return Math.max(1, Math.min(maxWorkers, share));
+    }
+
+    // Requests waiting for a connection mean live traffic already needs the whole pool.
+    private void waitForIdleConnections() {
+        HikariDataSource dataSource = primaryDataSource.getIfUnique();
+        HikariPoolMXBean pool = dataSource == null ? null : dataSource.getHikariPoolMXBean();
+        while(pool != null && pool.getThreadsAwaitingConnection() > 0 && !stopRequested) {
+            sleep(backoff.toNanos());
+        }
+    }
+
+    // Idle for as long as it takes to keep the worker busy at most maxCpuShare of the time.
+    private void pause(long busyNanos) {
+        if(maxCpuShare < 1d) {
+            sleep((long) (busyNanos * (1d - maxCpuShare) / maxCpuShare));
+        }
+    }
+
+    private void sleep(long nanos) {
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch(InterruptedException interruptedException) {
+            Thread.currentThread().interrupt();
+            stopRequested = true;
+        }
+    }
+
+    private record ChunkResult(long lastId, int scanned, int flagged) {
+    }
+
+}
@@ -0,0 +1,97 @@
+package com.rakbank.userservice.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingStream;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Reports where virtual threads get pinned to their carrier thread, i.e. block while inside a
+ * synchronized block or a native frame, from the JFR jdk.VirtualThreadPinned event.
+ * Pins are counted in userservice.virtual.pinned by site, the first application frame of the stack,
+ * and the stack of a site is logged the first time it shows up.
+ */
+public class PinnedThreadMonitor {
+
+    static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+
+    private static final String APPLICATION_PACKAGE = "com.rakbank.";
+
+    private final Log LOGGER = LogFactory.getLog(this.getClass());
+
+    private final MeterRegistry meterRegistry;
+    private final String eventName;
+    private final Duration threshold;
+
+    private final Set<String> reportedSites = ConcurrentHashMap.newKeySet();
+
+    private RecordingStream recordingStream;
+
+    public PinnedThreadMonitor(MeterRegistry meterRegistry, Duration threshold) {
+        this(meterRegistry, PINNED_EVENT, threshold);
+    }
+
+    PinnedThreadMonitor(MeterRegistry meterRegistry, String eventName, Duration threshold) {
+        this.meterRegistry = meterRegistry;
+        this.eventName = eventName;
+        this.threshold = threshold;
+    }
+
+    /**
+     * Method to start listening for pins longer than the threshold.
+     */
+    public void start() {
+        recordingStream = new RecordingStream();
+        recordingStream.enable(eventName).withThreshold(threshold).withStackTrace();
+        recordingStream.onEvent(eventName, this::report);
+        recordingStream.startAsync();
+    }
+
+    public void close() {
+        if(recordingStream != null) {
+            recordingStream.close();
+        }
+    }
+
+    void report(RecordedEvent event) {
+        RecordedStackTrace stackTrace = event.getStackTrace();
+        List<RecordedFrame> frames = null != stackTrace ? stackTrace.getFrames() : List.of();
+        String site = site(frames);
+        Counter.builder("userservice.virtual.pinned")
+                .description("Virtual threads that blocked while pinned to their carrier thread")
+                .tag("site", site)
+                .register(meterRegistry)
+                .increment();
+        if(reportedSites.add(site)) {
+            StringBuilder stack = new StringBuilder();
+            frames.forEach(frame -> stack.append(System.lineSeparator()).append("\tat ").append(method(frame))
+                    .append(':').append(frame.getLineNumber()));
+            LOGGER.warn(String.format("Virtual thread pinned for %d ms at %s%s",
+                    event.getDuration().toMillis(), site, stack));
+        }
+    }
+
+    // The application frame that led to the pin tells what to change, even when the blocking call is in a library.
+    private String site(List<RecordedFrame> frames) {
+        for(RecordedFrame frame : frames) {
+            if(frame.getMethod().getType().getName().startsWith(APPLICATION_PACKAGE)) {
+                return method(frame);
+            }
+        }
+        return frames.isEmpty() ? "unknown" : method(frames.get(0));
+    }
+
+    private static String method(RecordedFrame frame) {
+        return frame.getMethod().getType().getName() + "." + frame.getMethod().getName();
+    }
+
+}
@@ -0,0 +1,72 @@
+package com.rakbank.userservice.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Ids of users written in the last few seconds. Reads of those users go to the primary, so a client
+ * sees its own write even while the replicas are still catching up.
+ */
+@Component
+public class RecentWrites {
+
+    private final long windowNanos;
+    private final LongSupplier ticker;
+
+    // User id to the time its pin ends.
+    private final Map<Long, Long> pins = new ConcurrentHashMap<>();
+
+    @Autowired
+    public RecentWrites(@Value("${userservice.datasource.read-your-writes-window:PT5S}") Duration window) {
+        this(window, System::nanoTime);
+    }
+
+    RecentWrites(Duration window, LongSupplier ticker) {
+        this.windowNanos = window.toNanos();
+        this.ticker = ticker;
+    }
+
+    /**
+     * Method to pin reads of the user to the primary for the window.
+     * @param userId
+     */
+    public void record(Long userId) {
+        if(windowNanos > 0 && userId != null) {
+            pins.put(userId, ticker.getAsLong() + windowNanos);
+        }
+    }
+
+    /**
+     * Method to tell whether the user was written within the window.
+     * @param userId
+     * @return
+     */
+    public boolean contains(Long userId) {
+        Long pinnedUntil = pins.get(userId);
+        if(pinnedUntil == null) {
+            return false;
+        }
+        if(ticker.getAsLong() - pinnedUntil >= 0) {
+            pins.remove(userId, pinnedUntil);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Method to drop the pins that have ended, for users that were not read again.
+     */
+    @Scheduled(fixedDelayString = "PT1M")
+    public void purge() {
+        long now = ticker.getAsLong();
+        pins.entrySet().removeIf(pin -> now - pin.getValue() >= 0);
+    }
+
+}
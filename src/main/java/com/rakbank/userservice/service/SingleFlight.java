@@ -0,0 +1,90 @@
+package com.rakbank.userservice.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * In-flight table for loads. Callers asking for a key that is already being loaded wait for that
+ * load and share its result or exception, instead of running the same query again.
+ * A key is only in the table while its load runs; nothing is kept afterwards.
+ */
+public class SingleFlight {
+
+    private final Map<Object, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+
+    private final Counter loads;
+    private final Counter coalesced;
+
+    public SingleFlight(String name, MeterRegistry meterRegistry) {
+        this.loads = Counter.builder("userservice.reads")
+                .description("Reads by id or email, by whether they ran a query or joined one in flight")
+                .tag("lookup", name)
+                .tag("result", "loaded")
+                .register(meterRegistry);
+        this.coalesced = Counter.builder("userservice.reads")
+                .description("Reads by id or email, by whether they ran a query or joined one in flight")
+                .tag("lookup", name)
+                .tag("result", "coalesced")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Method to load the key, or wait for the load already running for it.
+     * @param key
+     * @param loader
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public <V> V load(Object key, Supplier<V> loader) {
+        CompletableFuture<Object> flight = new CompletableFuture<>();
+        CompletableFuture<Object> running = inFlight.putIfAbsent(key, flight);
+        if(running != null) {
+            coalesced.increment();
+            return (V) join(running);
+        }
+
+        loads.increment();
+        try {
+            V value = loader.get();
+            flight.complete(value);
+            return value;
+        } catch(RuntimeException | Error exc) {
+            flight.completeExceptionally(exc);
+            throw exc;
+        } finally {
+            inFlight.remove(key, flight);
+        }
+    }
+
+    /**
+     * Method to stop callers from joining the loads of the matching keys, e.g. after a write made
+     * their result stale. Loads already running finish for the callers that joined them.
+     * @param keys
+     */
+    public void forget(Predicate<Object> keys) {
+        inFlight.keySet().removeIf(keys);
+    }
+
+    private Object join(CompletableFuture<Object> running) {
+        try {
+            return running.join();
+        } catch(CompletionException exc) {
+            // Rethrow what the loader threw, as if this caller had run the load itself.
+            if(exc.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if(exc.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw exc;
+        }
+    }
+
+}
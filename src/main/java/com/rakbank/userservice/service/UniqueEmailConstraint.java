@@ -0,0 +1,40 @@
+package com.rakbank.userservice.service;
+
+import org.hibernate.exception.ConstraintViolationException;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.util.Locale;
+
+/**
+ * Recognises a violation of the user_email unique key (see db/changelogs/users.sql), so a duplicate
+ * email can be reported as user.email.alreadyRegistered instead of being checked with a SELECT first.
+ */
+final class UniqueEmailConstraint {
+
+    private static final String NAME = "user_email";
+
+    private UniqueEmailConstraint() {
+    }
+
+    /**
+     * Method to tell whether a failed write broke the unique email key. Any other integrity
+     * violation is left to the caller.
+     * MySQL reports the key as users.user_email, H2 as its index name, so the name is matched loosely.
+     * @param dataIntegrityViolationException
+     * @return
+     */
+    static boolean isViolatedBy(DataIntegrityViolationException dataIntegrityViolationException) {
+        for(Throwable cause = dataIntegrityViolationException; cause != null; cause = cause.getCause()) {
+            if(cause instanceof ConstraintViolationException constraintViolationException) {
+                String constraintName = constraintViolationException.getConstraintName();
+                if(constraintName != null) {
+                    return constraintName.toLowerCase(Locale.ROOT).contains(NAME);
+                }
+            }
+        }
+        // The dialect couldn't name the constraint; fall back to the driver's message.
+        String message = dataIntegrityViolationException.getMostSpecificCause().getMessage();
+        return message != null && message.toLowerCase(Locale.ROOT).contains(NAME);
+    }
+
+}
@@ -0,0 +1,236 @@
+package com.rakbank.userservice.service;
+
+import com.rakbank.userservice.service.model.User;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Bounded, in-process read-through cache of mapped users keyed by id.
+ * Entries are evicted least recently used once the cache is full, and expire after the TTL.
+ * Every entry carries the row version it was mapped from, so a reader that loaded a row before a
+ * concurrent write can't put the older copy back over the newer one. Writes that don't move the
+ * version are told apart by a generation of the cache, bumped on every evict.
+ * Guarded by a ReentrantLock rather than synchronized, so virtual threads waiting for it don't pin
+ * their carrier.
+ */
+@Component
+public class UserCache implements MeterBinder {
+
+    private final int maxSize;
+    private final long ttlNanos;
+    private final LongSupplier ticker;
+
+    private final Map<Long, Entry> entries;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // Guarded by lock.
+    private long generation;
+
+    @Autowired
+    public UserCache(@Value("${userservice.cache.max-size:10000}") int maxSize,
+                     @Value("${userservice.cache.ttl:PT5M}") Duration ttl) {
+        this(maxSize, ttl, System::nanoTime);
+    }
+
+    UserCache(int maxSize, Duration ttl, LongSupplier ticker) {
+        this.maxSize = maxSize;
+        this.ttlNanos = ttl.toNanos();
+        this.ticker = ticker;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+                if(size() > UserCache.this.maxSize) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Method to get a cached user. Counts a hit or a miss.
+     * @param id
+     * @return
+     */
+    public Optional<User> get(Long id) {
+        lock.lock();
+        try {
+            Entry entry = entries.get(id);
+            if(entry != null && isExpired(entry)) {
+                entries.remove(id);
+                evictions.increment();
+                entry = null;
+            }
+            if(entry == null || entry.user() == null) {
+                misses.increment();
+                return Optional.empty();
+            }
+            hits.increment();
+            return Optional.of(entry.user());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Method to get the generation of the cache, to be passed to put with a user read after it.
+     * @return
+     */
+    public long generation() {
+        lock.lock();
+        try {
+            return generation;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Method to cache a user that was just written, so is the latest copy of its row.
+     * @param user
+     */
+    public void put(User user) {
+        put(user, Long.MAX_VALUE);
+    }
+
+    /**
+     * Method to cache a user that was read. Ignored when the cache already knows about a newer version
+     * of the row, when the user was evicted after the read started, or when the user's version isn't known.
+     * @param user
+     * @param readGeneration generation() taken before the read
+     */
+    public void put(User user, long readGeneration) {
+        if(user == null || user.getId() == null || user.getVersion() == null) {
+            return;
+        }
+        lock.lock();
+        try {
+            Entry current = live(user.getId());
+            if(current != null && (current.version() > user.getVersion() || current.evictedAt() > readGeneration)) {
+                return;
+            }
+            entries.put(user.getId(), new Entry(user, user.getVersion(), evictedAt(current),
+                    ticker.getAsLong() + ttlNanos));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Method to drop a cached user after a write. Until the entry expires, only versions
+     * from minVersion onwards are accepted back into the cache.
+     * @param id
+     * @param minVersion
+     */
+    public void invalidate(Long id, int minVersion) {
+        lock.lock();
+        try {
+            Entry current = live(id);
+            if(current != null) {
+                minVersion = Math.max(minVersion, current.version());
+            }
+            entries.put(id, new Entry(null, minVersion, evictedAt(current), ticker.getAsLong() + ttlNanos));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Method to drop a cached user after a write that didn't move its version. The marker left behind
+     * only turns away reads that started before the evict, so the user is cached again on the next
+     * read. A version already required by invalidate is kept.
+     * @param id
+     */
+    public void evict(Long id) {
+        lock.lock();
+        try {
+            Entry current = live(id);
+            entries.put(id, new Entry(null, current != null ? current.version() : 0, ++generation,
+                    ticker.getAsLong() + ttlNanos));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Method to drop a cached user whose row no longer exists.
+     * @param id
+     */
+    public void invalidate(Long id) {
+        invalidate(id, Integer.MAX_VALUE);
+    }
+
+    public void clear() {
+        lock.lock();
+        try {
+            entries.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Stats stats() {
+        lock.lock();
+        try {
+            return new Stats(hits.sum(), misses.sum(), evictions.sum(), entries.size());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("userservice.cache.requests", hits, LongAdder::sum)
+                .tag("cache", "users").tag("result", "hit")
+                .register(registry);
+        FunctionCounter.builder("userservice.cache.requests", misses, LongAdder::sum)
+                .tag("cache", "users").tag("result", "miss")
+                .register(registry);
+        FunctionCounter.builder("userservice.cache.evictions", evictions, LongAdder::sum)
+                .tag("cache", "users")
+                .register(registry);
+        Gauge.builder("userservice.cache.size", this, cache -> cache.stats().size())
+                .tag("cache", "users")
+                .register(registry);
+    }
+
+    private boolean isExpired(Entry entry) {
+        return ticker.getAsLong() - entry.expiresAt() > 0;
+    }
+
+    private Entry live(Long id) {
+        Entry entry = entries.get(id);
+        return entry != null && !isExpired(entry) ? entry : null;
+    }
+
+    private long evictedAt(Entry entry) {
+        return entry != null ? entry.evictedAt() : 0;
+    }
+
+    // user is null for an invalidation marker. evictedAt is the generation of the last evict, 0 if none.
+    private record Entry(User user, int version, long evictedAt, long expiresAt) {
+    }
+
+    public record Stats(long hits, long misses, long evictions, int size) {
+    }
+
+}
@@ -0,0 +1,84 @@
+package com.rakbank.userservice.service;
+
+import com.rakbank.userservice.dao.repository.UserRepository;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Keeps an approximate count of users so list requests don't run a COUNT(*) every time.
+ * The service layer adjusts it on create and delete, and it is reconciled with the database
+ * in the background. A count older than the staleness bound is refreshed before it is served.
+ */
+@Component
+public class UserCountProvider {
+
+    @Autowired
+    UserRepository userRepository;
+
+    @Value("${userservice.users.count.max-staleness:PT1M}")
+    Duration maxStaleness;
+
+    private final Log LOGGER = LogFactory.getLog(this.getClass());
+
+    private final AtomicLong count = new AtomicLong();
+
+    private final ReentrantLock reconcileLock = new ReentrantLock();
+
+    // System.nanoTime() of the last reconcile. Zero means the count was never loaded.
+    private volatile long reconciledAt = 0L;
+
+    /**
+     * Method to get the user count, no older than the configured staleness bound.
+     * @return
+     */
+    public long getCount() {
+        if(isStale()) {
+            reconcileLock.lock();
+            try {
+                // Another request may have refreshed it while we waited for the lock.
+                if(isStale()) {
+                    reconcile();
+                }
+            } finally {
+                reconcileLock.unlock();
+            }
+        }
+        return Math.max(count.get(), 0L);
+    }
+
+    public void increment() {
+        count.incrementAndGet();
+    }
+
+    public void decrement() {
+        count.decrementAndGet();
+    }
+
+    /**
+     * Method to reload the count from the database.
+     */
+    @Scheduled(fixedDelayString = "${userservice.users.count.reconcile-interval:PT30S}",
+            initialDelayString = "${userservice.users.count.reconcile-interval:PT30S}")
+    public void reconcile() {
+        try {
+            count.set(userRepository.count());
+            reconciledAt = System.nanoTime();
+        } catch(DataAccessException exc) {
+            LOGGER.warn("User count reconcile failed. Keeping the last known count.", exc);
+        }
+    }
+
+    private boolean isStale() {
+        return reconciledAt == 0L || System.nanoTime() - reconciledAt > maxStaleness.toNanos();
+    }
+
+}
@@ -0,0 +1,148 @@
+package com.rakbank.userservice.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.rakbank.userservice.controller.dto.request.CreateUserRequestDto;
+import com.rakbank.userservice.error.DomainException;
+import com.rakbank.userservice.service.model.UserFileFormat;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Reads an uploaded import file one line at a time, so the upload is never held in memory.
+ * NDJSON files have one user object per line. CSV files need a header row naming the
+ * name, email and password columns; quoted fields may not span lines.
+ */
+class UserImportReader implements Closeable {
+
+    /**
+     * One line of the file. Exactly one of user and errorKey is set.
+     */
+    record ImportRecord(long line, CreateUserRequestDto user, String errorKey) {
+    }
+
+    private final BufferedReader reader;
+    private final UserFileFormat format;
+    private final ObjectReader jsonReader;
+
+    private long line;
+
+    // Column positions of name, email and password in a CSV file.
+    private int nameColumn = -1;
+    private int emailColumn = -1;
+    private int passwordColumn = -1;
+
+    UserImportReader(Path file, UserFileFormat format, ObjectReader jsonReader) throws IOException {
+        this.reader = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+        this.format = format;
+        this.jsonReader = jsonReader;
+        if(format == UserFileFormat.CSV) {
+            readCsvHeader();
+        }
+    }
+
+    /**
+     * Method to read the next record.
+     * @return null at the end of the file
+     * @throws IOException
+     */
+    ImportRecord next() throws IOException {
+        String text;
+        do {
+            text = reader.readLine();
+            if(text == null) {
+                return null;
+            }
+            line++;
+        } while(text.isBlank());
+
+        return format == UserFileFormat.CSV ? parseCsv(text) : parseJson(text);
+    }
+
+    private ImportRecord parseJson(String text) {
+        try {
+            return new ImportRecord(line, jsonReader.readValue(text), null);
+        } catch(JsonProcessingException jsonProcessingException) {
+            return new ImportRecord(line, null, "user.import.invalidRecord");
+        }
+    }
+
+    private ImportRecord parseCsv(String text) {
+        List<String> fields = splitCsv(text);
+        if(fields == null || fields.size() <= Math.max(nameColumn, Math.max(emailColumn, passwordColumn))) {
+            return new ImportRecord(line, null, "user.import.invalidRecord");
+        }
+        CreateUserRequestDto createUserRequestDto = new CreateUserRequestDto();
+        createUserRequestDto.setName(fields.get(nameColumn));
+        createUserRequestDto.setEmail(fields.get(emailColumn));
+        createUserRequestDto.setPassword(fields.get(passwordColumn));
+        return new ImportRecord(line, createUserRequestDto, null);
+    }
+
+    private void readCsvHeader() throws IOException {
+        String header = reader.readLine();
+        line++;
+        List<String> columns = header == null ? null : splitCsv(header);
+        if(columns != null) {
+            for(int i = 0; i < columns.size(); i++) {
+                switch(columns.get(i).trim().toLowerCase(Locale.ROOT)) {
+                    case "name" -> nameColumn = i;
+                    case "email" -> emailColumn = i;
+                    case "password" -> passwordColumn = i;
+                    default -> { }
+                }
+            }
+        }
+        if(nameColumn < 0 || emailColumn < 0 || passwordColumn < 0) {
+            throw new DomainException("user.import.invalidHeader");
+        }
+    }
+
+    /**
+     * Splits one CSV line. Returns null when a quoted field is not closed.
+     */
+    static List<String> splitCsv(String text) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for(int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if(quoted) {
+                if(c == '"' && i + 1 < text.length() && text.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if(c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if(c == '"') {
+                quoted = true;
+            } else if(c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if(quoted) {
+            return null;
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+}
@@ -0,0 +1,257 @@
+package com.rakbank.userservice.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.rakbank.userservice.controller.dto.request.CreateUserRequestDto;
+import com.rakbank.userservice.error.DomainException;
+import com.rakbank.userservice.service.api.UserService;
+import com.rakbank.userservice.service.model.ImportError;
+import com.rakbank.userservice.service.model.ImportJob;
+import com.rakbank.userservice.service.model.UserCreationResult;
+import com.rakbank.userservice.service.model.UserFileFormat;
+import jakarta.annotation.PostConstruct;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Runs bulk user imports in the background.
+ * The uploaded file is read record by record and written in chunks through UserService.createAll, so
+ * validation, duplicate checks, parallel hashing and batched inserts are the same as POST /users/batch.
+ * The job checkpoints after every committed insert; a failed job can be resumed from its checkpoint.
+ */
+@Service
+public class UserImportService {
+
+    @Autowired
+    UserService userService;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @Autowired
+    @Qualifier("userImportExecutor")
+    Executor userImportExecutor;
+
+    @Value("${userservice.import.chunk-size:500}")
+    int chunkSize;
+
+    @Value("${userservice.batch.max-size:1000}")
+    int maxBatchSize;
+
+    @Value("${userservice.import.max-errors:10000}")
+    int maxErrors;
+
+    @Value("${userservice.import.retention:PT24H}")
+    Duration retention;
+
+    private final Log LOGGER = LogFactory.getLog(this.getClass());
+
+    private final Map<String, ImportJob> jobs = new ConcurrentHashMap<>();
+
+    /**
+     * Method to refuse to start with chunks createAll would reject, which would fail every import.
+     */
+    @PostConstruct
+    public void checkChunkSize() {
+        if(chunkSize < 1 || chunkSize > maxBatchSize) {
+            throw new IllegalArgumentException(String.format(
+                    "userservice.import.chunk-size must be between 1 and userservice.batch.max-size (%d), was %d",
+                    maxBatchSize, chunkSize));
+        }
+    }
+
+    /**
+     * Method to start importing an uploaded file. The job takes ownership of the file.
+     * @param file
+     * @param format
+     * @return
+     */
+    public ImportJob submit(Path file, UserFileFormat format) {
+        ImportJob job = new ImportJob(file, format);
+        jobs.put(job.getId(), job);
+        try {
+            schedule(job);
+        } catch(DomainException domainException) {
+            jobs.remove(job.getId());
+            deleteFile(job);
+            throw domainException;
+        }
+        LOGGER.debug(String.format("User import queued. Job [%s]", job.getId()));
+        return job;
+    }
+
+    /**
+     * Method to restart a failed job after its last checkpoint.
+     * @param jobId
+     * @return
+     */
+    public ImportJob resume(String jobId) {
+        ImportJob job = getJob(jobId);
+        synchronized(job) {
+            if(job.getStatus() != ImportJob.Status.FAILED) {
+                throw new DomainException("user.import.notResumable", HttpStatus.CONFLICT);
+            }
+            job.markQueued();
+        }
+        try {
+            schedule(job);
+        } catch(DomainException domainException) {
+            job.markFailed(domainException.getMessage());
+            throw domainException;
+        }
+        return job;
+    }
+
+    public ImportJob getJob(String jobId) {
+        ImportJob job = jobs.get(jobId);
+        if(job == null) {
+            throw new DomainException("user.import.notExist", HttpStatus.NOT_FOUND);
+        }
+        return job;
+    }
+
+    /**
+     * Method to forget finished jobs once they are older than the retention period.
+     */
+    @Scheduled(fixedDelayString = "PT1H")
+    public void removeExpiredJobs() {
+        Instant expiry = Instant.now().minus(retention);
+        jobs.values().removeIf(job -> {
+            if(job.isFinished() && job.getFinishedAt().isBefore(expiry)) {
+                deleteFile(job);
+                return true;
+            }
+            return false;
+        });
+    }
+
+    private void schedule(ImportJob job) {
+        try {
+            userImportExecutor.execute(() -> run(job));
+        } catch(RejectedExecutionException rejectedExecutionException) {
+            throw new DomainException("user.import.busy", HttpStatus.SERVICE_UNAVAILABLE);
+        }
+    }
+
+    void run(ImportJob job) {
+        job.markRunning();
+        ObjectReader jsonReader = objectMapper.readerFor(CreateUserRequestDto.class);
+
+        try(UserImportReader reader = new UserImportReader(job.getFile(), job.getFormat(), jsonReader)) {
+            List<UserImportReader.ImportRecord> chunk = new ArrayList<>(chunkSize);
+            UserImportReader.ImportRecord record;
+            while((record = reader.next()) != null) {
+                // Already committed before the job was resumed.
+                if(record.line() <= job.getCheckpoint()) {
+                    continue;
+                }
+                chunk.add(record);
+                if(chunk.size() == chunkSize) {
+                    writeChunk(job, chunk);
+                    chunk.clear();
+                }
+            }
+            if(!chunk.isEmpty()) {
+                writeChunk(job, chunk);
+            }
+            job.markCompleted();
+            deleteFile(job);
+            LOGGER.debug(String.format("User import completed. Job [%s] Created [%d] Failed [%d]",
+                    job.getId(), job.getCreatedCount(), job.getFailedCount()));
+        } catch(DomainException domainException) {
+            job.markFailed(domainException.getMessage());
+        } catch(IOException | RuntimeException exception) {
+            Throwable cause = exception instanceof CompletionException && exception.getCause() != null
+                    ? exception.getCause() : exception;
+            LOGGER.warn(String.format("User import failed. Job [%s] Checkpoint [%d]", job.getId(), job.getCheckpoint()), cause);
+            job.markFailed(cause instanceof DomainException ? cause.getMessage() : "user.import.failed");
+        }
+    }
+
+    private void writeChunk(ImportJob job, List<UserImportReader.ImportRecord> chunk) {
+        List<CreateUserRequestDto> users = new ArrayList<>(chunk.size());
+        // Position in the chunk of each user sent to createAll.
+        List<Integer> userPositions = new ArrayList<>(chunk.size());
+        for(int position = 0; position < chunk.size(); position++) {
+            if(chunk.get(position).user() != null) {
+                users.add(chunk.get(position).user());
+                userPositions.add(position);
+            }
+        }
+
+        // createAll inserts in several transactions. The job follows each commit, so a failure
+        // halfway through the chunk leaves the checkpoint right after the last committed user.
+        ChunkCommit chunkCommit = new ChunkCommit(job, chunk);
+        List<UserCreationResult> results = users.isEmpty() ? List.of() : userService.createAll(users,
+                committed -> chunkCommit.commitUpTo(committed, committed.size() < userPositions.size()
+                        ? userPositions.get(committed.size()) : chunk.size())).join();
+        chunkCommit.commitUpTo(results, chunk.size());
+    }
+
+    /**
+     * Records of one chunk, committed to the job in order as their results become final.
+     */
+    private class ChunkCommit {
+
+        private final ImportJob job;
+        private final List<UserImportReader.ImportRecord> chunk;
+        // Next record of the chunk to commit, and the result of the next user record.
+        private int position;
+        private int resultIndex;
+
+        ChunkCommit(ImportJob job, List<UserImportReader.ImportRecord> chunk) {
+            this.job = job;
+            this.chunk = chunk;
+        }
+
+        void commitUpTo(List<UserCreationResult> results, int end) {
+            if(end <= position) {
+                return;
+            }
+            long created = 0;
+            List<ImportError> chunkErrors = new ArrayList<>();
+            for(; position < end; position++) {
+                UserImportReader.ImportRecord record = chunk.get(position);
+                if(record.user() == null) {
+                    chunkErrors.add(new ImportError(record.line(), List.of(record.errorKey())));
+                    continue;
+                }
+                UserCreationResult result = results.get(resultIndex++);
+                if(result.isCreated()) {
+                    created++;
+                } else {
+                    chunkErrors.add(new ImportError(record.line(), result.getErrors()));
+                }
+            }
+            job.commitChunk(created, chunkErrors, chunk.get(end - 1).line(), maxErrors);
+        }
+    }
+
+    private void deleteFile(ImportJob job) {
+        try {
+            Files.deleteIfExists(job.getFile());
+        } catch(IOException ioException) {
+            LOGGER.warn(String.format("Could not delete import file [%s]", job.getFile()), ioException);
+        }
+    }
+
+}
@@ -3,24 +3,52 @@ package com.rakbank.userservice.service;
 import com.rakbank.userservice.controller.dto.request.CreateUserRequestDto;
 import com.rakbank.userservice.controller.dto.request.ModifyUserRequestDto;
 import com.rakbank.userservice.dao.entity.UserEntity;
+import com.rakbank.userservice.dao.projection.PasswordHashView;
+import com.rakbank.userservice.dao.projection.UserField;
+import com.rakbank.userservice.dao.projection.UserView;
 import com.rakbank.userservice.dao.repository.UserRepository;
+import com.rakbank.userservice.dao.routing.ReadRoute;
 import com.rakbank.userservice.error.DomainException;
 import com.rakbank.userservice.service.api.UserService;
 import com.rakbank.userservice.service.model.PaginatedResponse;
 import com.rakbank.userservice.service.model.User;
+import com.rakbank.userservice.service.model.UserCreationResult;
+import com.rakbank.userservice.service.model.UserLookupResult;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.Page;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.http.HttpStatus;
-import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 public class UserServiceImpl implements UserService {
@@ -31,156 +59,710 @@ public class UserServiceImpl implements UserService {
     @Autowired
     PasswordEncoder passwordEncoder;
 
+    @Autowired
+    PasswordCheckQueue passwordCheckQueue;
+
+    @Autowired
+    UserCountProvider userCountProvider;
+
+    @Autowired
+    UserCache userCache;
+
+    @Autowired
+    RecentWrites recentWrites;
+
+    @Autowired
+    @Qualifier("userByIdLoads")
+    SingleFlight userByIdLoads;
+
+    @Autowired
+    @Qualifier("userByEmailLoads")
+    SingleFlight userByEmailLoads;
+
+    @Autowired
+    Validator validator;
+
+    @PersistenceContext
+    EntityManager entityManager;
+
+    @Value("${userservice.batch.max-size:1000}")
+    int maxBatchSize;
+
+    @Value("${userservice.lookup.max-ids:500}")
+    int maxLookupIds;
+
     private final Log LOGGER = LogFactory.getLog(this.getClass());
 
     private int DEFAULT_PAGE_SIZE=10;
 
+    // Users saved per transaction in batch creation. Hibernate splits each chunk into JDBC batches.
+    private int INSERT_CHUNK_SIZE=100;
+
+    // Ids per IN clause in a lookup, so a large lookup doesn't build one huge statement.
+    private int LOOKUP_CHUNK_SIZE=200;
+
     /**
      * Method to create a new User.
+     * The password is hashed on the hashing executor and the user is inserted once the hash is ready.
+     * There is no lookup by email first: a duplicate is caught from the user_email unique key, which
+     * also covers two signups racing for the same email.
      * @param createUserRequestDto
      * @return
      */
     @Override
-    public User create(CreateUserRequestDto createUserRequestDto) {
+    public CompletableFuture<User> create(CreateUserRequestDto createUserRequestDto) {
+
+        return passwordEncoder.encodeAsync(createUserRequestDto.getPassword())
+                .thenApply(passwordHash -> {
+                    UserEntity userEntity = newUserEntity(createUserRequestDto.getName(),
+                            createUserRequestDto.getEmail(), passwordHash);
+
+                    try {
+                        userRepository.saveAndFlush(userEntity);
+                    } catch(DataIntegrityViolationException dataIntegrityViolationException) {
+                        if(!UniqueEmailConstraint.isViolatedBy(dataIntegrityViolationException)) {
+                            throw dataIntegrityViolationException;
+                        }
+                        LOGGER.debug(String.format("User creation failed. Duplicate Email [%s]", createUserRequestDto.getEmail()));
+                        throw new DomainException("user.email.alreadyRegistered");
+                    }
+                    userCountProvider.increment();
+                    LOGGER.debug(String.format("User created successfully. Email [%s]", createUserRequestDto.getEmail()));
+
+                    User user = mapUserEntityToUser(userEntity);
+                    userCache.put(user);
+                    recentWrites.record(user.getId());
+                    forgetLoads(user.getId());
+                    return user;
+                });
+    }
+
+    /**
+     * Method to create many users at once.
+     * Each record is validated on its own, duplicate emails are found with a single query, passwords are
+     * hashed in parallel and the users are inserted in JDBC batches. A bad record never fails the others.
+     * @param createUserRequestDtos
+     * @return one result per record, in request order
+     */
+    @Override
+    public CompletableFuture<List<UserCreationResult>> createAll(List<CreateUserRequestDto> createUserRequestDtos) {
+        return createAll(createUserRequestDtos, committed -> {});
+    }
 
-        Optional<UserEntity> userEntityOptional = userRepository.findByEmail(createUserRequestDto.getEmail());
+    /**
+     * Method to create many users at once, reporting every committed insert.
+     * Records before the next accepted one that isn't inserted yet have their final result, so each
+     * commit reports the results up to that record.
+     * @param createUserRequestDtos
+     * @param committed
+     * @return one result per record, in request order
+     */
+    @Override
+    public CompletableFuture<List<UserCreationResult>> createAll(List<CreateUserRequestDto> createUserRequestDtos,
+                                                                 Consumer<List<UserCreationResult>> committed) {
 
-        if(userEntityOptional.isPresent()) {
-            LOGGER.debug(String.format("User creation failed. Duplicate Email [%s]", createUserRequestDto.getEmail()));
-            throw new DomainException("user.email.alreadyRegistered");
+        if(createUserRequestDtos == null || createUserRequestDtos.isEmpty()) {
+            throw new DomainException("user.batch.empty");
+        }
+        if(createUserRequestDtos.size() > maxBatchSize) {
+            throw new DomainException("user.batch.tooLarge", List.of(String.valueOf(maxBatchSize)));
         }
 
-        UserEntity userEntity = new UserEntity();
-        userEntity.setName(createUserRequestDto.getName());
-        userEntity.setPassword(passwordEncoder.encode(createUserRequestDto.getPassword()));
-        userEntity.setEmail(createUserRequestDto.getEmail());
+        List<UserCreationResult> results = new ArrayList<>(createUserRequestDtos.size());
+        List<Integer> acceptedIndexes = new ArrayList<>();
+        Set<String> batchEmails = new HashSet<>();
+
+        for(int index = 0; index < createUserRequestDtos.size(); index++) {
+            CreateUserRequestDto createUserRequestDto = createUserRequestDtos.get(index);
+            UserCreationResult result = new UserCreationResult();
+            result.setIndex(index);
+            results.add(result);
+
+            if(createUserRequestDto == null) {
+                result.setErrors(List.of("user.batch.invalidRecord"));
+                continue;
+            }
+
+            List<String> errors = validator.validate(createUserRequestDto).stream()
+                    .map(ConstraintViolation::getMessage)
+                    .distinct()
+                    .sorted()
+                    .collect(Collectors.toList());
+            if(!errors.isEmpty()) {
+                result.setErrors(errors);
+            } else if(!batchEmails.add(normalizeEmail(createUserRequestDto.getEmail()))) {
+                result.setErrors(List.of("user.email.alreadyRegistered"));
+            } else {
+                acceptedIndexes.add(index);
+            }
+        }
 
-        userRepository.save(userEntity);
-        LOGGER.debug(String.format("User created successfully. Email [%s]", createUserRequestDto.getEmail()));
+        if(!acceptedIndexes.isEmpty()) {
+            List<String> emails = acceptedIndexes.stream()
+                    .map(index -> createUserRequestDtos.get(index).getEmail())
+                    .collect(Collectors.toList());
+            Set<String> existingEmails = userRepository.findExistingEmails(emails).stream()
+                    .map(this::normalizeEmail)
+                    .collect(Collectors.toSet());
+            acceptedIndexes.removeIf(index -> {
+                if(existingEmails.contains(normalizeEmail(createUserRequestDtos.get(index).getEmail()))) {
+                    results.get(index).setErrors(List.of("user.email.alreadyRegistered"));
+                    return true;
+                }
+                return false;
+            });
+        }
 
-        return mapUserEntityToUser(userEntity);
+        if(acceptedIndexes.isEmpty()) {
+            return CompletableFuture.completedFuture(results);
+        }
+
+        List<String> passwords = acceptedIndexes.stream()
+                .map(index -> createUserRequestDtos.get(index).getPassword())
+                .collect(Collectors.toList());
+
+        return passwordEncoder.encodeAll(passwords)
+                .thenApply(passwordHashes -> {
+                    for(int from = 0; from < acceptedIndexes.size(); from += INSERT_CHUNK_SIZE) {
+                        int to = Math.min(from + INSERT_CHUNK_SIZE, acceptedIndexes.size());
+                        List<UserEntity> userEntities = new ArrayList<>(to - from);
+                        List<UserCreationResult> chunkResults = new ArrayList<>(to - from);
+                        for(int i = from; i < to; i++) {
+                            int index = acceptedIndexes.get(i);
+                            CreateUserRequestDto createUserRequestDto = createUserRequestDtos.get(index);
+                            userEntities.add(newUserEntity(createUserRequestDto.getName(),
+                                    createUserRequestDto.getEmail(), passwordHashes.get(i)));
+                            chunkResults.add(results.get(index));
+                        }
+                        int chunkStart = from;
+                        insertChunk(userEntities, chunkResults, committedRecords -> {
+                            int next = chunkStart + committedRecords;
+                            committed.accept(results.subList(0,
+                                    next < acceptedIndexes.size() ? acceptedIndexes.get(next) : results.size()));
+                        });
+                    }
+                    LOGGER.debug(String.format("Batch creation finished. Records [%d] Created [%d]",
+                            results.size(), results.stream().filter(UserCreationResult::isCreated).count()));
+                    return results;
+                });
     }
 
     /**
      * Method to get user by ID.
+     * A cached user is returned whole. Otherwise only the columns of the given fields are read, and
+     * only a whole user is cached.
      * @param id
+     * @param fields
      * @return
      */
     @Override
-    public User findById(Long id) {
+    public User findById(Long id, Set<UserField> fields) {
 
-        Optional<UserEntity> userEntityOptional = userRepository.findById(id);
+        Optional<User> cachedUser = userCache.get(id);
+        if(cachedUser.isPresent()) {
+            return cachedUser.get();
+        }
 
-        if(!userEntityOptional.isPresent()) {
+        boolean allFields = fields.containsAll(UserField.ALL);
+        long cacheGeneration = userCache.generation();
+        // A replica may not have the user's latest write yet.
+        boolean onPrimary = recentWrites.contains(id);
+        Supplier<Optional<UserView>> read = allFields
+                ? () -> userRepository.findViewById(id)
+                : () -> userRepository.findViewById(id, fields);
+        // Concurrent reads of the same user share one query, and its result or exception.
+        Optional<UserView> userViewOptional = userByIdLoads.load(new UserByIdLoad(id, fields, onPrimary),
+                () -> onPrimary ? ReadRoute.onPrimary(read) : read.get());
+
+        if(!userViewOptional.isPresent()) {
             throw new DomainException("user.notExist", HttpStatus.NOT_FOUND);
         }
 
-        return mapUserEntityToUser(userEntityOptional.get());
+        User user = mapUserViewToUser(userViewOptional.get());
+        if(allFields) {
+            userCache.put(user, cacheGeneration);
+        }
+        return user;
+    }
+
+    /**
+     * Method to get many users by id. Cached users are served from the cache and the rest are read
+     * with one IN query per LOOKUP_CHUNK_SIZE ids, all from the primary when any of them was written
+     * within the read-your-writes window.
+     * @param ids
+     * @return users in request order, and the ids that have no user
+     */
+    @Override
+    public UserLookupResult findByIds(List<Long> ids) {
+
+        if(ids == null || ids.isEmpty()) {
+            throw new DomainException("user.lookup.empty");
+        }
+        // A repeated id is only looked up and returned once.
+        List<Long> uniqueIds = ids.stream()
+                .filter(Objects::nonNull)
+                .distinct()
+                .collect(Collectors.toList());
+        if(uniqueIds.size() > maxLookupIds) {
+            throw new DomainException("user.lookup.tooLarge", List.of(String.valueOf(maxLookupIds)));
+        }
+
+        Map<Long, User> usersById = new HashMap<>();
+        List<Long> uncachedIds = new ArrayList<>();
+        for(Long id : uniqueIds) {
+            Optional<User> cachedUser = userCache.get(id);
+            if(cachedUser.isPresent()) {
+                usersById.put(id, cachedUser.get());
+            } else {
+                uncachedIds.add(id);
+            }
+        }
+
+        Supplier<List<UserView>> read = () -> {
+            List<UserView> userViews = new ArrayList<>(uncachedIds.size());
+            for(int from = 0; from < uncachedIds.size(); from += LOOKUP_CHUNK_SIZE) {
+                userViews.addAll(userRepository.findViewsByIdIn(
+                        uncachedIds.subList(from, Math.min(from + LOOKUP_CHUNK_SIZE, uncachedIds.size()))));
+            }
+            return userViews;
+        };
+        long cacheGeneration = userCache.generation();
+        // Decided once for the whole lookup, so every chunk reads from the same side.
+        boolean onPrimary = uncachedIds.stream().anyMatch(recentWrites::contains);
+        for(UserView userView : onPrimary ? ReadRoute.onPrimary(read) : read.get()) {
+            User user = mapUserViewToUser(userView);
+            userCache.put(user, cacheGeneration);
+            usersById.put(user.getId(), user);
+        }
+
+        List<User> users = new ArrayList<>(usersById.size());
+        List<Long> missingIds = new ArrayList<>();
+        for(Long id : uniqueIds) {
+            User user = usersById.get(id);
+            if(user != null) {
+                users.add(user);
+            } else {
+                missingIds.add(id);
+            }
+        }
+
+        UserLookupResult userLookupResult = new UserLookupResult();
+        userLookupResult.setUsers(users);
+        userLookupResult.setMissingIds(missingIds);
+        return userLookupResult;
     }
 
     /**
      * Method to get all users for the given page number.
+     * Totals come from the cached user count, or are left out when withCount is false.
      * @param pageNumber
+     * @param withCount
+     * @param fields
      * @return
      */
     @Override
-    public PaginatedResponse<User> findAll(Integer pageNumber) {
+    public PaginatedResponse<User> findAll(Integer pageNumber, boolean withCount, Set<UserField> fields) {
 
         if(pageNumber < 1L) {
             throw new DomainException("Invalid Page Number. Must be minimum 1");
         }
 
+        // A Slice only fetches the page (plus one row to detect a next page), never a COUNT(*).
         Pageable page = PageRequest.of(pageNumber-1, DEFAULT_PAGE_SIZE);
-        Page<UserEntity> userEntityPage = userRepository.findAll(page);
+        Slice<UserView> userViewSlice = fields.containsAll(UserField.ALL)
+                ? userRepository.findViewsBy(page)
+                : userRepository.findViewsBy(fields, page);
 
-        List<User> users = userEntityPage.stream()
-                .map(this::mapUserEntityToUser)
+        List<User> users = userViewSlice.stream()
+                .map(this::mapUserViewToUser)
                 .collect(Collectors.toList());
 
         PaginatedResponse<User> paginatedResponse = new PaginatedResponse<>();
         paginatedResponse.setRecords(users);
         paginatedResponse.setPageSize(DEFAULT_PAGE_SIZE);
         paginatedResponse.setPageNumber(pageNumber);
-        paginatedResponse.setTotalRecords(userEntityPage.getTotalElements());
-        paginatedResponse.setTotalPages(userEntityPage.getTotalPages());
+
+        if(withCount) {
+            long totalRecords = userCountProvider.getCount();
+            paginatedResponse.setTotalRecords(totalRecords);
+            paginatedResponse.setTotalPages((int) ((totalRecords + DEFAULT_PAGE_SIZE - 1) / DEFAULT_PAGE_SIZE));
+        }
+
+        // Lets page mode clients switch over to cursor mode from any page.
+        if(userViewSlice.hasNext() && !users.isEmpty()) {
+            paginatedResponse.setNextCursor(PageCursor.encode(users.get(users.size()-1).getId()));
+        }
+
+        return paginatedResponse;
+    }
+
+    /**
+     * Method to get the page of users after the given cursor.
+     * Seeks on the primary key, so a late page costs the same as the first one.
+     * @param cursor
+     * @param fields
+     * @return
+     */
+    @Override
+    public PaginatedResponse<User> findAllAfter(String cursor, Set<UserField> fields) {
+
+        Long lastId = PageCursor.decode(cursor);
+
+        // One extra row tells us whether there is a next page without a count query.
+        Limit limit = Limit.of(DEFAULT_PAGE_SIZE + 1);
+        List<UserView> userViews = fields.containsAll(UserField.ALL)
+                ? userRepository.findViewsAfter(lastId, limit)
+                : userRepository.findViewsAfter(lastId, fields, limit);
+        boolean hasNext = userViews.size() > DEFAULT_PAGE_SIZE;
+
+        List<User> users = userViews.stream()
+                .limit(DEFAULT_PAGE_SIZE)
+                .map(this::mapUserViewToUser)
+                .collect(Collectors.toList());
+
+        PaginatedResponse<User> paginatedResponse = new PaginatedResponse<>();
+        paginatedResponse.setRecords(users);
+        paginatedResponse.setPageSize(DEFAULT_PAGE_SIZE);
+        if(hasNext) {
+            paginatedResponse.setNextCursor(PageCursor.encode(users.get(users.size()-1).getId()));
+        }
 
         return paginatedResponse;
     }
 
     /**
-     * Method to change user password.
+     * Method to search users by exact email, email prefix or name prefix.
+     * Each mode seeks on its own index (see users_search.sql); emails are compared lower-cased.
+     * @param email
+     * @param emailPrefix
+     * @param namePrefix
+     * @param after
+     * @return
+     */
+    @Override
+    public PaginatedResponse<User> search(String email, String emailPrefix, String namePrefix, String after) {
+
+        long criteriaCount = Stream.of(email, emailPrefix, namePrefix)
+                .filter(criteria -> criteria != null && !criteria.isBlank())
+                .count();
+        if(criteriaCount != 1) {
+            throw new DomainException("user.search.criteria");
+        }
+
+        PageCursor.Position position = PageCursor.decodePosition(after);
+        // One extra row tells us whether there is a next page without a count query.
+        Limit limit = Limit.of(DEFAULT_PAGE_SIZE + 1);
+
+        List<UserView> userViews;
+        Function<UserView, String> sortKey;
+        if(email != null && !email.isBlank()) {
+            String normalizedEmail = normalizeEmail(email);
+            userViews = userByEmailLoads.load(new UserByEmailLoad(normalizedEmail, position.id()),
+                    () -> userRepository.searchByEmail(normalizedEmail, position.id(), limit));
+            sortKey = userView -> "";
+        } else if(emailPrefix != null && !emailPrefix.isBlank()) {
+            userViews = userRepository.searchByEmailPrefix(likePrefix(normalizeEmail(emailPrefix)),
+                    position.key(), position.id(), limit);
+            sortKey = userView -> normalizeEmail(userView.email());
+        } else {
+            userViews = userRepository.searchByNamePrefix(likePrefix(namePrefix),
+                    position.key(), position.id(), limit);
+            sortKey = UserView::name;
+        }
+        boolean hasNext = userViews.size() > DEFAULT_PAGE_SIZE;
+
+        List<User> users = userViews.stream()
+                .limit(DEFAULT_PAGE_SIZE)
+                .map(this::mapUserViewToUser)
+                .collect(Collectors.toList());
+
+        PaginatedResponse<User> paginatedResponse = new PaginatedResponse<>();
+        paginatedResponse.setRecords(users);
+        paginatedResponse.setPageSize(DEFAULT_PAGE_SIZE);
+        if(hasNext) {
+            UserView last = userViews.get(DEFAULT_PAGE_SIZE - 1);
+            paginatedResponse.setNextCursor(PageCursor.encode(sortKey.apply(last), last.id()));
+        }
+
+        return paginatedResponse;
+    }
+
+    /**
+     * Method to stream every user to the consumer in id order.
+     * Rows come through a forward-only cursor and are detached once mapped, so memory stays flat
+     * however large the table is.
+     * @param consumer
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public void exportAll(Consumer<User> consumer) {
+
+        try(Stream<UserEntity> userEntities = userRepository.streamAll()) {
+            userEntities.forEach(userEntity -> {
+                User user = mapUserEntityToUser(userEntity);
+                entityManager.detach(userEntity);
+                consumer.accept(user);
+            });
+        }
+    }
+
+    /**
+     * Method to change user password. The new password is hashed on the hashing executor, then
+     * written by one UPDATE. With an expected version the UPDATE only applies to that version.
      * @param userId
      * @param newPassword
+     * @param expectedVersion
      */
     @Override
-    public void changePassword(Long userId, String newPassword) {
+    public CompletableFuture<Void> changePassword(Long userId, String newPassword, Integer expectedVersion) {
+
+        return passwordEncoder.encodeAsync(newPassword)
+                .thenAccept(passwordHash -> {
+                    int updated = null != expectedVersion
+                            ? userRepository.updatePasswordIfVersion(userId, expectedVersion, passwordHash)
+                            : userRepository.updatePassword(userId, passwordHash);
+                    if(updated == 0) {
+                        throw notFoundOrVersionMismatch(userId, expectedVersion);
+                    }
+                    onUserWritten(userId, expectedVersion);
+                });
+    }
 
-        Optional<UserEntity> userEntityOptional = userRepository.findById(userId);
+    /**
+     * Method to check a user password on the password verification executor.
+     * Checks of one user run one at a time, in arrival order: a check of a password already running or
+     * queued joins it, any other check queues behind the last one. A flood on one account costs one hash
+     * at a time, and past userservice.hashing.verify-max-pending-per-user checks of the account it gets
+     * HTTP 503 instead of queueing further ahead of the owner's login.
+     * A matching hash below the current policy is replaced by the hash computed during the check.
+     * @param userId
+     * @param password
+     * @return
+     */
+    @Override
+    public CompletableFuture<Boolean> verifyPassword(Long userId, String password) {
 
-        if(!userEntityOptional.isPresent()) {
-            throw new DomainException("user.notExist", HttpStatus.NOT_FOUND);
-        }
+        return passwordCheckQueue.submit(userId, password, () -> checkPassword(userId, password));
+    }
+
+    private CompletableFuture<Boolean> checkPassword(Long userId, String password) {
+
+        // Asks the primary: a password that was just changed must not be checked against a replica behind it.
+        PasswordHashView stored = ReadRoute.onPrimary(() -> userRepository.findPasswordHashById(userId))
+                .orElseThrow(() -> new DomainException("user.notExist", HttpStatus.NOT_FOUND));
 
-        UserEntity userEntity = userEntityOptional.get();
-        userEntity.setPassword(passwordEncoder.encode(newPassword));
+        return passwordEncoder.verifyAsync(password, stored.password())
+                .thenApply(verification -> {
+                    if(null != verification.newHash()) {
+                        rehashPassword(userId, stored.password(), verification.newHash());
+                    }
+                    return verification.verified();
+                });
+    }
 
+    private void rehashPassword(Long userId, String oldHash, String newHash) {
         try {
-            userRepository.save(userEntity);
-        } catch(ObjectOptimisticLockingFailureException optimisticEntityLockException) {
-            throw new DomainException("concurrentModificationError");
+            if(userRepository.rehashPassword(userId, oldHash, newHash) == 1) {
+                LOGGER.debug(String.format("Password of user [%s] rehashed on verification", userId));
+                // The version didn't move, so later reads may cache the user again straight away. The evict
+                // comes last: a read that starts after it goes to the primary, and can't join an older load.
+                recentWrites.record(userId);
+                forgetLoads(userId);
+                userCache.evict(userId);
+            }
+        } catch(DataAccessException dataAccessException) {
+            // The password did match. The hash is replaced on a later check, or flagged by the rehash scan.
+            LOGGER.warn(String.format("Password of user [%s] could not be rehashed", userId), dataAccessException);
         }
     }
 
     /**
-     * Method to modify user details.
+     * Method to modify user details in one UPDATE, without reading the row first.
+     * With an expected version the UPDATE only applies to that version.
      * @param userId
      * @param modifyUserRequestDto
+     * @param expectedVersion
      * @return
      */
     @Override
-    public User updateUser(Long userId, ModifyUserRequestDto modifyUserRequestDto) {
+    public User updateUser(Long userId, ModifyUserRequestDto modifyUserRequestDto, Integer expectedVersion) {
 
-        Optional<UserEntity> userEntityOptional = userRepository.findById(userId);
+        int updated;
+        try {
+            updated = null != expectedVersion
+                    ? userRepository.updateDetailsIfVersion(userId, expectedVersion,
+                            modifyUserRequestDto.getName(), modifyUserRequestDto.getEmail())
+                    : userRepository.updateDetails(userId,
+                            modifyUserRequestDto.getName(), modifyUserRequestDto.getEmail());
+        } catch(DataIntegrityViolationException dataIntegrityViolationException) {
+            if(!UniqueEmailConstraint.isViolatedBy(dataIntegrityViolationException)) {
+                throw dataIntegrityViolationException;
+            }
+            LOGGER.debug(String.format("User update failed. Duplicate Email [%s]", modifyUserRequestDto.getEmail()));
+            throw new DomainException("user.email.alreadyRegistered");
+        }
 
-        if(!userEntityOptional.isPresent()) {
-            throw new DomainException("user.notExist", HttpStatus.NOT_FOUND);
+        if(updated == 0) {
+            throw notFoundOrVersionMismatch(userId, expectedVersion);
         }
+        Integer version = onUserWritten(userId, expectedVersion);
 
-        UserEntity userEntity = userEntityOptional.get();
+        // The row now holds exactly what was written. The password hash isn't read back.
+        User user = new User();
+        user.setId(userId);
+        user.setName(modifyUserRequestDto.getName());
+        user.setEmail(modifyUserRequestDto.getEmail());
+        // Without If-Match the version read back may already be a later write's, so no ETag is given.
+        user.setVersion(null != expectedVersion ? version : null);
+        return user;
+    }
 
-        // If user has modified the email, verify that it must be unique.
-        if(!userEntity.getEmail().equals(modifyUserRequestDto.getEmail())) {
-            userEntityOptional = userRepository.findByEmail(modifyUserRequestDto.getEmail());
-            if(userEntityOptional.isPresent()) {
-                LOGGER.debug(String.format("User update failed. Duplicate Email [%s]", modifyUserRequestDto.getEmail()));
-                throw new DomainException("user.email.alreadyRegistered");
-            }
+    /**
+     * Method to delete a user in one DELETE, without reading the row first.
+     * With an expected version the DELETE only applies to that version.
+     * @param userId
+     * @param expectedVersion
+     */
+    @Override
+    public void deleteUser(Long userId, Integer expectedVersion) {
+
+        int deleted = null != expectedVersion
+                ? userRepository.deleteUserByIdIfVersion(userId, expectedVersion)
+                : userRepository.deleteUserById(userId);
+        if(deleted == 0) {
+            throw notFoundOrVersionMismatch(userId, expectedVersion);
         }
 
-        userEntity.setName(modifyUserRequestDto.getName());
-        userEntity.setEmail(modifyUserRequestDto.getEmail());
+        userCache.invalidate(userId);
+        recentWrites.record(userId);
+        forgetLoads(userId);
+        userCountProvider.decrement();
+    }
 
-        try {
-            userRepository.save(userEntity);
-        } catch(ObjectOptimisticLockingFailureException optimisticEntityLockException) {
-            throw new DomainException("concurrentModificationError");
+    /**
+     * Method to drop the cached copy of a user that was just updated.
+     * Nothing older than the version written may be cached again. Without an expected version the new
+     * version is read back from the primary; any later version it finds is as safe a lower bound.
+     * @param userId
+     * @param expectedVersion
+     * @return the version written or a later one, or null when the user is gone
+     */
+    private Integer onUserWritten(Long userId, Integer expectedVersion) {
+        Integer version = null != expectedVersion
+                ? Integer.valueOf(expectedVersion + 1)
+                : ReadRoute.onPrimary(() -> userRepository.findVersionById(userId)).orElse(null);
+        if(null != version) {
+            userCache.invalidate(userId, version);
+        } else {
+            // Deleted meanwhile.
+            userCache.invalidate(userId);
         }
+        recentWrites.record(userId);
+        forgetLoads(userId);
+        return version;
+    }
 
-        return mapUserEntityToUser(userEntity);
+    // Reads that start after a write must not join a load that started before it.
+    private void forgetLoads(Long userId) {
+        userByIdLoads.forget(key -> ((UserByIdLoad) key).id().equals(userId));
+        // The email of the user may have changed, and loads by email don't know which user they'll find.
+        userByEmailLoads.forget(key -> true);
     }
 
-    @Override
-    public void deleteUser(Long userId) {
-        Optional<UserEntity> userEntityOptional = userRepository.findById(userId);
+    /**
+     * Method to tell why a write matched no row. Only runs on the failure path, and only
+     * needs a query when a version was expected.
+     * @param userId
+     * @param expectedVersion
+     * @return
+     */
+    private DomainException notFoundOrVersionMismatch(Long userId, Integer expectedVersion) {
+        // Asks the primary: the write just went there, and a replica may be behind it.
+        if(null == expectedVersion || !ReadRoute.onPrimary(() -> userRepository.existsById(userId))) {
+            return new DomainException("user.notExist", HttpStatus.NOT_FOUND);
+        }
+        return new DomainException("concurrentModificationError", HttpStatus.PRECONDITION_FAILED);
+    }
 
-        if(!userEntityOptional.isPresent()) {
-            throw new DomainException("user.notExist", HttpStatus.NOT_FOUND);
+    /**
+     * Method to insert a chunk of users in one transaction, or one record per transaction when a
+     * concurrent signup took one of the emails.
+     * @param userEntities
+     * @param chunkResults
+     * @param committed called with the number of leading records of the chunk committed, after every commit
+     */
+    private void insertChunk(List<UserEntity> userEntities, List<UserCreationResult> chunkResults, IntConsumer committed) {
+        try {
+            userRepository.saveAll(userEntities);
+            for(int i = 0; i < userEntities.size(); i++) {
+                onUserCreated(userEntities.get(i), chunkResults.get(i));
+            }
+            committed.accept(userEntities.size());
+        } catch(DataIntegrityViolationException dataIntegrityViolationException) {
+            // A concurrent signup took one of the emails after the duplicate check.
+            // Insert the chunk one record at a time to find which ones.
+            LOGGER.debug("Batch chunk insert failed. Retrying records one by one.");
+            for(int i = 0; i < userEntities.size(); i++) {
+                UserEntity failed = userEntities.get(i);
+                UserEntity userEntity = newUserEntity(failed.getName(), failed.getEmail(), failed.getPassword());
+                try {
+                    userRepository.save(userEntity);
+                    onUserCreated(userEntity, chunkResults.get(i));
+                } catch(DataIntegrityViolationException duplicateException) {
+                    if(!UniqueEmailConstraint.isViolatedBy(duplicateException)) {
+                        throw duplicateException;
+                    }
+                    chunkResults.get(i).setErrors(List.of("user.email.alreadyRegistered"));
+                }
+                committed.accept(i + 1);
+            }
         }
+    }
 
-        userRepository.delete(userEntityOptional.get());
+    private void onUserCreated(UserEntity userEntity, UserCreationResult result) {
+        User user = mapUserEntityToUser(userEntity);
+        result.setUser(user);
+        userCountProvider.increment();
+        userCache.put(user);
+        recentWrites.record(user.getId());
+        forgetLoads(user.getId());
     }
 
-    private User mapUserEntityToUser(UserEntity userEntity) {
+    private UserEntity newUserEntity(String name, String email, String passwordHash) {
+        UserEntity userEntity = new UserEntity();
+        userEntity.setName(name);
+        userEntity.setEmail(email);
+        userEntity.setPassword(passwordHash);
+        return userEntity;
+    }
+
+    private String normalizeEmail(String email) {
+        return email.toLowerCase(Locale.ROOT);
+    }
+
+    // LIKE pattern matching values that start with the prefix, with the prefix's own wildcards escaped.
+    private String likePrefix(String prefix) {
+        return prefix.replace("!", "!!")
+                .replace("%", "!%")
+                .replace("_", "!_") + "%";
+    }
+
+    // Package-private so the benchmarks under src/jmh can measure it.
+    User mapUserViewToUser(UserView userView) {
+
+        User user = new User();
+        user.setId(userView.id());
+        user.setName(userView.name());
+        user.setEmail(userView.email());
+
+        // This field is only included for assessment. Will never be set in a live project.
+        user.setPassword(userView.password());
+        user.setVersion(userView.version());
+        return user;
+    }
+
+    // Package-private so the benchmarks under src/jmh can measure it.
+    User mapUserEntityToUser(UserEntity userEntity) {
 
         User user = new User();
         user.setId(userEntity.getId());
@@ -189,7 +771,14 @@ public class UserServiceImpl implements UserService {
 
         // This field is only included for assessment. Will never be set in a live project.
         user.setPassword(userEntity.getPassword());
+        user.setVersion(userEntity.getVersion());
         return user;
     }
 
+    private record UserByIdLoad(Long id, Set<UserField> fields, boolean onPrimary) {
+    }
+
+    private record UserByEmailLoad(String email, Long afterId) {
+    }
+
 }
@@ -2,50 +2,124 @@ package com.rakbank.userservice.service.api;
 
 import com.rakbank.userservice.controller.dto.request.CreateUserRequestDto;
 import com.rakbank.userservice.controller.dto.request.ModifyUserRequestDto;
+import com.rakbank.userservice.dao.projection.UserField;
 import com.rakbank.userservice.service.model.PaginatedResponse;
 import com.rakbank.userservice.service.model.User;
+import com.rakbank.userservice.service.model.UserCreationResult;
+import com.rakbank.userservice.service.model.UserLookupResult;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 public interface UserService {
 
 
     /**
-     * Method to create a new user.
+     * Method to create a new user. Completes once the password is hashed and the user is saved.
      * @param createUserRequestDto
      * @return
      */
-    public User create(CreateUserRequestDto createUserRequestDto);
+    public CompletableFuture<User> create(CreateUserRequestDto createUserRequestDto);
+
+    /**
+     * Method to create many users at once. Each record gets its own result, so one bad record
+     * doesn't fail the batch.
+     * @param createUserRequestDtos
+     * @return
+     */
+    public CompletableFuture<List<UserCreationResult>> createAll(List<CreateUserRequestDto> createUserRequestDtos);
+
+    /**
+     * Method to create many users at once, telling the caller as records get their final result.
+     * Inserts commit in several transactions; a caller that records progress (like an import checkpoint)
+     * must follow the commits, not the returned future, or a failure halfway loses track of committed users.
+     * @param createUserRequestDtos
+     * @param committed called with the results of the leading records whose outcome is final, each time that
+     *                  prefix grows. Called on the thread running the inserts.
+     * @return
+     */
+    public CompletableFuture<List<UserCreationResult>> createAll(List<CreateUserRequestDto> createUserRequestDtos,
+                                                                 Consumer<List<UserCreationResult>> committed);
 
     /**
      * Method to find a user by the id as paramter.
      * @param id
+     * @param fields fields the caller needs. Others may be left null.
      * @return
      */
-    public User findById(Long id);
+    public User findById(Long id, Set<UserField> fields);
+
+    /**
+     * Method to find many users by id at once. Ids with no user are reported instead of failing the call.
+     * @param ids
+     * @return
+     */
+    public UserLookupResult findByIds(List<Long> ids);
+
+    /**
+     * Method to search users by exact email, email prefix (both case-insensitive) or name prefix.
+     * Exactly one of the criteria must be given. Results are keyset paginated with the 'after' cursor.
+     * @param email
+     * @param emailPrefix
+     * @param namePrefix
+     * @param after
+     * @return
+     */
+    public PaginatedResponse<User> search(String email, String emailPrefix, String namePrefix, String after);
 
     /**
      * Method to find all users for the provided page number.
      * @param pageNumber
+     * @param withCount false to skip totalRecords and totalPages
+     * @param fields fields the caller needs. Others may be left null.
      * @return
      */
-    public PaginatedResponse<User> findAll(Integer pageNumber);
+    public PaginatedResponse<User> findAll(Integer pageNumber, boolean withCount, Set<UserField> fields);
+
+    /**
+     * Method to find the next page of users after the provided cursor.
+     * @param cursor
+     * @param fields fields the caller needs. Others may be left null.
+     * @return
+     */
+    public PaginatedResponse<User> findAllAfter(String cursor, Set<UserField> fields);
+
+    /**
+     * Method to stream every user to the consumer, in id order, without loading them all in memory.
+     * @param consumer
+     */
+    public void exportAll(Consumer<User> consumer);
 
     /**
-     * Method to change the user password.
+     * Method to change the user password. Completes once the new password is hashed and saved.
      * @param userId
      * @param newPassword
+     * @param expectedVersion version the client last read (If-Match), or null to skip the check
+     */
+    public CompletableFuture<Void> changePassword(Long userId, String newPassword, Integer expectedVersion);
+
+    /**
+     * Method to check the user password. Completes with whether it matches, once it is checked.
+     * @param userId
+     * @param password
+     * @return
      */
-    public void changePassword(Long userId, String newPassword);
+    public CompletableFuture<Boolean> verifyPassword(Long userId, String password);
 
     /**
      * Method to update user details.
      * @param modifyUserRequestDto
+     * @param expectedVersion version the client last read (If-Match), or null to skip the check
      */
-    public User updateUser(Long userId, ModifyUserRequestDto modifyUserRequestDto);
+    public User updateUser(Long userId, ModifyUserRequestDto modifyUserRequestDto, Integer expectedVersion);
 
     /**
      * Method to delete a user.
      * @param userId
+     * @param expectedVersion version the client last read (If-Match), or null to skip the check
      */
-    public void deleteUser(Long userId);
+    public void deleteUser(Long userId, Integer expectedVersion);
 
 }
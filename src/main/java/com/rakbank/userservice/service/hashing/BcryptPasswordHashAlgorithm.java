@@ -0,0 +1,96 @@
+package com.rakbank.userservice.service.hashing;
+
+import at.favre.lib.crypto.bcrypt.BCrypt;
+
+import java.util.Locale;
+
+/**
+ * bcrypt in its modular crypt format, e.g. $2a$10$ followed by salt and hash.
+ */
+public class BcryptPasswordHashAlgorithm implements PasswordHashAlgorithm {
+
+    public static final String NAME = "bcrypt";
+
+    // 2^16 rounds already take seconds on current hardware.
+    private static final int MAX_COST = 16;
+
+    private final BCrypt.Version version;
+
+    private final int cost;
+
+    private final BCrypt.Hasher hasher;
+
+    public BcryptPasswordHashAlgorithm(BCrypt.Version version, int cost) {
+        this.version = version;
+        this.cost = cost;
+        this.hasher = BCrypt.with(version);
+    }
+
+    /**
+     * Method to get a bcrypt version by its identifier.
+     * @param version one of 2a, 2b or 2y
+     * @return
+     */
+    public static BCrypt.Version version(String version) {
+        switch(version.toLowerCase(Locale.ROOT)) {
+            case "2a": return BCrypt.Version.VERSION_2A;
+            case "2b": return BCrypt.Version.VERSION_2B;
+            case "2y": return BCrypt.Version.VERSION_2Y;
+            default: throw new IllegalArgumentException("Unsupported bcrypt version: " + version);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public int getWorkFactor() {
+        return cost;
+    }
+
+    @Override
+    public int nextWorkFactor() {
+        return Math.min(cost + 1, MAX_COST);
+    }
+
+    @Override
+    public PasswordHashAlgorithm withWorkFactor(int workFactor) {
+        return new BcryptPasswordHashAlgorithm(version, workFactor);
+    }
+
+    @Override
+    public String hash(String password) {
+        return hasher.hashToString(cost, password.toCharArray());
+    }
+
+    @Override
+    public boolean supports(String encodedPassword) {
+        return encodedPassword.startsWith("$2");
+    }
+
+    @Override
+    public boolean verify(String password, String encodedPassword) {
+        return BCrypt.verifyer().verify(password.toCharArray(), encodedPassword).verified;
+    }
+
+    /**
+     * Any minor version (2a, 2b, 2y) counts: they differ only in bugs of other implementations with
+     * passwords longer than bcrypt reads, and hashes of each verify the same way.
+     */
+    @Override
+    public boolean meetsPolicy(String encodedPassword) {
+        // $2a$10$... : the two digit cost sits between the second and third '$'.
+        if(encodedPassword.length() < 7 || !supports(encodedPassword) || encodedPassword.charAt(3) != '$'
+                || encodedPassword.charAt(6) != '$') {
+            return false;
+        }
+        try {
+            return Integer.parseInt(encodedPassword.substring(4, 6)) >= cost;
+        } catch(NumberFormatException numberFormatException) {
+            return false;
+        }
+    }
+
+}
@@ -0,0 +1,54 @@
+package com.rakbank.userservice.service.hashing;
+
+/**
+ * A password hashing scheme. The encoded hash carries the algorithm and its parameters, so a hash
+ * can still be verified after the configured algorithm or work factor changes.
+ */
+public interface PasswordHashAlgorithm {
+
+    /**
+     * Name of the algorithm, used in configuration and as the 'algorithm' tag of the hashing timers.
+     * @return
+     */
+    String getName();
+
+    /**
+     * Cost of one hash: the bcrypt cost, or the PBKDF2 iteration count.
+     * @return
+     */
+    int getWorkFactor();
+
+    /**
+     * Method to get the next work factor tried by calibration. Roughly doubles the hashing time.
+     * @return the next work factor, or the current one when it is already the highest supported
+     */
+    int nextWorkFactor();
+
+    /**
+     * Method to get the same algorithm with another work factor.
+     * @param workFactor
+     * @return
+     */
+    PasswordHashAlgorithm withWorkFactor(int workFactor);
+
+    String hash(String password);
+
+    /**
+     * Method to tell whether an encoded hash was produced by this algorithm, with any parameters.
+     * @param encodedPassword
+     * @return
+     */
+    boolean supports(String encodedPassword);
+
+    boolean verify(String password, String encodedPassword);
+
+    /**
+     * Method to tell whether an encoded hash was produced by this algorithm with at least its work factor.
+     * Hashes that are not should be replaced the next time the password is known. Stronger hashes are
+     * kept, so instances calibrated to different work factors don't downgrade each other's hashes.
+     * @param encodedPassword
+     * @return
+     */
+    boolean meetsPolicy(String encodedPassword);
+
+}
@@ -0,0 +1,69 @@
+package com.rakbank.userservice.service.hashing;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.time.Duration;
+import java.util.Arrays;
+
+/**
+ * Picks the work factor of an algorithm from the time a hash takes on the hardware the service runs on.
+ */
+public class PasswordHashCalibrator {
+
+    // Hashes timed per work factor. The median is kept, so one GC pause doesn't skew the result.
+    private static final int SAMPLES = 3;
+
+    private static final String SAMPLE_PASSWORD = "Calibration#Password1";
+
+    private final Log LOGGER = LogFactory.getLog(this.getClass());
+
+    private final Duration target;
+
+    public PasswordHashCalibrator(Duration target) {
+        this.target = target;
+    }
+
+    /**
+     * Method to find the highest work factor whose hash still takes no longer than the target.
+     * The work factor of the given algorithm is a floor: calibration never goes below it, even on
+     * hardware too slow to meet the target.
+     * @param algorithm
+     * @return the algorithm with the calibrated work factor and the time of one hash with it
+     */
+    public Calibration calibrate(PasswordHashAlgorithm algorithm) {
+        // The first hashes also pay for class loading and JIT compilation.
+        algorithm.hash(SAMPLE_PASSWORD);
+
+        PasswordHashAlgorithm calibrated = algorithm;
+        Duration hashTime = measure(algorithm);
+        while(calibrated.nextWorkFactor() != calibrated.getWorkFactor()) {
+            PasswordHashAlgorithm next = calibrated.withWorkFactor(calibrated.nextWorkFactor());
+            Duration nextHashTime = measure(next);
+            if(nextHashTime.compareTo(target) > 0) {
+                break;
+            }
+            calibrated = next;
+            hashTime = nextHashTime;
+        }
+
+        LOGGER.info(String.format("Calibrated %s to work factor %d: %d ms per hash, target %d ms",
+                calibrated.getName(), calibrated.getWorkFactor(), hashTime.toMillis(), target.toMillis()));
+        return new Calibration(calibrated, hashTime);
+    }
+
+    private Duration measure(PasswordHashAlgorithm algorithm) {
+        long[] samples = new long[SAMPLES];
+        for(int i = 0; i < SAMPLES; i++) {
+            long startedAt = System.nanoTime();
+            algorithm.hash(SAMPLE_PASSWORD);
+            samples[i] = System.nanoTime() - startedAt;
+        }
+        Arrays.sort(samples);
+        return Duration.ofNanos(samples[SAMPLES / 2]);
+    }
+
+    public record Calibration(PasswordHashAlgorithm algorithm, Duration hashTime) {
+    }
+
+}
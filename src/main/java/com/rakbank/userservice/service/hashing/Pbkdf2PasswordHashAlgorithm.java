@@ -0,0 +1,122 @@
+package com.rakbank.userservice.service.hashing;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+/**
+ * PBKDF2 with HMAC-SHA256, from the JDK. Hashes are encoded in PHC string format:
+ * $pbkdf2-sha256$i=310000$salt$hash, salt and hash in unpadded base64.
+ */
+public class Pbkdf2PasswordHashAlgorithm implements PasswordHashAlgorithm {
+
+    public static final String NAME = "pbkdf2";
+
+    private static final String PREFIX = "$pbkdf2-sha256$";
+
+    private static final String JCA_ALGORITHM = "PBKDF2WithHmacSHA256";
+
+    private static final int SALT_LENGTH = 16;
+
+    private static final int KEY_LENGTH_BITS = 256;
+
+    private static final int MAX_ITERATIONS = 1 << 24;
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final int iterations;
+
+    // e.g. "$pbkdf2-sha256$i=310000$", the prefix of every new hash.
+    private final String currentPrefix;
+
+    public Pbkdf2PasswordHashAlgorithm(int iterations) {
+        this.iterations = iterations;
+        this.currentPrefix = PREFIX + "i=" + iterations + "$";
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public int getWorkFactor() {
+        return iterations;
+    }
+
+    @Override
+    public int nextWorkFactor() {
+        return Math.min(iterations * 2, MAX_ITERATIONS);
+    }
+
+    @Override
+    public PasswordHashAlgorithm withWorkFactor(int workFactor) {
+        return new Pbkdf2PasswordHashAlgorithm(workFactor);
+    }
+
+    @Override
+    public String hash(String password) {
+        byte[] salt = new byte[SALT_LENGTH];
+        RANDOM.nextBytes(salt);
+        Base64.Encoder encoder = Base64.getEncoder().withoutPadding();
+        return currentPrefix + encoder.encodeToString(salt) + "$" + encoder.encodeToString(derive(password, salt, iterations));
+    }
+
+    @Override
+    public boolean supports(String encodedPassword) {
+        return encodedPassword.startsWith(PREFIX);
+    }
+
+    @Override
+    public boolean verify(String password, String encodedPassword) {
+        String[] parts = split(encodedPassword);
+        if(parts == null) {
+            return false;
+        }
+        try {
+            int encodedIterations = Integer.parseInt(parts[2].substring(2));
+            byte[] salt = Base64.getDecoder().decode(parts[3]);
+            byte[] expected = Base64.getDecoder().decode(parts[4]);
+            return MessageDigest.isEqual(derive(password, salt, encodedIterations), expected);
+        } catch(IllegalArgumentException illegalArgumentException) {
+            return false;
+        }
+    }
+
+    @Override
+    public boolean meetsPolicy(String encodedPassword) {
+        String[] parts = split(encodedPassword);
+        if(parts == null) {
+            return false;
+        }
+        try {
+            return Integer.parseInt(parts[2].substring(2)) >= iterations;
+        } catch(NumberFormatException numberFormatException) {
+            return false;
+        }
+    }
+
+    // $pbkdf2-sha256$i=N$salt$hash splits into "", "pbkdf2-sha256", "i=N", salt and hash. Null when it doesn't.
+    private String[] split(String encodedPassword) {
+        if(!supports(encodedPassword)) {
+            return null;
+        }
+        String[] parts = encodedPassword.split("\\$");
+        return parts.length == 5 && parts[2].startsWith("i=") ? parts : null;
+    }
+
+    private byte[] derive(String password, byte[] salt, int iterations) {
+        PBEKeySpec keySpec = new PBEKeySpec(password.toCharArray(), salt, iterations, KEY_LENGTH_BITS);
+        try {
+            return SecretKeyFactory.getInstance(JCA_ALGORITHM).generateSecret(keySpec).getEncoded();
+        } catch(GeneralSecurityException generalSecurityException) {
+            throw new IllegalStateException(JCA_ALGORITHM + " is not available", generalSecurityException);
+        } finally {
+            keySpec.clearPassword();
+        }
+    }
+
+}
@@ -0,0 +1,20 @@
+package com.rakbank.userservice.service.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * A rejected record of an import, by line number in the uploaded file.
+ */
+@Getter
+@AllArgsConstructor
+public class ImportError {
+
+    private long line;
+
+    // Message keys explaining why the record was rejected.
+    private List<String> errors;
+
+}
@@ -0,0 +1,94 @@
+package com.rakbank.userservice.service.model;
+
+import lombok.Getter;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * State of a background user import. Updated by the import worker and read by the progress endpoints.
+ */
+@Getter
+public class ImportJob {
+
+    public enum Status { QUEUED, RUNNING, COMPLETED, FAILED }
+
+    private final String id = UUID.randomUUID().toString();
+    private final Path file;
+    private final UserFileFormat format;
+    private final Instant submittedAt = Instant.now();
+
+    private volatile Status status = Status.QUEUED;
+    private volatile Instant finishedAt;
+    // Message key or error text when the job failed.
+    private volatile String failureReason;
+
+    private volatile long recordsProcessed;
+    private volatile long createdCount;
+    private volatile long failedCount;
+
+    // Last line of the file whose record is committed, with all before it. A resumed job starts after it.
+    private volatile long checkpoint;
+
+    private final List<ImportError> errors = new ArrayList<>();
+    private volatile boolean errorsTruncated;
+
+    public ImportJob(Path file, UserFileFormat format) {
+        this.file = file;
+        this.format = format;
+    }
+
+    public void markQueued() {
+        status = Status.QUEUED;
+    }
+
+    public void markRunning() {
+        status = Status.RUNNING;
+        failureReason = null;
+        finishedAt = null;
+    }
+
+    public void markCompleted() {
+        status = Status.COMPLETED;
+        finishedAt = Instant.now();
+    }
+
+    public void markFailed(String failureReason) {
+        this.failureReason = failureReason;
+        status = Status.FAILED;
+        finishedAt = Instant.now();
+    }
+
+    public boolean isFinished() {
+        return status == Status.COMPLETED || status == Status.FAILED;
+    }
+
+    /**
+     * Method to record committed records. Only the import worker, or the inserts it waits for, call it.
+     * @param created
+     * @param chunkErrors
+     * @param lastLine
+     * @param maxErrors errors kept for the error report; the rest are only counted
+     */
+    public synchronized void commitChunk(long created, List<ImportError> chunkErrors, long lastLine, int maxErrors) {
+        for(ImportError importError : chunkErrors) {
+            if(errors.size() < maxErrors) {
+                errors.add(importError);
+            } else {
+                errorsTruncated = true;
+            }
+        }
+        createdCount += created;
+        failedCount += chunkErrors.size();
+        recordsProcessed += created + chunkErrors.size();
+        checkpoint = lastLine;
+    }
+
+    public synchronized List<ImportError> getErrors() {
+        return new ArrayList<>(errors);
+    }
+
+}
@@ -13,4 +13,7 @@ public class PaginatedResponse<T> {
     private Integer pageSize;
     private List<T> records;
 
+    // Opaque token to fetch the next page in cursor mode. Null when there are no more records.
+    private String nextCursor;
+
 }
@@ -0,0 +1,72 @@
+package com.rakbank.userservice.service.model;
+
+import lombok.Getter;
+
+import java.time.Instant;
+
+/**
+ * State of a password rehash scan. Updated by the scan and read by the progress endpoint.
+ */
+@Getter
+public class PasswordRehashJob {
+
+    public enum Status { QUEUED, RUNNING, COMPLETED, FAILED }
+
+    // Hashing policy the scan compares hashes against, e.g. bcrypt:10.
+    private final String policy;
+    private final Instant startedAt = Instant.now();
+
+    private volatile Status status = Status.QUEUED;
+    private volatile Instant finishedAt;
+    // Message key when the scan failed or was stopped.
+    private volatile String failureReason;
+
+    // Chunks flagged at once, bounded by the share of connections the scan may use.
+    private volatile int workers;
+
+    private volatile long scannedCount;
+    private volatile long flaggedCount;
+
+    // Highest user id of the last committed chunk. A resumed scan starts after it.
+    private volatile long checkpoint;
+
+    public PasswordRehashJob(String policy, long checkpoint, long scannedCount, long flaggedCount) {
+        this.policy = policy;
+        this.checkpoint = checkpoint;
+        this.scannedCount = scannedCount;
+        this.flaggedCount = flaggedCount;
+    }
+
+    public void markRunning(int workers) {
+        this.workers = workers;
+        status = Status.RUNNING;
+    }
+
+    public void markCompleted() {
+        status = Status.COMPLETED;
+        finishedAt = Instant.now();
+    }
+
+    public void markFailed(String failureReason) {
+        this.failureReason = failureReason;
+        status = Status.FAILED;
+        finishedAt = Instant.now();
+    }
+
+    public boolean isFinished() {
+        return status == Status.COMPLETED || status == Status.FAILED;
+    }
+
+    /**
+     * Method to record a committed chunk. Chunks are committed in id order, by the scan only.
+     * @param scanned
+     * @param flagged
+     * @param lastId
+     */
+    public synchronized void commitChunk(long scanned, long flagged, long lastId) {
+        scannedCount += scanned;
+        flaggedCount += flagged;
+        checkpoint = lastId;
+    }
+
+}
@@ -12,4 +12,8 @@ public class User {
     // This field is only added for assessment purpose. Will never be in a live project.
     private String password;
 
+    // Row version the user was read at. Null after a write made without an expected version,
+    // since the row isn't read back.
+    private Integer version;
+
 }
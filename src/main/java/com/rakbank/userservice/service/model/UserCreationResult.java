@@ -0,0 +1,26 @@
+package com.rakbank.userservice.service.model;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Outcome of one record in a batch creation.
+ */
+@Data
+public class UserCreationResult {
+
+    // Position of the record in the batch.
+    private int index;
+
+    // Set when the user was created.
+    private User user;
+
+    // Message keys explaining why the record was rejected.
+    private List<String> errors;
+
+    public boolean isCreated() {
+        return user != null;
+    }
+
+}
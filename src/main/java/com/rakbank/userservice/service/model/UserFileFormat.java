@@ -0,0 +1,32 @@
+package com.rakbank.userservice.service.model;
+
+import com.rakbank.userservice.error.DomainException;
+import lombok.Getter;
+
+/**
+ * File formats supported by user export and import.
+ */
+@Getter
+public enum UserFileFormat {
+
+    NDJSON("application/x-ndjson", "ndjson"),
+    CSV("text/csv", "csv");
+
+    private final String contentType;
+    private final String fileExtension;
+
+    UserFileFormat(String contentType, String fileExtension) {
+        this.contentType = contentType;
+        this.fileExtension = fileExtension;
+    }
+
+    public static UserFileFormat from(String format) {
+        for(UserFileFormat fileFormat : values()) {
+            if(fileFormat.name().equalsIgnoreCase(format)) {
+                return fileFormat;
+            }
+        }
+        throw new DomainException("user.file.invalidFormat");
+    }
+
+}
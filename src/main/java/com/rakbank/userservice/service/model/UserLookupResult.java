@@ -0,0 +1,19 @@
+package com.rakbank.userservice.service.model;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Outcome of looking up many users by id.
+ */
+@Data
+public class UserLookupResult {
+
+    // Users found, in the order their ids were requested. A repeated id is listed once.
+    private List<User> users;
+
+    // Requested ids with no user, in request order.
+    private List<Long> missingIds;
+
+}
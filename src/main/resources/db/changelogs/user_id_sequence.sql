@@ -0,0 +1,11 @@
+--liquibase formatted sql
+
+--changeset Deep:2 user_id_sequence.sql
+CREATE TABLE `user_id_sequence` (
+  `sequence_name` varchar(50) NOT NULL,
+  `next_val` bigint(20) NOT NULL,
+  PRIMARY KEY (`sequence_name`)
+);
+
+INSERT INTO `user_id_sequence` (`sequence_name`, `next_val`)
+SELECT 'users', COALESCE(MAX(`ID`), 0) + 1 FROM `users`;
@@ -0,0 +1,14 @@
+--liquibase formatted sql
+
+--changeset Deep:4 users_rehash.sql
+ALTER TABLE `users` ADD COLUMN `NEEDS_REHASH` boolean NOT NULL DEFAULT FALSE;
+
+CREATE TABLE `password_rehash_checkpoint` (
+  `POLICY` varchar(100) NOT NULL,
+  `LAST_ID` bigint(20) NOT NULL,
+  `SCANNED` bigint(20) NOT NULL,
+  `FLAGGED` bigint(20) NOT NULL,
+  `COMPLETED` boolean NOT NULL,
+  `UPDATED_AT` timestamp NOT NULL,
+  PRIMARY KEY (`POLICY`)
+);
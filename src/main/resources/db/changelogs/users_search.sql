@@ -0,0 +1,12 @@
+--liquibase formatted sql
+
+--changeset Deep:3 users_search.sql
+ALTER TABLE `users` ADD COLUMN `EMAIL_NORMALIZED` varchar(50) DEFAULT NULL;
+
+UPDATE `users` SET `EMAIL_NORMALIZED` = LOWER(`EMAIL`);
+
+ALTER TABLE `users` MODIFY `EMAIL_NORMALIZED` varchar(50) NOT NULL;
+
+CREATE INDEX `user_email_normalized` ON `users` (`EMAIL_NORMALIZED`, `ID`);
+
+CREATE INDEX `user_name` ON `users` (`NAME`, `ID`);
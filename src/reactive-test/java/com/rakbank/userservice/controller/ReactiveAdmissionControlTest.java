@@ -0,0 +1,103 @@
+package com.rakbank.userservice.controller;
+
+import com.rakbank.userservice.controller.dto.request.CreateUserRequestDto;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.util.Map;
+
+/**
+ * Runs the admission budgets in front of the reactive user API, with limits small enough to hit.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "spring.datasource.url=jdbc:h2:mem:reactive-admission;MODE=MySQL;DB_CLOSE_DELAY=-1",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.hibernate.ddl-auto=none",
+        "spring.r2dbc.url=r2dbc:h2:mem:///reactive-admission?options=MODE=MySQL;DB_CLOSE_DELAY=-1",
+        "spring.r2dbc.username=sa",
+        "spring.r2dbc.password=",
+        "userservice.hashing.calibration.enabled=false",
+        "userservice.rehash.enabled=false",
+        "userservice.admission.read.rate-per-second=0.01",
+        "userservice.admission.read.burst=2",
+        "userservice.admission.verify.max-concurrent=1",
+        // Requests of the test client come from 127.0.0.1, so the tests can name their clients.
+        "userservice.admission.trusted-proxies=127.0.0.1"
+})
+@ActiveProfiles("reactive")
+public class ReactiveAdmissionControlTest {
+
+    @Autowired
+    WebTestClient webTestClient;
+
+    // The budgets live as long as the application context, which the tests share, so each test uses its own clients.
+
+    @Test
+    void shouldRateLimitReadsPerClient() {
+
+        for(int i = 0; i < 2; i++) {
+            searchUsers("client-a")
+                    .expectStatus().isOk();
+        }
+
+        searchUsers("client-a")
+                .expectStatus().isEqualTo(429)
+                .expectHeader().valueEquals(HttpHeaders.RETRY_AFTER, "100")
+                .expectBody()
+                .jsonPath("$.errorMessage").isEqualTo("Too many requests. Retry after 100 seconds");
+
+        searchUsers("client-b")
+                .expectStatus().isOk();
+
+    }
+
+    @Test
+    void shouldReleasePermitOnceResponseIsComplete() throws InterruptedException {
+
+        CreateUserRequestDto createUserRequestDto = new CreateUserRequestDto();
+        createUserRequestDto.setName("Admission");
+        createUserRequestDto.setEmail("admission.reactive@gmail.com");
+        createUserRequestDto.setPassword("password1");
+        Map<?, ?> createUserResponse = webTestClient.post().uri("/users")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(createUserRequestDto)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(Map.class)
+                .returnResult().getResponseBody();
+        Assertions.assertNotNull(createUserResponse);
+
+        // The only verify permit is taken and given back by each check in turn. It is given back once the
+        // response is complete, which can be just after the client has read it.
+        for(int i = 0; i < 3; i++) {
+            int status = 0;
+            for(int attempt = 0; attempt < 50 && status != 200; attempt++) {
+                Thread.sleep(attempt * 10L);
+                status = webTestClient.post().uri("/users/{id}/verify", createUserResponse.get("id"))
+                        .header("X-Client-Id", "client-c")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .bodyValue(Map.of("password", "password1"))
+                        .exchange()
+                        .returnResult(Void.class)
+                        .getStatus().value();
+            }
+            Assertions.assertEquals(status, 200);
+        }
+
+    }
+
+    private WebTestClient.ResponseSpec searchUsers(String clientId) {
+        return webTestClient.get().uri("/users/search?email=nobody@gmail.com")
+                .header("X-Client-Id", clientId)
+                .exchange();
+    }
+
+}
@@ -0,0 +1,203 @@
+package com.rakbank.userservice.controller;
+
+import com.rakbank.userservice.controller.dto.request.CreateUserRequestDto;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.http.client.MultipartBodyBuilder;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs the reactive user API on Netty against one H2 database in MySQL mode, set up by Liquibase over
+ * JDBC and read and written through R2DBC. Imports still write through JPA.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "spring.datasource.url=jdbc:h2:mem:reactive;MODE=MySQL;DB_CLOSE_DELAY=-1",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.hibernate.ddl-auto=none",
+        "spring.r2dbc.url=r2dbc:h2:mem:///reactive?options=MODE=MySQL;DB_CLOSE_DELAY=-1",
+        "spring.r2dbc.username=sa",
+        "spring.r2dbc.password=",
+        "userservice.hashing.calibration.enabled=false",
+        "userservice.rehash.enabled=false"
+})
+@ActiveProfiles("reactive")
+public class ReactiveUserControllerTest {
+
+    @Autowired
+    WebTestClient webTestClient;
+
+    @Test
+    void shouldCreateUserAndGetItWithETag() {
+
+        Long id = createUser("Deep", "deep.reactive@gmail.com");
+
+        String eTag = webTestClient.get().uri("/users/{id}", id)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals(HttpHeaders.ETAG, "\"0\"")
+                .expectBody()
+                .jsonPath("$.name").isEqualTo("Deep")
+                .jsonPath("$.email").isEqualTo("deep.reactive@gmail.com")
+                .returnResult().getResponseHeaders().getETag();
+
+        webTestClient.get().uri("/users/{id}", id)
+                .header(HttpHeaders.IF_NONE_MATCH, eTag)
+                .exchange()
+                .expectStatus().isNotModified();
+
+        webTestClient.get().uri("/users/{id}?fields=id,email", id)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals(HttpHeaders.ETAG, "\"0-id.email\"")
+                .expectBody()
+                .json("{\"id\":" + id + ",\"email\":\"deep.reactive@gmail.com\"}", true);
+
+    }
+
+    @Test
+    void shouldRejectDuplicateEmail() {
+
+        createUser("Tarun", "tarun.reactive@gmail.com");
+
+        webTestClient.post().uri("/users")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(createUserRequestDto("Tarun", "tarun.reactive@gmail.com"))
+                .exchange()
+                .expectStatus().isBadRequest()
+                .expectBody()
+                .jsonPath("$.errorMessage").isEqualTo("This email is already associated with another user");
+
+    }
+
+    @Test
+    void shouldLookupAndSearchUsers() {
+
+        Long first = createUser("Lookup One", "lookup.one@gmail.com");
+        Long second = createUser("Lookup Two", "lookup.two@gmail.com");
+
+        webTestClient.get().uri("/users?ids={second},{first},-1", second, first)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.records[0].id").isEqualTo(second)
+                .jsonPath("$.records[1].id").isEqualTo(first)
+                .jsonPath("$.missingIds[0]").isEqualTo(-1);
+
+        webTestClient.post().uri("/users/lookup")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(Map.of("ids", List.of(first)))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.records[0].email").isEqualTo("lookup.one@gmail.com");
+
+        webTestClient.get().uri("/users/search?emailPrefix=LOOKUP.")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.records.length()").isEqualTo(2)
+                .jsonPath("$.records[0].id").isEqualTo(first);
+
+        webTestClient.get().uri("/users/search?namePrefix=Lookup T")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.records.length()").isEqualTo(1)
+                .jsonPath("$.records[0].id").isEqualTo(second);
+
+    }
+
+    @Test
+    void shouldVerifyPassword() {
+
+        Long id = createUser("Verify", "verify.reactive@gmail.com");
+
+        webTestClient.post().uri("/users/{id}/verify", id)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(Map.of("password", "password1"))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.verified").isEqualTo(true);
+
+        webTestClient.post().uri("/users/{id}/verify", id)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(Map.of("password", "password2"))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.verified").isEqualTo(false);
+
+    }
+
+    @Test
+    void shouldImportUsersInBackground() throws InterruptedException {
+
+        MultipartBodyBuilder multipartBodyBuilder = new MultipartBodyBuilder();
+        multipartBodyBuilder.part("file", new ByteArrayResource(
+                "{\"name\":\"Import\",\"email\":\"import.reactive@gmail.com\",\"password\":\"password1\"}\n"
+                        .getBytes(StandardCharsets.UTF_8)))
+                .filename("users.ndjson");
+
+        Map<?, ?> importJob = webTestClient.post().uri("/users/import")
+                .contentType(MediaType.MULTIPART_FORM_DATA)
+                .bodyValue(multipartBodyBuilder.build())
+                .exchange()
+                .expectStatus().isAccepted()
+                .expectBody(Map.class)
+                .returnResult().getResponseBody();
+        Assertions.assertNotNull(importJob);
+
+        // The job runs on the import pool and writes through JPA, next to the R2DBC pool.
+        String status = null;
+        for(int attempt = 0; attempt < 100 && !"COMPLETED".equals(status); attempt++) {
+            Thread.sleep(100);
+            status = (String) webTestClient.get().uri("/users/import/{jobId}", importJob.get("jobId"))
+                    .exchange()
+                    .expectStatus().isOk()
+                    .expectBody(Map.class)
+                    .returnResult().getResponseBody().get("status");
+        }
+        Assertions.assertEquals(status, "COMPLETED");
+
+        webTestClient.get().uri("/users/search?email=import.reactive@gmail.com")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.records[0].name").isEqualTo("Import");
+
+    }
+
+    private Long createUser(String name, String email) {
+        Map<?, ?> createUserResponse = webTestClient.post().uri("/users")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(createUserRequestDto(name, email))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(Map.class)
+                .returnResult().getResponseBody();
+        Assertions.assertNotNull(createUserResponse);
+        return ((Number) createUserResponse.get("id")).longValue();
+    }
+
+    private CreateUserRequestDto createUserRequestDto(String name, String email) {
+        CreateUserRequestDto createUserRequestDto = new CreateUserRequestDto();
+        createUserRequestDto.setName(name);
+        createUserRequestDto.setEmail(email);
+        createUserRequestDto.setPassword("password1");
+        return createUserRequestDto;
+    }
+
+}
@@ -0,0 +1,44 @@
+package com.rakbank.userservice.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.NoneNestedConditions;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Conditional;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * JDBC pool of builds with the reactive sources, in every Spring profile. Spring Boot backs off its own
+ * as soon as R2DBC is on the classpath, which would leave JPA, Liquibase, the user count and imports
+ * without a DataSource. Configured from spring.datasource.* like the one Spring Boot would create;
+ * ReadReplicaConfig sets up the pools instead when replica-urls is set.
+ */
+@Configuration
+@EnableConfigurationProperties(DataSourceProperties.class)
+public class JdbcDataSourceConfig {
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    @Conditional(WithoutReplicas.class)
+    public HikariDataSource dataSource(DataSourceProperties dataSourceProperties) {
+        return dataSourceProperties.initializeDataSourceBuilder()
+                .type(HikariDataSource.class)
+                .build();
+    }
+
+    // The opposite of the condition on ReadReplicaConfig.
+    static class WithoutReplicas extends NoneNestedConditions {
+
+        WithoutReplicas() {
+            super(ConfigurationPhase.REGISTER_BEAN);
+        }
+
+        @ConditionalOnProperty(name = "userservice.datasource.replica-urls")
+        static class ReplicaUrls {
+        }
+    }
+
+}
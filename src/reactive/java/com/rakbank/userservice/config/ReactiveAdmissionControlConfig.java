@@ -0,0 +1,58 @@
+package com.rakbank.userservice.config;
+
+import com.rakbank.userservice.controller.admission.AdmissionBudget;
+import com.rakbank.userservice.controller.admission.AdmissionClass;
+import com.rakbank.userservice.controller.admission.AdmissionControlWebFilter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * AdmissionControlConfig for the reactive profile: the same budgets and properties, in front of the
+ * reactive controllers. Turned off with userservice.admission.enabled=false.
+ */
+@Configuration
+@Profile("reactive")
+@ConditionalOnProperty(name = "userservice.admission.enabled", havingValue = "true", matchIfMissing = true)
+public class ReactiveAdmissionControlConfig {
+
+    @Bean
+    public AdmissionControlWebFilter admissionControlWebFilter(
+            @Value("${userservice.admission.client-header:X-Client-Id}") String clientHeader,
+            @Value("${userservice.admission.trusted-proxies:}") List<String> trustedProxies,
+            @Value("${userservice.admission.overloaded-retry-after:1}") long overloadedRetryAfterSeconds,
+            @Value("${userservice.admission.hashing.rate-per-second:20}") double hashingRate,
+            @Value("${userservice.admission.hashing.burst:50}") double hashingBurst,
+            @Value("${userservice.admission.hashing.max-concurrent:16}") int hashingMaxConcurrent,
+            @Value("${userservice.admission.verify.rate-per-second:100}") double verifyRate,
+            @Value("${userservice.admission.verify.burst:200}") double verifyBurst,
+            @Value("${userservice.admission.verify.max-concurrent:32}") int verifyMaxConcurrent,
+            @Value("${userservice.admission.read.rate-per-second:500}") double readRate,
+            @Value("${userservice.admission.read.burst:1000}") double readBurst,
+            @Value("${userservice.admission.read.max-concurrent:150}") int readMaxConcurrent,
+            @Value("${userservice.admission.write.rate-per-second:50}") double writeRate,
+            @Value("${userservice.admission.write.burst:100}") double writeBurst,
+            @Value("${userservice.admission.write.max-concurrent:16}") int writeMaxConcurrent) {
+        Map<AdmissionClass, AdmissionBudget> budgets = new EnumMap<>(AdmissionClass.class);
+        budgets.put(AdmissionClass.HASHING,
+                new AdmissionBudget(hashingRate, hashingBurst, hashingMaxConcurrent, overloadedRetryAfterSeconds));
+        budgets.put(AdmissionClass.VERIFY,
+                new AdmissionBudget(verifyRate, verifyBurst, verifyMaxConcurrent, overloadedRetryAfterSeconds));
+        budgets.put(AdmissionClass.READ,
+                new AdmissionBudget(readRate, readBurst, readMaxConcurrent, overloadedRetryAfterSeconds));
+        budgets.put(AdmissionClass.WRITE,
+                new AdmissionBudget(writeRate, writeBurst, writeMaxConcurrent, overloadedRetryAfterSeconds));
+        return new AdmissionControlWebFilter(budgets, clientHeader, trustedProxies.stream()
+                .map(String::trim)
+                .filter(address -> !address.isEmpty())
+                .collect(Collectors.toSet()));
+    }
+
+}
@@ -0,0 +1,41 @@
+package com.rakbank.userservice.config;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Wiring of the reactive profile, see application-reactive.properties.
+ */
+@Configuration
+@Profile("reactive")
+public class ReactiveConfig {
+
+    /**
+     * Tomcat is still on the classpath for the servlet stack, and Spring Boot would pick it first.
+     */
+    @Bean
+    public NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+        return new NettyReactiveWebServerFactory();
+    }
+
+    /**
+     * Runs bcrypt on the pool of PasswordHashingConfig, so hashing never blocks an event loop and keeps
+     * the same size, queue and rejection as on the servlet stack.
+     */
+    @Bean(destroyMethod = "dispose")
+    public Scheduler passwordHashingScheduler(@Qualifier("passwordHashingExecutor") ThreadPoolTaskExecutor passwordHashingExecutor) {
+        return Schedulers.fromExecutorService(passwordHashingExecutor.getThreadPoolExecutor(), "password-hashing");
+    }
+
+    @Bean(destroyMethod = "dispose")
+    public Scheduler bulkPasswordHashingScheduler(@Qualifier("bulkPasswordHashingExecutor") ThreadPoolTaskExecutor bulkPasswordHashingExecutor) {
+        return Schedulers.fromExecutorService(bulkPasswordHashingExecutor.getThreadPoolExecutor(), "bulk-password-hashing");
+    }
+
+}
@@ -0,0 +1,96 @@
+package com.rakbank.userservice.controller;
+
+import com.rakbank.userservice.controller.dto.response.ErrorResponse;
+import com.rakbank.userservice.error.AdmissionRejectedException;
+import com.rakbank.userservice.error.DomainException;
+import com.rakbank.userservice.error.ErrorMessageResolver;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.validation.FieldError;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+import org.springframework.web.bind.support.WebExchangeBindException;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * ControllerAdvisor for the reactive profile: same payloads, statuses and error counters.
+ */
+@RestControllerAdvice
+@Profile("reactive")
+public class ReactiveControllerAdvisor {
+
+    @Autowired
+    ErrorMessageResolver errorMessageResolver;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    private final Map<HttpStatus, Map<String, Counter>> errorCounters = new ConcurrentHashMap<>();
+
+    @ExceptionHandler(Exception.class)
+    public ResponseEntity<ErrorResponse> handleUnexpectedException(Exception ex) {
+        ErrorResponse errorResponse = ErrorResponse.builder()
+                .errorMessage(ex.getMessage())
+                .build();
+        return new ResponseEntity<ErrorResponse>(errorResponse, HttpStatus.INTERNAL_SERVER_ERROR);
+    }
+
+    @ExceptionHandler(DomainException.class)
+    public ResponseEntity<ErrorResponse> handleDomainError(DomainException ex) {
+        countError(ex.getMessage(), ex.getHttpStatus());
+        String errorMessage = ex.getMessage() == null || ex.getMessage().isBlank()
+                ? ""
+                : errorMessageResolver.resolve(ex.getMessage(), ex.getParams());
+        return new ResponseEntity<ErrorResponse>(ErrorResponse.builder().errorMessage(errorMessage).build(), ex.getHttpStatus());
+    }
+
+    /**
+     * Also called by AdmissionControlWebFilter, which rejects requests before any handler runs.
+     */
+    @ExceptionHandler(AdmissionRejectedException.class)
+    public ResponseEntity<ErrorResponse> handleAdmissionRejected(AdmissionRejectedException ex) {
+        ResponseEntity<ErrorResponse> errorResponse = handleDomainError(ex);
+        return ResponseEntity.status(errorResponse.getStatusCode())
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()))
+                .body(errorResponse.getBody());
+    }
+
+    @ExceptionHandler(WebExchangeBindException.class)
+    public ResponseEntity<ErrorResponse> handleBindError(WebExchangeBindException ex) {
+        List<FieldError> fieldErrors = ex.getBindingResult().getFieldErrors();
+        Set<String> errors = new LinkedHashSet<>();
+        for(FieldError fieldError : fieldErrors) {
+            countError(fieldError.getDefaultMessage(), HttpStatus.BAD_REQUEST);
+            errors.add(errorMessageResolver.resolve(fieldError.getDefaultMessage(), null));
+        }
+        return new ResponseEntity<ErrorResponse>(ErrorResponse.builder().errorMessage(String.join(",", errors)).build(),
+                HttpStatus.BAD_REQUEST);
+    }
+
+    /**
+     * Method to count an error response by its message key, under the same meter as ControllerAdvisor.
+     * @param key
+     * @param httpStatus
+     */
+    private void countError(String key, HttpStatus httpStatus) {
+        String counterKey = null != key ? key : "";
+        errorCounters.computeIfAbsent(httpStatus, status -> new ConcurrentHashMap<>())
+                .computeIfAbsent(counterKey, errorKey -> Counter.builder("userservice.errors")
+                        .description("Error responses by message key")
+                        .tag("key", errorKey)
+                        .tag("status", String.valueOf(httpStatus.value()))
+                        .register(meterRegistry))
+                .increment();
+    }
+
+}
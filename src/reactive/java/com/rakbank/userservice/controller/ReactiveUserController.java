@@ -0,0 +1,341 @@
+package com.rakbank.userservice.controller;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ser.FilterProvider;
+import com.rakbank.userservice.controller.admission.AdmissionClass;
+import com.rakbank.userservice.controller.admission.Admitted;
+import com.rakbank.userservice.controller.dto.request.ChangePasswordRequestDto;
+import com.rakbank.userservice.controller.dto.request.CreateUserRequestDto;
+import com.rakbank.userservice.controller.dto.request.LookupUsersRequestDto;
+import com.rakbank.userservice.controller.dto.request.ModifyUserRequestDto;
+import com.rakbank.userservice.controller.dto.request.VerifyPasswordRequestDto;
+import com.rakbank.userservice.controller.dto.response.CreateUserBatchResultDto;
+import com.rakbank.userservice.controller.dto.response.CreateUserResponseDto;
+import com.rakbank.userservice.controller.dto.response.CreateUsersBatchResponseDto;
+import com.rakbank.userservice.controller.dto.response.UserDetailsResponseDto;
+import com.rakbank.userservice.controller.dto.response.UsersLookupResponseDto;
+import com.rakbank.userservice.controller.dto.response.VerifyPasswordResponseDto;
+import com.rakbank.userservice.dao.projection.UserField;
+import com.rakbank.userservice.error.ErrorMessageResolver;
+import com.rakbank.userservice.service.api.ReactiveUserService;
+import com.rakbank.userservice.service.model.PaginatedResponse;
+import com.rakbank.userservice.service.model.User;
+import com.rakbank.userservice.service.model.UserCreationResult;
+import com.rakbank.userservice.service.model.UserFileFormat;
+import com.rakbank.userservice.service.model.UserLookupResult;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.json.MappingJacksonValue;
+import org.springframework.validation.annotation.Validated;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * The user API of UserController on WebFlux. Same paths, payloads and status codes.
+ * Imports are served by ReactiveUserImportController.
+ */
+@RestController
+@Profile("reactive")
+@RequestMapping(path = "/users")
+public class ReactiveUserController {
+
+    @Autowired
+    ReactiveUserService reactiveUserService;
+
+    @Autowired
+    ErrorMessageResolver errorMessageResolver;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    // Same record shape as UserExportWriter: id, name and email.
+    private static final FilterProvider EXPORT_FIELDS = UserFieldsFilter.of(EnumSet.of(UserField.ID, UserField.NAME, UserField.EMAIL));
+
+    @Admitted(AdmissionClass.HASHING)
+    @PostMapping
+    public Mono<CreateUserResponseDto> createUser(@Validated @RequestBody CreateUserRequestDto createUserRequestDto) {
+
+        return reactiveUserService.create(createUserRequestDto)
+                .map(user -> CreateUserResponseDto.builder()
+                        .id(user.getId())
+                        .build());
+    }
+
+    /**
+     * Creates up to userservice.batch.max-size users in one call and reports the outcome of each record.
+     */
+    @Admitted(AdmissionClass.HASHING)
+    @PostMapping(path = "/batch")
+    public Mono<CreateUsersBatchResponseDto> createUsers(@RequestBody List<CreateUserRequestDto> createUserRequestDtos,
+                                                         ServerWebExchange exchange) {
+
+        Locale locale = Optional.ofNullable(exchange.getLocaleContext().getLocale())
+                .orElse(Locale.getDefault());
+        return reactiveUserService.createAll(createUserRequestDtos)
+                .map(results -> mapUserCreationResults(results, locale));
+    }
+
+    /**
+     * Answers If-None-Match with 304.
+     */
+    @Admitted(AdmissionClass.READ)
+    @GetMapping(path = "/{id}")
+    public Mono<MappingJacksonValue> getUserDetailsById(@PathVariable Long id,
+                                                        @RequestParam(required = false) String fields,
+                                                        ServerWebExchange exchange) {
+
+        Set<UserField> userFields = UserField.parse(fields);
+        return reactiveUserService.findById(id)
+                .filter(user -> null == user.getVersion() || !exchange.checkNotModified(UserETags.of(user.getVersion(), userFields)))
+                .map(user -> withFields(mapUserToUserDetailsResponseDto(user, userFields), userFields));
+    }
+
+    /**
+     * Gets many users in one call, e.g. /users?ids=1,2,3. Users come back in the order of the ids,
+     * and ids with no user are listed in missingIds.
+     */
+    @Admitted(AdmissionClass.READ)
+    @GetMapping(params = "ids")
+    public Mono<UsersLookupResponseDto> getUsersByIds(@RequestParam List<Long> ids) {
+
+        return reactiveUserService.findByIds(ids)
+                .map(this::mapUserLookupResult);
+    }
+
+    /**
+     * Same as GET /users?ids=, for more ids than fit in a URL.
+     */
+    @Admitted(AdmissionClass.READ)
+    @PostMapping(path = "/lookup")
+    public Mono<UsersLookupResponseDto> lookupUsers(@RequestBody LookupUsersRequestDto lookupUsersRequestDto) {
+
+        return reactiveUserService.findByIds(lookupUsersRequestDto.getIds())
+                .map(this::mapUserLookupResult);
+    }
+
+    @Admitted(AdmissionClass.READ)
+    @GetMapping
+    public Mono<MappingJacksonValue> getUsers(@RequestParam(required = false) Integer page,
+                                              @RequestParam(required = false) String after,
+                                              @RequestParam(defaultValue = "true") boolean withCount,
+                                              @RequestParam(required = false) String fields,
+                                              ServerWebExchange exchange) {
+
+        Set<UserField> userFields = UserField.parse(fields);
+        Mono<PaginatedResponse<User>> userPage;
+        if(after != null) {
+            // Cursor mode. An empty "after" starts from the first record.
+            userPage = reactiveUserService.findAllAfter(after);
+        } else {
+            // If the "page" param is missing, API will default it as 1.
+            Integer pageNumber = Optional.ofNullable(page)
+                    .orElse(1);
+            userPage = reactiveUserService.findAll(pageNumber, withCount);
+        }
+
+        return userPage
+                .filter(paginatedResponse -> !exchange.checkNotModified(UserETags.of(paginatedResponse, userFields)))
+                .map(paginatedResponse -> withFields(mapUserPage(paginatedResponse, userFields), userFields));
+    }
+
+    /**
+     * Searches users by exactly one of: email (exact), emailPrefix (both case-insensitive) or namePrefix.
+     * Send the 'nextCursor' of a response as 'after' to get the next page.
+     */
+    @Admitted(AdmissionClass.READ)
+    @GetMapping(path = "/search")
+    public Mono<PaginatedResponse<UserDetailsResponseDto>> searchUsers(@RequestParam(required = false) String email,
+                                                                       @RequestParam(required = false) String emailPrefix,
+                                                                       @RequestParam(required = false) String namePrefix,
+                                                                       @RequestParam(required = false) String after) {
+
+        return reactiveUserService.search(email, emailPrefix, namePrefix, after)
+                .map(userPage -> mapUserPage(userPage, UserField.ALL));
+    }
+
+    /**
+     * Streams every user as NDJSON (default) or CSV. Rows are read as the client consumes them,
+     * so memory stays flat whatever the size of the table.
+     */
+    @Admitted(AdmissionClass.READ)
+    @GetMapping(path = "/export")
+    public ResponseEntity<Flux<String>> exportUsers(@RequestParam(defaultValue = "ndjson") String format) {
+
+        UserFileFormat fileFormat = UserFileFormat.from(format);
+        Flux<String> lines = fileFormat == UserFileFormat.CSV
+                ? Flux.concat(Mono.just("id,name,email\n"), reactiveUserService.exportAll().map(this::toCsvLine))
+                : reactiveUserService.exportAll().map(this::toNdjsonLine);
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(fileFormat.getContentType()))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=users." + fileFormat.getFileExtension())
+                .body(lines);
+    }
+
+    /**
+     * With If-Match the password is only changed if the user is still at that version, else HTTP 412.
+     */
+    @Admitted(AdmissionClass.HASHING)
+    @PatchMapping(path="/{id}")
+    public Mono<Void> changePassword(@PathVariable Long id,
+                                     @RequestHeader(name = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+                                     @Validated @RequestBody ChangePasswordRequestDto changePasswordRequestDto) {
+
+        return reactiveUserService.changePassword(id, changePasswordRequestDto.getPassword(), UserETags.parseVersion(ifMatch));
+    }
+
+    /**
+     * Checks a password against the stored hash, on the password verification pool. A wrong password
+     * is answered with verified false, not an error.
+     */
+    @Admitted(AdmissionClass.VERIFY)
+    @PostMapping(path = "/{id}/verify")
+    public Mono<VerifyPasswordResponseDto> verifyPassword(@PathVariable Long id,
+                                                          @Validated @RequestBody VerifyPasswordRequestDto verifyPasswordRequestDto) {
+
+        return reactiveUserService.verifyPassword(id, verifyPasswordRequestDto.getPassword())
+                .map(verified -> VerifyPasswordResponseDto.builder()
+                        .verified(verified)
+                        .build());
+    }
+
+    /**
+     * With If-Match the user is only updated if it is still at that version, else HTTP 412.
+     * The response then carries the ETag of the new version.
+     */
+    @Admitted(AdmissionClass.WRITE)
+    @PutMapping(path="/{id}")
+    public Mono<ResponseEntity<UserDetailsResponseDto>> modifyUser(@PathVariable Long id,
+                                                                   @RequestHeader(name = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+                                                                   @Validated @RequestBody ModifyUserRequestDto modifyUserRequestDto) {
+
+        return reactiveUserService.updateUser(id, modifyUserRequestDto, UserETags.parseVersion(ifMatch))
+                .map(user -> {
+                    ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+                    if(null != user.getVersion()) {
+                        response.eTag(UserETags.of(user.getVersion()));
+                    }
+                    return response.body(mapUserToUserDetailsResponseDto(user, UserField.ALL));
+                });
+    }
+
+    /**
+     * With If-Match the user is only deleted if it is still at that version, else HTTP 412.
+     */
+    @Admitted(AdmissionClass.WRITE)
+    @DeleteMapping(path="/{id}")
+    public Mono<Void> deleteUser(@PathVariable Long id,
+                                 @RequestHeader(name = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        return reactiveUserService.deleteUser(id, UserETags.parseVersion(ifMatch));
+    }
+
+
+    private CreateUsersBatchResponseDto mapUserCreationResults(List<UserCreationResult> results, Locale locale) {
+        List<CreateUserBatchResultDto> resultDtos = new ArrayList<>(results.size());
+        int createdCount = 0;
+        for(UserCreationResult result : results) {
+            CreateUserBatchResultDto.CreateUserBatchResultDtoBuilder resultDto = CreateUserBatchResultDto.builder()
+                    .index(result.getIndex())
+                    .created(result.isCreated());
+            if(result.isCreated()) {
+                createdCount++;
+                resultDto.id(result.getUser().getId());
+            } else {
+                resultDto.errorMessage(result.getErrors().stream()
+                        .map(key -> errorMessageResolver.resolve(key, null, locale))
+                        .collect(Collectors.joining(",")));
+            }
+            resultDtos.add(resultDto.build());
+        }
+        return CreateUsersBatchResponseDto.builder()
+                .createdCount(createdCount)
+                .failedCount(results.size() - createdCount)
+                .results(resultDtos)
+                .build();
+    }
+
+    private PaginatedResponse<UserDetailsResponseDto> mapUserPage(PaginatedResponse<User> userPage,
+                                                                  Set<UserField> fields) {
+        List<UserDetailsResponseDto> userDetailsResponseDtoList = new ArrayList<>(userPage.getRecords().size());
+        userPage.getRecords()
+                .forEach(user -> userDetailsResponseDtoList.add(mapUserToUserDetailsResponseDto(user, fields)));
+
+        PaginatedResponse<UserDetailsResponseDto> paginatedResponse = new PaginatedResponse<>();
+        paginatedResponse.setRecords(userDetailsResponseDtoList);
+        paginatedResponse.setPageSize(userPage.getPageSize());
+        paginatedResponse.setPageNumber(userPage.getPageNumber());
+        paginatedResponse.setTotalRecords(userPage.getTotalRecords());
+        paginatedResponse.setTotalPages(userPage.getTotalPages());
+        paginatedResponse.setNextCursor(userPage.getNextCursor());
+        return paginatedResponse;
+    }
+
+    private MappingJacksonValue withFields(Object body, Set<UserField> fields) {
+        MappingJacksonValue mappingJacksonValue = new MappingJacksonValue(body);
+        mappingJacksonValue.setFilters(UserFieldsFilter.of(fields));
+        return mappingJacksonValue;
+    }
+
+    // Same record shape as UserExportWriter: id, name and email, one line per user.
+    private String toNdjsonLine(User user) {
+        try {
+            return objectMapper.writer(EXPORT_FIELDS).writeValueAsString(UserDetailsResponseDto.builder()
+                    .id(user.getId())
+                    .name(user.getName())
+                    .email(user.getEmail())
+                    .build()) + "\n";
+        } catch(JsonProcessingException jsonProcessingException) {
+            throw new UncheckedIOException(jsonProcessingException);
+        }
+    }
+
+    private String toCsvLine(User user) {
+        return user.getId() + "," + csvField(user.getName()) + "," + csvField(user.getEmail()) + "\n";
+    }
+
+    private String csvField(String value) {
+        if(value == null) {
+            return "";
+        }
+        if(value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    // Fields that were not asked for stay null, and are left out of the JSON.
+    private UsersLookupResponseDto mapUserLookupResult(UserLookupResult userLookupResult) {
+        return UsersLookupResponseDto.builder()
+                .records(userLookupResult.getUsers().stream()
+                        .map(user -> mapUserToUserDetailsResponseDto(user, UserField.ALL))
+                        .collect(Collectors.toList()))
+                .missingIds(userLookupResult.getMissingIds())
+                .build();
+    }
+
+    // Fields that were not asked for stay null, and withFields() leaves them out of the JSON.
+    private UserDetailsResponseDto mapUserToUserDetailsResponseDto(User user, Set<UserField> fields) {
+        return UserDetailsResponseDto.builder()
+                .id(fields.contains(UserField.ID) ? user.getId() : null)
+                .name(fields.contains(UserField.NAME) ? user.getName() : null)
+                .password(fields.contains(UserField.PASSWORD) ? user.getPassword() : null) // password only included for assessment purpose.
+                .email(fields.contains(UserField.EMAIL) ? user.getEmail() : null)
+                .build();
+    }
+
+}
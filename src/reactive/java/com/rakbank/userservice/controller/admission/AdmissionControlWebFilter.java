@@ -0,0 +1,113 @@
+package com.rakbank.userservice.controller.admission;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rakbank.userservice.controller.ReactiveControllerAdvisor;
+import com.rakbank.userservice.controller.dto.response.ErrorResponse;
+import com.rakbank.userservice.error.AdmissionRejectedException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.reactive.result.method.annotation.RequestMappingHandlerMapping;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.security.Principal;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * AdmissionControlInterceptor for the reactive profile. Admits requests to @Admitted controller
+ * methods against the same budgets, before the method runs. The permit is held until the response
+ * is complete or the client goes away, so bcrypt work still running counts against the limit.
+ * Rejections get the payload, Retry-After header and error counter of ReactiveControllerAdvisor.
+ */
+public class AdmissionControlWebFilter implements WebFilter {
+
+    private final Map<AdmissionClass, AdmissionBudget> budgets;
+    private final String clientHeader;
+    private final Set<String> trustedProxies;
+
+    @Autowired
+    @Qualifier("requestMappingHandlerMapping")
+    RequestMappingHandlerMapping requestMappingHandlerMapping;
+
+    @Autowired
+    ReactiveControllerAdvisor reactiveControllerAdvisor;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    /**
+     * @param clientHeader names the client, e.g. X-Client-Id. Only read on requests from a trusted proxy.
+     * @param trustedProxies addresses allowed to name the client in the header
+     */
+    public AdmissionControlWebFilter(Map<AdmissionClass, AdmissionBudget> budgets, String clientHeader,
+                                     Set<String> trustedProxies) {
+        this.budgets = budgets;
+        this.clientHeader = clientHeader;
+        this.trustedProxies = Set.copyOf(trustedProxies);
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        return admit(exchange)
+                .flatMap(permit -> chain.filter(exchange).doFinally(signal -> permit.ifPresent(Runnable::run)))
+                .onErrorResume(AdmissionRejectedException.class, rejected -> reject(exchange, rejected));
+    }
+
+    @Scheduled(fixedDelayString = "PT1M")
+    public void purgeIdleClients() {
+        budgets.values().forEach(AdmissionBudget::purgeIdleClients);
+    }
+
+    // The handler is looked up as the DispatcherHandler will, to read its @Admitted.
+    private Mono<Optional<Runnable>> admit(ServerWebExchange exchange) {
+        return requestMappingHandlerMapping.getHandler(exchange)
+                .ofType(HandlerMethod.class)
+                .mapNotNull(handlerMethod -> handlerMethod.getMethodAnnotation(Admitted.class))
+                .flatMap(admitted -> clientKey(exchange)
+                        .map(clientKey -> Optional.of(budgets.get(admitted.value()).admit(clientKey))))
+                .defaultIfEmpty(Optional.empty());
+    }
+
+    private Mono<Void> reject(ServerWebExchange exchange, AdmissionRejectedException rejected) {
+        ResponseEntity<ErrorResponse> errorResponse = reactiveControllerAdvisor.handleAdmissionRejected(rejected);
+        ServerHttpResponse response = exchange.getResponse();
+        response.setStatusCode(errorResponse.getStatusCode());
+        response.getHeaders().addAll(errorResponse.getHeaders());
+        response.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+        try {
+            byte[] body = objectMapper.writeValueAsBytes(errorResponse.getBody());
+            return response.writeWith(Mono.just(response.bufferFactory().wrap(body)));
+        } catch(JsonProcessingException jsonProcessingException) {
+            return Mono.error(jsonProcessingException);
+        }
+    }
+
+    // Same keys as AdmissionControlInterceptor: the header only counts when a trusted proxy passes it on.
+    private Mono<String> clientKey(ServerWebExchange exchange) {
+        String remoteAddress = Optional.ofNullable(exchange.getRequest().getRemoteAddress())
+                .map(InetSocketAddress::getAddress)
+                .map(InetAddress::getHostAddress)
+                .orElse("");
+        String clientId = exchange.getRequest().getHeaders().getFirst(clientHeader);
+        String anonymousKey = clientId != null && !clientId.isBlank() && trustedProxies.contains(remoteAddress)
+                ? "id:" + clientId
+                : "ip:" + remoteAddress;
+        return exchange.getPrincipal()
+                .map(Principal::getName)
+                .map(name -> "user:" + name)
+                .defaultIfEmpty(anonymousKey);
+    }
+
+}
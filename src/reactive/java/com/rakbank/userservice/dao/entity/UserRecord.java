@@ -0,0 +1,39 @@
+package com.rakbank.userservice.dao.entity;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Version;
+import org.springframework.data.relational.core.mapping.Column;
+import org.springframework.data.relational.core.mapping.Table;
+
+/**
+ * R2DBC mapping of the users table, for the reactive stack. Same columns as UserEntity.
+ */
+@Table("users")
+@Setter
+@Getter
+public class UserRecord {
+
+    // Assigned by ReactiveUserIdAllocator from the same user_id_sequence row as UserEntity.
+    @Id
+    @Column("ID")
+    private Long id;
+
+    @Column("NAME")
+    private String name;
+
+    @Column("PASSWORD")
+    private String password;
+
+    @Column("EMAIL")
+    private String email;
+
+    @Column("EMAIL_NORMALIZED")
+    private String emailNormalized;
+
+    @Version
+    @Column("VERSION")
+    private Integer version;
+
+}
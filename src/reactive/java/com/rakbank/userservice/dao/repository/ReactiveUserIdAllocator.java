@@ -0,0 +1,62 @@
+package com.rakbank.userservice.dao.repository;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Mono;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Hands out user ids from the user_id_sequence row, the way Hibernate's pooled-lo table generator does
+ * for UserEntity: one round trip reserves ALLOCATION_SIZE ids. Both stacks can write the same table.
+ */
+@Component
+@Profile("reactive")
+public class ReactiveUserIdAllocator {
+
+    // Same as the allocationSize of user_id_generator on UserEntity.
+    private static final int ALLOCATION_SIZE = 50;
+
+    @Autowired
+    DatabaseClient databaseClient;
+
+    @Autowired
+    TransactionalOperator transactionalOperator;
+
+    private final Queue<Long> reservedIds = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Method to get an unused user id. Reserves a new block when the current one is used up.
+     * @return
+     */
+    public Mono<Long> nextId() {
+        Long id = reservedIds.poll();
+        if(null != id) {
+            return Mono.just(id);
+        }
+        return reserveBlock();
+    }
+
+    // The first id of the block goes to the caller, the rest to the next callers.
+    private Mono<Long> reserveBlock() {
+        return databaseClient.sql("select next_val from user_id_sequence where sequence_name = 'users' for update")
+                .map(row -> row.get("next_val", Long.class))
+                .one()
+                .flatMap(low -> databaseClient.sql("update user_id_sequence set next_val = :next where sequence_name = 'users'")
+                        .bind("next", low + ALLOCATION_SIZE)
+                        .fetch()
+                        .rowsUpdated()
+                        .thenReturn(low))
+                .as(transactionalOperator::transactional)
+                .doOnNext(low -> {
+                    for(long id = low + 1; id < low + ALLOCATION_SIZE; id++) {
+                        reservedIds.add(id);
+                    }
+                });
+    }
+
+}
@@ -0,0 +1,89 @@
+package com.rakbank.userservice.dao.repository;
+
+import com.rakbank.userservice.dao.entity.UserRecord;
+import org.springframework.data.r2dbc.repository.Modifying;
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.r2dbc.repository.R2dbcRepository;
+import org.springframework.data.repository.query.Param;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+
+/**
+ * Reactive counterpart of UserRepository. The queries are the same ones, in SQL.
+ */
+public interface ReactiveUserRepository extends R2dbcRepository<UserRecord, Long> {
+
+    @Query("select EMAIL from users where EMAIL in (:emails)")
+    public Flux<String> findExistingEmails(@Param("emails") Collection<String> emails);
+
+    @Query("select * from users where ID in (:ids)")
+    public Flux<UserRecord> findByIdIn(@Param("ids") Collection<Long> ids);
+
+    @Query("select * from users order by ID limit :limit offset :offset")
+    public Flux<UserRecord> findPage(@Param("limit") int limit, @Param("offset") long offset);
+
+    @Query("select * from users where ID > :id order by ID limit :limit")
+    public Flux<UserRecord> findAfter(@Param("id") long id, @Param("limit") int limit);
+
+    @Query("select * from users where EMAIL_NORMALIZED = :email and ID > :id order by ID limit :limit")
+    public Flux<UserRecord> searchByEmail(@Param("email") String email, @Param("id") long id, @Param("limit") int limit);
+
+    @Query("select * from users where EMAIL_NORMALIZED like :prefix escape '!' " +
+            "and (EMAIL_NORMALIZED > :key or (EMAIL_NORMALIZED = :key and ID > :id)) " +
+            "order by EMAIL_NORMALIZED, ID limit :limit")
+    public Flux<UserRecord> searchByEmailPrefix(@Param("prefix") String prefix, @Param("key") String key,
+                                                @Param("id") long id, @Param("limit") int limit);
+
+    @Query("select * from users where NAME like :prefix escape '!' " +
+            "and (NAME > :key or (NAME = :key and ID > :id)) " +
+            "order by NAME, ID limit :limit")
+    public Flux<UserRecord> searchByNamePrefix(@Param("prefix") String prefix, @Param("key") String key,
+                                               @Param("id") long id, @Param("limit") int limit);
+
+    @Query("select PASSWORD from users where ID = :id")
+    public Mono<String> findPasswordById(@Param("id") Long id);
+
+    /**
+     * Rows in id order, emitted as the subscriber requests them.
+     */
+    @Query("select * from users order by ID")
+    public Flux<UserRecord> streamAll();
+
+    @Modifying
+    @Query("update users set NAME = :name, EMAIL = :email, EMAIL_NORMALIZED = lower(:email), VERSION = VERSION + 1 where ID = :id")
+    public Mono<Integer> updateDetails(@Param("id") Long id, @Param("name") String name, @Param("email") String email);
+
+    @Modifying
+    @Query("update users set NAME = :name, EMAIL = :email, EMAIL_NORMALIZED = lower(:email), VERSION = VERSION + 1 " +
+            "where ID = :id and VERSION = :version")
+    public Mono<Integer> updateDetailsIfVersion(@Param("id") Long id, @Param("version") int version,
+                                                @Param("name") String name, @Param("email") String email);
+
+    @Modifying
+    @Query("update users set PASSWORD = :password, NEEDS_REHASH = false, VERSION = VERSION + 1 where ID = :id")
+    public Mono<Integer> updatePassword(@Param("id") Long id, @Param("password") String password);
+
+    @Modifying
+    @Query("update users set PASSWORD = :password, NEEDS_REHASH = false, VERSION = VERSION + 1 where ID = :id and VERSION = :version")
+    public Mono<Integer> updatePasswordIfVersion(@Param("id") Long id, @Param("version") int version,
+                                                 @Param("password") String password);
+
+    /**
+     * Replaces a hash that was just verified, as UserRepository.rehashPassword. The version doesn't move.
+     */
+    @Modifying
+    @Query("update users set PASSWORD = :newPassword, NEEDS_REHASH = false where ID = :id and PASSWORD = :password")
+    public Mono<Integer> rehashPassword(@Param("id") Long id, @Param("password") String password,
+                                        @Param("newPassword") String newPassword);
+
+    @Modifying
+    @Query("delete from users where ID = :id")
+    public Mono<Integer> deleteUserById(@Param("id") Long id);
+
+    @Modifying
+    @Query("delete from users where ID = :id and VERSION = :version")
+    public Mono<Integer> deleteUserByIdIfVersion(@Param("id") Long id, @Param("version") int version);
+
+}
@@ -0,0 +1,588 @@
+package com.rakbank.userservice.service;
+
+import com.rakbank.userservice.controller.dto.request.CreateUserRequestDto;
+import com.rakbank.userservice.controller.dto.request.ModifyUserRequestDto;
+import com.rakbank.userservice.dao.entity.UserRecord;
+import com.rakbank.userservice.dao.repository.ReactiveUserIdAllocator;
+import com.rakbank.userservice.dao.repository.ReactiveUserRepository;
+import com.rakbank.userservice.error.DomainException;
+import com.rakbank.userservice.service.api.ReactiveUserService;
+import com.rakbank.userservice.service.model.PaginatedResponse;
+import com.rakbank.userservice.service.model.User;
+import com.rakbank.userservice.service.model.UserCreationResult;
+import com.rakbank.userservice.service.model.UserLookupResult;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.r2dbc.core.R2dbcEntityTemplate;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Same behaviour as UserServiceImpl, without blocking a thread on the database or on bcrypt.
+ * Rows are read and written through R2DBC; passwords are hashed on bounded schedulers. The user
+ * cache, read replicas and single-flight loads of the servlet stack are not used here; password checks
+ * are queued per user as there.
+ */
+@Service
+@Profile("reactive")
+public class ReactiveUserServiceImpl implements ReactiveUserService {
+
+    @Autowired
+    ReactiveUserRepository reactiveUserRepository;
+
+    @Autowired
+    ReactiveUserIdAllocator reactiveUserIdAllocator;
+
+    @Autowired
+    R2dbcEntityTemplate r2dbcEntityTemplate;
+
+    @Autowired
+    PasswordEncoder passwordEncoder;
+
+    @Autowired
+    PasswordCheckQueue passwordCheckQueue;
+
+    @Autowired
+    @Qualifier("passwordHashingScheduler")
+    Scheduler passwordHashingScheduler;
+
+    @Autowired
+    @Qualifier("bulkPasswordHashingScheduler")
+    Scheduler bulkPasswordHashingScheduler;
+
+    @Autowired
+    UserCountProvider userCountProvider;
+
+    @Autowired
+    Validator validator;
+
+    @Value("${userservice.batch.max-size:1000}")
+    int maxBatchSize;
+
+    @Value("${userservice.lookup.max-ids:500}")
+    int maxLookupIds;
+
+    // Records of a batch hashed at once, one per thread of the bulk hashing pool.
+    @Value("${userservice.hashing.bulk-pool-size:4}")
+    int bulkHashingConcurrency;
+
+    private final Log LOGGER = LogFactory.getLog(this.getClass());
+
+    private int DEFAULT_PAGE_SIZE=10;
+
+    private int LOOKUP_CHUNK_SIZE=200;
+
+    /**
+     * Method to create a new User. As in UserServiceImpl, a duplicate email is caught from the
+     * user_email unique key rather than looked up first.
+     * @param createUserRequestDto
+     * @return
+     */
+    @Override
+    public Mono<User> create(CreateUserRequestDto createUserRequestDto) {
+
+        return hash(createUserRequestDto.getPassword(), passwordHashingScheduler)
+                .flatMap(passwordHash -> insert(newUserRecord(createUserRequestDto.getName(),
+                        createUserRequestDto.getEmail(), passwordHash)))
+                .onErrorMap(DataIntegrityViolationException.class, this::duplicateEmail)
+                .doOnNext(user -> {
+                    userCountProvider.increment();
+                    LOGGER.debug(String.format("User created successfully. Email [%s]", createUserRequestDto.getEmail()));
+                });
+    }
+
+    /**
+     * Method to create many users at once. Records are validated and checked for duplicates as in
+     * UserServiceImpl, then hashed and inserted a few at a time. A bad record never fails the others.
+     * @param createUserRequestDtos
+     * @return one result per record, in request order
+     */
+    @Override
+    public Mono<List<UserCreationResult>> createAll(List<CreateUserRequestDto> createUserRequestDtos) {
+
+        return Mono.defer(() -> {
+            if(createUserRequestDtos == null || createUserRequestDtos.isEmpty()) {
+                return Mono.error(new DomainException("user.batch.empty"));
+            }
+            if(createUserRequestDtos.size() > maxBatchSize) {
+                return Mono.error(new DomainException("user.batch.tooLarge", List.of(String.valueOf(maxBatchSize))));
+            }
+
+            List<UserCreationResult> results = new ArrayList<>(createUserRequestDtos.size());
+            List<Integer> acceptedIndexes = new ArrayList<>();
+            Set<String> batchEmails = new HashSet<>();
+
+            for(int index = 0; index < createUserRequestDtos.size(); index++) {
+                CreateUserRequestDto createUserRequestDto = createUserRequestDtos.get(index);
+                UserCreationResult result = new UserCreationResult();
+                result.setIndex(index);
+                results.add(result);
+
+                if(createUserRequestDto == null) {
+                    result.setErrors(List.of("user.batch.invalidRecord"));
+                    continue;
+                }
+
+                List<String> errors = validator.validate(createUserRequestDto).stream()
+                        .map(ConstraintViolation::getMessage)
+                        .distinct()
+                        .sorted()
+                        .collect(Collectors.toList());
+                if(!errors.isEmpty()) {
+                    result.setErrors(errors);
+                } else if(!batchEmails.add(normalizeEmail(createUserRequestDto.getEmail()))) {
+                    result.setErrors(List.of("user.email.alreadyRegistered"));
+                } else {
+                    acceptedIndexes.add(index);
+                }
+            }
+
+            if(acceptedIndexes.isEmpty()) {
+                return Mono.just(results);
+            }
+
+            List<String> emails = acceptedIndexes.stream()
+                    .map(index -> createUserRequestDtos.get(index).getEmail())
+                    .collect(Collectors.toList());
+            return reactiveUserRepository.findExistingEmails(emails)
+                    .map(this::normalizeEmail)
+                    .collect(Collectors.toSet())
+                    .flatMapMany(existingEmails -> Flux.fromIterable(acceptedIndexes)
+                            .filter(index -> {
+                                if(existingEmails.contains(normalizeEmail(createUserRequestDtos.get(index).getEmail()))) {
+                                    results.get(index).setErrors(List.of("user.email.alreadyRegistered"));
+                                    return false;
+                                }
+                                return true;
+                            }))
+                    .flatMap(index -> createBatchRecord(createUserRequestDtos.get(index), results.get(index)),
+                            bulkHashingConcurrency)
+                    .then(Mono.fromCallable(() -> {
+                        LOGGER.debug(String.format("Batch creation finished. Records [%d] Created [%d]",
+                                results.size(), results.stream().filter(UserCreationResult::isCreated).count()));
+                        return results;
+                    }));
+        });
+    }
+
+    /**
+     * Method to get user by ID.
+     * @param id
+     * @return
+     */
+    @Override
+    public Mono<User> findById(Long id) {
+
+        return reactiveUserRepository.findById(id)
+                .map(this::mapUserRecordToUser)
+                .switchIfEmpty(Mono.error(() -> new DomainException("user.notExist", HttpStatus.NOT_FOUND)));
+    }
+
+    /**
+     * Method to get many users by id, with one IN query per LOOKUP_CHUNK_SIZE ids.
+     * @param ids
+     * @return users in request order, and the ids that have no user
+     */
+    @Override
+    public Mono<UserLookupResult> findByIds(List<Long> ids) {
+
+        if(ids == null || ids.isEmpty()) {
+            return Mono.error(new DomainException("user.lookup.empty"));
+        }
+        // A repeated id is only looked up and returned once.
+        List<Long> uniqueIds = ids.stream()
+                .filter(Objects::nonNull)
+                .distinct()
+                .collect(Collectors.toList());
+        if(uniqueIds.size() > maxLookupIds) {
+            return Mono.error(new DomainException("user.lookup.tooLarge", List.of(String.valueOf(maxLookupIds))));
+        }
+
+        return Flux.fromIterable(uniqueIds)
+                .buffer(LOOKUP_CHUNK_SIZE)
+                .concatMap(reactiveUserRepository::findByIdIn)
+                .map(this::mapUserRecordToUser)
+                .collectMap(User::getId)
+                .map(usersById -> {
+                    List<User> users = new ArrayList<>(usersById.size());
+                    List<Long> missingIds = new ArrayList<>();
+                    for(Long id : uniqueIds) {
+                        User user = usersById.get(id);
+                        if(user != null) {
+                            users.add(user);
+                        } else {
+                            missingIds.add(id);
+                        }
+                    }
+                    UserLookupResult userLookupResult = new UserLookupResult();
+                    userLookupResult.setUsers(users);
+                    userLookupResult.setMissingIds(missingIds);
+                    return userLookupResult;
+                });
+    }
+
+    /**
+     * Method to get the users of a page. Reads one row more than the page to tell whether there is a next one.
+     * @param pageNumber
+     * @param withCount
+     * @return
+     */
+    @Override
+    public Mono<PaginatedResponse<User>> findAll(Integer pageNumber, boolean withCount) {
+
+        if(pageNumber < 1L) {
+            return Mono.error(new DomainException("Invalid Page Number. Must be minimum 1"));
+        }
+
+        Mono<List<User>> users = reactiveUserRepository
+                .findPage(DEFAULT_PAGE_SIZE + 1, (long) (pageNumber - 1) * DEFAULT_PAGE_SIZE)
+                .map(this::mapUserRecordToUser)
+                .collectList();
+        // The count may be reconciled with a JDBC query, which must stay off the event loop.
+        Mono<Long> totalRecords = withCount
+                ? Mono.fromCallable(userCountProvider::getCount).subscribeOn(Schedulers.boundedElastic())
+                : Mono.just(-1L);
+
+        return Mono.zip(users, totalRecords)
+                .map(pageAndCount -> {
+                    PaginatedResponse<User> paginatedResponse = toPage(pageAndCount.getT1());
+                    paginatedResponse.setPageNumber(pageNumber);
+                    if(withCount) {
+                        long total = pageAndCount.getT2();
+                        paginatedResponse.setTotalRecords(total);
+                        paginatedResponse.setTotalPages((int) ((total + DEFAULT_PAGE_SIZE - 1) / DEFAULT_PAGE_SIZE));
+                    }
+                    return paginatedResponse;
+                });
+    }
+
+    /**
+     * Method to get the page of users after the given cursor. Seeks on the primary key.
+     * @param cursor
+     * @return
+     */
+    @Override
+    public Mono<PaginatedResponse<User>> findAllAfter(String cursor) {
+
+        return Mono.fromCallable(() -> PageCursor.decode(cursor))
+                .flatMapMany(lastId -> reactiveUserRepository.findAfter(lastId, DEFAULT_PAGE_SIZE + 1))
+                .map(this::mapUserRecordToUser)
+                .collectList()
+                .map(this::toPage);
+    }
+
+    /**
+     * Method to search users by exact email, email prefix or name prefix, with the same queries and
+     * cursors as UserServiceImpl.
+     * @param email
+     * @param emailPrefix
+     * @param namePrefix
+     * @param after
+     * @return
+     */
+    @Override
+    public Mono<PaginatedResponse<User>> search(String email, String emailPrefix, String namePrefix, String after) {
+
+        long criteriaCount = Stream.of(email, emailPrefix, namePrefix)
+                .filter(criteria -> criteria != null && !criteria.isBlank())
+                .count();
+        if(criteriaCount != 1) {
+            return Mono.error(new DomainException("user.search.criteria"));
+        }
+
+        return Mono.fromCallable(() -> PageCursor.decodePosition(after))
+                .flatMap(position -> {
+                    // One extra row tells us whether there is a next page without a count query.
+                    int limit = DEFAULT_PAGE_SIZE + 1;
+                    Flux<UserRecord> userRecords;
+                    Function<UserRecord, String> sortKey;
+                    if(email != null && !email.isBlank()) {
+                        userRecords = reactiveUserRepository.searchByEmail(normalizeEmail(email), position.id(), limit);
+                        sortKey = userRecord -> "";
+                    } else if(emailPrefix != null && !emailPrefix.isBlank()) {
+                        userRecords = reactiveUserRepository.searchByEmailPrefix(likePrefix(normalizeEmail(emailPrefix)),
+                                position.key(), position.id(), limit);
+                        sortKey = userRecord -> normalizeEmail(userRecord.getEmail());
+                    } else {
+                        userRecords = reactiveUserRepository.searchByNamePrefix(likePrefix(namePrefix),
+                                position.key(), position.id(), limit);
+                        sortKey = UserRecord::getName;
+                    }
+                    return userRecords.collectList()
+                            .map(records -> toSearchPage(records, sortKey));
+                });
+    }
+
+    /**
+     * Method to stream every user. Rows are fetched as the subscriber requests them, so a slow client
+     * slows the read down instead of filling memory.
+     * @return
+     */
+    @Override
+    public Flux<User> exportAll() {
+
+        return reactiveUserRepository.streamAll()
+                .map(this::mapUserRecordToUser);
+    }
+
+    /**
+     * Method to change user password, in one UPDATE once the new password is hashed.
+     * @param userId
+     * @param newPassword
+     * @param expectedVersion
+     */
+    @Override
+    public Mono<Void> changePassword(Long userId, String newPassword, Integer expectedVersion) {
+
+        return hash(newPassword, passwordHashingScheduler)
+                .flatMap(passwordHash -> null != expectedVersion
+                        ? reactiveUserRepository.updatePasswordIfVersion(userId, expectedVersion, passwordHash)
+                        : reactiveUserRepository.updatePassword(userId, passwordHash))
+                .flatMap(updated -> updated == 0 ? notFoundOrVersionMismatch(userId, expectedVersion) : Mono.empty());
+    }
+
+    /**
+     * Method to check a user password on the password verification executor. Checks of one user are
+     * queued and joined as in UserServiceImpl. A matching hash below the current policy is replaced by
+     * the hash computed during the check.
+     * @param userId
+     * @param password
+     * @return
+     */
+    @Override
+    public Mono<Boolean> verifyPassword(Long userId, String password) {
+
+        return Mono.fromFuture(() -> passwordCheckQueue.submit(userId, password,
+                () -> checkPassword(userId, password).toFuture()));
+    }
+
+    private Mono<Boolean> checkPassword(Long userId, String password) {
+
+        return reactiveUserRepository.findPasswordById(userId)
+                .switchIfEmpty(Mono.error(() -> new DomainException("user.notExist", HttpStatus.NOT_FOUND)))
+                .flatMap(storedHash -> Mono.fromFuture(() -> passwordEncoder.verifyAsync(password, storedHash))
+                        .flatMap(verification -> null == verification.newHash()
+                                ? Mono.just(verification.verified())
+                                : rehashPassword(userId, storedHash, verification.newHash())
+                                        .thenReturn(verification.verified())));
+    }
+
+    private Mono<Void> rehashPassword(Long userId, String oldHash, String newHash) {
+        return reactiveUserRepository.rehashPassword(userId, oldHash, newHash)
+                .doOnNext(updated -> {
+                    if(updated == 1) {
+                        LOGGER.debug(String.format("Password of user [%s] rehashed on verification", userId));
+                    }
+                })
+                .onErrorResume(DataAccessException.class, dataAccessException -> {
+                    // The password did match. The hash is replaced on a later check, or flagged by the rehash scan.
+                    LOGGER.warn(String.format("Password of user [%s] could not be rehashed", userId), dataAccessException);
+                    return Mono.empty();
+                })
+                .then();
+    }
+
+    /**
+     * Method to modify user details in one UPDATE, without reading the row first.
+     * @param userId
+     * @param modifyUserRequestDto
+     * @param expectedVersion
+     * @return
+     */
+    @Override
+    public Mono<User> updateUser(Long userId, ModifyUserRequestDto modifyUserRequestDto, Integer expectedVersion) {
+
+        Mono<Integer> updated = null != expectedVersion
+                ? reactiveUserRepository.updateDetailsIfVersion(userId, expectedVersion,
+                        modifyUserRequestDto.getName(), modifyUserRequestDto.getEmail())
+                : reactiveUserRepository.updateDetails(userId,
+                        modifyUserRequestDto.getName(), modifyUserRequestDto.getEmail());
+
+        return updated
+                .onErrorMap(DataIntegrityViolationException.class, this::duplicateEmail)
+                .flatMap(count -> {
+                    if(count == 0) {
+                        return notFoundOrVersionMismatch(userId, expectedVersion);
+                    }
+                    // The row now holds exactly what was written. The password hash isn't read back.
+                    User user = new User();
+                    user.setId(userId);
+                    user.setName(modifyUserRequestDto.getName());
+                    user.setEmail(modifyUserRequestDto.getEmail());
+                    user.setVersion(null != expectedVersion ? expectedVersion + 1 : null);
+                    return Mono.just(user);
+                });
+    }
+
+    /**
+     * Method to delete a user in one DELETE, without reading the row first.
+     * @param userId
+     * @param expectedVersion
+     */
+    @Override
+    public Mono<Void> deleteUser(Long userId, Integer expectedVersion) {
+
+        Mono<Integer> deleted = null != expectedVersion
+                ? reactiveUserRepository.deleteUserByIdIfVersion(userId, expectedVersion)
+                : reactiveUserRepository.deleteUserById(userId);
+
+        return deleted.flatMap(count -> {
+            if(count == 0) {
+                return notFoundOrVersionMismatch(userId, expectedVersion);
+            }
+            userCountProvider.decrement();
+            return Mono.empty();
+        });
+    }
+
+    /**
+     * Method to hash a password on a bounded scheduler, off the event loop.
+     * Fails fast with HTTP 503 when the scheduler's queue is full.
+     * @param password
+     * @param scheduler
+     * @return
+     */
+    private Mono<String> hash(String password, Scheduler scheduler) {
+        return Mono.fromCallable(() -> passwordEncoder.encode(password))
+                .subscribeOn(scheduler)
+                .onErrorMap(RejectedExecutionException.class,
+                        rejectedExecutionException -> new DomainException("password.hashing.busy", HttpStatus.SERVICE_UNAVAILABLE));
+    }
+
+    private Mono<User> insert(UserRecord userRecord) {
+        return reactiveUserIdAllocator.nextId()
+                .flatMap(id -> {
+                    userRecord.setId(id);
+                    return r2dbcEntityTemplate.insert(userRecord);
+                })
+                .map(this::mapUserRecordToUser);
+    }
+
+    // A concurrent signup may take the email after the duplicate check; that record alone is rejected.
+    private Mono<User> createBatchRecord(CreateUserRequestDto createUserRequestDto, UserCreationResult result) {
+        return hash(createUserRequestDto.getPassword(), bulkPasswordHashingScheduler)
+                .flatMap(passwordHash -> insert(newUserRecord(createUserRequestDto.getName(),
+                        createUserRequestDto.getEmail(), passwordHash)))
+                .doOnNext(user -> {
+                    result.setUser(user);
+                    userCountProvider.increment();
+                })
+                .onErrorResume(DataIntegrityViolationException.class, dataIntegrityViolationException -> {
+                    if(!UniqueEmailConstraint.isViolatedBy(dataIntegrityViolationException)) {
+                        return Mono.error(dataIntegrityViolationException);
+                    }
+                    result.setErrors(List.of("user.email.alreadyRegistered"));
+                    return Mono.empty();
+                });
+    }
+
+    private Throwable duplicateEmail(DataIntegrityViolationException dataIntegrityViolationException) {
+        if(!UniqueEmailConstraint.isViolatedBy(dataIntegrityViolationException)) {
+            return dataIntegrityViolationException;
+        }
+        return new DomainException("user.email.alreadyRegistered");
+    }
+
+    /**
+     * Method to tell why a write matched no row. Only needs a query when a version was expected.
+     * @param userId
+     * @param expectedVersion
+     * @return
+     */
+    private <T> Mono<T> notFoundOrVersionMismatch(Long userId, Integer expectedVersion) {
+        if(null == expectedVersion) {
+            return Mono.error(new DomainException("user.notExist", HttpStatus.NOT_FOUND));
+        }
+        return reactiveUserRepository.existsById(userId)
+                .flatMap(exists -> Mono.error(exists
+                        ? new DomainException("concurrentModificationError", HttpStatus.PRECONDITION_FAILED)
+                        : new DomainException("user.notExist", HttpStatus.NOT_FOUND)));
+    }
+
+    // Pages are read with one extra row, which only tells whether there is a next page.
+    private PaginatedResponse<User> toPage(List<User> users) {
+        boolean hasNext = users.size() > DEFAULT_PAGE_SIZE;
+        List<User> records = hasNext ? users.subList(0, DEFAULT_PAGE_SIZE) : users;
+
+        PaginatedResponse<User> paginatedResponse = new PaginatedResponse<>();
+        paginatedResponse.setRecords(records);
+        paginatedResponse.setPageSize(DEFAULT_PAGE_SIZE);
+        if(hasNext) {
+            paginatedResponse.setNextCursor(PageCursor.encode(records.get(records.size()-1).getId()));
+        }
+        return paginatedResponse;
+    }
+
+    private PaginatedResponse<User> toSearchPage(List<UserRecord> userRecords, Function<UserRecord, String> sortKey) {
+        boolean hasNext = userRecords.size() > DEFAULT_PAGE_SIZE;
+
+        PaginatedResponse<User> paginatedResponse = new PaginatedResponse<>();
+        paginatedResponse.setRecords(userRecords.stream()
+                .limit(DEFAULT_PAGE_SIZE)
+                .map(this::mapUserRecordToUser)
+                .collect(Collectors.toList()));
+        paginatedResponse.setPageSize(DEFAULT_PAGE_SIZE);
+        if(hasNext) {
+            UserRecord last = userRecords.get(DEFAULT_PAGE_SIZE - 1);
+            paginatedResponse.setNextCursor(PageCursor.encode(sortKey.apply(last), last.getId()));
+        }
+        return paginatedResponse;
+    }
+
+    // LIKE pattern matching the prefix literally; '!' is the escape character of the search queries.
+    private String likePrefix(String prefix) {
+        return prefix.replace("!", "!!")
+                .replace("%", "!%")
+                .replace("_", "!_") + "%";
+    }
+
+    private UserRecord newUserRecord(String name, String email, String passwordHash) {
+        UserRecord userRecord = new UserRecord();
+        userRecord.setName(name);
+        userRecord.setEmail(email);
+        userRecord.setEmailNormalized(normalizeEmail(email));
+        userRecord.setPassword(passwordHash);
+        return userRecord;
+    }
+
+    private String normalizeEmail(String email) {
+        return email.toLowerCase(Locale.ROOT);
+    }
+
+    private User mapUserRecordToUser(UserRecord userRecord) {
+
+        User user = new User();
+        user.setId(userRecord.getId());
+        user.setName(userRecord.getName());
+        user.setEmail(userRecord.getEmail());
+
+        // This field is only included for assessment. Will never be set in a live project.
+        user.setPassword(userRecord.getPassword());
+        user.setVersion(userRecord.getVersion());
+        return user;
+    }
+
+}
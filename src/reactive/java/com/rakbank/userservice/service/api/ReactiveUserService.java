@@ -0,0 +1,109 @@
+package com.rakbank.userservice.service.api;
+
+import com.rakbank.userservice.controller.dto.request.CreateUserRequestDto;
+import com.rakbank.userservice.controller.dto.request.ModifyUserRequestDto;
+import com.rakbank.userservice.service.model.PaginatedResponse;
+import com.rakbank.userservice.service.model.User;
+import com.rakbank.userservice.service.model.UserCreationResult;
+import com.rakbank.userservice.service.model.UserLookupResult;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * Non-blocking counterpart of UserService, for the reactive stack. Errors are signalled as DomainException.
+ */
+public interface ReactiveUserService {
+
+    /**
+     * Method to create a new user. Completes once the password is hashed and the user is saved.
+     * @param createUserRequestDto
+     * @return
+     */
+    public Mono<User> create(CreateUserRequestDto createUserRequestDto);
+
+    /**
+     * Method to create many users at once. Each record gets its own result, so one bad record
+     * doesn't fail the batch.
+     * @param createUserRequestDtos
+     * @return
+     */
+    public Mono<List<UserCreationResult>> createAll(List<CreateUserRequestDto> createUserRequestDtos);
+
+    /**
+     * Method to find a user by the id as paramter.
+     * @param id
+     * @return
+     */
+    public Mono<User> findById(Long id);
+
+    /**
+     * Method to find many users by id.
+     * @param ids
+     * @return users in request order, and the ids that have no user
+     */
+    public Mono<UserLookupResult> findByIds(List<Long> ids);
+
+    /**
+     * Method to find all users for the provided page number.
+     * @param pageNumber
+     * @param withCount false to skip totalRecords and totalPages
+     * @return
+     */
+    public Mono<PaginatedResponse<User>> findAll(Integer pageNumber, boolean withCount);
+
+    /**
+     * Method to find the next page of users after the provided cursor.
+     * @param cursor
+     * @return
+     */
+    public Mono<PaginatedResponse<User>> findAllAfter(String cursor);
+
+    /**
+     * Method to search users by exactly one of exact email, email prefix or name prefix.
+     * @param email
+     * @param emailPrefix
+     * @param namePrefix
+     * @param after cursor of the previous page, or null for the first one
+     * @return
+     */
+    public Mono<PaginatedResponse<User>> search(String email, String emailPrefix, String namePrefix, String after);
+
+    /**
+     * Method to stream every user in id order, as fast as the subscriber consumes them.
+     * @return
+     */
+    public Flux<User> exportAll();
+
+    /**
+     * Method to change the user password. Completes once the new password is hashed and saved.
+     * @param userId
+     * @param newPassword
+     * @param expectedVersion version the client last read (If-Match), or null to skip the check
+     */
+    public Mono<Void> changePassword(Long userId, String newPassword, Integer expectedVersion);
+
+    /**
+     * Method to check a user password against the stored hash.
+     * @param userId
+     * @param password
+     * @return true when the password matches
+     */
+    public Mono<Boolean> verifyPassword(Long userId, String password);
+
+    /**
+     * Method to update user details.
+     * @param modifyUserRequestDto
+     * @param expectedVersion version the client last read (If-Match), or null to skip the check
+     */
+    public Mono<User> updateUser(Long userId, ModifyUserRequestDto modifyUserRequestDto, Integer expectedVersion);
+
+    /**
+     * Method to delete a user.
+     * @param userId
+     * @param expectedVersion version the client last read (If-Match), or null to skip the check
+     */
+    public Mono<Void> deleteUser(Long userId, Integer expectedVersion);
+
+}
@@ -0,0 +1,106 @@
+package com.rakbank.userservice;
+
+import com.rakbank.userservice.service.PasswordEncoder;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Runs requests through the whole MVC stack while their hashing is held back, and checks that a
+ * request waiting for a hash holds no connection of the primary pool.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:pending;MODE=MySQL;DB_CLOSE_DELAY=-1",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.hibernate.ddl-auto=none",
+        "userservice.hashing.calibration.enabled=false",
+        "userservice.rehash.enabled=false"
+})
+@AutoConfigureMockMvc
+class PendingRequestConnectionTests {
+
+    private static final String INSERT_USER = "insert into users (ID, NAME, EMAIL, EMAIL_NORMALIZED, PASSWORD, VERSION) "
+            + "values (?, ?, ?, ?, 'hash', 0)";
+
+    @Autowired
+    MockMvc mockMvc;
+
+    @Autowired
+    HikariDataSource dataSource;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @MockBean
+    PasswordEncoder passwordEncoder;
+
+    @Test
+    void shouldHoldNoConnectionWhilePasswordCheckIsPending() throws Exception {
+
+        jdbcTemplate.update(INSERT_USER, 3001L, "Deep", "deep@gmail.com", "deep@gmail.com");
+        CompletableFuture<PasswordEncoder.Verification> verification = new CompletableFuture<>();
+        when(passwordEncoder.verifyAsync(eq("password1"), eq("hash"))).thenReturn(verification);
+
+        MvcResult mvcResult = mockMvc.perform(post("/users/3001/verify")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"password\":\"password1\"}"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        Assertions.assertEquals(dataSource.getHikariPoolMXBean().getActiveConnections(), 0);
+
+        verification.complete(new PasswordEncoder.Verification(true, null));
+        mockMvc.perform(asyncDispatch(mvcResult))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.verified").value(true));
+
+    }
+
+    @Test
+    void shouldHoldNoConnectionWhileBatchIsHashed() throws Exception {
+
+        jdbcTemplate.update(INSERT_USER, 3002L, "Tarun", "tarun@gmail.com", "tarun@gmail.com");
+        CompletableFuture<List<String>> passwordHashes = new CompletableFuture<>();
+        when(passwordEncoder.encodeAll(anyList())).thenReturn(passwordHashes);
+
+        // The duplicate check has read the primary before the hashing starts.
+        MvcResult mvcResult = mockMvc.perform(post("/users/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[{\"name\":\"Tarun\",\"email\":\"tarun@gmail.com\",\"password\":\"password1\"},"
+                                + "{\"name\":\"Batch\",\"email\":\"batch@gmail.com\",\"password\":\"password1\"}]"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        Assertions.assertEquals(dataSource.getHikariPoolMXBean().getActiveConnections(), 0);
+
+        passwordHashes.complete(List.of("hash"));
+        mockMvc.perform(asyncDispatch(mvcResult))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.results[0].created").value(false))
+                .andExpect(jsonPath("$.results[1].created").value(true));
+
+    }
+
+}
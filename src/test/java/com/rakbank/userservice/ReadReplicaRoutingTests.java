@@ -0,0 +1,134 @@
+package com.rakbank.userservice;
+
+import com.rakbank.userservice.controller.dto.request.ModifyUserRequestDto;
+import com.rakbank.userservice.dao.projection.UserField;
+import com.rakbank.userservice.dao.routing.ReadReplicaDataSource;
+import com.rakbank.userservice.service.api.UserService;
+import com.rakbank.userservice.service.model.User;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Runs the service against two H2 databases: the primary, set up by Liquibase, and a "replica" that
+ * is never replicated to, so every test can tell which one a read went to.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=" + ReadReplicaRoutingTests.PRIMARY_URL,
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.hibernate.ddl-auto=none",
+        "userservice.datasource.replica-urls=" + ReadReplicaRoutingTests.REPLICA_URL,
+        "userservice.datasource.read-your-writes-window=PT1M"
+})
+@AutoConfigureMockMvc
+class ReadReplicaRoutingTests {
+
+    static final String PRIMARY_URL = "jdbc:h2:mem:primary;MODE=MySQL;DB_CLOSE_DELAY=-1";
+
+    static final String REPLICA_URL = "jdbc:h2:mem:replica;MODE=MySQL;DB_CLOSE_DELAY=-1;"
+            + "INIT=RUNSCRIPT FROM 'classpath:replica-schema.sql'";
+
+    private static final String INSERT_USER = "insert into users (ID, NAME, EMAIL, EMAIL_NORMALIZED, PASSWORD, VERSION) "
+            + "values (?, ?, ?, ?, 'hash', 0)";
+
+    @Autowired
+    UserService userService;
+
+    @Autowired
+    MockMvc mockMvc;
+
+    @Autowired
+    ReadReplicaDataSource readReplicaDataSource;
+
+    JdbcTemplate primary = new JdbcTemplate(new DriverManagerDataSource(PRIMARY_URL, "sa", ""));
+
+    JdbcTemplate replica = new JdbcTemplate(new DriverManagerDataSource(REPLICA_URL, "sa", ""));
+
+    @BeforeEach
+    void setUp() {
+        readReplicaDataSource.checkReplicas();
+    }
+
+    @Test
+    void shouldReadFromReplicaAndWriteToPrimary() {
+
+        primary.update(INSERT_USER, 1001L, "Deep", "deep@gmail.com", "deep@gmail.com");
+        replica.update(INSERT_USER, 1001L, "Replica copy", "deep@gmail.com", "deep@gmail.com");
+
+        Assertions.assertEquals(userService.findById(1001L, UserField.ALL).getName(), "Replica copy");
+
+        ModifyUserRequestDto modifyUserRequestDto = new ModifyUserRequestDto();
+        modifyUserRequestDto.setName("New name");
+        modifyUserRequestDto.setEmail("deep@gmail.com");
+        userService.updateUser(1001L, modifyUserRequestDto, null);
+
+        Assertions.assertEquals(primary.queryForObject("select NAME from users where ID = 1001", String.class), "New name");
+        Assertions.assertEquals(replica.queryForObject("select NAME from users where ID = 1001", String.class), "Replica copy");
+        // Written within the window, so read back from the primary.
+        Assertions.assertEquals(userService.findById(1001L, UserField.ALL).getName(), "New name");
+
+    }
+
+    @Test
+    void shouldReadPagesFromReplica() {
+
+        primary.update(INSERT_USER, 2001L, "Primary only", "primary@gmail.com", "primary@gmail.com");
+        replica.update(INSERT_USER, 2002L, "Replica only", "replica@gmail.com", "replica@gmail.com");
+
+        Assertions.assertEquals(userService.findAllAfter("", UserField.ALL).getRecords().stream()
+                .map(User::getName)
+                .toList(), List.of("Replica only"));
+
+    }
+
+    @Test
+    void shouldReadWholeLookupFromPrimaryAfterWrite() throws Exception {
+
+        // More ids than one IN query takes, with the written user in the last chunk.
+        List<Long> ids = LongStream.rangeClosed(4001L, 4201L).boxed().toList();
+        for(Long id : ids) {
+            String email = "lookup" + id + "@gmail.com";
+            primary.update(INSERT_USER, id, "Primary copy", email, email);
+            replica.update(INSERT_USER, id, "Replica copy", email, email);
+        }
+
+        try {
+            mockMvc.perform(put("/users/4201")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content("{\"name\":\"New name\",\"email\":\"lookup4201@gmail.com\"}"))
+                    .andExpect(status().isOk());
+
+            mockMvc.perform(get("/users")
+                            .param("ids", ids.stream().map(String::valueOf).collect(Collectors.joining(","))))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.records.length()").value(201))
+                    .andExpect(jsonPath("$.records[0].name").value("Primary copy"))
+                    .andExpect(jsonPath("$.records[199].name").value("Primary copy"))
+                    .andExpect(jsonPath("$.records[200].name").value("New name"));
+        } finally {
+            // The other tests read the first page.
+            primary.update("delete from users where ID between 4001 and 4201");
+            replica.update("delete from users where ID between 4001 and 4201");
+        }
+
+    }
+
+}
@@ -0,0 +1,62 @@
+package com.rakbank.userservice.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class UserIdPoolCheckTest {
+
+    UserIdPoolCheck userIdPoolCheck;
+
+    HikariDataSource dataSource = new HikariDataSource();
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        userIdPoolCheck = new UserIdPoolCheck();
+        userIdPoolCheck.primaryDataSource = mock(ObjectProvider.class);
+        when(userIdPoolCheck.primaryDataSource.getIfUnique()).thenReturn(dataSource);
+        userIdPoolCheck.admissionEnabled = true;
+        userIdPoolCheck.maxConcurrentCreates = 16;
+        userIdPoolCheck.maxConcurrentImports = 2;
+        userIdPoolCheck.openInView = false;
+    }
+
+    @Test
+    void shouldRefusePoolWithoutConnectionForIdBlocks() {
+
+        dataSource.setMaximumPoolSize(18);
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> userIdPoolCheck.checkPoolSize());
+
+    }
+
+    @Test
+    void shouldAcceptPoolWithConnectionForIdBlocks() {
+
+        dataSource.setMaximumPoolSize(19);
+
+        Assertions.assertDoesNotThrow(() -> userIdPoolCheck.checkPoolSize());
+
+    }
+
+    @Test
+    void shouldCountConnectionHeldByOpenSessionInView() {
+
+        userIdPoolCheck.openInView = true;
+        dataSource.setMaximumPoolSize(34);
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> userIdPoolCheck.checkPoolSize());
+
+        dataSource.setMaximumPoolSize(35);
+
+        Assertions.assertDoesNotThrow(() -> userIdPoolCheck.checkPoolSize());
+
+    }
+
+}
@@ -0,0 +1,205 @@
+package com.rakbank.userservice.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rakbank.userservice.controller.dto.request.CreateUserRequestDto;
+import com.rakbank.userservice.dao.projection.UserField;
+import com.rakbank.userservice.error.ErrorMessageResolver;
+import com.rakbank.userservice.service.api.UserService;
+import com.rakbank.userservice.service.model.User;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.test.web.servlet.request.RequestPostProcessor;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@WebMvcTest(value = UserController.class, properties = {
+        "userservice.admission.hashing.rate-per-second=0.01",
+        "userservice.admission.hashing.burst=2",
+        "userservice.admission.hashing.max-concurrent=1",
+        "userservice.admission.read.rate-per-second=0.01",
+        "userservice.admission.read.burst=100",
+        "userservice.admission.write.rate-per-second=0.01",
+        "userservice.admission.write.burst=1",
+        "userservice.admission.overloaded-retry-after=2",
+        // MockMvc requests come from 127.0.0.1, so the tests can name their clients.
+        "userservice.admission.trusted-proxies=127.0.0.1"
+})
+@AutoConfigureObservability
+@Import(ErrorMessageResolver.class)
+public class AdmissionControlTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @MockBean
+    private UserService userService;
+
+    // The budgets live as long as the application context, which the tests share, so each test uses its own clients.
+
+    /**
+     * A client over its hashing rate gets HTTP 429 with Retry-After, other clients and reads are still admitted.
+     * @throws Exception
+     */
+    @Test
+    void shouldRateLimitHashingPerClient() throws Exception {
+        User user = new User();
+        user.setId(1L);
+        user.setName("Deep");
+        user.setEmail("test@gmail.com");
+        when(userService.create(any())).thenReturn(CompletableFuture.completedFuture(user));
+        when(userService.findById(eq(1L), eq(UserField.ALL))).thenReturn(user);
+        double rateLimitedBefore = rateLimitedCount();
+
+        for(int i = 0; i < 2; i++) {
+            MvcResult result = this.mockMvc.perform(createUser("client-a"))
+                    .andExpect(request().asyncStarted())
+                    .andReturn();
+            this.mockMvc.perform(asyncDispatch(result))
+                    .andExpect(status().isOk());
+        }
+
+        this.mockMvc.perform(createUser("client-a"))
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().string(HttpHeaders.RETRY_AFTER, "100"))
+                .andExpect(jsonPath("$.errorMessage").value("Too many requests. Retry after 100 seconds"));
+
+        MvcResult result = this.mockMvc.perform(createUser("client-b"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        this.mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk());
+
+        this.mockMvc.perform(get("/users/1").header("X-Client-Id", "client-a"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.id").value("1"));
+
+        Assertions.assertEquals(rateLimitedCount() - rateLimitedBefore, 1.0);
+    }
+
+    /**
+     * While a password is still being hashed it holds the only hashing permit, so the next request gets HTTP 503.
+     * @throws Exception
+     */
+    @Test
+    void shouldShedHashingRequestsWhileConcurrencyLimitReached() throws Exception {
+        User user = new User();
+        user.setId(1L);
+        CompletableFuture<User> hashing = new CompletableFuture<>();
+        when(userService.create(any())).thenReturn(hashing);
+
+        MvcResult inProgress = this.mockMvc.perform(createUser("client-c"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        this.mockMvc.perform(createUser("client-d"))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string(HttpHeaders.RETRY_AFTER, "2"))
+                .andExpect(jsonPath("$.errorMessage").value("Server is busy. Retry after 2 seconds"));
+
+        hashing.complete(user);
+        this.mockMvc.perform(asyncDispatch(inProgress))
+                .andExpect(status().isOk());
+
+        when(userService.create(any())).thenReturn(CompletableFuture.completedFuture(user));
+        MvcResult result = this.mockMvc.perform(createUser("client-d"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        this.mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk());
+    }
+
+    /**
+     * The header only names the client when a trusted proxy sends it, so rotating it doesn't get a fresh bucket.
+     * @throws Exception
+     */
+    @Test
+    void shouldRateLimitUntrustedClientByAddressWhateverItsHeader() throws Exception {
+        User user = new User();
+        user.setId(1L);
+        when(userService.create(any())).thenReturn(CompletableFuture.completedFuture(user));
+
+        for(int i = 0; i < 2; i++) {
+            MvcResult result = this.mockMvc.perform(createUser("rotating-" + i).with(fromAddress("10.0.0.7")))
+                    .andExpect(request().asyncStarted())
+                    .andReturn();
+            this.mockMvc.perform(asyncDispatch(result))
+                    .andExpect(status().isOk());
+        }
+
+        this.mockMvc.perform(createUser("rotating-2").with(fromAddress("10.0.0.7")))
+                .andExpect(status().isTooManyRequests());
+    }
+
+    /**
+     * Updates and deletes share the write budget of the client.
+     * @throws Exception
+     */
+    @Test
+    void shouldRateLimitWritesPerClient() throws Exception {
+        this.mockMvc.perform(delete("/users/1").header("X-Client-Id", "client-e"))
+                .andExpect(status().isOk());
+
+        this.mockMvc.perform(put("/users/1")
+                        .header("X-Client-Id", "client-e")
+                        .content("{\"name\":\"Deep\",\"email\":\"test@gmail.com\"}")
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isTooManyRequests());
+
+        this.mockMvc.perform(delete("/users/1").header("X-Client-Id", "client-f"))
+                .andExpect(status().isOk());
+    }
+
+    // The registry is shared with the other tests too.
+    private double rateLimitedCount() {
+        Counter counter = meterRegistry.find("userservice.errors")
+                .tag("key", "admission.rateLimited").tag("status", "429").counter();
+        return counter != null ? counter.count() : 0.0;
+    }
+
+    private RequestPostProcessor fromAddress(String remoteAddress) {
+        return request -> {
+            request.setRemoteAddr(remoteAddress);
+            return request;
+        };
+    }
+
+    private MockHttpServletRequestBuilder createUser(String clientId) throws Exception {
+        CreateUserRequestDto createUserRequestDto = new CreateUserRequestDto();
+        createUserRequestDto.setName("Deep");
+        createUserRequestDto.setEmail("test@gmail.com");
+        createUserRequestDto.setPassword("password");
+        return post("/users")
+                .header("X-Client-Id", clientId)
+                .content(new ObjectMapper().writeValueAsString(createUserRequestDto))
+                .contentType(MediaType.APPLICATION_JSON);
+    }
+
+}
@@ -3,34 +3,58 @@ package com.rakbank.userservice.controller;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.rakbank.userservice.controller.dto.request.CreateUserRequestDto;
 import com.rakbank.userservice.controller.dto.request.ModifyUserRequestDto;
+import com.rakbank.userservice.controller.dto.request.VerifyPasswordRequestDto;
+import com.rakbank.userservice.dao.projection.UserField;
 import com.rakbank.userservice.error.DomainException;
+import com.rakbank.userservice.error.ErrorMessageResolver;
 import com.rakbank.userservice.service.api.UserService;
 import com.rakbank.userservice.service.model.PaginatedResponse;
 import com.rakbank.userservice.service.model.User;
+import com.rakbank.userservice.service.model.UserCreationResult;
+import com.rakbank.userservice.service.model.UserLookupResult;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mock;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.MvcResult;
 
 import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @WebMvcTest(UserController.class)
+@AutoConfigureObservability
+@Import(ErrorMessageResolver.class)
 public class UserControllerTest {
 
     @Autowired
     private MockMvc mockMvc;
 
+    @Autowired
+    private MeterRegistry meterRegistry;
+
     @MockBean
     private UserService userService;
 
@@ -238,17 +262,134 @@ public class UserControllerTest {
         mockUser.setName("Deep");
         mockUser.setEmail("test@gmail.com");
 
-        when(userService.create(any())).thenReturn(mockUser);
+        when(userService.create(any())).thenReturn(CompletableFuture.completedFuture(mockUser));
 
-        this.mockMvc.perform(
+        MvcResult result = this.mockMvc.perform(
                 post("/users")
                 .content(requestJson)
                 .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        this.mockMvc.perform(asyncDispatch(result))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$.id").value("1"));
 
     }
 
+    @Test
+    void shouldReturnServiceUnavailableWhenHashingPoolIsFull() throws Exception {
+
+        CreateUserRequestDto createUserRequestDto = new CreateUserRequestDto();
+        createUserRequestDto.setName("Deep");
+        createUserRequestDto.setEmail("test@gmail.com");
+        createUserRequestDto.setPassword("password");
+
+        ObjectMapper mapper = new ObjectMapper();
+        String requestJson = mapper.writeValueAsString(createUserRequestDto);
+
+        when(userService.create(any())).thenThrow(new DomainException("password.hashing.busy", HttpStatus.SERVICE_UNAVAILABLE));
+
+        this.mockMvc.perform(
+                post("/users")
+                .content(requestJson)
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isServiceUnavailable());
+
+    }
+
+    @Test
+    void shouldAnswerVerifiedFlagOnPasswordCheck() throws Exception {
+
+        VerifyPasswordRequestDto verifyPasswordRequestDto = new VerifyPasswordRequestDto();
+        verifyPasswordRequestDto.setPassword("password");
+
+        ObjectMapper mapper = new ObjectMapper();
+        String requestJson = mapper.writeValueAsString(verifyPasswordRequestDto);
+
+        when(userService.verifyPassword(1L, "password")).thenReturn(CompletableFuture.completedFuture(false));
+
+        MvcResult result = this.mockMvc.perform(
+                post("/users/1/verify")
+                .content(requestJson)
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        this.mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.verified").value(false));
+
+    }
+
+    @Test
+    void shouldReturnServiceUnavailableWhenVerifyPoolIsFull() throws Exception {
+
+        VerifyPasswordRequestDto verifyPasswordRequestDto = new VerifyPasswordRequestDto();
+        verifyPasswordRequestDto.setPassword("password");
+
+        ObjectMapper mapper = new ObjectMapper();
+        String requestJson = mapper.writeValueAsString(verifyPasswordRequestDto);
+
+        when(userService.verifyPassword(1L, "password"))
+                .thenReturn(CompletableFuture.failedFuture(new DomainException("password.verify.busy", HttpStatus.SERVICE_UNAVAILABLE)));
+
+        MvcResult result = this.mockMvc.perform(
+                post("/users/1/verify")
+                .content(requestJson)
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        this.mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isServiceUnavailable());
+
+    }
+
+    @Test
+    void shouldReportOutcomePerRecordInBatchSignup() throws Exception {
+
+        CreateUserRequestDto validUser = new CreateUserRequestDto();
+        validUser.setName("Deep");
+        validUser.setEmail("test@gmail.com");
+        validUser.setPassword("password");
+
+        CreateUserRequestDto existingUser = new CreateUserRequestDto();
+        existingUser.setName("Deep");
+        existingUser.setEmail("existing@gmail.com");
+        existingUser.setPassword("password");
+
+        ObjectMapper mapper = new ObjectMapper();
+        String requestJson = mapper.writeValueAsString(List.of(validUser, existingUser));
+
+        User createdUser = new User();
+        createdUser.setId(1L);
+        UserCreationResult created = new UserCreationResult();
+        created.setIndex(0);
+        created.setUser(createdUser);
+        UserCreationResult rejected = new UserCreationResult();
+        rejected.setIndex(1);
+        rejected.setErrors(List.of("user.email.alreadyRegistered"));
+
+        when(userService.createAll(any())).thenReturn(CompletableFuture.completedFuture(List.of(created, rejected)));
+
+        MvcResult result = this.mockMvc.perform(
+                post("/users/batch")
+                .content(requestJson)
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        this.mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.createdCount").value("1"))
+                .andExpect(jsonPath("$.failedCount").value("1"))
+                .andExpect(jsonPath("$.results[0].id").value("1"))
+                .andExpect(jsonPath("$.results[1].created").value(false))
+                .andExpect(jsonPath("$.results[1].errorMessage").value("This email is already associated with another user"));
+
+    }
+
     @Test
     void shouldGetUserById() throws Exception {
 
@@ -257,7 +398,7 @@ public class UserControllerTest {
         mockUser.setName("Deep");
         mockUser.setEmail("test@gmail.com");
 
-        when(userService.findById(1L)).thenReturn(mockUser);
+        when(userService.findById(1L, UserField.ALL)).thenReturn(mockUser);
 
         MvcResult result = this.mockMvc.perform(get("/users/1"))
                 .andExpect(status().isOk())
@@ -269,7 +410,7 @@ public class UserControllerTest {
     @Test
     void shouldThrowNotFoundWhenGetUserForInvalidId() throws Exception {
 
-        when(userService.findById(1L)).thenThrow(new DomainException("user.notExist", HttpStatus.NOT_FOUND));
+        when(userService.findById(1L, UserField.ALL)).thenThrow(new DomainException("user.notExist", HttpStatus.NOT_FOUND));
 
         this.mockMvc.perform(get("/users/1"))
                 .andExpect(status().isNotFound())
@@ -278,6 +419,21 @@ public class UserControllerTest {
 
     }
 
+    @Test
+    void shouldCountErrorResponsesByMessageKey() throws Exception {
+
+        when(userService.findById(2L, UserField.ALL)).thenThrow(new DomainException("user.notExist", HttpStatus.NOT_FOUND));
+        double before = errorCount("user.notExist", "404");
+
+        this.mockMvc.perform(get("/users/2"))
+                .andExpect(status().isNotFound());
+        this.mockMvc.perform(get("/users/2"))
+                .andExpect(status().isNotFound());
+
+        Assertions.assertEquals(errorCount("user.notExist", "404") - before, 2.0);
+
+    }
+
     @Test
     void shouldReturnUserPaginatedListWhenFindAll() throws Exception {
 
@@ -293,7 +449,7 @@ public class UserControllerTest {
         mockPaginatedResponse.setPageNumber(1);
         mockPaginatedResponse.setRecords(Collections.singletonList(mockUser));
 
-        when(userService.findAll(1)).thenReturn(mockPaginatedResponse);
+        when(userService.findAll(1, true, UserField.ALL)).thenReturn(mockPaginatedResponse);
 
         this.mockMvc.perform(get("/users?page=1"))
                 .andExpect(status().isOk())
@@ -320,7 +476,7 @@ public class UserControllerTest {
         mockPaginatedResponse.setPageNumber(1);
         mockPaginatedResponse.setRecords(Collections.singletonList(mockUser));
 
-        when(userService.findAll(1)).thenReturn(mockPaginatedResponse);
+        when(userService.findAll(1, true, UserField.ALL)).thenReturn(mockPaginatedResponse);
 
         this.mockMvc.perform(get("/users"))
                 .andExpect(status().isOk())
@@ -332,6 +488,104 @@ public class UserControllerTest {
 
         }
 
+    @Test
+    void shouldReturnUserPageWithoutTotalsWhenCountNotRequested() throws Exception {
+
+        User mockUser = new User();
+        mockUser.setId(1L);
+        mockUser.setName("Deep");
+        mockUser.setEmail("test@gmail.com");
+
+        PaginatedResponse<User> mockPaginatedResponse = new PaginatedResponse<>();
+        mockPaginatedResponse.setPageSize(10);
+        mockPaginatedResponse.setPageNumber(2);
+        mockPaginatedResponse.setRecords(Collections.singletonList(mockUser));
+
+        when(userService.findAll(2, false, UserField.ALL)).thenReturn(mockPaginatedResponse);
+
+        this.mockMvc.perform(get("/users?page=2&withCount=false"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.pageNumber").value("2"))
+                .andExpect(jsonPath("$.totalRecords").isEmpty())
+                .andReturn();
+
+    }
+
+    @Test
+    void shouldReturnUserPageWithNextCursorInCursorMode() throws Exception {
+
+        User mockUser = new User();
+        mockUser.setId(11L);
+        mockUser.setName("Deep");
+        mockUser.setEmail("test@gmail.com");
+
+        PaginatedResponse<User> mockPaginatedResponse = new PaginatedResponse<>();
+        mockPaginatedResponse.setPageSize(10);
+        mockPaginatedResponse.setRecords(Collections.singletonList(mockUser));
+        mockPaginatedResponse.setNextCursor("aWQ6MTE");
+
+        when(userService.findAllAfter("aWQ6MTA", UserField.ALL)).thenReturn(mockPaginatedResponse);
+
+        this.mockMvc.perform(get("/users?after=aWQ6MTA"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.records[0].id").value("11"))
+                .andExpect(jsonPath("$.nextCursor").value("aWQ6MTE"))
+                .andReturn();
+
+    }
+
+    @Test
+    void shouldExportUsersAsCsv() throws Exception {
+
+        User mockUser = new User();
+        mockUser.setId(1L);
+        mockUser.setName("Deep, Jr");
+        mockUser.setEmail("test@gmail.com");
+        mockUser.setPassword("hash");
+
+        doAnswer(invocation -> {
+            Consumer<User> consumer = invocation.getArgument(0);
+            consumer.accept(mockUser);
+            return null;
+        }).when(userService).exportAll(any());
+
+        this.mockMvc.perform(get("/users/export?format=csv"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith("text/csv"))
+                .andExpect(content().string("id,name,email\n1,\"Deep, Jr\",test@gmail.com\n"));
+
+    }
+
+    @Test
+    void shouldExportUsersAsNdjsonByDefault() throws Exception {
+
+        User mockUser = new User();
+        mockUser.setId(1L);
+        mockUser.setName("Deep");
+        mockUser.setEmail("test@gmail.com");
+
+        doAnswer(invocation -> {
+            Consumer<User> consumer = invocation.getArgument(0);
+            consumer.accept(mockUser);
+            consumer.accept(mockUser);
+            return null;
+        }).when(userService).exportAll(any());
+
+        this.mockMvc.perform(get("/users/export"))
+                .andExpect(status().isOk())
+                .andExpect(content().string("{\"id\":1,\"name\":\"Deep\",\"email\":\"test@gmail.com\"}\n"
+                        + "{\"id\":1,\"name\":\"Deep\",\"email\":\"test@gmail.com\"}\n"));
+
+    }
+
+    @Test
+    void shouldThrowBadRequestForUnknownExportFormat() throws Exception {
+
+        this.mockMvc.perform(get("/users/export?format=xml"))
+                .andExpect(status().isBadRequest());
+
+    }
+
     @Test
     void shouldUpdateUserSuccessfullyWhenAllDetailsOk() throws Exception {
 
@@ -347,7 +601,7 @@ public class UserControllerTest {
         modifiedUser.setName("new name");
         modifiedUser.setEmail("test@gmail.com");
 
-        when(userService.updateUser(any(),any())).thenReturn(modifiedUser);
+        when(userService.updateUser(any(),any(),any())).thenReturn(modifiedUser);
 
         this.mockMvc.perform(
                         put("/users/1")
@@ -358,4 +612,219 @@ public class UserControllerTest {
                 .andExpect(jsonPath("$.email").value("test@gmail.com"));
 
     }
+
+    @Test
+    void shouldReturnVersionAsETagWhenGetUserById() throws Exception {
+
+        when(userService.findById(1L, UserField.ALL)).thenReturn(versionedUser(3));
+
+        this.mockMvc.perform(get("/users/1"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"3\""));
+
+    }
+
+    @Test
+    void shouldReturnNotModifiedWhenUserVersionMatchesIfNoneMatch() throws Exception {
+
+        when(userService.findById(1L, UserField.ALL)).thenReturn(versionedUser(3));
+
+        this.mockMvc.perform(get("/users/1").header(HttpHeaders.IF_NONE_MATCH, "\"3\""))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+
+    }
+
+    @Test
+    void shouldReturnNotModifiedWhenUserPageIsUnchanged() throws Exception {
+
+        PaginatedResponse<User> mockPaginatedResponse = new PaginatedResponse<>();
+        mockPaginatedResponse.setPageSize(10);
+        mockPaginatedResponse.setPageNumber(1);
+        mockPaginatedResponse.setTotalRecords(1L);
+        mockPaginatedResponse.setRecords(Collections.singletonList(versionedUser(3)));
+
+        when(userService.findAll(1, true, UserField.ALL)).thenReturn(mockPaginatedResponse);
+
+        String eTag = this.mockMvc.perform(get("/users?page=1"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        this.mockMvc.perform(get("/users?page=1").header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isNotModified());
+
+        mockPaginatedResponse.setRecords(Collections.singletonList(versionedUser(4)));
+        this.mockMvc.perform(get("/users?page=1").header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isOk());
+
+    }
+
+    @Test
+    void shouldPassIfMatchVersionWhenUpdateUser() throws Exception {
+
+        ModifyUserRequestDto modifyUserRequestDto = new ModifyUserRequestDto();
+        modifyUserRequestDto.setName("new name");
+        modifyUserRequestDto.setEmail("test@gmail.com");
+
+        ObjectMapper mapper = new ObjectMapper();
+        String requestJson = mapper.writeValueAsString(modifyUserRequestDto);
+
+        when(userService.updateUser(eq(1L), any(), eq(3))).thenReturn(versionedUser(4));
+
+        this.mockMvc.perform(
+                        put("/users/1")
+                                .header(HttpHeaders.IF_MATCH, "\"3\"")
+                                .content(requestJson)
+                                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"4\""))
+                // Only sparse responses leave fields out; a full one still writes the null password.
+                .andExpect(content().json("{\"id\":1,\"name\":\"Deep\",\"email\":\"test@gmail.com\",\"password\":null}", true));
+
+    }
+
+    @Test
+    void shouldThrowPreconditionFailedWhenUserVersionDoesNotMatch() throws Exception {
+
+        ModifyUserRequestDto modifyUserRequestDto = new ModifyUserRequestDto();
+        modifyUserRequestDto.setName("new name");
+        modifyUserRequestDto.setEmail("test@gmail.com");
+
+        ObjectMapper mapper = new ObjectMapper();
+        String requestJson = mapper.writeValueAsString(modifyUserRequestDto);
+
+        when(userService.updateUser(eq(1L), any(), eq(2)))
+                .thenThrow(new DomainException("concurrentModificationError", HttpStatus.PRECONDITION_FAILED));
+
+        this.mockMvc.perform(
+                        put("/users/1")
+                                .header(HttpHeaders.IF_MATCH, "\"2\"")
+                                .content(requestJson)
+                                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isPreconditionFailed());
+
+        // A weak ETag never matches for If-Match.
+        this.mockMvc.perform(
+                        put("/users/1")
+                                .header(HttpHeaders.IF_MATCH, "W/\"4\"")
+                                .content(requestJson)
+                                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isPreconditionFailed());
+
+    }
+
+    @Test
+    void shouldGetUsersByIdsInRequestOrder() throws Exception {
+
+        UserLookupResult userLookupResult = new UserLookupResult();
+        userLookupResult.setUsers(List.of(versionedUser(3)));
+        userLookupResult.setMissingIds(List.of(9L));
+
+        when(userService.findByIds(List.of(9L, 1L))).thenReturn(userLookupResult);
+
+        this.mockMvc.perform(get("/users?ids=9,1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.records[0].id").value(1))
+                .andExpect(jsonPath("$.missingIds[0]").value(9));
+
+    }
+
+    @Test
+    void shouldLookupUsersByIdsInBody() throws Exception {
+
+        UserLookupResult userLookupResult = new UserLookupResult();
+        userLookupResult.setUsers(List.of(versionedUser(3)));
+        userLookupResult.setMissingIds(List.of());
+
+        when(userService.findByIds(List.of(1L))).thenReturn(userLookupResult);
+
+        this.mockMvc.perform(
+                        post("/users/lookup")
+                                .content("{\"ids\":[1]}")
+                                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.records[0].email").value("test@gmail.com"))
+                .andExpect(jsonPath("$.missingIds").isEmpty());
+
+    }
+
+    @Test
+    void shouldThrowBadRequestWhenLookupHasTooManyIds() throws Exception {
+
+        when(userService.findByIds(any()))
+                .thenThrow(new DomainException("user.lookup.tooLarge", List.of("500")));
+
+        this.mockMvc.perform(get("/users?ids=1,2"))
+                .andExpect(status().isBadRequest());
+
+    }
+
+    @Test
+    void shouldSearchUsersByNamePrefix() throws Exception {
+
+        PaginatedResponse<User> mockPaginatedResponse = new PaginatedResponse<>();
+        mockPaginatedResponse.setPageSize(10);
+        mockPaginatedResponse.setRecords(Collections.singletonList(versionedUser(3)));
+        mockPaginatedResponse.setNextCursor("next");
+
+        when(userService.search(null, null, "De", "prev")).thenReturn(mockPaginatedResponse);
+
+        this.mockMvc.perform(get("/users/search?namePrefix=De&after=prev"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.records[0].name").value("Deep"))
+                .andExpect(jsonPath("$.nextCursor").value("next"));
+
+    }
+
+    @Test
+    void shouldOnlyWriteRequestedFields() throws Exception {
+
+        when(userService.findById(1L, EnumSet.of(UserField.ID, UserField.EMAIL))).thenReturn(versionedUser(3));
+
+        this.mockMvc.perform(get("/users/1?fields=id,email"))
+                .andExpect(status().isOk())
+                .andExpect(content().json("{\"id\":1,\"email\":\"test@gmail.com\"}", true));
+
+    }
+
+    @Test
+    void shouldGiveSparseRepresentationItsOwnETag() throws Exception {
+
+        when(userService.findById(eq(1L), any())).thenReturn(versionedUser(3));
+
+        this.mockMvc.perform(get("/users/1?fields=email,id"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"3-id.email\""));
+        // The full representation's ETag does not validate a sparse one, or the other way round.
+        this.mockMvc.perform(get("/users/1?fields=id,email").header(HttpHeaders.IF_NONE_MATCH, "\"3\""))
+                .andExpect(status().isOk());
+        this.mockMvc.perform(get("/users/1").header(HttpHeaders.IF_NONE_MATCH, "\"3-id.email\""))
+                .andExpect(status().isOk());
+        this.mockMvc.perform(get("/users/1?fields=id,email").header(HttpHeaders.IF_NONE_MATCH, "\"3-id.email\""))
+                .andExpect(status().isNotModified());
+
+    }
+
+    @Test
+    void shouldThrowBadRequestForUnknownField() throws Exception {
+
+        this.mockMvc.perform(get("/users?fields=id,phone"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.errorMessage").value("Unknown field phone. Fields can be id, name, email and password"));
+
+    }
+
+    private User versionedUser(int version) {
+        User user = new User();
+        user.setId(1L);
+        user.setName("Deep");
+        user.setEmail("test@gmail.com");
+        user.setVersion(version);
+        return user;
+    }
+
+    private double errorCount(String key, String status) {
+        return meterRegistry.counter("userservice.errors", "key", key, "status", status).count();
+    }
+
 }
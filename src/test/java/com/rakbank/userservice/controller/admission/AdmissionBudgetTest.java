@@ -0,0 +1,80 @@
+package com.rakbank.userservice.controller.admission;
+
+import com.rakbank.userservice.error.AdmissionRejectedException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class AdmissionBudgetTest {
+
+    private final AtomicLong now = new AtomicLong();
+
+    @Test
+    void shouldRateLimitEachClientSeparately() {
+        AdmissionBudget budget = new AdmissionBudget(1, 2, 10, 1, now::get);
+
+        budget.admit("a");
+        budget.admit("a");
+        AdmissionRejectedException ex = Assertions.assertThrows(AdmissionRejectedException.class, () -> budget.admit("a"));
+        Assertions.assertEquals(ex.getHttpStatus(), HttpStatus.TOO_MANY_REQUESTS);
+        Assertions.assertEquals(ex.getMessage(), "admission.rateLimited");
+        Assertions.assertEquals(ex.getRetryAfterSeconds(), 1L);
+
+        budget.admit("b");
+    }
+
+    @Test
+    void shouldRefillTokensOverTime() {
+        AdmissionBudget budget = new AdmissionBudget(0.25, 1, 10, 1, now::get);
+
+        budget.admit("a");
+        AdmissionRejectedException ex = Assertions.assertThrows(AdmissionRejectedException.class, () -> budget.admit("a"));
+        Assertions.assertEquals(ex.getRetryAfterSeconds(), 4L);
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(4));
+        budget.admit("a");
+    }
+
+    @Test
+    void shouldRejectWhenConcurrencyLimitReachedUntilPermitReleased() {
+        AdmissionBudget budget = new AdmissionBudget(100, 100, 1, 3, now::get);
+
+        Runnable permit = budget.admit("a");
+        AdmissionRejectedException ex = Assertions.assertThrows(AdmissionRejectedException.class, () -> budget.admit("b"));
+        Assertions.assertEquals(ex.getHttpStatus(), HttpStatus.SERVICE_UNAVAILABLE);
+        Assertions.assertEquals(ex.getMessage(), "admission.overloaded");
+        Assertions.assertEquals(ex.getRetryAfterSeconds(), 3L);
+
+        permit.run();
+        budget.admit("b");
+    }
+
+    @Test
+    void shouldKeepTokenOfRequestShedForLoad() {
+        AdmissionBudget budget = new AdmissionBudget(0.01, 1, 1, 1, now::get);
+
+        Runnable permit = budget.admit("a");
+        AdmissionRejectedException ex = Assertions.assertThrows(AdmissionRejectedException.class, () -> budget.admit("b"));
+        Assertions.assertEquals(ex.getHttpStatus(), HttpStatus.SERVICE_UNAVAILABLE);
+
+        permit.run();
+        budget.admit("b");
+    }
+
+    @Test
+    void shouldForgetIdleClientsOnlyOnceTheirBucketIsFull() {
+        AdmissionBudget budget = new AdmissionBudget(1, 1, 10, 1, now::get);
+
+        budget.admit("a");
+        budget.purgeIdleClients();
+        Assertions.assertThrows(AdmissionRejectedException.class, () -> budget.admit("a"));
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        budget.purgeIdleClients();
+        budget.admit("a");
+    }
+
+}
@@ -0,0 +1,189 @@
+package com.rakbank.userservice.dao.repository;
+
+import com.rakbank.userservice.dao.entity.UserEntity;
+import com.rakbank.userservice.dao.projection.PasswordHashView;
+import com.rakbank.userservice.dao.projection.UserField;
+import com.rakbank.userservice.dao.projection.UserView;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Runs the search queries against the Liquibase schema on H2 in MySQL mode, and checks with EXPLAIN
+ * that each one seeks on an index instead of scanning the table.
+ */
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:search;MODE=MySQL;DB_CLOSE_DELAY=-1",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.hibernate.ddl-auto=none",
+        "spring.jpa.properties.hibernate.session_factory.statement_inspector="
+                + "com.rakbank.userservice.dao.repository.UserRepositoryTest$SqlCapture"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+public class UserRepositoryTest {
+
+    @Autowired
+    UserRepository userRepository;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+        userRepository.saveAllAndFlush(List.of(
+                userEntity("Deep", "Deep@Gmail.com"),
+                userEntity("Deepak", "deepak@gmail.com"),
+                userEntity("Tarun", "tarun@gmail.com"),
+                userEntity("De_Silva", "de_silva@gmail.com")));
+    }
+
+    @Test
+    void shouldStoreLowerCaseEmailOnInsertAndUpdate() {
+
+        UserView deep = userRepository.searchByEmail("deep@gmail.com", 0L, Limit.of(10)).get(0);
+        Assertions.assertEquals(deep.email(), "Deep@Gmail.com");
+
+        userRepository.updateDetails(deep.id(), "Deep", "New@Gmail.com");
+
+        Assertions.assertTrue(userRepository.searchByEmail("deep@gmail.com", 0L, Limit.of(10)).isEmpty());
+        Assertions.assertEquals(userRepository.searchByEmail("new@gmail.com", 0L, Limit.of(10)).size(), 1);
+
+    }
+
+    @Test
+    void shouldSearchByPrefixInKeyOrderAfterPosition() {
+
+        List<UserView> firstPage = userRepository.searchByEmailPrefix("dee%", "", 0L, Limit.of(1));
+        Assertions.assertEquals(firstPage.get(0).name(), "Deep");
+
+        List<UserView> secondPage = userRepository.searchByEmailPrefix("dee%", "deep@gmail.com",
+                firstPage.get(0).id(), Limit.of(1));
+        Assertions.assertEquals(secondPage.get(0).name(), "Deepak");
+
+        // The escaped underscore only matches itself.
+        List<UserView> names = userRepository.searchByNamePrefix("De!_%", "", 0L, Limit.of(10));
+        Assertions.assertEquals(names.stream().map(UserView::name).toList(), List.of("De_Silva"));
+
+    }
+
+    @Test
+    void shouldSelectOnlyRequestedFields() {
+
+        List<UserView> userViews = userRepository.findViewsAfter(0L, EnumSet.of(UserField.EMAIL), Limit.of(2));
+
+        Assertions.assertEquals(userViews.get(0).email(), "Deep@Gmail.com");
+        Assertions.assertNull(userViews.get(0).name());
+        Assertions.assertNull(userViews.get(0).password());
+        Assertions.assertEquals(userViews.size(), 2);
+        Assertions.assertTrue(userRepository.findViewsBy(EnumSet.of(UserField.NAME), PageRequest.of(0, 2)).hasNext());
+
+    }
+
+    @Test
+    void shouldFlagOnlyScannedHashAndClearFlagOnPasswordChange() {
+
+        List<PasswordHashView> chunk = userRepository.findPasswordHashesAfter(0L, Limit.of(2));
+        Long deepId = chunk.get(0).id();
+        Long deepakId = chunk.get(1).id();
+
+        Assertions.assertEquals(userRepository.flagForRehash(deepId, "hash"), 1);
+        // Already flagged, or changed since the scan read it.
+        Assertions.assertEquals(userRepository.flagForRehash(deepId, "hash"), 0);
+        Assertions.assertEquals(userRepository.flagForRehash(deepakId, "other-hash"), 0);
+        Assertions.assertTrue(needsRehash(deepId));
+
+        userRepository.updatePassword(deepId, "new-hash");
+
+        Assertions.assertFalse(needsRehash(deepId));
+
+    }
+
+    @Test
+    void shouldRehashOnlyVerifiedHashWithoutMovingVersion() {
+
+        Long deepId = userRepository.findPasswordHashesAfter(0L, Limit.of(1)).get(0).id();
+        userRepository.flagForRehash(deepId, "hash");
+        int version = userRepository.searchByEmail("deep@gmail.com", 0L, Limit.of(1)).get(0).version();
+
+        Assertions.assertEquals(userRepository.rehashPassword(deepId, "hash", "new-hash"), 1);
+        // Changed since it was verified.
+        Assertions.assertEquals(userRepository.rehashPassword(deepId, "hash", "other-hash"), 0);
+        Assertions.assertEquals(userRepository.findPasswordHashById(deepId).get().password(), "new-hash");
+        Assertions.assertFalse(needsRehash(deepId));
+        Assertions.assertEquals(userRepository.searchByEmail("deep@gmail.com", 0L, Limit.of(1)).get(0).version(), version);
+
+    }
+
+    @Test
+    void shouldUseIndexesForSearch() {
+
+        String exactEmail = explainSearch(() -> userRepository.searchByEmail("deep@gmail.com", 0L, Limit.of(10)),
+                "deep@gmail.com", 0L, 10);
+        String emailPrefix = explainSearch(() -> userRepository.searchByEmailPrefix("dee%", "", 0L, Limit.of(10)),
+                "dee%", "", "", 0L, 10);
+        String namePrefix = explainSearch(() -> userRepository.searchByNamePrefix("Dee%", "", 0L, Limit.of(10)),
+                "Dee%", "", "", 0L, 10);
+
+        Assertions.assertTrue(exactEmail.contains("PUBLIC.USER_EMAIL_NORMALIZED: EMAIL_NORMALIZED = ?1"), exactEmail);
+        // The prefix becomes a range on the index, and rows come back in index order without a sort.
+        Assertions.assertTrue(emailPrefix.contains("PUBLIC.USER_EMAIL_NORMALIZED: EMAIL_NORMALIZED >= 'DEE'"), emailPrefix);
+        Assertions.assertTrue(emailPrefix.contains("INDEX SORTED"), emailPrefix);
+        Assertions.assertTrue(namePrefix.contains("PUBLIC.USER_NAME: NAME >= 'DEE'"), namePrefix);
+        Assertions.assertTrue(namePrefix.contains("INDEX SORTED"), namePrefix);
+
+    }
+
+    private boolean needsRehash(Long id) {
+        return jdbcTemplate.queryForObject("select NEEDS_REHASH from users where ID = ?", Boolean.class, id);
+    }
+
+    /**
+     * Method to run a search, capture the one statement Hibernate sent for it, and EXPLAIN that statement
+     * with the same parameter values bound.
+     * @param search the repository call
+     * @param parameters the values Hibernate bound, in statement order
+     * @return the upper-case plan
+     */
+    private String explainSearch(Runnable search, Object... parameters) {
+        SqlCapture.STATEMENTS.clear();
+        search.run();
+        Assertions.assertEquals(SqlCapture.STATEMENTS.size(), 1);
+        return jdbcTemplate.queryForObject("explain " + SqlCapture.STATEMENTS.get(0), String.class, parameters)
+                .toUpperCase();
+    }
+
+    private UserEntity userEntity(String name, String email) {
+        UserEntity userEntity = new UserEntity();
+        userEntity.setName(name);
+        userEntity.setEmail(email);
+        userEntity.setPassword("hash");
+        return userEntity;
+    }
+
+    /**
+     * Records the SQL Hibernate prepares, so the test explains the statements the repository really issues.
+     */
+    public static class SqlCapture implements StatementInspector {
+
+        static final List<String> STATEMENTS = new CopyOnWriteArrayList<>();
+
+        @Override
+        public String inspect(String sql) {
+            STATEMENTS.add(sql);
+            return sql;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.rakbank.userservice.dao.routing;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Set;
+
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+public class ReadReplicaDataSourceTest {
+
+    @Mock
+    DataSource primary;
+
+    @Mock
+    DataSource firstReplica;
+
+    @Mock
+    DataSource secondReplica;
+
+    @Mock
+    Connection primaryConnection;
+
+    @Mock
+    Connection firstReplicaConnection;
+
+    @Mock
+    Connection secondReplicaConnection;
+
+    @Test
+    void shouldUsePrimaryUntilReplicasPassTheirFirstCheck() throws SQLException {
+
+        ReadReplicaDataSource dataSource = readReplicaDataSource();
+
+        Assertions.assertSame(dataSource.getConnection(), primaryConnection);
+
+        dataSource.checkReplicas();
+
+        // Round robin over both replicas.
+        Assertions.assertEquals(Set.of(dataSource.getConnection(), dataSource.getConnection()),
+                Set.of(firstReplicaConnection, secondReplicaConnection));
+
+    }
+
+    @Test
+    void shouldSkipReplicaThatFailsItsCheck() throws SQLException {
+
+        ReadReplicaDataSource dataSource = readReplicaDataSource();
+        when(secondReplica.getConnection()).thenThrow(new SQLException("Connection refused"));
+
+        dataSource.checkReplicas();
+
+        Assertions.assertEquals(dataSource.getReplicaHealth(), List.of(true, false));
+        Assertions.assertSame(dataSource.getConnection(), firstReplicaConnection);
+        Assertions.assertSame(dataSource.getConnection(), firstReplicaConnection);
+
+    }
+
+    @Test
+    void shouldUsePrimaryWhenReadAsksForIt() throws SQLException {
+
+        ReadReplicaDataSource dataSource = readReplicaDataSource();
+        dataSource.checkReplicas();
+
+        Connection connection = ReadRoute.onPrimary(() -> {
+            try {
+                return dataSource.getConnection();
+            } catch(SQLException exc) {
+                throw new IllegalStateException(exc);
+            }
+        });
+
+        Assertions.assertSame(connection, primaryConnection);
+        Assertions.assertFalse(ReadRoute.isPrimaryRequired());
+
+    }
+
+    private ReadReplicaDataSource readReplicaDataSource() throws SQLException {
+        when(primary.getConnection()).thenReturn(primaryConnection);
+        when(firstReplica.getConnection()).thenReturn(firstReplicaConnection);
+        when(secondReplica.getConnection()).thenReturn(secondReplicaConnection);
+        when(firstReplicaConnection.isValid(anyInt())).thenReturn(true);
+        when(secondReplicaConnection.isValid(anyInt())).thenReturn(true);
+        return new ReadReplicaDataSource(primary, List.of(firstReplica, secondReplica), 1);
+    }
+
+}
@@ -0,0 +1,58 @@
+package com.rakbank.userservice.error;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.support.ResourceBundleMessageSource;
+import org.springframework.http.HttpStatus;
+
+import java.util.List;
+import java.util.Locale;
+
+public class ErrorMessageResolverTest {
+
+    private ErrorMessageResolver errorMessageResolver;
+
+    @BeforeEach
+    void setUp() {
+        ResourceBundleMessageSource messageSource = new ResourceBundleMessageSource();
+        messageSource.setBasename("messages");
+        errorMessageResolver = new ErrorMessageResolver();
+        errorMessageResolver.messageSource = messageSource;
+        errorMessageResolver.preResolve();
+    }
+
+    @Test
+    void shouldResolveEveryKeyAtStartup() {
+        Assertions.assertEquals(errorMessageResolver.getResolvedMessages().get(Locale.ENGLISH).get("user.notExist"),
+                "No user found");
+    }
+
+    @Test
+    void shouldServeMessagesWithoutParamsFromTheStartupTable() {
+        String message = errorMessageResolver.resolve("user.notExist", null, Locale.US);
+
+        Assertions.assertSame(message, errorMessageResolver.getResolvedMessages().get(Locale.ENGLISH).get("user.notExist"));
+    }
+
+    @Test
+    void shouldFormatMessagesWithParams() {
+        Assertions.assertEquals(errorMessageResolver.resolve("user.batch.tooLarge", List.of("1000"), Locale.ENGLISH),
+                "A batch cannot have more than 1000 users");
+    }
+
+    @Test
+    void shouldFallBackToKeyWhenMessageMissing() {
+        Assertions.assertEquals(errorMessageResolver.resolve("user.unknown", null, Locale.ENGLISH), "user.unknown");
+        Assertions.assertEquals(errorMessageResolver.resolve("user.unknown", List.of("1"), Locale.FRENCH), "user.unknown");
+    }
+
+    @Test
+    void shouldNotCaptureStackTraceForDomainException() {
+        DomainException domainException = new DomainException("user.notExist", HttpStatus.NOT_FOUND);
+
+        Assertions.assertEquals(domainException.getStackTrace().length, 0);
+        Assertions.assertEquals(domainException.getMessage(), "user.notExist");
+    }
+
+}
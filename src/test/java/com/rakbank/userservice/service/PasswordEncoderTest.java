@@ -0,0 +1,196 @@
+package com.rakbank.userservice.service;
+
+import at.favre.lib.crypto.bcrypt.BCrypt;
+import com.rakbank.userservice.error.DomainException;
+import com.rakbank.userservice.service.hashing.BcryptPasswordHashAlgorithm;
+import com.rakbank.userservice.service.hashing.Pbkdf2PasswordHashAlgorithm;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+public class PasswordEncoderTest {
+
+    private static final BcryptPasswordHashAlgorithm BCRYPT = new BcryptPasswordHashAlgorithm(BCrypt.Version.VERSION_2A, 5);
+
+    private static final Pbkdf2PasswordHashAlgorithm PBKDF2 = new Pbkdf2PasswordHashAlgorithm(1000);
+
+    @Test
+    void shouldHashOnHashingExecutor() {
+
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        PasswordEncoder passwordEncoder = new PasswordEncoder(BCRYPT, List.of(), Runnable::run, Runnable::run,
+                1, Runnable::run, meterRegistry);
+
+        String hash = passwordEncoder.encodeAsync("password").join();
+
+        Assertions.assertTrue(BCrypt.verifyer().verify("password".toCharArray(), hash).verified);
+        Assertions.assertEquals(meterRegistry.timer("userservice.password.hash", "algorithm", "bcrypt").count(), 1L);
+
+    }
+
+    @Test
+    void shouldFailFastWhenHashingExecutorIsFull() {
+
+        PasswordEncoder passwordEncoder = new PasswordEncoder(BCRYPT, List.of(), task -> {
+            throw new RejectedExecutionException();
+        }, Runnable::run, 1, Runnable::run, new SimpleMeterRegistry());
+
+        DomainException exception = Assertions.assertThrows(DomainException.class,
+                () -> passwordEncoder.encodeAsync("password"));
+        Assertions.assertEquals(exception.getHttpStatus(), HttpStatus.SERVICE_UNAVAILABLE);
+
+    }
+
+    @Test
+    void shouldHashAllPasswordsInOrder() {
+
+        ExecutorService bulkHashingExecutor = Executors.newFixedThreadPool(2);
+        try {
+            PasswordEncoder passwordEncoder = new PasswordEncoder(BCRYPT, List.of(), Runnable::run,
+                    bulkHashingExecutor, 2, Runnable::run, new SimpleMeterRegistry());
+
+            List<String> hashes = passwordEncoder.encodeAll(List.of("password1", "password2", "password3")).join();
+
+            Assertions.assertEquals(hashes.size(), 3);
+            Assertions.assertTrue(BCrypt.verifyer().verify("password2".toCharArray(), hashes.get(1)).verified);
+        } finally {
+            bulkHashingExecutor.shutdown();
+        }
+
+    }
+
+    @Test
+    void shouldQueueBatchHashesWithoutHashingOnCallingThread() throws Exception {
+
+        // One busy thread and room for two queued tasks: the batch must wait for the pool, not hash here.
+        ThreadPoolExecutor bulkHashingExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(2), new ThreadPoolExecutor.AbortPolicy());
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            bulkHashingExecutor.execute(() -> awaitQuietly(release));
+            PasswordEncoder passwordEncoder = new PasswordEncoder(BCRYPT.withWorkFactor(4), List.of(), Runnable::run,
+                    bulkHashingExecutor, 2, Runnable::run, new SimpleMeterRegistry());
+            List<String> passwords = IntStream.range(0, 10).mapToObj(i -> "password" + i).toList();
+
+            CompletableFuture<List<String>> hashes = passwordEncoder.encodeAll(passwords);
+
+            Assertions.assertFalse(hashes.isDone());
+            Assertions.assertEquals(bulkHashingExecutor.getQueue().size(), 2);
+            release.countDown();
+            Assertions.assertTrue(BCrypt.verifyer().verify("password9".toCharArray(), hashes.get(10, TimeUnit.SECONDS).get(9)).verified);
+            // A batch that can't queue anything is turned away.
+            DomainException exception = Assertions.assertThrows(DomainException.class, () -> new PasswordEncoder(BCRYPT,
+                    List.of(), Runnable::run, task -> {
+                        throw new RejectedExecutionException();
+                    }, 2, Runnable::run, new SimpleMeterRegistry()).encodeAll(passwords));
+            Assertions.assertEquals(exception.getHttpStatus(), HttpStatus.SERVICE_UNAVAILABLE);
+        } finally {
+            release.countDown();
+            bulkHashingExecutor.shutdown();
+        }
+
+    }
+
+    @Test
+    void shouldVerifyHashesOfEveryConfiguredAlgorithm() {
+
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        PasswordEncoder passwordEncoder = new PasswordEncoder(PBKDF2, List.of(BCRYPT), Runnable::run, Runnable::run,
+                1, Runnable::run, meterRegistry);
+        String bcryptHash = BCRYPT.hash("password");
+
+        Assertions.assertTrue(passwordEncoder.encode("password").startsWith("$pbkdf2-sha256$i=1000$"));
+        Assertions.assertTrue(passwordEncoder.verify("password", bcryptHash));
+        Assertions.assertFalse(passwordEncoder.verify("wrong", bcryptHash));
+        Assertions.assertFalse(passwordEncoder.verify("password", "plain-text"));
+        Assertions.assertEquals(meterRegistry.timer("userservice.password.verify", "algorithm", "bcrypt").count(), 2L);
+
+    }
+
+    @Test
+    void shouldRehashWhenAlgorithmOrWorkFactorChanged() {
+
+        PasswordEncoder passwordEncoder = new PasswordEncoder(BCRYPT.withWorkFactor(6), List.of(PBKDF2), Runnable::run,
+                Runnable::run, 1, Runnable::run, new SimpleMeterRegistry());
+
+        Assertions.assertFalse(passwordEncoder.needsRehash(passwordEncoder.encode("password")));
+        Assertions.assertTrue(passwordEncoder.needsRehash(BCRYPT.hash("password")));
+        Assertions.assertTrue(passwordEncoder.needsRehash(PBKDF2.hash("password")));
+
+    }
+
+    @Test
+    void shouldKeepHashesAtOrAboveTheWorkFactor() {
+
+        PasswordEncoder passwordEncoder = new PasswordEncoder(BCRYPT.withWorkFactor(6), List.of(PBKDF2), Runnable::run,
+                Runnable::run, 1, Runnable::run, new SimpleMeterRegistry());
+        PasswordEncoder pbkdf2Encoder = new PasswordEncoder(PBKDF2, List.of(), Runnable::run,
+                Runnable::run, 1, Runnable::run, new SimpleMeterRegistry());
+
+        // Stronger hashes, e.g. from an instance that calibrated higher, are not downgraded.
+        Assertions.assertFalse(passwordEncoder.needsRehash(BCRYPT.withWorkFactor(7).hash("password")));
+        Assertions.assertFalse(passwordEncoder.needsRehash(
+                new BcryptPasswordHashAlgorithm(BCrypt.Version.VERSION_2B, 6).hash("password")));
+        Assertions.assertFalse(pbkdf2Encoder.needsRehash(PBKDF2.withWorkFactor(2000).hash("password")));
+        Assertions.assertTrue(pbkdf2Encoder.needsRehash(PBKDF2.withWorkFactor(500).hash("password")));
+        Assertions.assertTrue(pbkdf2Encoder.needsRehash(BCRYPT.withWorkFactor(10).hash("password")));
+        Assertions.assertTrue(passwordEncoder.needsRehash("$2a$xx$malformed"));
+
+    }
+
+    @Test
+    void shouldRehashOutdatedHashOnSuccessfulVerification() {
+
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        PasswordEncoder passwordEncoder = new PasswordEncoder(BCRYPT.withWorkFactor(6), List.of(), Runnable::run,
+                Runnable::run, 1, Runnable::run, meterRegistry);
+        String outdatedHash = BCRYPT.hash("password");
+
+        PasswordEncoder.Verification verification = passwordEncoder.verifyAsync("password", outdatedHash).join();
+        PasswordEncoder.Verification current = passwordEncoder.verifyAsync("password", verification.newHash()).join();
+        PasswordEncoder.Verification wrong = passwordEncoder.verifyAsync("wrong", outdatedHash).join();
+
+        Assertions.assertTrue(verification.verified());
+        Assertions.assertFalse(passwordEncoder.needsRehash(verification.newHash()));
+        Assertions.assertTrue(current.verified());
+        Assertions.assertNull(current.newHash());
+        Assertions.assertFalse(wrong.verified());
+        Assertions.assertNull(wrong.newHash());
+        Assertions.assertEquals(meterRegistry.timer("userservice.password.verify.queued").count(), 3L);
+
+    }
+
+    @Test
+    void shouldFailFastWhenVerifyExecutorIsFull() {
+
+        PasswordEncoder passwordEncoder = new PasswordEncoder(BCRYPT, List.of(), Runnable::run, Runnable::run, 1, task -> {
+            throw new RejectedExecutionException();
+        }, new SimpleMeterRegistry());
+
+        DomainException exception = Assertions.assertThrows(DomainException.class,
+                () -> passwordEncoder.verifyAsync("password", BCRYPT.hash("password")));
+        Assertions.assertEquals(exception.getHttpStatus(), HttpStatus.SERVICE_UNAVAILABLE);
+
+    }
+
+    private void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch(InterruptedException interruptedException) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
@@ -0,0 +1,163 @@
+package com.rakbank.userservice.service;
+
+import at.favre.lib.crypto.bcrypt.BCrypt;
+import com.rakbank.userservice.dao.entity.PasswordRehashCheckpointEntity;
+import com.rakbank.userservice.dao.projection.PasswordHashView;
+import com.rakbank.userservice.dao.repository.PasswordRehashCheckpointRepository;
+import com.rakbank.userservice.dao.repository.UserRepository;
+import com.rakbank.userservice.error.DomainException;
+import com.rakbank.userservice.service.hashing.BcryptPasswordHashAlgorithm;
+import com.rakbank.userservice.service.model.PasswordRehashJob;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.data.domain.Limit;
+import org.springframework.http.HttpStatus;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class PasswordRehashServiceTest {
+
+    private static final BcryptPasswordHashAlgorithm CURRENT = new BcryptPasswordHashAlgorithm(BCrypt.Version.VERSION_2A, 5);
+
+    private static final String OLD_HASH = CURRENT.withWorkFactor(4).hash("password");
+
+    private static final String CURRENT_HASH = CURRENT.hash("password");
+
+    private final UserRepository userRepository = mock(UserRepository.class);
+
+    private final PasswordRehashCheckpointRepository checkpointRepository = mock(PasswordRehashCheckpointRepository.class);
+
+    private final PasswordRehashService passwordRehashService = new PasswordRehashService();
+
+    private final List<PasswordRehashCheckpointEntity> savedCheckpoints = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        ObjectProvider<HikariDataSource> noPool = mock(ObjectProvider.class);
+        passwordRehashService.userRepository = userRepository;
+        passwordRehashService.passwordRehashCheckpointRepository = checkpointRepository;
+        passwordRehashService.passwordEncoder = new PasswordEncoder(CURRENT, List.of(), Runnable::run, Runnable::run,
+                1, Runnable::run, new SimpleMeterRegistry());
+        passwordRehashService.transactionTemplate = new TransactionTemplate(mock(PlatformTransactionManager.class));
+        passwordRehashService.passwordRehashExecutor = Runnable::run;
+        passwordRehashService.primaryDataSource = noPool;
+        passwordRehashService.chunkSize = 2;
+        passwordRehashService.maxWorkers = 2;
+        passwordRehashService.maxConnectionShare = 0.2;
+        passwordRehashService.maxCpuShare = 1d;
+        passwordRehashService.backoff = Duration.ofMillis(10);
+
+        when(checkpointRepository.findById(anyString())).thenReturn(Optional.empty());
+        when(checkpointRepository.save(any())).thenAnswer(invocation -> {
+            PasswordRehashCheckpointEntity checkpoint = invocation.getArgument(0);
+            savedCheckpoints.add(copy(checkpoint));
+            return checkpoint;
+        });
+        when(userRepository.flagForRehash(anyLong(), anyString())).thenReturn(1);
+    }
+
+    @Test
+    void shouldFlagOutdatedHashesAndCheckpointEveryChunk() {
+
+        when(userRepository.findPasswordHashesAfter(0L, Limit.of(2)))
+                .thenReturn(List.of(new PasswordHashView(1L, OLD_HASH), new PasswordHashView(2L, CURRENT_HASH)));
+        when(userRepository.findPasswordHashesAfter(2L, Limit.of(2)))
+                .thenReturn(List.of(new PasswordHashView(5L, OLD_HASH)));
+
+        PasswordRehashJob job = passwordRehashService.start();
+
+        Assertions.assertEquals(job.getStatus(), PasswordRehashJob.Status.COMPLETED);
+        Assertions.assertEquals(job.getPolicy(), "bcrypt:5");
+        Assertions.assertEquals(job.getScannedCount(), 3L);
+        Assertions.assertEquals(job.getFlaggedCount(), 2L);
+        Assertions.assertEquals(job.getCheckpoint(), 5L);
+        verify(userRepository).flagForRehash(1L, OLD_HASH);
+        verify(userRepository).flagForRehash(5L, OLD_HASH);
+        verify(userRepository, never()).flagForRehash(eq(2L), anyString());
+
+        Assertions.assertEquals(savedCheckpoints.stream().map(PasswordRehashCheckpointEntity::getLastId).toList(),
+                List.of(2L, 5L, 5L));
+        Assertions.assertTrue(savedCheckpoints.get(savedCheckpoints.size() - 1).isCompleted());
+
+    }
+
+    @Test
+    void shouldResumeAfterCheckpointOfSamePolicy() {
+
+        PasswordRehashCheckpointEntity checkpoint = new PasswordRehashCheckpointEntity();
+        checkpoint.setPolicy("bcrypt:5");
+        checkpoint.setLastId(2L);
+        checkpoint.setScanned(2L);
+        checkpoint.setFlagged(1L);
+        when(checkpointRepository.findById("bcrypt:5")).thenReturn(Optional.of(checkpoint));
+        when(userRepository.findPasswordHashesAfter(2L, Limit.of(2)))
+                .thenReturn(List.of(new PasswordHashView(5L, OLD_HASH)));
+
+        PasswordRehashJob job = passwordRehashService.start();
+
+        Assertions.assertEquals(job.getScannedCount(), 3L);
+        Assertions.assertEquals(job.getFlaggedCount(), 2L);
+        verify(userRepository, never()).findPasswordHashesAfter(eq(0L), any());
+
+    }
+
+    @Test
+    void shouldFailAtCheckpointWhenChunkFails() {
+
+        when(userRepository.findPasswordHashesAfter(0L, Limit.of(2)))
+                .thenReturn(List.of(new PasswordHashView(1L, OLD_HASH), new PasswordHashView(2L, OLD_HASH)));
+        when(userRepository.findPasswordHashesAfter(2L, Limit.of(2)))
+                .thenReturn(List.of(new PasswordHashView(3L, OLD_HASH), new PasswordHashView(4L, OLD_HASH)));
+        when(userRepository.flagForRehash(3L, OLD_HASH)).thenThrow(new IllegalStateException("connection lost"));
+
+        PasswordRehashJob job = passwordRehashService.start();
+
+        Assertions.assertEquals(job.getStatus(), PasswordRehashJob.Status.FAILED);
+        Assertions.assertEquals(job.getFailureReason(), "password.rehash.failed");
+        Assertions.assertEquals(job.getCheckpoint(), 2L);
+
+    }
+
+    @Test
+    void shouldNotStartTwice() {
+
+        List<Runnable> queued = new ArrayList<>();
+        passwordRehashService.passwordRehashExecutor = queued::add;
+
+        passwordRehashService.start();
+
+        DomainException exception = Assertions.assertThrows(DomainException.class, passwordRehashService::start);
+        Assertions.assertEquals(exception.getHttpStatus(), HttpStatus.CONFLICT);
+        Assertions.assertEquals(queued.size(), 1);
+
+    }
+
+    private PasswordRehashCheckpointEntity copy(PasswordRehashCheckpointEntity checkpoint) {
+        PasswordRehashCheckpointEntity copy = new PasswordRehashCheckpointEntity();
+        copy.setPolicy(checkpoint.getPolicy());
+        copy.setLastId(checkpoint.getLastId());
+        copy.setScanned(checkpoint.getScanned());
+        copy.setFlagged(checkpoint.getFlagged());
+        copy.setCompleted(checkpoint.isCompleted());
+        return copy;
+    }
+
+}
@@ -0,0 +1,36 @@
+package com.rakbank.userservice.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+public class PinnedThreadMonitorTest {
+
+    /**
+     * jdk.VirtualThreadPinned needs Java 21, so the reporting is checked with another stack-carrying
+     * JFR event that every JDK records.
+     */
+    @Test
+    void shouldCountEventsByApplicationSite() throws Exception {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        PinnedThreadMonitor pinnedThreadMonitor = new PinnedThreadMonitor(meterRegistry, "jdk.ThreadSleep", Duration.ofMillis(10));
+        pinnedThreadMonitor.start();
+        try {
+            long deadline = System.nanoTime() + Duration.ofSeconds(20).toNanos();
+            Counter counter = null;
+            while(counter == null && System.nanoTime() < deadline) {
+                Thread.sleep(50);
+                counter = meterRegistry.find("userservice.virtual.pinned")
+                        .tag("site", PinnedThreadMonitorTest.class.getName() + ".shouldCountEventsByApplicationSite")
+                        .counter();
+            }
+            Assertions.assertNotNull(counter);
+        } finally {
+            pinnedThreadMonitor.close();
+        }
+    }
+
+}
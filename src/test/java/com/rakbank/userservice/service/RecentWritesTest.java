@@ -0,0 +1,39 @@
+package com.rakbank.userservice.service;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class RecentWritesTest {
+
+    private final AtomicLong clock = new AtomicLong();
+
+    private final RecentWrites recentWrites = new RecentWrites(Duration.ofSeconds(5), clock::get);
+
+    @Test
+    void shouldPinUserUntilWindowEnds() {
+
+        recentWrites.record(1L);
+
+        Assertions.assertTrue(recentWrites.contains(1L));
+        Assertions.assertFalse(recentWrites.contains(2L));
+
+        clock.addAndGet(Duration.ofSeconds(5).toNanos());
+
+        Assertions.assertFalse(recentWrites.contains(1L));
+
+    }
+
+    @Test
+    void shouldNotPinWhenWindowIsZero() {
+
+        RecentWrites disabled = new RecentWrites(Duration.ZERO, clock::get);
+        disabled.record(1L);
+
+        Assertions.assertFalse(disabled.contains(1L));
+
+    }
+
+}
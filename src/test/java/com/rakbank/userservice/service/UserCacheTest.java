@@ -0,0 +1,113 @@
+package com.rakbank.userservice.service;
+
+import com.rakbank.userservice.service.model.User;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class UserCacheTest {
+
+    private final AtomicLong clock = new AtomicLong();
+
+    private final UserCache userCache = new UserCache(2, Duration.ofSeconds(10), clock::get);
+
+    @Test
+    void shouldCountHitsAndMisses() {
+
+        userCache.put(user(1L, 0));
+
+        Assertions.assertTrue(userCache.get(1L).isPresent());
+        Assertions.assertTrue(userCache.get(2L).isEmpty());
+
+        UserCache.Stats stats = userCache.stats();
+        Assertions.assertEquals(stats.hits(), 1L);
+        Assertions.assertEquals(stats.misses(), 1L);
+
+    }
+
+    @Test
+    void shouldEvictLeastRecentlyUsedWhenFull() {
+
+        userCache.put(user(1L, 0));
+        userCache.put(user(2L, 0));
+        userCache.get(1L);
+        userCache.put(user(3L, 0));
+
+        Assertions.assertTrue(userCache.get(1L).isPresent());
+        Assertions.assertTrue(userCache.get(2L).isEmpty());
+        Assertions.assertEquals(userCache.stats().evictions(), 1L);
+
+    }
+
+    @Test
+    void shouldExpireEntriesAfterTtl() {
+
+        userCache.put(user(1L, 0));
+        clock.addAndGet(Duration.ofSeconds(11).toNanos());
+
+        Assertions.assertTrue(userCache.get(1L).isEmpty());
+        Assertions.assertEquals(userCache.stats().evictions(), 1L);
+
+    }
+
+    @Test
+    void shouldRejectOlderVersionAfterInvalidation() {
+
+        userCache.put(user(1L, 3));
+        userCache.invalidate(1L, 4);
+
+        // A reader that loaded the row before the write must not put it back.
+        userCache.put(user(1L, 3));
+        Assertions.assertTrue(userCache.get(1L).isEmpty());
+
+        userCache.put(user(1L, 4));
+        Assertions.assertEquals(userCache.get(1L).get().getVersion(), 4);
+
+    }
+
+    @Test
+    void shouldCacheAgainAfterEvictionButKeepMarkers() {
+
+        userCache.put(user(1L, 3));
+        userCache.evict(1L);
+
+        Assertions.assertTrue(userCache.get(1L).isEmpty());
+        userCache.put(user(1L, 3), userCache.generation());
+        Assertions.assertEquals(userCache.get(1L).get().getVersion(), 3);
+
+        userCache.invalidate(2L, 4);
+        userCache.evict(2L);
+        userCache.put(user(2L, 3), userCache.generation());
+        Assertions.assertTrue(userCache.get(2L).isEmpty());
+
+    }
+
+    @Test
+    void shouldRejectSameVersionReadBeforeEviction() {
+
+        long readGeneration = userCache.generation();
+        userCache.evict(1L);
+
+        // The reader loaded the row before the write that didn't move its version.
+        userCache.put(user(1L, 3), readGeneration);
+        Assertions.assertTrue(userCache.get(1L).isEmpty());
+
+        User reread = user(1L, 3);
+        userCache.put(reread, userCache.generation());
+        userCache.put(user(1L, 3), readGeneration);
+        Assertions.assertSame(userCache.get(1L).get(), reread);
+
+    }
+
+    private User user(Long id, int version) {
+        User user = new User();
+        user.setId(id);
+        user.setName("Deep");
+        user.setEmail("test" + id + "@gmail.com");
+        user.setVersion(version);
+        return user;
+    }
+
+}
@@ -0,0 +1,214 @@
+package com.rakbank.userservice.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rakbank.userservice.controller.dto.request.CreateUserRequestDto;
+import com.rakbank.userservice.service.api.UserService;
+import com.rakbank.userservice.service.model.ImportJob;
+import com.rakbank.userservice.service.model.User;
+import com.rakbank.userservice.service.model.UserCreationResult;
+import com.rakbank.userservice.service.model.UserFileFormat;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class UserImportServiceTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final UserService userService = mock(UserService.class);
+
+    private final UserImportService userImportService = new UserImportService();
+
+    private final List<List<CreateUserRequestDto>> chunks = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        userImportService.userService = userService;
+        userImportService.objectMapper = new ObjectMapper();
+        userImportService.userImportExecutor = Runnable::run;
+        userImportService.chunkSize = 2;
+        userImportService.maxErrors = 100;
+        userImportService.retention = Duration.ofHours(1);
+
+        // Creates every record except the ones named "Taken".
+        when(userService.createAll(anyList(), any())).thenAnswer(invocation -> {
+            List<CreateUserRequestDto> users = invocation.getArgument(0);
+            chunks.add(users);
+            List<UserCreationResult> results = new ArrayList<>();
+            for(int index = 0; index < users.size(); index++) {
+                UserCreationResult result = new UserCreationResult();
+                result.setIndex(index);
+                if("Taken".equals(users.get(index).getName())) {
+                    result.setErrors(List.of("user.email.alreadyRegistered"));
+                } else {
+                    result.setUser(new User());
+                }
+                results.add(result);
+            }
+            return CompletableFuture.completedFuture(results);
+        });
+    }
+
+    @Test
+    void shouldImportNdjsonInChunksAndReportBadLines() throws IOException {
+
+        Path file = Files.writeString(tempDir.resolve("users.ndjson"),
+                "{\"name\":\"Deep\",\"email\":\"a@gmail.com\",\"password\":\"password\"}\n"
+                + "not json\n"
+                + "\n"
+                + "{\"name\":\"Taken\",\"email\":\"b@gmail.com\",\"password\":\"password\"}\n"
+                + "{\"name\":\"Tarun\",\"email\":\"c@gmail.com\",\"password\":\"password\"}\n");
+
+        ImportJob job = userImportService.submit(file, UserFileFormat.NDJSON);
+
+        Assertions.assertEquals(job.getStatus(), ImportJob.Status.COMPLETED);
+        Assertions.assertEquals(job.getCreatedCount(), 2L);
+        Assertions.assertEquals(job.getFailedCount(), 2L);
+        Assertions.assertEquals(job.getCheckpoint(), 5L);
+        Assertions.assertEquals(job.getErrors().get(0).getLine(), 2L);
+        Assertions.assertEquals(job.getErrors().get(1).getLine(), 4L);
+        Assertions.assertEquals(chunks.size(), 2);
+        Assertions.assertFalse(Files.exists(file));
+
+    }
+
+    @Test
+    void shouldImportCsvWithQuotedFields() throws IOException {
+
+        Path file = Files.writeString(tempDir.resolve("users.csv"),
+                "email,name,password\n"
+                + "a@gmail.com,\"Deep \"\"D\"\" Tarun\",password\n");
+
+        ImportJob job = userImportService.submit(file, UserFileFormat.CSV);
+
+        Assertions.assertEquals(job.getStatus(), ImportJob.Status.COMPLETED);
+        Assertions.assertEquals(chunks.get(0).get(0).getName(), "Deep \"D\" Tarun");
+        Assertions.assertEquals(chunks.get(0).get(0).getEmail(), "a@gmail.com");
+
+    }
+
+    @Test
+    void shouldFailCsvWithoutHeader() throws IOException {
+
+        Path file = Files.writeString(tempDir.resolve("users.csv"), "a@gmail.com,Deep,password\n");
+
+        ImportJob job = userImportService.submit(file, UserFileFormat.CSV);
+
+        Assertions.assertEquals(job.getStatus(), ImportJob.Status.FAILED);
+        Assertions.assertEquals(job.getFailureReason(), "user.import.invalidHeader");
+
+    }
+
+    @Test
+    void shouldResumeFailedImportFromCheckpoint() throws IOException {
+
+        Path file = Files.writeString(tempDir.resolve("users.ndjson"),
+                "{\"name\":\"Deep\",\"email\":\"a@gmail.com\",\"password\":\"password\"}\n"
+                + "{\"name\":\"Deep\",\"email\":\"b@gmail.com\",\"password\":\"password\"}\n"
+                + "{\"name\":\"Deep\",\"email\":\"c@gmail.com\",\"password\":\"password\"}\n");
+
+        // The database goes away after the first chunk.
+        when(userService.createAll(anyList(), any()))
+                .thenAnswer(invocation -> {
+                    List<CreateUserRequestDto> users = invocation.getArgument(0);
+                    chunks.add(users);
+                    List<UserCreationResult> results = new ArrayList<>();
+                    for(int index = 0; index < users.size(); index++) {
+                        UserCreationResult result = new UserCreationResult();
+                        result.setUser(new User());
+                        results.add(result);
+                    }
+                    return CompletableFuture.completedFuture(results);
+                })
+                .thenReturn(CompletableFuture.failedFuture(new IllegalStateException("database down")))
+                .thenAnswer(invocation -> {
+                    List<CreateUserRequestDto> users = invocation.getArgument(0);
+                    chunks.add(users);
+                    UserCreationResult result = new UserCreationResult();
+                    result.setUser(new User());
+                    return CompletableFuture.completedFuture(List.of(result));
+                });
+        chunks.clear();
+
+        ImportJob job = userImportService.submit(file, UserFileFormat.NDJSON);
+        Assertions.assertEquals(job.getStatus(), ImportJob.Status.FAILED);
+        Assertions.assertEquals(job.getCheckpoint(), 2L);
+
+        userImportService.resume(job.getId());
+
+        Assertions.assertEquals(job.getStatus(), ImportJob.Status.COMPLETED);
+        Assertions.assertEquals(job.getCreatedCount(), 3L);
+        Assertions.assertEquals(chunks.get(1).get(0).getEmail(), "c@gmail.com");
+
+    }
+
+    @Test
+    void shouldCheckpointAfterLastCommittedUserWhenChunkFailsHalfway() throws IOException {
+
+        userImportService.chunkSize = 3;
+        Path file = Files.writeString(tempDir.resolve("users.ndjson"),
+                "{\"name\":\"Deep\",\"email\":\"a@gmail.com\",\"password\":\"password\"}\n"
+                + "not json\n"
+                + "{\"name\":\"Deep\",\"email\":\"b@gmail.com\",\"password\":\"password\"}\n");
+
+        // The first user is committed, then the database goes away.
+        when(userService.createAll(anyList(), any()))
+                .thenAnswer(invocation -> {
+                    Consumer<List<UserCreationResult>> committed = invocation.getArgument(1);
+                    UserCreationResult result = new UserCreationResult();
+                    result.setUser(new User());
+                    committed.accept(List.of(result));
+                    return CompletableFuture.failedFuture(new IllegalStateException("database down"));
+                })
+                .thenAnswer(invocation -> {
+                    List<CreateUserRequestDto> users = invocation.getArgument(0);
+                    chunks.add(users);
+                    UserCreationResult result = new UserCreationResult();
+                    result.setUser(new User());
+                    return CompletableFuture.completedFuture(List.of(result));
+                });
+        chunks.clear();
+
+        ImportJob job = userImportService.submit(file, UserFileFormat.NDJSON);
+        Assertions.assertEquals(job.getStatus(), ImportJob.Status.FAILED);
+        // The bad line before the next user is final too.
+        Assertions.assertEquals(job.getCheckpoint(), 2L);
+        Assertions.assertEquals(job.getCreatedCount(), 1L);
+
+        userImportService.resume(job.getId());
+
+        Assertions.assertEquals(job.getStatus(), ImportJob.Status.COMPLETED);
+        Assertions.assertEquals(job.getCreatedCount(), 2L);
+        Assertions.assertEquals(job.getFailedCount(), 1L);
+        Assertions.assertEquals(chunks.get(0).size(), 1);
+        Assertions.assertEquals(chunks.get(0).get(0).getEmail(), "b@gmail.com");
+
+    }
+
+    @Test
+    void shouldRefuseChunksLargerThanBatch() {
+
+        userImportService.chunkSize = 1001;
+        userImportService.maxBatchSize = 1000;
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> userImportService.checkChunkSize());
+
+    }
+
+}
@@ -3,20 +3,57 @@ package com.rakbank.userservice.service;
 import com.rakbank.userservice.controller.dto.request.CreateUserRequestDto;
 import com.rakbank.userservice.controller.dto.request.ModifyUserRequestDto;
 import com.rakbank.userservice.dao.entity.UserEntity;
+import com.rakbank.userservice.dao.projection.PasswordHashView;
+import com.rakbank.userservice.dao.projection.UserField;
+import com.rakbank.userservice.dao.projection.UserView;
 import com.rakbank.userservice.dao.repository.UserRepository;
 import com.rakbank.userservice.error.DomainException;
+import com.rakbank.userservice.service.model.PaginatedResponse;
 import com.rakbank.userservice.service.model.User;
+import com.rakbank.userservice.service.model.UserCreationResult;
+import com.rakbank.userservice.service.model.UserLookupResult;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManager;
+import jakarta.validation.Validation;
+import jakarta.validation.Validator;
+import org.hibernate.exception.ConstraintViolationException;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
-
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
 
 import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
@@ -31,18 +68,68 @@ public class UserServiceTest {
     @Mock
     UserRepository userRepository;
 
+    @Mock
+    UserCountProvider userCountProvider;
+
+    @Spy
+    UserCache userCache = new UserCache(100, Duration.ofMinutes(5));
+
+    @Spy
+    RecentWrites recentWrites = new RecentWrites(Duration.ofSeconds(5));
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Spy
+    SingleFlight userByIdLoads = new SingleFlight("id", meterRegistry);
+
+    @Spy
+    SingleFlight userByEmailLoads = new SingleFlight("email", meterRegistry);
+
+    @Spy
+    PasswordCheckQueue passwordCheckQueue = new PasswordCheckQueue(2, meterRegistry);
+
+    @Mock
+    EntityManager entityManager;
+
+    @Spy
+    Validator validator = Validation.buildDefaultValidatorFactory().getValidator();
+
 
     @Test
     void shouldThrowExceptionWhenUserSignupWithExistingEmail() {
 
-        when(userRepository.findByEmail(any())).thenReturn(Optional.of(new UserEntity()));
+        when(passwordEncoder.encodeAsync(any())).thenReturn(CompletableFuture.completedFuture("hash"));
+        when(userRepository.saveAndFlush(any())).thenThrow(new DataIntegrityViolationException("could not execute statement",
+                new ConstraintViolationException("Duplicate entry", null, "users.user_email")));
 
         CreateUserRequestDto createUserRequestDto = new CreateUserRequestDto();
         createUserRequestDto.setName("Deep");
         createUserRequestDto.setEmail("existing@gmail.com");
         createUserRequestDto.setPassword("password");
 
-        Assertions.assertThrows(DomainException.class, () -> userService.create(createUserRequestDto));
+        CompletionException exception = Assertions.assertThrows(CompletionException.class,
+                () -> userService.create(createUserRequestDto).join());
+        Assertions.assertEquals(exception.getCause().getMessage(), "user.email.alreadyRegistered");
+        verify(userRepository, never()).findByEmail(any());
+        verify(userCountProvider, never()).increment();
+
+    }
+
+    @Test
+    void shouldNotReportOtherConstraintViolationsAsDuplicateEmail() {
+
+        when(passwordEncoder.encodeAsync(any())).thenReturn(CompletableFuture.completedFuture("hash"));
+        when(userRepository.saveAndFlush(any())).thenThrow(new DataIntegrityViolationException("could not execute statement",
+                new ConstraintViolationException("Column 'NAME' cannot be null", null, null)));
+
+        CreateUserRequestDto createUserRequestDto = new CreateUserRequestDto();
+        createUserRequestDto.setName("Deep");
+        createUserRequestDto.setEmail("new@gmail.com");
+        createUserRequestDto.setPassword("password");
+
+        CompletionException exception = Assertions.assertThrows(CompletionException.class,
+                () -> userService.create(createUserRequestDto).join());
+        Assertions.assertTrue(exception.getCause() instanceof DataIntegrityViolationException);
 
     }
 
@@ -50,15 +137,14 @@ public class UserServiceTest {
     void shouldCreateUserSuccessfullyWhenAllDetailsAreOk() {
 
 
-        when(userRepository.findByEmail(any())).thenReturn(Optional.empty());
-        when(passwordEncoder.encode(any())).thenReturn(anyString());
+        when(passwordEncoder.encodeAsync(any())).thenReturn(CompletableFuture.completedFuture("hash"));
 
         CreateUserRequestDto createUserRequestDto = new CreateUserRequestDto();
         createUserRequestDto.setName("Deep");
         createUserRequestDto.setEmail("existing@gmail.com");
         createUserRequestDto.setPassword("password");
 
-        User user = userService.create(createUserRequestDto);
+        User user = userService.create(createUserRequestDto).join();
 
         Assertions.assertEquals(user.getName(), "Deep");
         Assertions.assertEquals(user.getEmail(), "existing@gmail.com");
@@ -68,21 +154,17 @@ public class UserServiceTest {
     @Test
     void shouldThrowExceptionWhenUserNotFound() {
 
-        when(userRepository.findById(any())).thenReturn(Optional.empty());
+        when(userRepository.findViewById(any())).thenReturn(Optional.empty());
 
-        Assertions.assertThrows(DomainException.class, () -> userService.findById(1L));
+        Assertions.assertThrows(DomainException.class, () -> userService.findById(1L, UserField.ALL));
     }
 
     @Test
     void shouldReturnUserWhenIdFound() {
 
-        UserEntity userEntity = new UserEntity();
-        userEntity.setId(1L);
-        userEntity.setName("Deep");
-        userEntity.setEmail("test@gmail.com");
-        when(userRepository.findById(any())).thenReturn(Optional.of(userEntity));
+        when(userRepository.findViewById(any())).thenReturn(Optional.of(userView(1L, "Deep", "test@gmail.com", 0)));
 
-        User user = userService.findById(1L);
+        User user = userService.findById(1L, UserField.ALL);
         Assertions.assertEquals(user.getName(), "Deep");
         Assertions.assertEquals(user.getEmail(), "test@gmail.com");
         Assertions.assertEquals(user.getId(), 1L);
@@ -92,41 +174,588 @@ public class UserServiceTest {
     @Test
     void shouldUpdateUserWhenAllDetailsAreCorrect() {
 
-        UserEntity existingUser = new UserEntity();
-        existingUser.setName("Deep");
-        existingUser.setEmail("test@gmail.com");
-
-        when(userRepository.findById(any())).thenReturn(Optional.of(existingUser));
-        when(userRepository.findByEmail(any())).thenReturn(Optional.empty());
+        when(userRepository.updateDetails(1L, "new name", "updated@gmail.com")).thenReturn(1);
 
         ModifyUserRequestDto modifyUserRequestDto = new ModifyUserRequestDto();
         modifyUserRequestDto.setName("new name");
         modifyUserRequestDto.setEmail("updated@gmail.com");
 
-        User user = userService.updateUser(1L, modifyUserRequestDto);
+        User user = userService.updateUser(1L, modifyUserRequestDto, null);
 
         Assertions.assertEquals(user.getName(), "new name");
         Assertions.assertEquals(user.getEmail(), "updated@gmail.com");
+        verify(userRepository, never()).findById(any());
+        verify(userRepository, never()).findByEmail(any());
 
     }
 
     @Test
     void shouldThrowErrorIfUserUpdatesWithExitingEmail() {
 
-        UserEntity existingUser = new UserEntity();
-        existingUser.setName("Deep");
-        existingUser.setEmail("test@gmail.com");
+        when(userRepository.updateDetails(any(), any(), any()))
+                .thenThrow(new DataIntegrityViolationException("could not execute statement",
+                        new ConstraintViolationException("Duplicate entry", null, "users.user_email")));
+
+        ModifyUserRequestDto modifyUserRequestDto = new ModifyUserRequestDto();
+        modifyUserRequestDto.setName("new name");
+        modifyUserRequestDto.setEmail("updated@gmail.com");
+
+        DomainException exception = Assertions.assertThrows(DomainException.class, ()
+                -> userService.updateUser(1L, modifyUserRequestDto, null));
+        Assertions.assertEquals(exception.getMessage(), "user.email.alreadyRegistered");
+
+    }
+
+    @Test
+    void shouldThrowNotFoundWhenUpdatingMissingUser() {
+
+        when(userRepository.updateDetails(any(), any(), any())).thenReturn(0);
+
+        ModifyUserRequestDto modifyUserRequestDto = new ModifyUserRequestDto();
+        modifyUserRequestDto.setName("new name");
+        modifyUserRequestDto.setEmail("updated@gmail.com");
+
+        DomainException exception = Assertions.assertThrows(DomainException.class,
+                () -> userService.updateUser(1L, modifyUserRequestDto, null));
+        Assertions.assertEquals(exception.getHttpStatus(), HttpStatus.NOT_FOUND);
+        // Without an expected version, no row means no user. No second query is needed.
+        verify(userRepository, never()).existsById(any());
+
+    }
+
+    @Test
+    void shouldChangePasswordWithOneUpdate() {
+
+        when(passwordEncoder.encodeAsync("newPassword1")).thenReturn(CompletableFuture.completedFuture("hash"));
+        when(userRepository.updatePassword(1L, "hash")).thenReturn(1);
+
+        userService.changePassword(1L, "newPassword1", null).join();
+
+        verify(userRepository, never()).findById(any());
+        verify(userRepository, never()).save(any());
+
+    }
+
+    @Test
+    void shouldRehashOutdatedPasswordOnceVerified() {
+
+        when(userRepository.findPasswordHashById(1L)).thenReturn(Optional.of(new PasswordHashView(1L, "oldHash")));
+        when(passwordEncoder.verifyAsync("password", "oldHash"))
+                .thenReturn(CompletableFuture.completedFuture(new PasswordEncoder.Verification(true, "newHash")));
+        when(userRepository.rehashPassword(1L, "oldHash", "newHash")).thenReturn(1);
+
+        Assertions.assertTrue(userService.verifyPassword(1L, "password").join());
+        // The version didn't move: the user is evicted without blocking it from the cache.
+        verify(userCache).evict(1L);
+        verify(userCache, never()).invalidate(any());
+
+    }
+
+    @Test
+    void shouldNotCacheHashReadBeforeRehash() {
+
+        when(userRepository.findPasswordHashById(1L)).thenReturn(Optional.of(new PasswordHashView(1L, "oldHash")));
+        when(passwordEncoder.verifyAsync("password", "oldHash"))
+                .thenReturn(CompletableFuture.completedFuture(new PasswordEncoder.Verification(true, "newHash")));
+        when(userRepository.rehashPassword(1L, "oldHash", "newHash")).thenReturn(1);
+        // The password is rehashed while the read is on its way back, at the same version.
+        when(userRepository.findViewById(1L)).thenAnswer(invocation -> {
+            userService.verifyPassword(1L, "password").join();
+            return Optional.of(new UserView(1L, "Deep", "test@gmail.com", "oldHash", 0));
+        });
+
+        userService.findById(1L, UserField.ALL);
+        Assertions.assertTrue(userCache.get(1L).isEmpty());
+
+    }
+
+    @Test
+    void shouldNotRehashWhenPasswordIsWrong() {
+
+        when(userRepository.findPasswordHashById(1L)).thenReturn(Optional.of(new PasswordHashView(1L, "oldHash")));
+        when(passwordEncoder.verifyAsync("wrong", "oldHash"))
+                .thenReturn(CompletableFuture.completedFuture(new PasswordEncoder.Verification(false, null)));
+
+        Assertions.assertFalse(userService.verifyPassword(1L, "wrong").join());
+        verify(userRepository, never()).rehashPassword(any(), any(), any());
+
+    }
+
+    @Test
+    void shouldJoinCheckOfSamePasswordAndQueueOtherPasswords() {
+
+        CompletableFuture<PasswordEncoder.Verification> running = new CompletableFuture<>();
+        when(userRepository.findPasswordHashById(1L)).thenReturn(Optional.of(new PasswordHashView(1L, "hash")));
+        when(passwordEncoder.verifyAsync("password", "hash")).thenReturn(running);
+        when(passwordEncoder.verifyAsync("guess", "hash"))
+                .thenReturn(CompletableFuture.completedFuture(new PasswordEncoder.Verification(false, null)));
+
+        CompletableFuture<Boolean> first = userService.verifyPassword(1L, "password");
+        CompletableFuture<Boolean> guess = userService.verifyPassword(1L, "guess");
+        CompletableFuture<Boolean> second = userService.verifyPassword(1L, "password");
+
+        // The other password waits its turn instead of being refused.
+        Assertions.assertFalse(guess.isDone());
+        verify(passwordEncoder, never()).verifyAsync("guess", "hash");
+        running.complete(new PasswordEncoder.Verification(true, null));
+
+        Assertions.assertTrue(first.join());
+        Assertions.assertTrue(second.join());
+        Assertions.assertFalse(guess.join());
+        verify(passwordEncoder, times(1)).verifyAsync("password", "hash");
+
+    }
+
+    @Test
+    void shouldRefuseChecksOverPendingLimitOfUser() {
+
+        CompletableFuture<PasswordEncoder.Verification> running = new CompletableFuture<>();
+        when(userRepository.findPasswordHashById(1L)).thenReturn(Optional.of(new PasswordHashView(1L, "hash")));
+        when(passwordEncoder.verifyAsync("password", "hash")).thenReturn(running);
+        when(passwordEncoder.verifyAsync("guess1", "hash"))
+                .thenReturn(CompletableFuture.completedFuture(new PasswordEncoder.Verification(false, null)));
+
+        CompletableFuture<Boolean> first = userService.verifyPassword(1L, "password");
+        CompletableFuture<Boolean> guess = userService.verifyPassword(1L, "guess1");
+        Assertions.assertEquals(meterRegistry.get("userservice.password.verify.pending").gauge().value(), 2.0);
+
+        DomainException exception = Assertions.assertThrows(DomainException.class,
+                () -> userService.verifyPassword(1L, "guess2"));
+        Assertions.assertEquals(exception.getHttpStatus(), HttpStatus.SERVICE_UNAVAILABLE);
+        // Joining a pending check costs nothing, so it is never refused.
+        CompletableFuture<Boolean> second = userService.verifyPassword(1L, "password");
+
+        running.complete(new PasswordEncoder.Verification(true, null));
+        Assertions.assertTrue(first.join());
+        Assertions.assertTrue(second.join());
+        Assertions.assertFalse(guess.join());
+        Assertions.assertEquals(meterRegistry.get("userservice.password.verify.pending").gauge().value(), 0.0);
+        Assertions.assertEquals(meterRegistry.get("userservice.password.verify.user-queued").timer().count(), 2L);
+
+    }
+
+    @Test
+    void shouldFailCheckOfMissingUserWithoutBlockingLaterChecks() {
+
+        when(userRepository.findPasswordHashById(1L)).thenReturn(Optional.empty());
+
+        for(int i = 0; i < 2; i++) {
+            CompletionException exception = Assertions.assertThrows(CompletionException.class,
+                    () -> userService.verifyPassword(1L, "password").join());
+            Assertions.assertEquals(((DomainException) exception.getCause()).getHttpStatus(), HttpStatus.NOT_FOUND);
+        }
+
+    }
+
+    @Test
+    void shouldDeleteUserWithOneDelete() {
+
+        when(userRepository.deleteUserById(1L)).thenReturn(1);
+
+        userService.deleteUser(1L, null);
+
+        verify(userRepository, never()).findById(any());
+        verify(userCountProvider, times(1)).decrement();
+
+    }
+
+    @Test
+    void shouldThrowPreconditionFailedWhenDeletingStaleVersion() {
+
+        when(userRepository.deleteUserByIdIfVersion(1L, 3)).thenReturn(0);
+        when(userRepository.existsById(1L)).thenReturn(true);
 
-        when(userRepository.findById(any())).thenReturn(Optional.of(existingUser));
-        when(userRepository.findByEmail(any())).thenReturn(Optional.of(new UserEntity()));
+        DomainException exception = Assertions.assertThrows(DomainException.class,
+                () -> userService.deleteUser(1L, 3));
+        Assertions.assertEquals(exception.getHttpStatus(), HttpStatus.PRECONDITION_FAILED);
+        verify(userCountProvider, never()).decrement();
+
+    }
+
+    @Test
+    void shouldUpdateUserWithOneConditionalUpdateWhenVersionGiven() {
+
+        when(userRepository.updateDetailsIfVersion(1L, 3, "new name", "updated@gmail.com")).thenReturn(1);
 
         ModifyUserRequestDto modifyUserRequestDto = new ModifyUserRequestDto();
         modifyUserRequestDto.setName("new name");
         modifyUserRequestDto.setEmail("updated@gmail.com");
 
-        Assertions.assertThrows(DomainException.class, ()
-                -> userService.updateUser(1L, modifyUserRequestDto));
+        User user = userService.updateUser(1L, modifyUserRequestDto, 3);
+
+        Assertions.assertEquals(user.getName(), "new name");
+        Assertions.assertEquals(user.getVersion(), 4);
+        verify(userRepository, never()).findById(any());
+        verify(userRepository, never()).findByEmail(any());
+
+    }
+
+    @Test
+    void shouldThrowPreconditionFailedWhenUpdatingStaleVersion() {
+
+        when(userRepository.updateDetailsIfVersion(any(), eq(3), any(), any())).thenReturn(0);
+        when(userRepository.existsById(1L)).thenReturn(true);
+
+        ModifyUserRequestDto modifyUserRequestDto = new ModifyUserRequestDto();
+        modifyUserRequestDto.setName("new name");
+        modifyUserRequestDto.setEmail("updated@gmail.com");
+
+        DomainException exception = Assertions.assertThrows(DomainException.class,
+                () -> userService.updateUser(1L, modifyUserRequestDto, 3));
+        Assertions.assertEquals(exception.getHttpStatus(), HttpStatus.PRECONDITION_FAILED);
+
+    }
+
+    @Test
+    void shouldThrowNotFoundWhenUpdatingMissingUserWithVersion() {
+
+        when(userRepository.updateDetailsIfVersion(any(), eq(3), any(), any())).thenReturn(0);
+        when(userRepository.existsById(1L)).thenReturn(false);
+
+        ModifyUserRequestDto modifyUserRequestDto = new ModifyUserRequestDto();
+        modifyUserRequestDto.setName("new name");
+        modifyUserRequestDto.setEmail("updated@gmail.com");
+
+        DomainException exception = Assertions.assertThrows(DomainException.class,
+                () -> userService.updateUser(1L, modifyUserRequestDto, 3));
+        Assertions.assertEquals(exception.getHttpStatus(), HttpStatus.NOT_FOUND);
+
+    }
+
+    @Test
+    void shouldReturnNextCursorWhenMoreUsersAfterCursor() {
+
+        List<UserView> userViews = new ArrayList<>();
+        for(long id = 21; id <= 31; id++) {
+            userViews.add(userView(id, "Deep", "test" + id + "@gmail.com", 0));
+        }
+        when(userRepository.findViewsAfter(eq(20L), any())).thenReturn(userViews);
+
+        PaginatedResponse<User> page = userService.findAllAfter(PageCursor.encode(20L), UserField.ALL);
+
+        Assertions.assertEquals(page.getRecords().size(), 10);
+        Assertions.assertEquals(page.getRecords().get(0).getId(), 21L);
+        Assertions.assertEquals(PageCursor.decode(page.getNextCursor()), 30L);
+
+    }
+
+    @Test
+    void shouldReturnNoNextCursorOnLastPage() {
+
+        when(userRepository.findViewsAfter(eq(0L), any())).thenReturn(List.of(userView(1L, "Deep", "test@gmail.com", 0)));
+
+        PaginatedResponse<User> page = userService.findAllAfter("", UserField.ALL);
+
+        Assertions.assertEquals(page.getRecords().size(), 1);
+        Assertions.assertNull(page.getNextCursor());
+
+    }
+
+    @Test
+    void shouldThrowErrorForInvalidCursor() {
+
+        Assertions.assertThrows(DomainException.class, () -> userService.findAllAfter("not-a-cursor", UserField.ALL));
+
+    }
+
+    @Test
+    void shouldUseCachedCountForPageTotals() {
+
+        when(userRepository.findViewsBy(any())).thenReturn(new SliceImpl<>(List.of(userView(1L, "Deep", "test@gmail.com", 0)),
+                PageRequest.of(0, 10), false));
+        when(userCountProvider.getCount()).thenReturn(21L);
+
+        PaginatedResponse<User> page = userService.findAll(1, true, UserField.ALL);
+
+        Assertions.assertEquals(page.getTotalRecords(), 21L);
+        Assertions.assertEquals(page.getTotalPages(), 3);
+        verify(userRepository, never()).count();
+
+    }
+
+    @Test
+    void shouldSkipTotalsWhenCountNotRequested() {
+
+        when(userRepository.findViewsBy(any())).thenReturn(new SliceImpl<>(List.of(), PageRequest.of(0, 10), false));
+
+        PaginatedResponse<User> page = userService.findAll(1, false, UserField.ALL);
+
+        Assertions.assertNull(page.getTotalRecords());
+        Assertions.assertNull(page.getTotalPages());
+        verify(userCountProvider, never()).getCount();
+
+    }
+
+    @Test
+    void shouldServeRepeatedLookupsFromCache() {
+
+        when(userRepository.findViewById(1L)).thenReturn(Optional.of(userView(1L, "Deep", "test@gmail.com", 0)));
+
+        userService.findById(1L, UserField.ALL);
+        User user = userService.findById(1L, UserField.ALL);
+
+        Assertions.assertEquals(user.getName(), "Deep");
+        verify(userRepository, times(1)).findViewById(1L);
+
+    }
+
+    @Test
+    void shouldReadOnlyRequestedFieldsAndNotCachePartialUser() {
+
+        Set<UserField> fields = EnumSet.of(UserField.ID, UserField.EMAIL);
+        when(userRepository.findViewById(1L, fields)).thenReturn(Optional.of(new UserView(1L, null, "test@gmail.com", null, 0)));
+
+        userService.findById(1L, fields);
+        User user = userService.findById(1L, fields);
+
+        Assertions.assertEquals(user.getEmail(), "test@gmail.com");
+        Assertions.assertNull(user.getName());
+        verify(userRepository, times(2)).findViewById(1L, fields);
+        verify(userRepository, never()).findViewById(1L);
+
+    }
+
+    @Test
+    void shouldReadOnlyRequestedFieldsForCursorPage() {
+
+        Set<UserField> fields = EnumSet.of(UserField.EMAIL);
+        when(userRepository.findViewsAfter(eq(0L), eq(fields), any()))
+                .thenReturn(List.of(new UserView(1L, null, "test@gmail.com", null, 0)));
+
+        PaginatedResponse<User> page = userService.findAllAfter("", fields);
+
+        Assertions.assertEquals(page.getRecords().get(0).getEmail(), "test@gmail.com");
+
+    }
+
+    @Test
+    void shouldShareOneQueryBetweenConcurrentReadsOfSameUser() throws Exception {
+
+        int callers = 8;
+        when(userRepository.findViewById(1L)).thenAnswer(invocation -> {
+            awaitCoalescedReads(callers - 1);
+            return Optional.of(userView(1L, "Deep", "test@gmail.com", 0));
+        });
+
+        List<Future<User>> results = runConcurrently(callers, () -> userService.findById(1L, UserField.ALL));
+
+        for(Future<User> result : results) {
+            Assertions.assertEquals(result.get(5, TimeUnit.SECONDS).getName(), "Deep");
+        }
+        verify(userRepository, times(1)).findViewById(1L);
+        Assertions.assertEquals(coalescedReads(), callers - 1.0);
+
+    }
+
+    @Test
+    void shouldShareFailureBetweenConcurrentReadsOfSameUser() throws Exception {
+
+        int callers = 4;
+        when(userRepository.findViewById(1L)).thenAnswer(invocation -> {
+            awaitCoalescedReads(callers - 1);
+            throw new DataAccessResourceFailureException("Connection refused");
+        });
+
+        List<Future<User>> results = runConcurrently(callers, () -> userService.findById(1L, UserField.ALL));
+
+        for(Future<User> result : results) {
+            ExecutionException exc = Assertions.assertThrows(ExecutionException.class, () -> result.get(5, TimeUnit.SECONDS));
+            Assertions.assertTrue(exc.getCause() instanceof DataAccessResourceFailureException);
+        }
+        verify(userRepository, times(1)).findViewById(1L);
+
+    }
+
+    @Test
+    void shouldReloadUserAfterUpdate() {
+
+        when(userRepository.findViewById(1L)).thenReturn(Optional.of(userView(1L, "Deep", "test@gmail.com", 0)),
+                Optional.of(userView(1L, "new name", "test@gmail.com", 1)));
+        when(userRepository.updateDetails(1L, "new name", "test@gmail.com")).thenReturn(1);
+        when(userRepository.findVersionById(1L)).thenReturn(Optional.of(1));
+
+        userService.findById(1L, UserField.ALL);
+
+        ModifyUserRequestDto modifyUserRequestDto = new ModifyUserRequestDto();
+        modifyUserRequestDto.setName("new name");
+        modifyUserRequestDto.setEmail("test@gmail.com");
+        userService.updateUser(1L, modifyUserRequestDto, null);
+
+        // The stale copy is gone; the next read goes back to the database.
+        User user = userService.findById(1L, UserField.ALL);
+        // The version written was read back, so the new copy is cached again.
+        userService.findById(1L, UserField.ALL);
+
+        Assertions.assertEquals(user.getName(), "new name");
+        verify(userRepository, times(2)).findViewById(1L);
+        verify(userCache).invalidate(1L, 1);
+
+    }
+
+    @Test
+    void shouldSearchByEscapedLowerCaseEmailPrefixAndReturnKeyedCursor() {
+
+        List<UserView> userViews = new ArrayList<>();
+        for(long id = 1; id <= 11; id++) {
+            userViews.add(userView(id, "Deep", "Test" + id + "@gmail.com", 0));
+        }
+        when(userRepository.searchByEmailPrefix(eq("te!_st%"), eq(""), eq(0L), any())).thenReturn(userViews);
+
+        PaginatedResponse<User> page = userService.search(null, "TE_st", null, null);
+
+        Assertions.assertEquals(page.getRecords().size(), 10);
+        Assertions.assertEquals(PageCursor.decodePosition(page.getNextCursor()),
+                new PageCursor.Position("test10@gmail.com", 10L));
+
+    }
+
+    @Test
+    void shouldThrowErrorUnlessExactlyOneSearchCriteria() {
+
+        Assertions.assertThrows(DomainException.class, () -> userService.search(null, " ", null, null));
+        Assertions.assertThrows(DomainException.class, () -> userService.search("a@gmail.com", null, "Deep", null));
+
+    }
+
+    @Test
+    void shouldLookupUsersInRequestOrderAndReportMissingIds() {
+
+        ReflectionTestUtils.setField(userService, "maxLookupIds", 10);
+        userCache.put(userService.mapUserViewToUser(userView(3L, "Cached", "cached@gmail.com", 0)));
+        when(userRepository.findViewsByIdIn(List.of(5L, 1L, 7L)))
+                .thenReturn(List.of(userView(1L, "Deep", "test@gmail.com", 0), userView(5L, "Tarun", "tarun@gmail.com", 0)));
+
+        UserLookupResult result = userService.findByIds(List.of(5L, 3L, 1L, 7L, 5L));
+
+        Assertions.assertEquals(result.getUsers().stream().map(User::getId).toList(), List.of(5L, 3L, 1L));
+        Assertions.assertEquals(result.getMissingIds(), List.of(7L));
+        // The cached user is not queried again.
+        verify(userRepository, times(1)).findViewsByIdIn(anyList());
+
+    }
+
+    @Test
+    void shouldLookupUsersInChunks() {
+
+        ReflectionTestUtils.setField(userService, "maxLookupIds", 500);
+        List<Long> ids = new ArrayList<>();
+        for(long id = 1; id <= 450; id++) {
+            ids.add(id);
+        }
+        when(userRepository.findViewsByIdIn(anyList())).thenReturn(List.of());
+
+        UserLookupResult result = userService.findByIds(ids);
+
+        Assertions.assertEquals(result.getMissingIds().size(), 450);
+        verify(userRepository, times(3)).findViewsByIdIn(anyList());
+
+    }
+
+    @Test
+    void shouldThrowErrorForEmptyOrTooLargeLookup() {
+
+        ReflectionTestUtils.setField(userService, "maxLookupIds", 2);
+
+        DomainException empty = Assertions.assertThrows(DomainException.class, () -> userService.findByIds(List.of()));
+        DomainException tooLarge = Assertions.assertThrows(DomainException.class, () -> userService.findByIds(List.of(1L, 2L, 3L)));
+
+        Assertions.assertEquals(empty.getMessage(), "user.lookup.empty");
+        Assertions.assertEquals(tooLarge.getMessage(), "user.lookup.tooLarge");
+
+    }
+
+    @Test
+    void shouldCreateValidUsersAndRejectTheRestInBatch() {
+
+        ReflectionTestUtils.setField(userService, "maxBatchSize", 10);
+
+        CreateUserRequestDto validUser = createUserRequest("Deep", "new@gmail.com");
+        CreateUserRequestDto invalidUser = createUserRequest("Deep*", "other@gmail.com");
+        CreateUserRequestDto existingUser = createUserRequest("Deep", "existing@gmail.com");
+        CreateUserRequestDto repeatedUser = createUserRequest("Deep", "NEW@gmail.com");
+
+        when(userRepository.findExistingEmails(any())).thenReturn(List.of("existing@gmail.com"));
+        when(passwordEncoder.encodeAll(anyList())).thenReturn(CompletableFuture.completedFuture(List.of("hash")));
+
+        List<Integer> committed = new ArrayList<>();
+        List<UserCreationResult> results = userService.createAll(
+                List.of(validUser, invalidUser, existingUser, repeatedUser), prefix -> committed.add(prefix.size())).join();
+
+        Assertions.assertTrue(results.get(0).isCreated());
+        Assertions.assertEquals(results.get(1).getErrors(), List.of("user.name.format"));
+        Assertions.assertEquals(results.get(2).getErrors(), List.of("user.email.alreadyRegistered"));
+        Assertions.assertEquals(results.get(3).getErrors(), List.of("user.email.alreadyRegistered"));
+        // The only insert settles every record: the rest were rejected before it.
+        Assertions.assertEquals(committed, List.of(4));
+        verify(userRepository, times(1)).saveAll(anyList());
+
+    }
+
+    @Test
+    void shouldThrowErrorForEmptyBatch() {
+
+        Assertions.assertThrows(DomainException.class, () -> userService.createAll(List.of()));
+
+    }
+
+    @Test
+    void shouldStreamAndDetachEveryUserOnExport() {
+
+        UserEntity first = new UserEntity();
+        first.setId(1L);
+        first.setName("Deep");
+        UserEntity second = new UserEntity();
+        second.setId(2L);
+        second.setName("Tarun");
+        when(userRepository.streamAll()).thenReturn(Stream.of(first, second));
+
+        List<User> exported = new ArrayList<>();
+        userService.exportAll(exported::add);
+
+        Assertions.assertEquals(exported.size(), 2);
+        Assertions.assertEquals(exported.get(1).getName(), "Tarun");
+        verify(entityManager).detach(first);
+        verify(entityManager).detach(second);
+
+    }
+
+    private CreateUserRequestDto createUserRequest(String name, String email) {
+        CreateUserRequestDto createUserRequestDto = new CreateUserRequestDto();
+        createUserRequestDto.setName(name);
+        createUserRequestDto.setEmail(email);
+        createUserRequestDto.setPassword("password");
+        return createUserRequestDto;
+    }
+
+    private UserView userView(Long id, String name, String email, int version) {
+        return new UserView(id, name, email, "hash", version);
+    }
+
+    private <T> List<Future<T>> runConcurrently(int callers, Callable<T> call) {
+        ExecutorService executor = Executors.newFixedThreadPool(callers);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<T>> results = new ArrayList<>();
+        for(int i = 0; i < callers; i++) {
+            results.add(executor.submit(() -> {
+                start.await();
+                return call.call();
+            }));
+        }
+        start.countDown();
+        executor.shutdown();
+        return results;
+    }
+
+    // Holds the first query until every other caller has joined it.
+    private void awaitCoalescedReads(int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while(coalescedReads() < count && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+    }
 
+    private double coalescedReads() {
+        return meterRegistry.counter("userservice.reads", "lookup", "id", "result", "coalesced").count();
     }
 
 }
@@ -0,0 +1,96 @@
+package com.rakbank.userservice.service.hashing;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+public class PasswordHashCalibratorTest {
+
+    @Test
+    void shouldPickHighestWorkFactorWithinTarget() {
+
+        PasswordHashCalibrator.Calibration calibration = new PasswordHashCalibrator(Duration.ofMillis(24))
+                .calibrate(new SleepingAlgorithm(2));
+
+        Assertions.assertEquals(calibration.algorithm().getWorkFactor(), 16);
+        Assertions.assertTrue(calibration.hashTime().compareTo(Duration.ofMillis(16)) >= 0);
+
+    }
+
+    @Test
+    void shouldKeepConfiguredWorkFactorAsFloor() {
+
+        PasswordHashCalibrator.Calibration calibration = new PasswordHashCalibrator(Duration.ofMillis(1))
+                .calibrate(new SleepingAlgorithm(8));
+
+        Assertions.assertEquals(calibration.algorithm().getWorkFactor(), 8);
+
+    }
+
+    @Test
+    void shouldCalibrateRealAlgorithms() {
+
+        PasswordHashCalibrator calibrator = new PasswordHashCalibrator(Duration.ofMillis(5));
+
+        PasswordHashAlgorithm bcrypt = calibrator.calibrate(
+                new BcryptPasswordHashAlgorithm(BcryptPasswordHashAlgorithm.version("2a"), 4)).algorithm();
+        PasswordHashAlgorithm pbkdf2 = calibrator.calibrate(new Pbkdf2PasswordHashAlgorithm(1000)).algorithm();
+
+        Assertions.assertTrue(bcrypt.verify("password", bcrypt.hash("password")));
+        Assertions.assertTrue(pbkdf2.verify("password", pbkdf2.hash("password")));
+        Assertions.assertFalse(pbkdf2.verify("wrong", pbkdf2.hash("password")));
+
+    }
+
+    // Each hash sleeps as many milliseconds as the work factor, which doubles per step.
+    private record SleepingAlgorithm(int workFactor) implements PasswordHashAlgorithm {
+
+        @Override
+        public String getName() {
+            return "sleeping";
+        }
+
+        @Override
+        public int getWorkFactor() {
+            return workFactor;
+        }
+
+        @Override
+        public int nextWorkFactor() {
+            return Math.min(workFactor * 2, 256);
+        }
+
+        @Override
+        public PasswordHashAlgorithm withWorkFactor(int workFactor) {
+            return new SleepingAlgorithm(workFactor);
+        }
+
+        @Override
+        public String hash(String password) {
+            try {
+                Thread.sleep(workFactor);
+            } catch(InterruptedException interruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            return "$sleeping$" + workFactor;
+        }
+
+        @Override
+        public boolean supports(String encodedPassword) {
+            return encodedPassword.startsWith("$sleeping$");
+        }
+
+        @Override
+        public boolean verify(String password, String encodedPassword) {
+            return true;
+        }
+
+        @Override
+        public boolean meetsPolicy(String encodedPassword) {
+            return Integer.parseInt(encodedPassword.substring("$sleeping$".length())) >= workFactor;
+        }
+
+    }
+
+}
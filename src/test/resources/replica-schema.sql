@@ -0,0 +1,10 @@
+CREATE TABLE IF NOT EXISTS `users` (
+  `ID` bigint NOT NULL,
+  `NAME` varchar(50) NOT NULL,
+  `EMAIL` varchar(50) NOT NULL,
+  `EMAIL_NORMALIZED` varchar(50) NOT NULL,
+  `PASSWORD` varchar(100) NOT NULL,
+  `VERSION` bigint DEFAULT NULL,
+  `NEEDS_REHASH` boolean NOT NULL DEFAULT FALSE,
+  PRIMARY KEY (`ID`)
+);